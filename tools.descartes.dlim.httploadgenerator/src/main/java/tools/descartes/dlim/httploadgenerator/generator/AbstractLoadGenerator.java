@@ -15,17 +15,30 @@
  */
 package tools.descartes.dlim.httploadgenerator.generator;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import tools.descartes.dlim.httploadgenerator.http.HTTPClientSettings;
+import tools.descartes.dlim.httploadgenerator.runner.BinaryProtocol;
+import tools.descartes.dlim.httploadgenerator.runner.ClockOffset;
 import tools.descartes.dlim.httploadgenerator.runner.IRunnerConstants;
+import tools.descartes.dlim.httploadgenerator.runner.LoadGeneratorResult;
 
 /**
  * The class AbstractLoadGenerator is a abstract class for various load
@@ -34,6 +47,8 @@ import tools.descartes.dlim.httploadgenerator.runner.IRunnerConstants;
  * class triggers the process method of the selected load generator class when
  * the starting message of the director is received. The main task of this class
  * is the communication with the director on the controller system.
+ * Directors may use the line-based text protocol or the {@link BinaryProtocol},
+ * which is detected using the magic bytes at the start of the connection.
  * 
  * @author Joakim von Kistowski, Maximilian Deffner
  *
@@ -64,7 +79,19 @@ public abstract class AbstractLoadGenerator extends Thread {
 	 */
 	private PrintWriter out;
 
+	/** Input stream for the binary protocol. Null if the director uses the text protocol. */
+	private DataInputStream binaryIn;
+
+	/** Output stream for the binary protocol. Null if the director uses the text protocol. */
+	private DataOutputStream binaryOut;
+
 	private int timeout = -1;
+
+	/** Time in us at which to start generating load, as scheduled by the director. 0 to start immediately. */
+	private long startAtMicros = 0;
+
+	/** True if the start time was sent to the director. */
+	private boolean startTimeSent = false;
 	
 	/**
 	 * Constant command String to indicate that a load profile is being sent via
@@ -91,8 +118,12 @@ public abstract class AbstractLoadGenerator extends Thread {
 
 		while (true) {
 			NetStreamContainer streams = AbstractLoadGenerator.acceptDirector(server);
-			AbstractLoadGenerator generator = new ArrivalRateTupleLoadGenerator(streams.director, streams.in,
-					streams.out);
+			AbstractLoadGenerator generator;
+			if (streams.binaryIn != null) {
+				generator = new ArrivalRateTupleLoadGenerator(streams.director, streams.binaryIn, streams.binaryOut);
+			} else {
+				generator = new ArrivalRateTupleLoadGenerator(streams.director, streams.in, streams.out);
+			}
 			generator.waitAndListen();
 		}
 	}
@@ -111,6 +142,19 @@ public abstract class AbstractLoadGenerator extends Thread {
 		this.out = out;
 	}
 
+	/**
+	 * Creating new instance of the abstract load generator for the binary protocol.
+	 * 
+	 * @param director Socket for communicating with the director.
+	 * @param in Input stream for reading binary messages from the director.
+	 * @param out Output stream for writing binary messages back to the director.
+	 */
+	public AbstractLoadGenerator(Socket director, DataInputStream in, DataOutputStream out) {
+		this.director = director;
+		this.binaryIn = in;
+		this.binaryOut = out;
+	}
+
 	/**
 	 * Accepting new client for connection to the socket.
 	 * 
@@ -124,8 +168,16 @@ public abstract class AbstractLoadGenerator extends Thread {
 			LOG.log(Level.INFO, "Waiting for director.");
 			streams.director = server.accept();
 			LOG.log(Level.INFO, "Director connected.");
-			streams.in = new BufferedReader(new InputStreamReader(streams.director.getInputStream()));
-			streams.out = new PrintWriter(streams.director.getOutputStream(), true);
+			BufferedInputStream input = new BufferedInputStream(streams.director.getInputStream());
+			int version = BinaryProtocol.accept(input, streams.director.getOutputStream());
+			if (version > 0) {
+				LOG.log(Level.INFO, "Using binary protocol version " + version + ".");
+				streams.binaryIn = new DataInputStream(input);
+				streams.binaryOut = new DataOutputStream(new BufferedOutputStream(streams.director.getOutputStream()));
+			} else {
+				streams.in = new BufferedReader(new InputStreamReader(input));
+				streams.out = new PrintWriter(streams.director.getOutputStream(), true);
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -137,10 +189,15 @@ public abstract class AbstractLoadGenerator extends Thread {
 	 * controller machine.
 	 */
 	private void waitAndListen() {
+		if (binaryIn != null) {
+			waitAndListenBinary();
+			return;
+		}
 		String line;
 		while (true) {
 			try {
 				line = in.readLine();
+				Setting setting = Setting.fromLine(line);
 				if (line.startsWith(loadProfileCommand())) {
 					readLoadProfile(in, line);
 					ok();
@@ -152,28 +209,30 @@ public abstract class AbstractLoadGenerator extends Thread {
 					startBenchmark(line.trim().split(","));
 					disconnectFromDirector();
 					break;
-				} else if (line.startsWith(IRunnerConstants.THREAD_NUM_KEY)) {
-					if (this instanceof ArrivalRateTupleLoadGenerator) {
-						try {
-							int threads = Integer.parseInt(line.split(":")[1].trim());
-							((ArrivalRateTupleLoadGenerator) this).setNumberOfThreads(threads);
-						} catch (IndexOutOfBoundsException | NumberFormatException e) {
-							LOG.log(Level.WARNING, "Invalid thread count.");
-						}
-						ok();
-					}
-				} else if (line.startsWith(IRunnerConstants.TIMEOUT_KEY)) {
+				} else if (setting != null) {
 					try {
-						int timeout = Integer.parseInt(line.split(":")[1].trim());
-						this.timeout = timeout;
-					} catch (IndexOutOfBoundsException | NumberFormatException e) {
-						LOG.log(Level.WARNING, "Invalid timeout.");
+						applySetting(setting, line.substring(setting.key.length()));
+					} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+						LOG.log(Level.WARNING, "Invalid " + setting.description + ".");
 					}
 					ok();
 				} else if (line.startsWith(IRunnerConstants.SCRIPT_SEND_KEY)) {
 					receiveScript(in);
 					LOG.info("Received LUA script.");
 					ok();
+				} else if (line.startsWith(IRunnerConstants.CLOCK_PROBE_KEY)) {
+					long receivedMicros = ClockOffset.currentTimeMicros();
+					try {
+						long probeMicros = Long.parseLong(line.substring(IRunnerConstants.CLOCK_PROBE_KEY.length()).trim());
+						out.println(IRunnerConstants.CLOCK_REPLY_KEY + probeMicros + "," + receivedMicros + ","
+								+ ClockOffset.currentTimeMicros());
+					} catch (NumberFormatException e) {
+						LOG.log(Level.WARNING, "Invalid clock probe.");
+					}
+				} else if (line.equals(IRunnerConstants.CAPACITY_KEY)) {
+					out.println(IRunnerConstants.CAPACITY_REPLY_KEY + Runtime.getRuntime().availableProcessors());
+				} else if (line.startsWith(IRunnerConstants.RATE_ADJUST_KEY)) {
+					receiveRateAdjustment(line);
 				} else {
 					LOG.log(Level.SEVERE, "Unknown Command: " + line);
 				}
@@ -183,6 +242,231 @@ public abstract class AbstractLoadGenerator extends Thread {
 		}
 	}
 
+	/**
+	 * Waiting and listening for new binary messages of the director on the
+	 * controller machine. Each message is acknowledged, except for the start message.
+	 */
+	private void waitAndListenBinary() {
+		while (true) {
+			BinaryProtocol.Message message;
+			long receivedMicros;
+			try {
+				message = BinaryProtocol.readMessage(binaryIn);
+				receivedMicros = ClockOffset.currentTimeMicros();
+			} catch (IOException e) {
+				LOG.log(Level.SEVERE, "Read Failed: " + e.getMessage());
+				disconnectFromDirector();
+				return;
+			}
+			DataInputStream payload = message.getPayload();
+			try {
+				if (message.getType() == null) {
+					error("Unknown message type.");
+					ok();
+					continue;
+				}
+				Setting setting = Setting.fromType(message.getType());
+				if (setting != null) {
+					applySetting(setting, setting.reader.read(payload));
+					ok();
+					continue;
+				}
+				switch (message.getType()) {
+				case ARRIVAL_RATES:
+					setLoadProfile(readArrivalRates(payload));
+					break;
+				case SCRIPT:
+					Files.write(Paths.get(TMP_SCRIPT_PATH), BinaryProtocol.readBytes(payload));
+					LOG.info("Received LUA script.");
+					break;
+				case CLOCK_PROBE:
+					long probeMicros = payload.readLong();
+					send(BinaryProtocol.MessageType.CLOCK_REPLY, p -> {
+						p.writeLong(probeMicros);
+						p.writeLong(receivedMicros);
+						p.writeLong(ClockOffset.currentTimeMicros());
+					});
+					//the reply acknowledges the probe
+					continue;
+				case CAPACITY_REQUEST:
+					send(BinaryProtocol.MessageType.CAPACITY, p -> p.writeInt(Runtime.getRuntime().availableProcessors()));
+					continue;
+				case RATE_ADJUST:
+					//answered with the number of applied tuples
+					adjustArrivalRates(readArrivalRates(payload));
+					continue;
+				case START:
+					boolean randomBatchTimes = payload.readBoolean();
+					int seed = payload.readInt();
+					int warmupDurationS = payload.readInt();
+					double warmupLoad = payload.readDouble();
+					int warmupPauseS = payload.readInt();
+					boolean randomizeUsers = payload.readBoolean();
+					if (payload.available() >= 8) {
+						startAtMicros = payload.readLong();
+					}
+					startBenchmark(randomBatchTimes, seed, warmupDurationS, warmupLoad, warmupPauseS, randomizeUsers);
+					disconnectFromDirector();
+					return;
+				default:
+					LOG.log(Level.SEVERE, "Unexpected message: " + message.getType());
+					break;
+				}
+			} catch (IOException | IllegalArgumentException | IndexOutOfBoundsException e) {
+				LOG.log(Level.WARNING, "Invalid " + message.getType() + " message: " + e.getMessage());
+			}
+			ok();
+		}
+	}
+
+	/**
+	 * Applies a setting of the director. Both protocols pass the value in its text form.
+	 * Settings other than the timeout only apply to {@link ArrivalRateTupleLoadGenerator}s.
+	 * @param setting The setting.
+	 * @param value The value of the setting.
+	 * @throws IllegalArgumentException If the value is invalid.
+	 * @throws IndexOutOfBoundsException If a value of the think time is missing.
+	 */
+	private void applySetting(Setting setting, String value) {
+		String trimmed = value.trim();
+		if (setting == Setting.TIMEOUT) {
+			timeout = Integer.parseInt(trimmed);
+			return;
+		}
+		if (!(this instanceof ArrivalRateTupleLoadGenerator)) {
+			return;
+		}
+		ArrivalRateTupleLoadGenerator generator = (ArrivalRateTupleLoadGenerator) this;
+		switch (setting) {
+		case THREAD_COUNT:
+			generator.setNumberOfThreads(Integer.parseInt(trimmed));
+			break;
+		case DISPATCH_MODE:
+			generator.setDispatchMode(ArrivalRateTupleLoadGenerator.DispatchMode.valueOf(toConstant(trimmed)));
+			break;
+		case ARRIVAL_PROCESS:
+			generator.setArrivalProcess(ArrivalProcess.valueOf(toConstant(trimmed)));
+			break;
+		case EXECUTION_MODE:
+			generator.setExecutionMode(ArrivalRateTupleLoadGenerator.ExecutionMode.valueOf(toConstant(trimmed)));
+			break;
+		case IN_FLIGHT_LIMIT:
+			generator.setInFlightLimit(Integer.parseInt(trimmed));
+			break;
+		case WORKLOAD_MODEL:
+			generator.setWorkloadModel(ArrivalRateTupleLoadGenerator.WorkloadModel.valueOf(toConstant(trimmed)));
+			break;
+		case THINK_TIME:
+			String[] tokens = trimmed.split(",");
+			generator.setThinkTime(Double.parseDouble(tokens[0].trim()),
+					ThinkTimeDistribution.valueOf(toConstant(tokens[1])));
+			break;
+		case EXECUTOR_SHARDS:
+			generator.setExecutorShards(Integer.parseInt(trimmed));
+			break;
+		case HTTP_CLIENT:
+			generator.setHTTPClientSettings(HTTPClientSettings.parse(trimmed));
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static String toConstant(String name) {
+		return name.trim().toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Reads the arrival rate tuples of a binary message.
+	 * @param payload The message payload.
+	 * @return The arrival rate tuples.
+	 * @throws IOException If the payload is invalid.
+	 */
+	private static List<ArrivalRateTuple> readArrivalRates(DataInputStream payload) throws IOException {
+		int count = payload.readInt();
+		LOG.log(Level.INFO, "Receiving " + count + " Arrival Rates.");
+		List<ArrivalRateTuple> rates = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			rates.add(new ArrivalRateTuple(payload.readDouble(), payload.readDouble()));
+		}
+		return rates;
+	}
+
+	/**
+	 * Receives a rate adjustment using the text protocol.
+	 * @param header The rate adjustment header, containing the number of tuples.
+	 * @throws IOException If reading fails.
+	 */
+	private void receiveRateAdjustment(String header) throws IOException {
+		int count;
+		try {
+			count = Integer.parseInt(header.trim().split(",")[1].trim());
+		} catch (IndexOutOfBoundsException | NumberFormatException e) {
+			LOG.log(Level.WARNING, "Invalid rate adjustment.");
+			out.println(IRunnerConstants.RATE_ADJUSTED_KEY + 0);
+			return;
+		}
+		List<ArrivalRateTuple> rates = new ArrayList<>();
+		if (count > 0) {
+			rates = ArrivalRateTuple.readList(in, 0, count);
+		}
+		adjustArrivalRates(rates);
+	}
+
+	/**
+	 * Applies a rate adjustment of the director and reports the number of applied tuples.
+	 * @param rates The adjusted arrival rate tuples.
+	 */
+	private void adjustArrivalRates(List<ArrivalRateTuple> rates) {
+		int applied = adjustLoadProfile(rates);
+		if (applied < rates.size()) {
+			LOG.log(Level.WARNING, "Ignored " + (rates.size() - applied)
+					+ " adjusted arrival rates of intervals that have already started.");
+		} else if (applied > 0) {
+			LOG.log(Level.INFO, "Adjusted " + applied + " Arrival Rates.");
+		}
+		if (binaryOut != null) {
+			send(BinaryProtocol.MessageType.RATE_ADJUSTED, p -> p.writeInt(applied));
+		} else {
+			out.println(IRunnerConstants.RATE_ADJUSTED_KEY + applied);
+		}
+	}
+
+	/**
+	 * Listens for messages of the director while load is generated. The thread that received the start
+	 * message generates the load, so that the director can only adjust the arrival rates using this listener.
+	 * The listener ends once the connection is closed after the run.
+	 */
+	private void startRunListener() {
+		Thread listener = new Thread(() -> {
+			try {
+				if (binaryIn != null) {
+					while (true) {
+						BinaryProtocol.Message message = BinaryProtocol.readMessage(binaryIn);
+						if (message.getType() == BinaryProtocol.MessageType.RATE_ADJUST) {
+							adjustArrivalRates(readArrivalRates(message.getPayload()));
+						} else {
+							LOG.log(Level.WARNING, "Ignoring " + message.getType() + " message during the run.");
+						}
+					}
+				} else {
+					String line;
+					while ((line = in.readLine()) != null) {
+						if (line.startsWith(IRunnerConstants.RATE_ADJUST_KEY)) {
+							receiveRateAdjustment(line);
+						} else {
+							LOG.log(Level.WARNING, "Ignoring command during the run: " + line);
+						}
+					}
+				}
+			} catch (IOException e) {
+				//connection closed
+			}
+		}, "director-listener");
+		listener.setDaemon(true);
+		listener.start();
+	}
+
 	/**
 	 * Receiving the load profile transferred by the director.
 	 * 
@@ -193,6 +477,24 @@ public abstract class AbstractLoadGenerator extends Thread {
 	 */
 	protected abstract void readLoadProfile(BufferedReader in, String header);
 
+	/**
+	 * Setting the load profile received by the director using the binary protocol.
+	 * 
+	 * @param profile
+	 *            The arrival rate tuples of the load profile.
+	 */
+	protected abstract void setLoadProfile(List<ArrivalRateTuple> profile);
+
+	/**
+	 * Adjusts the arrival rates of upcoming intervals of the load profile.
+	 * Called by the director's listener, also while load is generated.
+	 * 
+	 * @param rates
+	 *            The adjusted arrival rate tuples, identified by their time stamps.
+	 * @return The number of applied tuples. Tuples of intervals that have already started are not applied.
+	 */
+	protected abstract int adjustLoadProfile(List<ArrivalRateTuple> rates);
+
 	/**
 	 * Sending results back to the director at the end of every interval.
 	 */
@@ -229,8 +531,26 @@ public abstract class AbstractLoadGenerator extends Thread {
 		double warmupLoad = Double.parseDouble(params[4]);
 		int warmupPauseS = Integer.parseInt(params[5]);
 		boolean randomizeUsers = Boolean.parseBoolean(params[6].trim());
+		if (params.length > 7) {
+			startAtMicros = Long.parseLong(params[7].trim());
+		}
+		startBenchmark(randomBatchTimes, seed, warmupDurationS, warmupLoad, warmupPauseS, randomizeUsers);
+	}
+
+	/**
+	 * Start execution of the benchmark.
+	 * 
+	 * @param randomBatchTimes True, if wait times should be randomized a bit.
+	 * @param seed The random number generator seed.
+	 * @param warmupDurationS The duration of a potential warmup period in seconds.
+	 * @param warmupLoad The load intensity of the warmup period.
+	 * @param warmupPauseS The pause after warmup before starting measurement in seconds.
+	 * @param randomizeUsers True if users should be randoized.
+	 */
+	private void startBenchmark(boolean randomBatchTimes, int seed, int warmupDurationS, double warmupLoad,
+			int warmupPauseS, boolean randomizeUsers) {
 		ResultTracker.TRACKER.reset();
-		out.println(System.currentTimeMillis());
+		startTimeSent = false;
 
 		LOG.log(Level.INFO, "Starting run with randomBatchTimes=" + randomBatchTimes + ", seed=" + seed + "\n"
 				+ "warmupDuration=" + warmupDurationS + " s, warmupLoadIntensity=" + warmupLoad
@@ -239,10 +559,63 @@ public abstract class AbstractLoadGenerator extends Thread {
 		if (!script.exists()) {
 			error("Temporary load generator side script not found at " + TMP_SCRIPT_PATH);
 		}
+		startRunListener();
 		process(randomBatchTimes, seed, warmupDurationS, warmupLoad, warmupPauseS, randomizeUsers);
-		out.println(IRunnerConstants.DONE_KEY);
+		//load generators that fail before starting still report a start time
+		sendStartTime();
+		if (binaryOut != null) {
+			send(BinaryProtocol.MessageType.DONE, null);
+		} else {
+			out.println(IRunnerConstants.DONE_KEY);
+		}
 	}
 	
+	/**
+	 * Waits until the start time scheduled by the director and reports the actual start time to the director.
+	 * Load generators call this once they have completed their preparations, immediately before
+	 * generating load. Starts immediately if no start time was scheduled or if it has already passed.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	protected void awaitScheduledStart() throws InterruptedException {
+		long remainingMicros;
+		while ((remainingMicros = startAtMicros - ClockOffset.currentTimeMicros()) > 0) {
+			if (remainingMicros > 2000) {
+				Thread.sleep((remainingMicros - 1000) / 1000);
+			} else {
+				//sleeping is too coarse for the final milliseconds
+				Thread.yield();
+			}
+		}
+		sendStartTime();
+	}
+
+	/**
+	 * Sends the actual start time to the director, unless it was already sent.
+	 * The time in us is only sent to directors that scheduled the start, as older directors
+	 * expect the time in ms only.
+	 */
+	private void sendStartTime() {
+		if (startTimeSent) {
+			return;
+		}
+		startTimeSent = true;
+		long startMicros = ClockOffset.currentTimeMicros();
+		long startTime = System.currentTimeMillis();
+		if (binaryOut != null) {
+			send(BinaryProtocol.MessageType.START_TIME, p -> {
+				p.writeLong(startTime);
+				p.writeLong(startMicros);
+			});
+		} else if (startAtMicros > 0) {
+			out.println(startTime + "," + startMicros);
+		} else {
+			out.println(startTime);
+		}
+		if (startAtMicros > 0) {
+			LOG.log(Level.INFO, "Started " + (startMicros - startAtMicros) + " us after the scheduled start time.");
+		}
+	}
+
 	/**
 	 * Sending error message to the director.
 	 * 
@@ -250,14 +623,38 @@ public abstract class AbstractLoadGenerator extends Thread {
 	 *            Error message.
 	 */
 	private void error(String message) {
-		out.println("Error: " + message);
+		if (binaryOut != null) {
+			send(BinaryProtocol.MessageType.ERROR, p -> p.writeUTF(message));
+		} else {
+			out.println("Error: " + message);
+		}
 	}
 
 	/**
 	 * Sending confirmation to the director.
 	 */
 	private void ok() {
-		out.println(IRunnerConstants.OK_KEY);
+		if (binaryOut != null) {
+			send(BinaryProtocol.MessageType.OK, null);
+		} else {
+			out.println(IRunnerConstants.OK_KEY);
+		}
+	}
+
+	/**
+	 * Sending a binary message to the director.
+	 * 
+	 * @param type
+	 *            The message type.
+	 * @param payload
+	 *            Writer of the payload. Null for messages without payload.
+	 */
+	private void send(BinaryProtocol.MessageType type, BinaryProtocol.PayloadWriter payload) {
+		try {
+			BinaryProtocol.writeMessage(binaryOut, type, payload);
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, "Could not send " + type + " message to director: " + e.getMessage());
+		}
 	}
 
 	/**
@@ -283,27 +680,40 @@ public abstract class AbstractLoadGenerator extends Thread {
 
 	/**
 	 * Sending results to the director after every interval.
+	 * Besides the averages, the message contains the raw sums, counts, and encoded latency histograms,
+	 * so that the director can merge the results of multiple load generators without loss of precision.
+	 * Message fields: target time, load intensity, successful transactions, average response time (s),
+	 * failed transactions, dropped transactions, actual time, average dispatch jitter (ms),
+	 * maximum dispatch jitter (ms), average corrected response time (s), response time sum (ns),
+	 * corrected response time sum (ns), dispatch jitter sum (ns), dispatch jitter count,
+	 * response time histogram, corrected response time histogram, received bytes.
 	 * 
 	 * @param targettime
 	 *            time stamp of the arrival rate tuples
 	 * @param loadintensity
 	 *            preset load throughput
-	 * @param throughput
-	 *            actual achieved load throughput
-	 * @param avgResponseTime
-	 * 			  average response time
-	 * @param invalidTransactionCount
-	 * 			  Count of invalid transactions for the measurement interval.
-	 * * @param droppedTransactionCount
-	 * 			  Count of dropped transactions for the measurement interval.
 	 * @param actualtime
 	 *            actual time
+	 * @param result
+	 *            the result of the measurement interval
 	 */
-	protected void sendToDirector(double targettime, int loadintensity, long throughput,
-				double avgResponseTime, long invalidTransactionCount, long droppedTransactionCount, double actualtime) {
-		out.println("" + targettime + "," + loadintensity + "," + throughput
-				+ "," + avgResponseTime + "," + invalidTransactionCount + ","
-				+ droppedTransactionCount + "," + actualtime);
+	protected void sendToDirector(double targettime, int loadintensity, double actualtime,
+			ResultTracker.IntervalResult result) {
+		if (binaryOut != null) {
+			send(BinaryProtocol.MessageType.RESULT,
+					p -> LoadGeneratorResult.write(p, targettime, loadintensity, actualtime, result));
+			return;
+		}
+		out.println("" + targettime + "," + loadintensity + "," + result.getSuccessfulTransactions()
+				+ "," + result.getAverageResponseTimeInS() + "," + result.getFailedTransactions() + ","
+				+ result.getDroppedTransactions() + "," + actualtime + ","
+				+ result.getAverageDispatchJitterInMs() + "," + result.getMaxDispatchJitterInMs() + ","
+				+ result.getAverageCorrectedResponseTimeInS() + ","
+				+ result.getResponseTimeSumNs() + "," + result.getCorrectedResponseTimeSumNs() + ","
+				+ result.getDispatchJitterSumNs() + "," + result.getDispatchJitterCount() + ","
+				+ result.getResponseTimeHistogram().encode() + ","
+				+ result.getCorrectedResponseTimeHistogram().encode() + ","
+				+ result.getReceivedBytes());
 	}
 
 	/**
@@ -316,6 +726,86 @@ public abstract class AbstractLoadGenerator extends Thread {
 		private Socket director;
 		private BufferedReader in;
 		private PrintWriter out;
+		private DataInputStream binaryIn;
+		private DataOutputStream binaryOut;
+	}
+
+	/**
+	 * Settings that the director sends before the start. The text protocol sends a setting as a line
+	 * of its key and value, the binary protocol as a message whose payload contains the value.
+	 * Both protocols apply the setting using {@link AbstractLoadGenerator#applySetting(Setting, String)}.
+	 */
+	private enum Setting {
+		THREAD_COUNT(IRunnerConstants.THREAD_NUM_KEY, BinaryProtocol.MessageType.THREAD_COUNT,
+				"thread count", p -> Integer.toString(p.readInt())),
+		DISPATCH_MODE(IRunnerConstants.DISPATCH_MODE_KEY, BinaryProtocol.MessageType.DISPATCH_MODE,
+				"dispatch mode", p -> p.readUTF()),
+		ARRIVAL_PROCESS(IRunnerConstants.ARRIVAL_PROCESS_KEY, BinaryProtocol.MessageType.ARRIVAL_PROCESS,
+				"arrival process", p -> p.readUTF()),
+		EXECUTION_MODE(IRunnerConstants.EXECUTION_MODE_KEY, BinaryProtocol.MessageType.EXECUTION_MODE,
+				"execution mode", p -> p.readUTF()),
+		IN_FLIGHT_LIMIT(IRunnerConstants.IN_FLIGHT_LIMIT_KEY, BinaryProtocol.MessageType.IN_FLIGHT_LIMIT,
+				"in-flight limit", p -> Integer.toString(p.readInt())),
+		WORKLOAD_MODEL(IRunnerConstants.WORKLOAD_MODEL_KEY, BinaryProtocol.MessageType.WORKLOAD_MODEL,
+				"workload model", p -> p.readUTF()),
+		THINK_TIME(IRunnerConstants.THINK_TIME_KEY, BinaryProtocol.MessageType.THINK_TIME,
+				"think time", p -> p.readDouble() + "," + p.readUTF()),
+		EXECUTOR_SHARDS(IRunnerConstants.EXECUTOR_SHARDS_KEY, BinaryProtocol.MessageType.EXECUTOR_SHARDS,
+				"executor shard count", p -> Integer.toString(p.readInt())),
+		HTTP_CLIENT(IRunnerConstants.HTTP_CLIENT_KEY, BinaryProtocol.MessageType.HTTP_CLIENT,
+				"HTTP client settings", p -> p.readUTF()),
+		TIMEOUT(IRunnerConstants.TIMEOUT_KEY, BinaryProtocol.MessageType.TIMEOUT,
+				"timeout", p -> Integer.toString(p.readInt()));
+
+		private final String key;
+		private final BinaryProtocol.MessageType type;
+		private final String description;
+		private final ValueReader reader;
+
+		private Setting(String key, BinaryProtocol.MessageType type, String description, ValueReader reader) {
+			this.key = key;
+			this.type = type;
+			this.description = description;
+			this.reader = reader;
+		}
+
+		/**
+		 * Returns the setting of a line of the text protocol.
+		 * @param line The line.
+		 * @return The setting. Null if the line is no setting.
+		 */
+		private static Setting fromLine(String line) {
+			if (line != null) {
+				for (Setting setting : values()) {
+					if (line.startsWith(setting.key)) {
+						return setting;
+					}
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Returns the setting of a binary message.
+		 * @param type The message type.
+		 * @return The setting. Null if the message is no setting.
+		 */
+		private static Setting fromType(BinaryProtocol.MessageType type) {
+			for (Setting setting : values()) {
+				if (setting.type == type) {
+					return setting;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the value of a setting from a binary message payload into its text form.
+	 */
+	@FunctionalInterface
+	private interface ValueReader {
+		String read(DataInputStream payload) throws IOException;
 	}
 	
 	//Receives the script and writes it to the temp dir.
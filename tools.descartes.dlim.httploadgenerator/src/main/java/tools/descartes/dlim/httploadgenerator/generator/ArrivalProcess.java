@@ -0,0 +1,85 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.generator;
+
+import java.util.Random;
+
+/**
+ * Arrival processes for generating the arrival time stamps of individual requests.
+ * Except for {@link #FIXED_COUNT}, all processes are open-loop processes that draw
+ * the time between two request arrivals from a distribution with the mean
+ * inter-arrival time of the current {@link ArrivalRateTuple}.
+ * Arrival time stamps are only honored when transactions are dispatched
+ * using the timer wheel.
+ *
+ * @author Joakim von Kistowski
+ *
+ */
+public enum ArrivalProcess {
+
+	/**
+	 * Each interval gets exactly the number of arrivals specified by its arrival rate.
+	 * Arrivals are spread equi-distantly across the interval.
+	 */
+	FIXED_COUNT,
+	/**
+	 * Exponentially distributed inter-arrival times (Poisson process).
+	 */
+	POISSON,
+	/**
+	 * Inter-arrival times are uniformly distributed between 0 and twice the mean inter-arrival time.
+	 */
+	UNIFORM,
+	/**
+	 * Constant inter-arrival times. Unlike {@link #FIXED_COUNT}, the phase of arrivals
+	 * is carried over between intervals.
+	 */
+	DETERMINISTIC;
+
+	/**
+	 * Returns true if this process draws individual inter-arrival times.
+	 * @return True for open-loop processes, false for {@link #FIXED_COUNT}.
+	 */
+	public boolean isOpenLoop() {
+		return this != FIXED_COUNT;
+	}
+
+	/**
+	 * Returns true if the process is memoryless. The pending arrival of a memoryless
+	 * process may be discarded and re-drawn when the arrival rate changes.
+	 * @return True for memoryless processes.
+	 */
+	public boolean isMemoryless() {
+		return this == POISSON;
+	}
+
+	/**
+	 * Draws the time until the next arrival.
+	 * @param meanInterArrivalTimeNs The mean inter-arrival time in nanoseconds.
+	 * @param r The random generator.
+	 * @return The inter-arrival time in nanoseconds.
+	 */
+	public double nextInterArrivalTimeNs(double meanInterArrivalTimeNs, Random r) {
+		switch (this) {
+			case POISSON:
+				return -Math.log(1.0 - r.nextDouble()) * meanInterArrivalTimeNs;
+			case UNIFORM:
+				return 2.0 * r.nextDouble() * meanInterArrivalTimeNs;
+			default:
+				return meanInterArrivalTimeNs;
+		}
+	}
+}
@@ -16,22 +16,30 @@
 package tools.descartes.dlim.httploadgenerator.generator;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
 import java.net.Socket;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import tools.descartes.dlim.httploadgenerator.http.HTTPClientSettings;
 import tools.descartes.dlim.httploadgenerator.http.HTTPInputGeneratorPool;
 import tools.descartes.dlim.httploadgenerator.http.HTTPTransaction;
 import tools.descartes.dlim.httploadgenerator.runner.IRunnerConstants;
+import tools.descartes.dlim.httploadgenerator.transaction.HashedWheelDispatcher;
+import tools.descartes.dlim.httploadgenerator.transaction.ShardedExecutor;
+import tools.descartes.dlim.httploadgenerator.transaction.Transaction;
 import tools.descartes.dlim.httploadgenerator.transaction.TransactionBatch;
-import tools.descartes.dlim.httploadgenerator.transaction.TransactionQueueSingleton;
+import tools.descartes.dlim.httploadgenerator.transaction.TransactionRecycler;
 
 /**
  * The class ArrivalRateTupleLoadGenerator is a child of the
@@ -49,20 +57,77 @@ public class ArrivalRateTupleLoadGenerator extends AbstractLoadGenerator {
 
 	/**
 	 * Thread pool for executing the transactions in parallel threads for
-	 * generating load.
+	 * generating load. Partitioned into shards, each with its own users.
 	 */
-	private ThreadPoolExecutor executor;
+	private ShardedExecutor executor;
+
+	/**
+	 * Dispatcher for releasing transactions at their individual due times.
+	 * Only used in {@link DispatchMode#WHEEL}.
+	 */
+	private HashedWheelDispatcher dispatcher;
 
 	/** Arrival rates saved in a list. */
 	private List<ArrivalRateTuple> arrRates;
 
+	/** Arrival rates adjusted by the director, by target time in ms. Guarded by itself. */
+	private final Map<Long, Double> rateAdjustments = new HashMap<>();
+
+	/** Target time in ms of the latest interval that has started. Guarded by {@link #rateAdjustments}. */
+	private long startedTargetTime = Long.MIN_VALUE;
+
 
 	/** Number of threads for generating load. */
 	private static int numberOfThreads = 128;
 
+	/** Default maximum number of requests in flight in {@link ExecutionMode#ASYNC} and {@link ExecutionMode#VIRTUAL}. */
+	public static final int DEFAULT_IN_FLIGHT_LIMIT = 1024;
+
+	/** Time after which idle virtual threads are released. */
+	private static final long VIRTUAL_THREAD_KEEP_ALIVE_S = 10;
+
+	/** Minimum number of transactions to create before the load generation. */
+	private static final int MIN_PREINITIALIZED_TRANSACTIONS = 400;
+
+	/** The mode for executing transactions. */
+	private ExecutionMode executionMode = ExecutionMode.BLOCKING;
+
+	/** Maximum number of requests in flight in {@link ExecutionMode#ASYNC} and {@link ExecutionMode#VIRTUAL}. */
+	private int inFlightLimit = DEFAULT_IN_FLIGHT_LIMIT;
+
+	/** The workload model, determining how the load intensity of the profile is interpreted. */
+	private WorkloadModel workloadModel = WorkloadModel.OPEN;
+
+	/** Mean think time of closed-loop users in milliseconds. */
+	private double thinkTimeMs = 0;
+
+	/** Distribution of the think times of closed-loop users. */
+	private ThinkTimeDistribution thinkTimeDistribution = ThinkTimeDistribution.EXPONENTIAL;
+
+	/** Controller of the user population in {@link WorkloadModel#CLOSED}. */
+	private ClosedLoopController closedLoop;
+
+	/** Number of executor shards. Each user is pinned to the threads of one shard. */
+	private int executorShards = 1;
+
+	/** Settings for the users' HTTP clients. */
+	private HTTPClientSettings httpClientSettings = HTTPClientSettings.DEFAULT;
+
 	/** Generation of random numbers. */
 	private static Random r = new Random();
 
+	/** The mode for dispatching transactions into the thread pool. */
+	private DispatchMode dispatchMode = DispatchMode.BATCH;
+
+	/** The process for generating arrival times of individual transactions (wheel dispatch only). */
+	private ArrivalProcess arrivalProcess = ArrivalProcess.FIXED_COUNT;
+
+	/** Marker for {@link #nextArrivalTimeNs} if no arrival is pending. */
+	private static final long NO_PENDING_ARRIVAL = Long.MIN_VALUE;
+
+	/** Arrival time of the next transaction of an open-loop arrival process. */
+	private long nextArrivalTimeNs = NO_PENDING_ARRIVAL;
+
 	/**
 	 * New instance of the class.
 	 * 
@@ -77,6 +142,20 @@ public class ArrivalRateTupleLoadGenerator extends AbstractLoadGenerator {
 		super(director, in, out);
 	}
 
+	/**
+	 * New instance of the class for the binary protocol.
+	 * 
+	 * @param director
+	 *            Socket for the communication with the director
+	 * @param in
+	 *            Input stream for the binary communication with the director
+	 * @param out
+	 *            Output stream for the binary communication with the director
+	 */
+	public ArrivalRateTupleLoadGenerator(Socket director, DataInputStream in, DataOutputStream out) {
+		super(director, in, out);
+	}
+
 	@Override
 	protected void readLoadProfile(BufferedReader in, String header) {
 		// get Arrival rate count
@@ -92,6 +171,44 @@ public class ArrivalRateTupleLoadGenerator extends AbstractLoadGenerator {
 		}
 	}
 
+	@Override
+	protected void setLoadProfile(List<ArrivalRateTuple> profile) {
+		arrRates = profile;
+		LOG.log(Level.INFO, "Received " + arrRates.size() + " Arrival Rate Tuples");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected int adjustLoadProfile(List<ArrivalRateTuple> rates) {
+		int applied = 0;
+		synchronized (rateAdjustments) {
+			for (ArrivalRateTuple t : rates) {
+				long targetTime = (long) (1000.0 * t.getTimeStamp());
+				if (targetTime > startedTargetTime) {
+					rateAdjustments.put(targetTime, t.getArrivalRate());
+					applied++;
+				}
+			}
+		}
+		return applied;
+	}
+
+	/**
+	 * Marks an interval as started, so that its arrival rate can no longer be adjusted.
+	 * @param t The arrival rate tuple of the interval.
+	 * @param targetTime The target time of the interval in ms.
+	 * @return The number of transactions of the interval, as adjusted by the director.
+	 */
+	private int startInterval(ArrivalRateTuple t, long targetTime) {
+		synchronized (rateAdjustments) {
+			startedTargetTime = targetTime;
+			Double adjusted = rateAdjustments.remove(targetTime);
+			return (int) (adjusted != null ? adjusted : t.getArrivalRate());
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -106,11 +223,77 @@ public class ArrivalRateTupleLoadGenerator extends AbstractLoadGenerator {
 			if (randomizeUsers) {
 				mode = HTTPInputGeneratorPool.PoolMode.RANDOM;
 			}
-			HTTPInputGeneratorPool.initializePool(mode, getScriptPath(), numberOfThreads, getTimeout(), seed);
-			LinkedBlockingQueue<Runnable> executorQueue = new LinkedBlockingQueue<Runnable>();
-			executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 0, TimeUnit.MILLISECONDS,
-					executorQueue);
-			TransactionQueueSingleton.getInstance().resetAndpreInitializeTransactions(HTTPTransaction.class, 400);
+			ThreadFactory virtualThreadFactory = null;
+			if (executionMode == ExecutionMode.VIRTUAL) {
+				virtualThreadFactory = createVirtualThreadFactory();
+				if (virtualThreadFactory == null) {
+					LOG.log(Level.WARNING, "Virtual threads are not supported by this JVM (Java 21+ required)."
+							+ " Falling back to BLOCKING execution mode.");
+					executionMode = ExecutionMode.BLOCKING;
+				}
+			}
+			//in async and virtual mode, each request in flight occupies a user, but no platform thread
+			int userCount = numberOfThreads;
+			if (workloadModel == WorkloadModel.CLOSED) {
+				//each session keeps its user, also while thinking
+				userCount = getPeakLoadIntensity(warmupDurationS > 0 ? warmupLoadIntensity : 0);
+			} else if (executionMode != ExecutionMode.BLOCKING) {
+				userCount = inFlightLimit;
+			}
+			HTTPTransaction.setAsynchronous(executionMode == ExecutionMode.ASYNC);
+			int threadCount = numberOfThreads;
+			if (executionMode == ExecutionMode.VIRTUAL) {
+				threadCount = userCount;
+			}
+			//each shard needs at least one thread and one user
+			int shardCount = Math.max(1, Math.min(executorShards, Math.min(threadCount, userCount)));
+			//sessions keep their users across shards, so closed-loop users are not partitioned
+			HTTPInputGeneratorPool.initializePool(mode, getScriptPath(), userCount, getTimeout(),
+					httpClientSettings, workloadModel == WorkloadModel.CLOSED ? 1 : shardCount);
+			if (executionMode == ExecutionMode.VIRTUAL) {
+				//one virtual thread per user, threads are only created when needed
+				executor = new ShardedExecutor(shardCount, userCount, VIRTUAL_THREAD_KEEP_ALIVE_S,
+						virtualThreadFactory);
+			} else {
+				executor = new ShardedExecutor(shardCount, numberOfThreads);
+			}
+			if (shardCount > 1) {
+				LOG.log(Level.INFO, "Users and threads are partitioned into " + shardCount + " executor shards.");
+			}
+			//enough transactions for an interval at peak load, plus those held by the threads and users
+			int peakTransactions = getPeakLoadIntensity(warmupDurationS > 0 ? warmupLoadIntensity : 0)
+					+ threadCount + userCount;
+			//the recycler adds the transactions held back by the recycling executor threads;
+			//in async mode, the HTTP client's callback threads recycle as well, these are not accounted for
+			TransactionRecycler.RECYCLER.resetAndPreInitializeTransactions(HTTPTransaction.class,
+					Math.max(MIN_PREINITIALIZED_TRANSACTIONS, peakTransactions), threadCount);
+			if (workloadModel == WorkloadModel.CLOSED && dispatchMode != DispatchMode.WHEEL) {
+				LOG.log(Level.INFO, "Closed-loop users are scheduled on the timer wheel. Switching to WHEEL dispatch mode.");
+				dispatchMode = DispatchMode.WHEEL;
+			} else if (arrivalProcess.isOpenLoop() && dispatchMode != DispatchMode.WHEEL) {
+				LOG.log(Level.WARNING, "Arrival process " + arrivalProcess
+						+ " requires per-transaction dispatch. Switching to WHEEL dispatch mode.");
+				dispatchMode = DispatchMode.WHEEL;
+			}
+			if (dispatchMode == DispatchMode.WHEEL) {
+				dispatcher = new HashedWheelDispatcher(executor);
+				dispatcher.start();
+			}
+			if (workloadModel == WorkloadModel.CLOSED) {
+				closedLoop = new ClosedLoopController(dispatcher, thinkTimeDistribution, thinkTimeMs);
+				LOG.log(Level.INFO, "Running closed workload with up to " + userCount + " users and "
+						+ thinkTimeDistribution + " think times with a mean of " + thinkTimeMs + " ms.");
+			}
+			HTTPTransaction.setClosedLoop(closedLoop);
+			if (executionMode == ExecutionMode.ASYNC) {
+				LOG.log(Level.INFO, "Executing transactions asynchronously using " + numberOfThreads
+						+ " threads with up to " + inFlightLimit + " requests in flight.");
+			} else if (executionMode == ExecutionMode.VIRTUAL) {
+				LOG.log(Level.INFO, "Executing transactions on virtual threads with up to "
+						+ inFlightLimit + " requests in flight.");
+			}
+			LOG.log(Level.INFO, "Dispatching transactions in " + dispatchMode + " mode"
+					+ (dispatchMode == DispatchMode.WHEEL ? " with " + arrivalProcess + " arrivals." : "."));
 
 			/*
 			 * Mean wait time between batches of transactions is 10 ms or 1/10th
@@ -118,25 +301,33 @@ public class ArrivalRateTupleLoadGenerator extends AbstractLoadGenerator {
 			 */
 			int defaultMeanWaitTime = Math.min(10, (int) (arrRates.get(0).getTimeStamp() * 1000) / 10);
 			
+			//all load generators start at the same time
+			awaitScheduledStart();
 			clearResultTracker();
 			
 			//Warmup, if not skipped
 			if (warmupDurationS > 0 && warmupLoadIntensity >= 1) {
 				long warmupStart = System.currentTimeMillis(); 
+				long warmupStartNs = System.nanoTime();
 				int arrivalRate = (int) warmupLoadIntensity;
+				nextArrivalTimeNs = NO_PENDING_ARRIVAL;
 				for (long targetTime = 1000;
 						targetTime <= warmupDurationS * 1000;
 						targetTime += 1000) {
 					long currentTime = System.currentTimeMillis() - warmupStart;
 					
-					currentTime = blockingScheduleTransactionBatchesForInterval(arrivalRate,
-							warmupStart, currentTime, targetTime, defaultMeanWaitTime, randomBatchTimes);
+					currentTime = blockingScheduleTransactionsForInterval(arrivalRate,
+							warmupStart, warmupStartNs, currentTime, targetTime - 1000, targetTime,
+							defaultMeanWaitTime, randomBatchTimes);
 					//warmup has target times <= 0
 					sendBatchDataToDirector((targetTime / 1000) - warmupDurationS - warmupPauseS,
 							arrivalRate, ((double) currentTime) / 1000);
 				}
 				
 				//pause after warmup
+				if (closedLoop != null) {
+					closedLoop.setTargetUsers(0);
+				}
 				long pauseStartTime = System.currentTimeMillis();
 				for (long targetTime = 1000;
 						targetTime <= warmupPauseS * 1000;
@@ -151,26 +342,36 @@ public class ArrivalRateTupleLoadGenerator extends AbstractLoadGenerator {
 			
 			clearResultTracker();
 			long timeZero = System.currentTimeMillis();
+			long timeZeroNs = System.nanoTime();
 			double nextTimeStamp = 0;
+			long previousTargetTime = 0;
+			nextArrivalTimeNs = NO_PENDING_ARRIVAL;
 
 			for (ArrivalRateTuple t : arrRates) {
 				long currentTime = System.currentTimeMillis() - timeZero;
 
 				// set target arrival rate and next time target
-				int targetArrivalsInInterval = (int) t.getArrivalRate();
 				long targetTime = (long) (1000.0 * t.getTimeStamp());
+				int targetArrivalsInInterval = startInterval(t, targetTime);
 				
-				currentTime = blockingScheduleTransactionBatchesForInterval(targetArrivalsInInterval,
-						timeZero, currentTime, targetTime, defaultMeanWaitTime, randomBatchTimes);
+				currentTime = blockingScheduleTransactionsForInterval(targetArrivalsInInterval,
+						timeZero, timeZeroNs, currentTime, previousTargetTime, targetTime,
+						defaultMeanWaitTime, randomBatchTimes);
 
-				sendBatchDataToDirector(t.getTimeStamp(), (int) t.getArrivalRate(), ((double) currentTime) / 1000);
+				sendBatchDataToDirector(t.getTimeStamp(), targetArrivalsInInterval, ((double) currentTime) / 1000);
 				nextTimeStamp = t.getTimeStamp() * 1000;
+				previousTargetTime = targetTime;
 			}
 
 			//wait for remaining transactions to trickle in
+			if (closedLoop != null) {
+				closedLoop.setTargetUsers(0);
+			}
 			nextTimeStamp += 1000;
 
-			while (executor.getActiveCount() > 0) {
+			while (executor.getActiveCount() > 0
+					|| (dispatcher != null && dispatcher.hasWaitingTransactions())
+					|| HTTPInputGeneratorPool.getPool().getUsersInUse() > 0) {
 				long currentTime = System.currentTimeMillis() - timeZero;
 
 				while (currentTime - (nextTimeStamp) < -defaultMeanWaitTime) {
@@ -184,6 +385,12 @@ public class ArrivalRateTupleLoadGenerator extends AbstractLoadGenerator {
 			LOG.log(Level.INFO, "Workload finished, " + executor.getCompletedTaskCount() + " Tasks executed.");
 			LOG.log(Level.INFO, "Invalid Transactions: " + ResultTracker.TRACKER.getTotalInvalidTransactionCount());
 			LOG.log(Level.INFO, "Dropped Transactions: " + ResultTracker.TRACKER.getTotalDroppedTransactionCount());
+			if (dispatcher != null) {
+				dispatcher.stop();
+				dispatcher = null;
+			}
+			HTTPTransaction.setClosedLoop(null);
+			closedLoop = null;
 			executor.shutdown();
 
 		} catch (InterruptedException e) {
@@ -191,6 +398,145 @@ public class ArrivalRateTupleLoadGenerator extends AbstractLoadGenerator {
 		}
 	}
 
+	/**
+	 * Dispatches the transactions of an interval using the configured {@link DispatchMode}.
+	 * Blocks until all transactions have been scheduled (batch mode) or until
+	 * the interval has passed (wheel mode).
+	 * @param targetArrivalsInInterval The number of transactions to schedule before time target hits.
+	 * @param timeZero Time of experiment start.
+	 * @param timeZeroNs Time of experiment start in {@link System#nanoTime()} scale.
+	 * @param currentTime The current time.
+	 * @param intervalStartTime The time at which the current interval started.
+	 * @param targetTime The target time at which the current load intensity target is to be met.
+	 * @param meanWaitTime The mean time to wait between batches.
+	 * @param randomBatchTimes Weather or not batch waiting times should be randomized.
+	 * @return The time of the last dispatched transaction.
+	 * @throws InterruptedException If thread sleep does weird things.
+	 */
+	private long blockingScheduleTransactionsForInterval(int targetArrivalsInInterval,
+			long timeZero, long timeZeroNs, long currentTime, long intervalStartTime, long targetTime,
+			long meanWaitTime, boolean randomBatchTimes) throws InterruptedException {
+		if (closedLoop != null) {
+			return blockingRunClosedLoopInterval(targetArrivalsInInterval, timeZeroNs, intervalStartTime, targetTime);
+		} else if (dispatchMode == DispatchMode.WHEEL) {
+			return blockingScheduleTransactionsOnWheelForInterval(targetArrivalsInInterval,
+					timeZeroNs, intervalStartTime, targetTime);
+		} else {
+			return blockingScheduleTransactionBatchesForInterval(targetArrivalsInInterval,
+					timeZero, timeZeroNs, currentTime, intervalStartTime, targetTime, meanWaitTime, randomBatchTimes);
+		}
+	}
+
+	/**
+	 * Assigns each transaction of the interval its own due time and schedules it
+	 * on the timer wheel. Due times are spread equi-distantly across the interval
+	 * or drawn from the open-loop {@link ArrivalProcess}, if one is configured.
+	 * Blocks until the end of the interval.
+	 * @param targetArrivalsInInterval The number of transactions to schedule within the interval.
+	 * @param timeZeroNs Time of experiment start in {@link System#nanoTime()} scale.
+	 * @param intervalStartTime The time at which the interval starts.
+	 * @param targetTime The time at which the interval ends.
+	 * @return The time of the last dispatched transaction.
+	 * @throws InterruptedException If thread sleep does weird things.
+	 */
+	private long blockingScheduleTransactionsOnWheelForInterval(int targetArrivalsInInterval,
+			long timeZeroNs, long intervalStartTime, long targetTime) throws InterruptedException {
+		long intervalStartNs = timeZeroNs + TimeUnit.MILLISECONDS.toNanos(intervalStartTime);
+		long intervalEndNs = timeZeroNs + TimeUnit.MILLISECONDS.toNanos(targetTime);
+		long intervalLengthNs = Math.max(0, intervalEndNs - intervalStartNs);
+		if (arrivalProcess.isOpenLoop()) {
+			scheduleOpenLoopArrivals(targetArrivalsInInterval, intervalStartNs, intervalEndNs);
+		} else {
+			for (int i = 0; i < targetArrivalsInInterval; i++) {
+				scheduleOnWheel(intervalStartNs + (intervalLengthNs * i) / targetArrivalsInInterval);
+			}
+		}
+		long remainingNs;
+		while ((remainingNs = intervalEndNs - System.nanoTime()) > 0) {
+			TimeUnit.NANOSECONDS.sleep(remainingNs);
+		}
+		return TimeUnit.NANOSECONDS.toMillis(dispatcher.getLastDispatchTimeNs() - timeZeroNs);
+	}
+
+	/**
+	 * Sets the closed-loop user population for the interval and starts the sessions of new users.
+	 * New users start spread across the mean think time (at most the interval), as users of a
+	 * closed system in steady state are not synchronized. Blocks until the end of the interval.
+	 * @param users The number of concurrent users in the interval.
+	 * @param timeZeroNs Time of experiment start in {@link System#nanoTime()} scale.
+	 * @param intervalStartTime The time at which the interval starts.
+	 * @param targetTime The time at which the interval ends.
+	 * @return The time of the last dispatched transaction.
+	 * @throws InterruptedException If thread sleep does weird things.
+	 */
+	private long blockingRunClosedLoopInterval(int users, long timeZeroNs, long intervalStartTime,
+			long targetTime) throws InterruptedException {
+		long intervalEndNs = timeZeroNs + TimeUnit.MILLISECONDS.toNanos(targetTime);
+		long startNs = System.nanoTime();
+		long spreadNs = (long) Math.min(Math.max(0, intervalEndNs - startNs), closedLoop.getMeanThinkTimeNs());
+		int newUsers = closedLoop.setTargetUsers(users);
+		for (int i = 0; i < newUsers; i++) {
+			scheduleOnWheel(startNs + (spreadNs * i) / newUsers);
+		}
+		long remainingNs;
+		while ((remainingNs = intervalEndNs - System.nanoTime()) > 0) {
+			TimeUnit.NANOSECONDS.sleep(remainingNs);
+		}
+		return TimeUnit.NANOSECONDS.toMillis(dispatcher.getLastDispatchTimeNs() - timeZeroNs);
+	}
+
+	/**
+	 * Returns the largest load intensity of the load profile. In {@link WorkloadModel#CLOSED},
+	 * this is the number of users needed. Otherwise, it is the largest number of transactions per interval.
+	 * @param warmupLoadIntensity The load intensity during warmup.
+	 * @return The peak load intensity. At least 1.
+	 */
+	private int getPeakLoadIntensity(double warmupLoadIntensity) {
+		int peak = Math.max(1, (int) warmupLoadIntensity);
+		for (ArrivalRateTuple t : arrRates) {
+			peak = Math.max(peak, (int) t.getArrivalRate());
+		}
+		return peak;
+	}
+
+	/**
+	 * Draws arrival times from the open-loop arrival process and schedules
+	 * a transaction for each arrival within the interval. The mean inter-arrival time
+	 * is derived from the interval's target arrivals. The first arrival after
+	 * the interval is kept pending for the next interval, unless the process is memoryless.
+	 * @param targetArrivalsInInterval The expected number of arrivals within the interval.
+	 * @param intervalStartNs The start of the interval in {@link System#nanoTime()} scale.
+	 * @param intervalEndNs The end of the interval in {@link System#nanoTime()} scale.
+	 */
+	private void scheduleOpenLoopArrivals(int targetArrivalsInInterval, long intervalStartNs, long intervalEndNs) {
+		if (targetArrivalsInInterval <= 0 || intervalEndNs <= intervalStartNs) {
+			nextArrivalTimeNs = NO_PENDING_ARRIVAL;
+			return;
+		}
+		double meanInterArrivalTimeNs = ((double) (intervalEndNs - intervalStartNs)) / targetArrivalsInInterval;
+		if (nextArrivalTimeNs == NO_PENDING_ARRIVAL || nextArrivalTimeNs < intervalStartNs
+				|| arrivalProcess.isMemoryless()) {
+			nextArrivalTimeNs = intervalStartNs
+					+ (long) arrivalProcess.nextInterArrivalTimeNs(meanInterArrivalTimeNs, r);
+		}
+		while (nextArrivalTimeNs < intervalEndNs) {
+			scheduleOnWheel(nextArrivalTimeNs);
+			nextArrivalTimeNs += (long) arrivalProcess.nextInterArrivalTimeNs(meanInterArrivalTimeNs, r);
+		}
+	}
+
+	/**
+	 * Schedules a single transaction on the timer wheel.
+	 * @param dueTimeNs The due time in {@link System#nanoTime()} scale.
+	 */
+	private void scheduleOnWheel(long dueTimeNs) {
+		Transaction transaction = TransactionRecycler.RECYCLER.obtain();
+		if (transaction == null) {
+			transaction = new HTTPTransaction();
+		}
+		dispatcher.schedule(transaction, dueTimeNs);
+	}
+
 	/**
 	 * Dispatches the work in small batches that are then
 	 * parallelized. Batch sizes are set so that the expected number
@@ -199,7 +545,9 @@ public class ArrivalRateTupleLoadGenerator extends AbstractLoadGenerator {
 	 * batch to start.
 	 * @param targetArrivalsInInterval The number of transactions to schedule before time target hits.
 	 * @param timeZero Time of experiment start.
+	 * @param timeZeroNs Time of experiment start in {@link System#nanoTime()} scale.
 	 * @param currentTime The current time.
+	 * @param intervalStartTime The time at which the current interval started.
 	 * @param targetTime The target time at which the current load intensity target is to be met.
 	 * @param meanWaitTime The mean time to wait between batches.
 	 * @param randomBatchTimes Weather or not batch waiting times should be randomized.
@@ -207,15 +555,18 @@ public class ArrivalRateTupleLoadGenerator extends AbstractLoadGenerator {
 	 * @throws InterruptedException If thread sleep does weird things.
 	 */
 	private long blockingScheduleTransactionBatchesForInterval(int targetArrivalsInInterval,
-			long timeZero, long currentTime, long targetTime, long meanWaitTime, boolean randomBatchTimes)
-					throws InterruptedException {
+			long timeZero, long timeZeroNs, long currentTime, long intervalStartTime, long targetTime,
+			long meanWaitTime, boolean randomBatchTimes) throws InterruptedException {
 		//Set mean wait time. Ensure it is not too short for very low loads.
 		long actualMeanWaitTime =
 				calculateMeanWaitTime(meanWaitTime, targetTime, currentTime, targetArrivalsInInterval);
+		long intervalStartNs = timeZeroNs + TimeUnit.MILLISECONDS.toNanos(intervalStartTime);
+		long intervalLengthNs = Math.max(0, TimeUnit.MILLISECONDS.toNanos(targetTime - intervalStartTime));
+		int intervalArrivals = targetArrivalsInInterval;
 
 		while (targetArrivalsInInterval > 0) {
-			targetArrivalsInInterval -= scheduleBatch(targetTime, currentTime,
-					actualMeanWaitTime, targetArrivalsInInterval);
+			targetArrivalsInInterval -= scheduleBatch(targetTime, currentTime, actualMeanWaitTime,
+					targetArrivalsInInterval, intervalStartNs, intervalLengthNs, intervalArrivals);
 			sleep(getPostBatchSleepTime(actualMeanWaitTime, r, randomBatchTimes));
 			currentTime = System.currentTimeMillis() - timeZero;
 		}
@@ -231,13 +582,17 @@ public class ArrivalRateTupleLoadGenerator extends AbstractLoadGenerator {
 	 * @param currentTime The current time.
 	 * @param meanWaitTime The mean time to wait between batches.
 	 * @param targetArrivalsInInterval The number of transactions to schedule before time target hits.
+	 * @param intervalStartNs Start of the interval in {@link System#nanoTime()} scale.
+	 * @param intervalLengthNs Length of the interval in nanoseconds.
+	 * @param intervalArrivals The number of transactions of the interval.
 	 * @return The number of scheduled transactions.
 	 */
 	private int scheduleBatch(long targetTime, long currentTime, long meanWaitTime,
-			int targetArrivalsInInterval) {
+			int targetArrivalsInInterval, long intervalStartNs, long intervalLengthNs, int intervalArrivals) {
 		TransactionBatch batch = new TransactionBatch(targetTime, currentTime, meanWaitTime,
 				targetArrivalsInInterval);
-		batch.executeBatch(executor);
+		batch.executeBatch(executor, intervalStartNs, intervalLengthNs,
+				intervalArrivals - targetArrivalsInInterval, intervalArrivals);
 		return batch.getBatchSize();
 	}
 	
@@ -287,9 +642,7 @@ public class ArrivalRateTupleLoadGenerator extends AbstractLoadGenerator {
 	 */
 	private void sendBatchDataToDirector(double targettime, int loadintensity, double actualtime) {
 		ResultTracker.IntervalResult result = ResultTracker.TRACKER.retreiveIntervalResultAndReset();
-		sendToDirector(targettime, loadintensity, result.getSuccessfulTransactions(),
-				result.getAverageResponseTimeInS(), result.getFailedTransactions(),
-				result.getDroppedTransactions(), actualtime);
+		sendToDirector(targettime, loadintensity, actualtime, result);
 	}
 	
 	/**
@@ -311,4 +664,158 @@ public class ArrivalRateTupleLoadGenerator extends AbstractLoadGenerator {
 	public void setNumberOfThreads(int threads) {
 		numberOfThreads = threads;
 	}
+
+	/**
+	 * Set the mode for dispatching transactions into the thread pool.
+	 * @param dispatchMode The dispatch mode.
+	 */
+	public void setDispatchMode(DispatchMode dispatchMode) {
+		this.dispatchMode = dispatchMode;
+	}
+
+	/**
+	 * Set the process for generating the arrival times of individual transactions.
+	 * @param arrivalProcess The arrival process.
+	 */
+	public void setArrivalProcess(ArrivalProcess arrivalProcess) {
+		this.arrivalProcess = arrivalProcess;
+	}
+
+	/**
+	 * Creates a factory for virtual threads. Uses reflection, as virtual threads
+	 * are only available on Java 21 and newer.
+	 * @return The thread factory. Null if the JVM does not support virtual threads.
+	 */
+	private static ThreadFactory createVirtualThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class)
+					.invoke(builder, "transaction-", 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (NoSuchMethodException | ClassNotFoundException | IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			//virtual threads are a preview feature on Java 19 and 20
+			LOG.log(Level.FINE, "Could not create virtual thread factory: " + e.getCause());
+			return null;
+		}
+	}
+
+	/**
+	 * Set the mode for executing transactions.
+	 * @param executionMode The execution mode.
+	 */
+	public void setExecutionMode(ExecutionMode executionMode) {
+		this.executionMode = executionMode;
+	}
+
+	/**
+	 * Set the maximum number of requests in flight for asynchronous and virtual thread execution.
+	 * @param inFlightLimit The maximum number of concurrent requests. Values &lt; 1 are ignored.
+	 */
+	public void setInFlightLimit(int inFlightLimit) {
+		if (inFlightLimit > 0) {
+			this.inFlightLimit = inFlightLimit;
+		}
+	}
+
+	/**
+	 * Set the workload model.
+	 * @param workloadModel The workload model.
+	 */
+	public void setWorkloadModel(WorkloadModel workloadModel) {
+		this.workloadModel = workloadModel;
+	}
+
+	/**
+	 * Set the think time of closed-loop users.
+	 * @param thinkTimeMs The mean think time in milliseconds.
+	 * @param thinkTimeDistribution The distribution of the think times.
+	 */
+	public void setThinkTime(double thinkTimeMs, ThinkTimeDistribution thinkTimeDistribution) {
+		this.thinkTimeMs = Math.max(0, thinkTimeMs);
+		this.thinkTimeDistribution = thinkTimeDistribution;
+	}
+
+	/**
+	 * Set the number of executor shards. Each shard executes the transactions of its own users
+	 * on its own threads.
+	 * @param executorShards The number of shards. Values &lt; 1 are ignored.
+	 */
+	public void setExecutorShards(int executorShards) {
+		if (executorShards > 0) {
+			this.executorShards = executorShards;
+		}
+	}
+
+	/**
+	 * Set the settings for the users' HTTP clients.
+	 * @param httpClientSettings The HTTP client settings.
+	 */
+	public void setHTTPClientSettings(HTTPClientSettings httpClientSettings) {
+		this.httpClientSettings = httpClientSettings;
+	}
+
+	/**
+	 * Modes for dispatching the transactions of a measurement interval.
+	 * @author Joakim von Kistowski
+	 *
+	 */
+	public static enum DispatchMode {
+		/**
+		 * Transactions are placed in the thread pool in batches,
+		 * with (randomized) sleeps of about 10 ms between batches.
+		 */
+		BATCH,
+		/**
+		 * Each transaction gets its own due time and is released by
+		 * a hashed timer wheel with sub-millisecond ticks.
+		 */
+		WHEEL;
+	}
+
+	/**
+	 * Workload models, determining how the load intensity of the load profile is interpreted.
+	 * @author Joakim von Kistowski
+	 *
+	 */
+	public static enum WorkloadModel {
+		/**
+		 * Open workload: the load intensity is the number of requests per interval,
+		 * which are sent regardless of the responses of earlier requests.
+		 */
+		OPEN,
+		/**
+		 * Closed workload: the load intensity is the number of concurrent users.
+		 * Each user sends its next request after receiving the response to its previous request
+		 * and waiting for a think time. Thinking users occupy no thread.
+		 */
+		CLOSED;
+	}
+
+	/**
+	 * Modes for executing transactions.
+	 * @author Joakim von Kistowski
+	 *
+	 */
+	public static enum ExecutionMode {
+		/**
+		 * Each transaction occupies a thread of the pool until its response is received.
+		 * The thread count limits the number of concurrent requests.
+		 */
+		BLOCKING,
+		/**
+		 * Requests are sent using non-blocking I/O and responses are processed in callbacks.
+		 * Threads are only occupied to generate requests. The in-flight limit determines
+		 * the number of users and thus the number of concurrent requests.
+		 */
+		ASYNC,
+		/**
+		 * Each transaction runs blocking on its own virtual thread (Java 21+).
+		 * The in-flight limit determines the number of users and thus the number of
+		 * concurrent requests. Falls back to {@link #BLOCKING} on older JVMs.
+		 */
+		VIRTUAL;
+	}
 }
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.generator;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import tools.descartes.dlim.httploadgenerator.transaction.HashedWheelDispatcher;
+import tools.descartes.dlim.httploadgenerator.transaction.Transaction;
+
+/**
+ * Controls the user population of a closed workload.
+ * Each user runs a session: it sends a request, waits for the response, thinks, and sends its next request.
+ * Sessions are transactions that re-schedule themselves on the timer wheel after each response,
+ * so that thinking users occupy no thread.
+ * Sessions are started if the target population grows and retire after their current request
+ * if the population shrinks.
+ * Think times are drawn from the random generator of the thread that completes the request,
+ * as the order of responses, and thus of the draws, depends on the timing of the target system.
+ *
+ * @author Joakim von Kistowski
+ *
+ */
+public class ClosedLoopController {
+
+	private final HashedWheelDispatcher dispatcher;
+	private final ThinkTimeDistribution distribution;
+	private final double meanThinkTimeNs;
+
+	/** Number of sessions that are running, including sessions that are thinking. */
+	private final AtomicInteger activeUsers = new AtomicInteger(0);
+	private volatile int targetUsers = 0;
+
+	/**
+	 * Creates a new controller with a population of 0 users.
+	 * @param dispatcher The started dispatcher for scheduling the sessions' next requests.
+	 * @param distribution The distribution of the think times.
+	 * @param meanThinkTimeMs The mean think time in milliseconds.
+	 */
+	public ClosedLoopController(HashedWheelDispatcher dispatcher, ThinkTimeDistribution distribution,
+			double meanThinkTimeMs) {
+		this.dispatcher = dispatcher;
+		this.distribution = distribution;
+		this.meanThinkTimeNs = Math.max(0, meanThinkTimeMs) * TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Sets the target number of concurrent users. Sessions of surplus users retire
+	 * once their current request is done.
+	 * @param users The target number of users.
+	 * @return The number of new sessions that the caller must start. They are counted as active.
+	 */
+	public int setTargetUsers(int users) {
+		int target = Math.max(0, users);
+		targetUsers = target;
+		while (true) {
+			int active = activeUsers.get();
+			if (active >= target) {
+				return 0;
+			}
+			if (activeUsers.compareAndSet(active, target)) {
+				return target - active;
+			}
+		}
+	}
+
+	/**
+	 * Decides whether a session continues with its next request or retires.
+	 * Retiring sessions are no longer counted as active.
+	 * @return True if the session continues, false if it must retire and release its user.
+	 */
+	public boolean continueSession() {
+		while (true) {
+			int active = activeUsers.get();
+			if (active <= targetUsers) {
+				return true;
+			}
+			if (activeUsers.compareAndSet(active, active - 1)) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Schedules the next request of a session after the think time.
+	 * @param session The session's transaction.
+	 * @param scriptThinkTimeMs The think time requested by the script in milliseconds.
+	 * 		Negative to draw the think time from the configured distribution.
+	 */
+	public void scheduleNext(Transaction session, double scriptThinkTimeMs) {
+		dispatcher.schedule(session, System.nanoTime() + nextThinkTimeNs(scriptThinkTimeMs));
+	}
+
+	private long nextThinkTimeNs(double scriptThinkTimeMs) {
+		if (scriptThinkTimeMs >= 0) {
+			return (long) (scriptThinkTimeMs * TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		return (long) distribution.nextThinkTimeNs(meanThinkTimeNs, ThreadLocalRandom.current());
+	}
+
+	/**
+	 * Returns the mean think time.
+	 * @return The mean think time in nanoseconds.
+	 */
+	public double getMeanThinkTimeNs() {
+		return meanThinkTimeNs;
+	}
+
+	/**
+	 * Returns the number of running sessions, including sessions that are about to start.
+	 * @return The number of active users.
+	 */
+	public int getActiveUsers() {
+		return activeUsers.get();
+	}
+}
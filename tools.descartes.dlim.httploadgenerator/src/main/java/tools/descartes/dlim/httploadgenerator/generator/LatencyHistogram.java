@@ -0,0 +1,293 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.generator;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Fixed-memory latency histogram with logarithmic buckets (HDR-style).
+ * Values are recorded in microseconds. Values below {@link #SUB_BUCKET_COUNT} are
+ * recorded exactly, larger values are recorded with a relative error of less than
+ * 1/{@link #SUB_BUCKET_HALF_COUNT} (&lt; 0.8%). Values above {@link #MAX_VALUE_US}
+ * (about 71 minutes) are clamped.
+ * The histogram itself is not thread-safe. Concurrent recording is handled by the
+ * {@link ResultTracker}, which rolls up its striped counters into histograms of this type.
+ * Histograms can be encoded into a compact string for transport and merged without loss of precision.
+ * @author Joakim von Kistowski
+ *
+ */
+public class LatencyHistogram {
+
+	/**
+	 * The percentiles that are reported for each measurement interval.
+	 */
+	public static final double[] REPORTED_PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+
+	private static final int SUB_BUCKET_BITS = 8;
+	/** Number of linear sub-buckets per power of two. */
+	static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+	/** Largest value that can be recorded without clamping. */
+	public static final long MAX_VALUE_US = (1L << 32) - 1;
+
+	/** Number of buckets needed to cover values up to {@link #MAX_VALUE_US}. */
+	public static final int BUCKET_COUNT = bucketIndex(MAX_VALUE_US) + 1;
+
+	/** Version of the encoding produced by {@link #encode()}. */
+	private static final byte ENCODING_VERSION = 1;
+
+	private final long[] counts;
+	private long totalCount = 0;
+
+	/**
+	 * Creates a new empty histogram.
+	 */
+	public LatencyHistogram() {
+		counts = new long[BUCKET_COUNT];
+	}
+
+	/**
+	 * Returns the bucket index for a value.
+	 * @param valueUs The value in microseconds.
+	 * @return The bucket index.
+	 */
+	static int bucketIndex(long valueUs) {
+		long value = Math.min(Math.max(0, valueUs), MAX_VALUE_US);
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		//shift value, so that it falls into the upper half of the sub-buckets
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+		return (int) (shift * SUB_BUCKET_HALF_COUNT + (value >> shift));
+	}
+
+	/**
+	 * Returns the lowest value that is recorded into a bucket.
+	 * @param index The bucket index.
+	 * @return The lowest value in microseconds.
+	 */
+	static long lowestValueInBucket(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+		long subBucket = index - shift * SUB_BUCKET_HALF_COUNT;
+		return subBucket << shift;
+	}
+
+	/**
+	 * Returns the highest value that is recorded into a bucket.
+	 * @param index The bucket index.
+	 * @return The highest value in microseconds.
+	 */
+	static long highestValueInBucket(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+		return lowestValueInBucket(index) + (1L << shift) - 1;
+	}
+
+	/**
+	 * Records a value.
+	 * @param valueUs The value in microseconds.
+	 */
+	public void recordValue(long valueUs) {
+		counts[bucketIndex(valueUs)]++;
+		totalCount++;
+	}
+
+	/**
+	 * Adds a number of values to a bucket.
+	 * @param index The bucket index.
+	 * @param count The number of values to add.
+	 */
+	void addToBucket(int index, long count) {
+		counts[index] += count;
+		totalCount += count;
+	}
+
+	/**
+	 * Adds all values of another histogram to this histogram.
+	 * @param other The other histogram.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			if (other.counts[i] != 0) {
+				addToBucket(i, other.counts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of values in a bucket.
+	 * @param index The bucket index.
+	 * @return The number of values.
+	 */
+	long getCountInBucket(int index) {
+		return counts[index];
+	}
+
+	/**
+	 * Returns the total number of recorded values.
+	 * @return The total count.
+	 */
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Returns the value at a percentile. The value is the highest value that is equivalent
+	 * to the recorded values within the histogram's precision.
+	 * @param percentile The percentile (0 to 100).
+	 * @return The value in microseconds. 0 if the histogram is empty.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		double boundedPercentile = Math.min(Math.max(percentile, 0.0), 100.0);
+		long countAtPercentile = Math.max(1, (long) Math.ceil(boundedPercentile / 100.0 * totalCount));
+		long runningCount = 0;
+		for (int i = 0; i < counts.length; i++) {
+			runningCount += counts[i];
+			if (runningCount >= countAtPercentile) {
+				return highestValueInBucket(i);
+			}
+		}
+		return getMaxValue();
+	}
+
+	/**
+	 * Returns the highest recorded value within the histogram's precision.
+	 * @return The maximum value in microseconds. 0 if the histogram is empty.
+	 */
+	public long getMaxValue() {
+		for (int i = counts.length - 1; i >= 0; i--) {
+			if (counts[i] > 0) {
+				return highestValueInBucket(i);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the values at the {@link #REPORTED_PERCENTILES}, followed by the maximum value.
+	 * @return The values in seconds.
+	 */
+	public double[] getReportedPercentilesInS() {
+		double[] values = new double[REPORTED_PERCENTILES.length + 1];
+		for (int i = 0; i < REPORTED_PERCENTILES.length; i++) {
+			values[i] = getValueAtPercentile(REPORTED_PERCENTILES[i]) / 1000000.0;
+		}
+		values[REPORTED_PERCENTILES.length] = getMaxValue() / 1000000.0;
+		return values;
+	}
+
+	/**
+	 * Encodes the histogram into a compact Base64 string that contains no commas or whitespace.
+	 * The string contains the Base64 encoding of {@link #toBytes()}.
+	 * @return The encoded histogram.
+	 */
+	public String encode() {
+		return Base64.getEncoder().encodeToString(toBytes());
+	}
+
+	/**
+	 * Encodes the histogram into compact bytes.
+	 * After a version byte, bucket counts are written as ZigZag LEB128 varints. Runs of empty buckets
+	 * are written as a single negative run length and trailing empty buckets are omitted.
+	 * @return The encoded histogram.
+	 */
+	public byte[] toBytes() {
+		byte[] buffer = new byte[1 + 10 * BUCKET_COUNT];
+		int position = 0;
+		buffer[position++] = ENCODING_VERSION;
+		int zeroRun = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			if (counts[i] == 0) {
+				zeroRun++;
+			} else {
+				if (zeroRun > 0) {
+					position = writeZigZagVarint(buffer, position, -zeroRun);
+					zeroRun = 0;
+				}
+				position = writeZigZagVarint(buffer, position, counts[i]);
+			}
+		}
+		return Arrays.copyOf(buffer, position);
+	}
+
+	/**
+	 * Decodes a histogram that was encoded using {@link #encode()}.
+	 * @param encoded The encoded histogram.
+	 * @return The decoded histogram.
+	 * @throws IllegalArgumentException If the string is not a valid encoded histogram.
+	 */
+	public static LatencyHistogram decode(String encoded) {
+		return fromBytes(Base64.getDecoder().decode(encoded.trim()));
+	}
+
+	/**
+	 * Decodes a histogram that was encoded using {@link #toBytes()}.
+	 * @param buffer The encoded histogram.
+	 * @return The decoded histogram.
+	 * @throws IllegalArgumentException If the bytes are not a valid encoded histogram.
+	 */
+	public static LatencyHistogram fromBytes(byte[] buffer) {
+		if (buffer.length == 0 || buffer[0] != ENCODING_VERSION) {
+			throw new IllegalArgumentException("Unsupported latency histogram encoding.");
+		}
+		LatencyHistogram histogram = new LatencyHistogram();
+		int index = 0;
+		int position = 1;
+		while (position < buffer.length) {
+			long value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				if (position >= buffer.length || shift > 63) {
+					throw new IllegalArgumentException("Truncated latency histogram encoding.");
+				}
+				b = buffer[position++];
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			long decoded = (value >>> 1) ^ -(value & 1);
+			if (decoded < 0) {
+				index -= decoded;
+			} else {
+				if (index >= BUCKET_COUNT) {
+					throw new IllegalArgumentException("Latency histogram encoding exceeds bucket range.");
+				}
+				histogram.addToBucket(index++, decoded);
+			}
+		}
+		return histogram;
+	}
+
+	private static int writeZigZagVarint(byte[] buffer, int position, long value) {
+		long zigZag = (value << 1) ^ (value >> 63);
+		while ((zigZag & ~0x7FL) != 0) {
+			buffer[position++] = (byte) ((zigZag & 0x7F) | 0x80);
+			zigZag >>>= 7;
+		}
+		buffer[position++] = (byte) zigZag;
+		return position;
+	}
+}
@@ -16,11 +16,18 @@
 package tools.descartes.dlim.httploadgenerator.generator;
 
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Offers tracking of results, such as response times and
- * invalid transactions using atomic counter operations.
+ * invalid transactions using lock-free striped counters.
+ * Worker threads only ever add to {@link LongAdder} cells, which are never reset.
+ * Interval and total results are derived by the (single) thread that rolls up the results
+ * as the difference to the counter values of the previous rollup. Logging a transaction
+ * therefore never blocks and no transaction is lost or counted twice at interval boundaries.
+ * Response times are additionally recorded into striped {@link LatencyHistogram} buckets
+ * following the same scheme, so that each interval result includes its latency distribution.
  * @author Joakim von Kistowski
  *
  */
@@ -31,145 +38,249 @@ public final class ResultTracker {
 	 */
 	public static final ResultTracker TRACKER = new ResultTracker();
 	
-	private ReentrantLock transactionLock = new ReentrantLock();
+	private final IntervalCounter invalidTransactions = new IntervalCounter();
+	private final IntervalCounter droppedTransactions = new IntervalCounter();
+	private final IntervalCounter successfulTransactions = new IntervalCounter();
 	
-	private AtomicLong invalidTransactionsPerMeasurementInterval = new AtomicLong(0);
-	private AtomicLong invalidTransactionsTotal = new AtomicLong(0);
-	private AtomicLong droppedTransactionsPerMeasurementInterval = new AtomicLong(0);
-	private AtomicLong droppedTransactionsTotal = new AtomicLong(0);
-	private AtomicLong successfulTransactionsPerMeasurementInterval = new AtomicLong(0);
-	private AtomicLong successfulTransactionsTotal = new AtomicLong(0);
+	private final IntervalCounter responseTimeSumNs = new IntervalCounter();
+	private final IntervalCounter correctedResponseTimeSumNs = new IntervalCounter();
+	private final StripedHistogram responseTimeHistogram = new StripedHistogram();
+	private final StripedHistogram correctedResponseTimeHistogram = new StripedHistogram();
 	
-	private AtomicLong responseTimeSum = new AtomicLong(0);
-	private AtomicLong responseTimeLogCount = new AtomicLong(0);
+	private final IntervalCounter receivedBytes = new IntervalCounter();
+	
+	private final IntervalCounter dispatchJitterSumNs = new IntervalCounter();
+	private final IntervalCounter dispatchJitterLogCount = new IntervalCounter();
+	/** Only written by the dispatcher thread, so a single atomic suffices. */
+	private final AtomicLong dispatchJitterMaxNs = new AtomicLong(0);
 	
 	private ResultTracker() {
 		
 	}
 	
 	/**
-	 * Log a transaction.
-	 * @param responseTimeMs The response time, ignored in non-successful transactions.
+	 * Log a transaction. Lock-free and safe to call from any thread.
+	 * @param responseTimeNs The response time, measured from the actual send time of the request.
+	 * 			Ignored in non-successful transactions.
+	 * @param correctedResponseTimeNs The response time, measured from the intended send time of the request.
+	 * 			This time is corrected for coordinated omission, as it includes the queueing delay in
+	 * 			the load generator. Ignored in non-successful transactions.
 	 * @param finishingState The finishing state.
 	 */
-	public void logTransaction(long responseTimeMs, TransactionState finishingState) {
-		transactionLock.lock();
-		try {
-			switch (finishingState) {
-				case FAILED:
-					invalidTransactionsPerMeasurementInterval.incrementAndGet();
-					invalidTransactionsTotal.incrementAndGet();
-					break;
-				case DROPPED:
-					droppedTransactionsPerMeasurementInterval.incrementAndGet();
-					droppedTransactionsTotal.incrementAndGet();
-					break;
-				default:
-					responseTimeSum.addAndGet(responseTimeMs);
-					responseTimeLogCount.incrementAndGet();
-					successfulTransactionsPerMeasurementInterval.incrementAndGet();
-					successfulTransactionsTotal.incrementAndGet();
-					break;
-			}
-		} finally {
-			transactionLock.unlock();
+	public void logTransaction(long responseTimeNs, long correctedResponseTimeNs, TransactionState finishingState) {
+		switch (finishingState) {
+			case FAILED:
+				invalidTransactions.increment();
+				break;
+			case DROPPED:
+				droppedTransactions.increment();
+				break;
+			default:
+				responseTimeSumNs.add(Math.max(0, responseTimeNs));
+				correctedResponseTimeSumNs.add(Math.max(0, correctedResponseTimeNs));
+				responseTimeHistogram.record(responseTimeNs / 1000L);
+				correctedResponseTimeHistogram.record(correctedResponseTimeNs / 1000L);
+				successfulTransactions.increment();
+				break;
 		}
 	}
 	
 	/**
-	 * Resets the validity tracker.
+	 * Log the number of response body bytes that were received. Lock-free and safe to call from any thread.
+	 * @param bytes The number of received bytes.
 	 */
-	public void reset() {
-		transactionLock.lock();
-		try {
-			invalidTransactionsPerMeasurementInterval.set(0);
-			invalidTransactionsTotal.set(0);
-			droppedTransactionsPerMeasurementInterval.set(0);
-			droppedTransactionsTotal.set(0);
-			successfulTransactionsPerMeasurementInterval.set(0);
-			successfulTransactionsTotal.set(0);
-			responseTimeSum.set(0);
-			responseTimeLogCount.set(0);
-		} finally {
-			transactionLock.unlock();
+	public void logReceivedBytes(long bytes) {
+		if (bytes > 0) {
+			receivedBytes.add(bytes);
 		}
 	}
 	
+	/**
+	 * Log the dispatch jitter of a transaction, i.e., the delay between
+	 * its due time and the time it was actually placed in the threadpool.
+	 * @param jitterNs The dispatch jitter in nanoseconds.
+	 */
+	public void logDispatchJitter(long jitterNs) {
+		long jitter = Math.max(0, jitterNs);
+		dispatchJitterSumNs.add(jitter);
+		dispatchJitterLogCount.increment();
+		dispatchJitterMaxNs.accumulateAndGet(jitter, Math::max);
+	}
+	
+	/**
+	 * Resets the validity tracker.
+	 */
+	public synchronized void reset() {
+		invalidTransactions.reset();
+		droppedTransactions.reset();
+		successfulTransactions.reset();
+		responseTimeSumNs.reset();
+		correctedResponseTimeSumNs.reset();
+		responseTimeHistogram.reset();
+		correctedResponseTimeHistogram.reset();
+		receivedBytes.reset();
+		dispatchJitterSumNs.reset();
+		dispatchJitterLogCount.reset();
+		dispatchJitterMaxNs.set(0);
+	}
+	
 	
 	/**
 	 * Returns the total invalid transaction counter since initialization or the last call of {@link #reset()}.
 	 * @return The total invalid transaction counter.
 	 */
-	public long getTotalInvalidTransactionCount() {
-		long invTrans;
-		transactionLock.lock();
-		try {
-			invTrans = invalidTransactionsTotal.get();
-		} finally {
-			transactionLock.unlock();
-		}
-		return invTrans;
+	public synchronized long getTotalInvalidTransactionCount() {
+		return invalidTransactions.getTotal();
 	}
 	
 	/**
 	 * Returns the total successful transaction counter since initialization or the last call of {@link #reset()}.
 	 * @return The total successful transaction counter.
 	 */
-	public long getTotalSuccessfulTransactionCount() {
-		long sucTrans;
-		transactionLock.lock();
-		try {
-			sucTrans = successfulTransactionsTotal.get();
-		} finally {
-			transactionLock.unlock();
-		}
-		return sucTrans;
+	public synchronized long getTotalSuccessfulTransactionCount() {
+		return successfulTransactions.getTotal();
 	}
 	
 	/**
 	 * Returns the total dropped transaction counter since initialization or the last call of {@link #reset()}.
 	 * @return The total dropped transaction counter.
 	 */
-	public long getTotalDroppedTransactionCount() {
-		long dropTrans;
-		transactionLock.lock();
-		try {
-			dropTrans = droppedTransactionsTotal.get();
-		} finally {
-			transactionLock.unlock();
-		}
-		return dropTrans;
+	public synchronized long getTotalDroppedTransactionCount() {
+		return droppedTransactions.getTotal();
 	}
 	
 	/**
-	 * Returns the average response time for all recently logged results in seconds.
-	 * Clears the result storage for new results.
-	 * @return The average response time in seconds.
+	 * Returns the result of the current measurement interval and starts a new interval.
+	 * Only the rolling-up threads synchronize on the tracker, logging threads are never stalled.
+	 * Counts are exact. Response time sums and counts are not read atomically together,
+	 * so a transaction that is being logged during the rollup may contribute
+	 * its response time to the following interval.
+	 * @return The interval result.
 	 */
-	private double getAverageResponseTimeInS() {
-		long avgResponseTimeMs;
-			if (responseTimeLogCount.get() == 0) {
-				avgResponseTimeMs = 0;
-			} else {
-				avgResponseTimeMs = responseTimeSum.getAndSet(0) / responseTimeLogCount.getAndSet(0);
-			}
-		return ((double) avgResponseTimeMs) / 1000.0;
-	}
-	
-	public IntervalResult retreiveIntervalResultAndReset() {
+	public synchronized IntervalResult retreiveIntervalResultAndReset() {
 		IntervalResult result = new IntervalResult();
-		transactionLock.lock();
-		try {
-			result.droppedTransactions = droppedTransactionsPerMeasurementInterval.getAndSet(0);
-			result.failedTransactions = invalidTransactionsPerMeasurementInterval.getAndSet(0);
-			result.successfulTransactions = successfulTransactionsPerMeasurementInterval.getAndSet(0);
-			result.averageResponseTimeInS = getAverageResponseTimeInS();
-		} finally {
-			transactionLock.unlock();
+		result.droppedTransactions = droppedTransactions.retreiveIntervalValue();
+		result.failedTransactions = invalidTransactions.retreiveIntervalValue();
+		result.successfulTransactions = successfulTransactions.retreiveIntervalValue();
+		long responseTimeSum = responseTimeSumNs.retreiveIntervalValue();
+		long correctedResponseTimeSum = correctedResponseTimeSumNs.retreiveIntervalValue();
+		result.responseTimeSumNs = responseTimeSum;
+		result.correctedResponseTimeSumNs = correctedResponseTimeSum;
+		result.responseTimeHistogram = responseTimeHistogram.retreiveIntervalHistogram();
+		result.correctedResponseTimeHistogram = correctedResponseTimeHistogram.retreiveIntervalHistogram();
+		result.receivedBytes = receivedBytes.retreiveIntervalValue();
+		if (result.successfulTransactions > 0) {
+			result.averageResponseTimeInS = ((double) responseTimeSum) / result.successfulTransactions / 1000000000.0;
+			result.averageCorrectedResponseTimeInS =
+					((double) correctedResponseTimeSum) / result.successfulTransactions / 1000000000.0;
 		}
+		long jitterCount = dispatchJitterLogCount.retreiveIntervalValue();
+		long jitterSum = dispatchJitterSumNs.retreiveIntervalValue();
+		result.dispatchJitterCount = jitterCount;
+		result.dispatchJitterSumNs = jitterSum;
+		if (jitterCount > 0) {
+			result.averageDispatchJitterInMs = ((double) jitterSum) / jitterCount / 1000000.0;
+		}
+		result.maxDispatchJitterNs = dispatchJitterMaxNs.getAndSet(0);
+		result.maxDispatchJitterInMs = result.maxDispatchJitterNs / 1000000.0;
 		return result;
 	}
 	
+	/**
+	 * Striped counter that is never reset. Interval and total values are computed
+	 * as differences to previously taken snapshots. As all cells are monotonic,
+	 * each increment is contained in exactly one interval value.
+	 * Snapshots must only be taken while holding the tracker's monitor.
+	 */
+	private static final class IntervalCounter {
+		
+		private final LongAdder adder = new LongAdder();
+		private long intervalSnapshot = 0;
+		private long totalSnapshot = 0;
+		
+		private void increment() {
+			adder.increment();
+		}
+		
+		private void add(long value) {
+			adder.add(value);
+		}
+		
+		private long retreiveIntervalValue() {
+			long sum = adder.sum();
+			long value = sum - intervalSnapshot;
+			intervalSnapshot = sum;
+			return value;
+		}
+		
+		private long getTotal() {
+			return adder.sum() - totalSnapshot;
+		}
+		
+		private void reset() {
+			long sum = adder.sum();
+			intervalSnapshot = sum;
+			totalSnapshot = sum;
+		}
+	}
+	
+	/**
+	 * Striped latency histogram that is never reset. Each thread records into the buckets
+	 * of one stripe, selected by its thread id, using atomic increments only.
+	 * Like the {@link IntervalCounter}, interval histograms are computed as the difference
+	 * of the bucket sums to a snapshot that is taken with each rollup.
+	 * Snapshots must only be taken while holding the tracker's monitor.
+	 */
+	private static final class StripedHistogram {
+		
+		private static final int MAX_STRIPES = 16;
+		
+		private final AtomicLongArray[] stripes;
+		private final int stripeMask;
+		private final long[] intervalSnapshot = new long[LatencyHistogram.BUCKET_COUNT];
+		
+		private StripedHistogram() {
+			int processors = Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors());
+			int stripeCount = Integer.highestOneBit(Math.max(1, processors - 1)) << 1;
+			stripes = new AtomicLongArray[stripeCount];
+			for (int i = 0; i < stripeCount; i++) {
+				stripes[i] = new AtomicLongArray(LatencyHistogram.BUCKET_COUNT);
+			}
+			stripeMask = stripeCount - 1;
+		}
+		
+		private void record(long valueUs) {
+			int stripe = (int) Thread.currentThread().getId() & stripeMask;
+			stripes[stripe].incrementAndGet(LatencyHistogram.bucketIndex(valueUs));
+		}
+		
+		private long bucketSum(int index) {
+			long sum = 0;
+			for (AtomicLongArray stripe : stripes) {
+				sum += stripe.get(index);
+			}
+			return sum;
+		}
+		
+		private LatencyHistogram retreiveIntervalHistogram() {
+			LatencyHistogram histogram = new LatencyHistogram();
+			for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+				long sum = bucketSum(i);
+				if (sum != intervalSnapshot[i]) {
+					histogram.addToBucket(i, sum - intervalSnapshot[i]);
+					intervalSnapshot[i] = sum;
+				}
+			}
+			return histogram;
+		}
+		
+		private void reset() {
+			for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+				intervalSnapshot[i] = bucketSum(i);
+			}
+		}
+	}
+	
 	/**
 	 * States that a transaction may have upon finishing.
 	 * @author Joakim von Kistowski
@@ -200,6 +311,17 @@ public final class ResultTracker {
 		private long failedTransactions = 0;
 		private long successfulTransactions = 0;
 		private double averageResponseTimeInS = 0.0;
+		private double averageCorrectedResponseTimeInS = 0.0;
+		private double averageDispatchJitterInMs = 0.0;
+		private double maxDispatchJitterInMs = 0.0;
+		private long responseTimeSumNs = 0;
+		private long correctedResponseTimeSumNs = 0;
+		private long dispatchJitterCount = 0;
+		private long dispatchJitterSumNs = 0;
+		private long maxDispatchJitterNs = 0;
+		private long receivedBytes = 0;
+		private LatencyHistogram responseTimeHistogram;
+		private LatencyHistogram correctedResponseTimeHistogram;
 		
 		private IntervalResult() { }
 		
@@ -235,5 +357,96 @@ public final class ResultTracker {
 			return averageResponseTimeInS;
 		}
 
+		/**
+		 * Returns the average response time in Seconds, corrected for coordinated omission.
+		 * It is measured from the intended send time of each transaction and thus includes
+		 * the time transactions spent waiting in the load generator.
+		 * @return The average corrected response time.
+		 */
+		public double getAverageCorrectedResponseTimeInS() {
+			return averageCorrectedResponseTimeInS;
+		}
+
+		/**
+		 * Returns the average dispatch jitter in milliseconds.
+		 * @return The average dispatch jitter.
+		 */
+		public double getAverageDispatchJitterInMs() {
+			return averageDispatchJitterInMs;
+		}
+
+		/**
+		 * Returns the maximum dispatch jitter in milliseconds.
+		 * @return The maximum dispatch jitter.
+		 */
+		public double getMaxDispatchJitterInMs() {
+			return maxDispatchJitterInMs;
+		}
+
+		/**
+		 * Returns the sum of the response times of all successful transactions in nanoseconds.
+		 * @return The response time sum.
+		 */
+		public long getResponseTimeSumNs() {
+			return responseTimeSumNs;
+		}
+
+		/**
+		 * Returns the sum of the corrected response times of all successful transactions in nanoseconds.
+		 * @return The corrected response time sum.
+		 */
+		public long getCorrectedResponseTimeSumNs() {
+			return correctedResponseTimeSumNs;
+		}
+
+		/**
+		 * Returns the number of transactions for which the dispatch jitter was logged.
+		 * @return The dispatch jitter count.
+		 */
+		public long getDispatchJitterCount() {
+			return dispatchJitterCount;
+		}
+
+		/**
+		 * Returns the sum of all logged dispatch jitters in nanoseconds.
+		 * @return The dispatch jitter sum.
+		 */
+		public long getDispatchJitterSumNs() {
+			return dispatchJitterSumNs;
+		}
+
+		/**
+		 * Returns the maximum dispatch jitter in nanoseconds.
+		 * @return The maximum dispatch jitter.
+		 */
+		public long getMaxDispatchJitterNs() {
+			return maxDispatchJitterNs;
+		}
+
+		/**
+		 * Returns the number of response body bytes received in this interval.
+		 * @return The number of received bytes.
+		 */
+		public long getReceivedBytes() {
+			return receivedBytes;
+		}
+
+		/**
+		 * Returns the histogram of the response times of successful transactions in this interval.
+		 * @return The response time histogram.
+		 */
+		public LatencyHistogram getResponseTimeHistogram() {
+			return responseTimeHistogram;
+		}
+
+		/**
+		 * Returns the histogram of the response times of successful transactions in this interval,
+		 * corrected for coordinated omission.
+		 * @return The corrected response time histogram.
+		 */
+		public LatencyHistogram getCorrectedResponseTimeHistogram() {
+			return correctedResponseTimeHistogram;
+		}
+
 	}
 }
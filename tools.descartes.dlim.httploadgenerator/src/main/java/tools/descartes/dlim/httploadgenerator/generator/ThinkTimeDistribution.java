@@ -0,0 +1,58 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.generator;
+
+import java.util.Random;
+
+/**
+ * Distributions of the think times of closed-loop users.
+ * The think time is the time a user waits after receiving a response before sending its next request.
+ *
+ * @author Joakim von Kistowski
+ *
+ */
+public enum ThinkTimeDistribution {
+
+	/**
+	 * Each think time equals the mean think time.
+	 */
+	CONSTANT,
+	/**
+	 * Exponentially distributed think times.
+	 */
+	EXPONENTIAL,
+	/**
+	 * Think times are uniformly distributed between 0 and twice the mean think time.
+	 */
+	UNIFORM;
+
+	/**
+	 * Draws the next think time.
+	 * @param meanThinkTimeNs The mean think time in nanoseconds.
+	 * @param r The random generator.
+	 * @return The think time in nanoseconds.
+	 */
+	public double nextThinkTimeNs(double meanThinkTimeNs, Random r) {
+		switch (this) {
+			case EXPONENTIAL:
+				return -Math.log(1.0 - r.nextDouble()) * meanThinkTimeNs;
+			case UNIFORM:
+				return 2.0 * r.nextDouble() * meanThinkTimeNs;
+			default:
+				return meanThinkTimeNs;
+		}
+	}
+}
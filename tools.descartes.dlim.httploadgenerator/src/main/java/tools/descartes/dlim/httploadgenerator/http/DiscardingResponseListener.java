@@ -0,0 +1,68 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+
+/**
+ * Response listener that streams the response body without storing it.
+ * Content is consumed as it arrives and only its size is counted.
+ * The result can be awaited for blocking requests or handled by overriding
+ * {@link #onComplete(Result)} for asynchronous requests.
+ * @author Joakim von Kistowski
+ *
+ */
+public class DiscardingResponseListener extends Response.Listener.Adapter {
+
+	private final CountDownLatch completion = new CountDownLatch(1);
+	private volatile long receivedBytes = 0;
+	private volatile Result result;
+
+	@Override
+	public void onContent(Response response, ByteBuffer content) {
+		//content is only ever delivered by one thread at a time
+		receivedBytes += content.remaining();
+		content.position(content.limit());
+	}
+
+	@Override
+	public void onComplete(Result result) {
+		this.result = result;
+		completion.countDown();
+	}
+
+	/**
+	 * Waits until the response is complete.
+	 * @return The result of the exchange.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public Result await() throws InterruptedException {
+		completion.await();
+		return result;
+	}
+
+	/**
+	 * Returns the number of body bytes received so far.
+	 * @return The number of received bytes.
+	 */
+	public long getReceivedBytes() {
+		return receivedBytes;
+	}
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http;
+
+import java.util.Locale;
+
+/**
+ * Settings for the HTTP clients used by the users (HTTP input generators).
+ * By default, each user has its own HTTP client. If a number of shared clients is configured,
+ * the users are distributed across the shared clients and only keep their own cookies.
+ * Settings of 0 use the defaults of the HTTP client.
+ * The {@link ConnectionMode} determines whether users take connections from the clients' connection pools
+ * or own a connection of their own.
+ * @author Joakim von Kistowski
+ *
+ */
+public class HTTPClientSettings {
+
+	/**
+	 * Default settings: one HTTP client per user.
+	 */
+	public static final HTTPClientSettings DEFAULT = new HTTPClientSettings(0, 0, 0, 0, ConnectionMode.POOLED);
+
+	private final int clientCount;
+	private final int maxConnectionsPerDestination;
+	private final int selectorCount;
+	private final int executorThreads;
+	private final ConnectionMode connectionMode;
+
+	/**
+	 * Creates new HTTP client settings with pooled connections.
+	 * @param clientCount The number of shared HTTP clients. 0 for one client per user.
+	 * @param maxConnectionsPerDestination The maximum number of connections per destination and shared client.
+	 * 		0 for the number of users sharing the client.
+	 * @param selectorCount The number of selectors per shared client. 0 for the default.
+	 * @param executorThreads The maximum number of threads of each shared client's executor. 0 for the default.
+	 */
+	public HTTPClientSettings(int clientCount, int maxConnectionsPerDestination, int selectorCount,
+			int executorThreads) {
+		this(clientCount, maxConnectionsPerDestination, selectorCount, executorThreads, ConnectionMode.POOLED);
+	}
+
+	/**
+	 * Creates new HTTP client settings.
+	 * @param clientCount The number of shared HTTP clients. 0 for one client per user.
+	 * @param maxConnectionsPerDestination The maximum number of connections per destination and shared client.
+	 * 		0 for the number of users sharing the client.
+	 * @param selectorCount The number of selectors per shared client. 0 for the default.
+	 * @param executorThreads The maximum number of threads of each shared client's executor. 0 for the default.
+	 * @param connectionMode The mode for assigning connections to users.
+	 */
+	public HTTPClientSettings(int clientCount, int maxConnectionsPerDestination, int selectorCount,
+			int executorThreads, ConnectionMode connectionMode) {
+		this.clientCount = Math.max(0, clientCount);
+		this.maxConnectionsPerDestination = Math.max(0, maxConnectionsPerDestination);
+		this.selectorCount = Math.max(0, selectorCount);
+		this.executorThreads = Math.max(0, executorThreads);
+		this.connectionMode = connectionMode;
+	}
+
+	/**
+	 * Parses settings that were serialized using {@link #toString()}.
+	 * @param settings The serialized settings.
+	 * @return The settings.
+	 * @throws NumberFormatException If a setting is not a number.
+	 * @throws IndexOutOfBoundsException If settings are missing.
+	 * @throws IllegalArgumentException If the connection mode is unknown.
+	 */
+	public static HTTPClientSettings parse(String settings) {
+		String[] tokens = settings.split(",");
+		ConnectionMode connectionMode = ConnectionMode.POOLED;
+		//settings of older directors do not contain the connection mode
+		if (tokens.length > 4) {
+			connectionMode = ConnectionMode.valueOf(tokens[4].trim().toUpperCase(Locale.ROOT));
+		}
+		return new HTTPClientSettings(Integer.parseInt(tokens[0].trim()), Integer.parseInt(tokens[1].trim()),
+				Integer.parseInt(tokens[2].trim()), Integer.parseInt(tokens[3].trim()), connectionMode);
+	}
+
+	/**
+	 * Returns true if users share HTTP clients.
+	 * @return True if shared clients are used, false if each user has its own client.
+	 */
+	public boolean isShared() {
+		return clientCount > 0;
+	}
+
+	/**
+	 * Returns the number of shared HTTP clients.
+	 * @return The number of shared clients. 0 for one client per user.
+	 */
+	public int getClientCount() {
+		return clientCount;
+	}
+
+	/**
+	 * Returns the maximum number of connections per destination and shared client.
+	 * @return The maximum number of connections. 0 for the number of users sharing the client.
+	 */
+	public int getMaxConnectionsPerDestination() {
+		return maxConnectionsPerDestination;
+	}
+
+	/**
+	 * Returns the number of selectors per shared client.
+	 * @return The number of selectors. 0 for the default.
+	 */
+	public int getSelectorCount() {
+		return selectorCount;
+	}
+
+	/**
+	 * Returns the maximum number of threads of each shared client's executor.
+	 * @return The number of executor threads. 0 for the default.
+	 */
+	public int getExecutorThreads() {
+		return executorThreads;
+	}
+
+	/**
+	 * Returns the mode for assigning connections to users.
+	 * @return The connection mode.
+	 */
+	public ConnectionMode getConnectionMode() {
+		return connectionMode;
+	}
+
+	/**
+	 * Serializes the settings as a comma separated list.
+	 * @return The serialized settings.
+	 */
+	@Override
+	public String toString() {
+		return clientCount + "," + maxConnectionsPerDestination + "," + selectorCount + "," + executorThreads
+				+ "," + connectionMode.name();
+	}
+
+	/**
+	 * Modes for assigning connections to users.
+	 * @author Joakim von Kistowski
+	 *
+	 */
+	public static enum ConnectionMode {
+		/**
+		 * Requests take any idle connection from the HTTP client's connection pool.
+		 * If users share clients, they also share connections.
+		 */
+		POOLED,
+		/**
+		 * Each user opens its own keep-alive connection and reuses it across call cycles.
+		 * The connection is only re-opened if the server closes it. Emulates API clients.
+		 */
+		REUSE,
+		/**
+		 * Each user opens its own keep-alive connection and closes it when starting a new call cycle,
+		 * so that each cycle (session) opens a new connection. Emulates browsers.
+		 */
+		RECONNECT;
+	}
+}
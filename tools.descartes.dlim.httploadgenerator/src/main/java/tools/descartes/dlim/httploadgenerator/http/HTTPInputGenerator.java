@@ -16,23 +16,50 @@
 package tools.descartes.dlim.httploadgenerator.http;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpResponse;
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.FutureResponseListener;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.util.Promise;
 import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaClosure;
 import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Prototype;
 import org.luaj.vm2.lib.jse.JsePlatform;
 
+import tools.descartes.dlim.httploadgenerator.http.HTTPClientSettings.ConnectionMode;
 import tools.descartes.dlim.httploadgenerator.http.lua.HTMLFunctions;
 import tools.descartes.dlim.httploadgenerator.http.lua.HTMLLuaFunctions.ExtractAllMatches;
 import tools.descartes.dlim.httploadgenerator.http.lua.HTMLLuaFunctions.GetMatches;
+import tools.descartes.dlim.httploadgenerator.http.lua.HTMLLuaFunctions.Select;
+import tools.descartes.dlim.httploadgenerator.http.lua.JSONFunctions;
+import tools.descartes.dlim.httploadgenerator.http.lua.JSONLuaFunctions;
+import tools.descartes.dlim.httploadgenerator.http.lua.LuaHelpers;
 
 /**
- * Stateful Generator for the next HTTP-GET or POST URL.
- * URLs are generated from the script passed in the constructor.
+ * Stateful Generator for the next HTTP request.
+ * Requests are generated from the script passed in the constructor.
  * @author Joakim von Kistowski
  */
 public class HTTPInputGenerator {
@@ -47,10 +74,22 @@ public class HTTPInputGenerator {
 
 	private final HttpClient httpClient;
 	
+	/** Cookies of this user. Only used if the HTTP client is shared with other users. */
+	private final CookieManager cookieManager;
+	
+	/** The mode for assigning connections to this user. */
+	private final ConnectionMode connectionMode;
+	
+	/**
+	 * The connections owned by this user, by origin. Only used if the user owns its connections.
+	 * The user sends at most one request at a time, so its connections are never accessed concurrently.
+	 */
+	private final Map<String, Connection> connections = new HashMap<>();
+	
 	private int id;
 	
 	private int currentCallNum = 0;
-	private String lastInput = "";
+	private HTTPRequestDescriptor lastInput = HTTPRequestDescriptor.parse("");
 	private int timeout = 0;
 
 	private HTMLFunctions htmlFunctions = new HTMLFunctions("");
@@ -67,64 +106,223 @@ public class HTTPInputGenerator {
 	 * @param timeout The http read timeout.
 	 */
 	public HTTPInputGenerator(int id, File scriptFile, int randomSeed, int timeout) {
+		this(id, scriptFile == null ? null : LuaHelpers.compileScript(scriptFile), randomSeed, timeout, null);
+	}
+	
+	/**
+	 * Constructs a new HTTPInputGenerator using a compiled Lua generation script and a shared HTTP client.
+	 * The compiled script may be shared with other generators, each generator runs it with its own globals.
+	 * Cookies are kept separately for each HTTPInputGenerator.
+	 * @param id The input generator's id.
+	 * @param script The url generator script, compiled using {@link LuaHelpers#compileScript(File)}.
+	 * @param randomSeed Seed for Lua random function.
+	 * @param timeout The http read timeout.
+	 * @param sharedClient The started HTTP client to share with other generators.
+	 * 		Its cookie store should be disabled. Null to create a client for this generator only.
+	 */
+	public HTTPInputGenerator(int id, Prototype script, int randomSeed, int timeout, HttpClient sharedClient) {
+		this(id, script, randomSeed, timeout, sharedClient, ConnectionMode.POOLED);
+	}
+	
+	/**
+	 * Constructs a new HTTPInputGenerator using a compiled Lua generation script, a shared HTTP client,
+	 * and a mode for assigning connections to the generator.
+	 * @param id The input generator's id.
+	 * @param script The url generator script, compiled using {@link LuaHelpers#compileScript(File)}.
+	 * @param randomSeed Seed for Lua random function.
+	 * @param timeout The http read timeout.
+	 * @param sharedClient The started HTTP client to share with other generators.
+	 * 		Its cookie store should be disabled. Null to create a client for this generator only.
+	 * @param connectionMode The mode for assigning connections to this generator.
+	 */
+	public HTTPInputGenerator(int id, Prototype script, int randomSeed, int timeout, HttpClient sharedClient,
+			ConnectionMode connectionMode) {
 		this.id = id;
-		httpClient = new HttpClient();
-		
+		this.connectionMode = connectionMode;
 		if (timeout > 0) {
-			httpClient.setConnectTimeout(timeout);
 			this.timeout = timeout;
 		}
-		try {
-			httpClient.start();
-		} catch (Exception e) {
-			LOG.severe("Could not start HTTP client; Exception: " + e.getMessage());
+		if (sharedClient != null) {
+			httpClient = sharedClient;
+			cookieManager = new CookieManager();
+		} else {
+			httpClient = new HttpClient();
+			cookieManager = null;
+			if (timeout > 0) {
+				httpClient.setConnectTimeout(timeout);
+			}
+			try {
+				httpClient.start();
+			} catch (Exception e) {
+				LOG.severe("Could not start HTTP client; Exception: " + e.getMessage());
+			}
 		}
 		
-		if (scriptFile != null) {
+		if (script != null) {
 			luaGlobals = JsePlatform.standardGlobals();
 			LuaValue library = new LuaTable();
 			library.set("getMatches", new GetMatches(htmlFunctions));
 			library.set("extractMatches", new ExtractAllMatches(htmlFunctions));
+			library.set("select", new Select(htmlFunctions));
 			luaGlobals.set("html", library);
+			JSONFunctions jsonFunctions = new JSONFunctions(htmlFunctions);
+			LuaValue jsonLibrary = new LuaTable();
+			jsonLibrary.set("get", new JSONLuaFunctions.Get(jsonFunctions));
+			jsonLibrary.set("getAll", new JSONLuaFunctions.GetAll(jsonFunctions));
+			luaGlobals.set("json", jsonLibrary);
 			luaGlobals.get("math").get("randomseed").call(LuaValue.valueOf(5));
-			luaGlobals.get("dofile").call(LuaValue.valueOf(scriptFile.getAbsolutePath()));
+			new LuaClosure(script, luaGlobals).call();
 		}
 	}
 
 	/**
 	 * Builds a request using the HTTP client and current cookies.
+	 * @param url The URL.
+	 * @param method The HTTP method.
 	 * @return The http client's initialized request.
 	 */
 	public Request initializeHTTPRequest(String url, String method) {
-	Request request;
-		if (method.equalsIgnoreCase("POST")) {
-			 request = httpClient.POST(url);
-		} else {
-			request = httpClient.newRequest(url);
-		}
+		Request request = httpClient.newRequest(url).method(method.toUpperCase(Locale.ROOT));
 		request = request.header("User-Agent", USER_AGENT);
 		if (timeout > 0) {
 			request = request.timeout(timeout, TimeUnit.MILLISECONDS)
 					.idleTimeout(timeout, TimeUnit.MILLISECONDS);
 		}
+		if (cookieManager != null) {
+			addUserCookies(request);
+		}
+		return request;
+	}
+
+	/**
+	 * Builds a request with the headers and body of a request descriptor
+	 * using the HTTP client and current cookies.
+	 * @param descriptor The request descriptor.
+	 * @return The http client's initialized request.
+	 */
+	public Request initializeHTTPRequest(HTTPRequestDescriptor descriptor) {
+		Request request = initializeHTTPRequest(descriptor.getUrl(), descriptor.getMethod());
+		for (Map.Entry<String, String> header : descriptor.getHeaders().entrySet()) {
+			request.header(header.getKey(), header.getValue());
+		}
+		if (descriptor.getBody() != null) {
+			if (descriptor.getContentType() != null) {
+				request.content(new StringContentProvider(descriptor.getContentType(),
+						descriptor.getBody(), StandardCharsets.UTF_8));
+			} else {
+				request.content(new StringContentProvider(descriptor.getBody(), StandardCharsets.UTF_8));
+			}
+		}
 		return request;
 	}
 
 	/**
-	 * Returns the next URL for the HTTPTransaction. Runs the script.
-	 * @return The next URL to call.
+	 * Adds the cookies of this user to the request and stores cookies set by the response.
+	 * Required if the HTTP client (and thus its cookie store) is shared with other users.
+	 * @param request The request.
+	 */
+	private void addUserCookies(Request request) {
+		URI uri = request.getURI();
+		for (HttpCookie cookie : cookieManager.getCookieStore().get(uri)) {
+			request.cookie(cookie);
+		}
+		request.onResponseHeaders(response -> {
+			try {
+				cookieManager.put(uri, Collections.singletonMap(HttpHeader.SET_COOKIE.asString(),
+						response.getHeaders().getValuesList(HttpHeader.SET_COOKIE)));
+			} catch (IOException e) {
+				LOG.warning("Could not store cookies for URL: " + uri + "; Exception: " + e.getMessage());
+			}
+		});
+	}
+
+	/**
+	 * Sends a request and waits for its response. Uses the user's own connection if the user owns
+	 * its connections, or any connection of the HTTP client's pool otherwise.
+	 * @param request The request, initialized using {@link #initializeHTTPRequest(HTTPRequestDescriptor)}.
+	 * @return The response.
+	 * @throws InterruptedException If interrupted while waiting for the response.
+	 * @throws TimeoutException If the request timed out.
+	 * @throws ExecutionException If the request failed.
+	 */
+	public ContentResponse send(Request request) throws InterruptedException, TimeoutException, ExecutionException {
+		if (connectionMode == ConnectionMode.POOLED) {
+			return request.send();
+		}
+		FutureResponseListener listener = new FutureResponseListener(request);
+		send(request, listener);
+		try {
+			if (request.getTimeout() > 0) {
+				return listener.get(request.getTimeout(), TimeUnit.MILLISECONDS);
+			}
+			return listener.get();
+		} catch (InterruptedException | TimeoutException e) {
+			request.abort(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Sends a request asynchronously. Uses the user's own connection if the user owns
+	 * its connections, or any connection of the HTTP client's pool otherwise.
+	 * Opens a new connection if the user does not yet have an open connection to the request's origin.
+	 * @param request The request, initialized using {@link #initializeHTTPRequest(HTTPRequestDescriptor)}.
+	 * @param listener The listener that is notified once the response is complete or the request failed.
 	 */
-	public String getNextInput() {
+	public void send(Request request, Response.CompleteListener listener) {
+		if (connectionMode == ConnectionMode.POOLED) {
+			request.send(listener);
+			return;
+		}
+		String origin = request.getScheme() + "://" + request.getHost() + ":" + request.getPort();
+		Connection connection = connections.get(origin);
+		if (connection != null && !connection.isClosed()) {
+			connection.send(request, listener);
+			return;
+		}
+		httpClient.getDestination(request.getScheme(), request.getHost(), request.getPort())
+				.newConnection(new Promise<Connection>() {
+			@Override
+			public void succeeded(Connection newConnection) {
+				connections.put(origin, newConnection);
+				newConnection.send(request, listener);
+			}
+
+			@Override
+			public void failed(Throwable failure) {
+				listener.onComplete(new Result(request, failure,
+						new HttpResponse(request, Collections.emptyList())));
+			}
+		});
+	}
+
+	/**
+	 * Closes all connections owned by this user.
+	 */
+	private void closeConnections() {
+		for (Connection connection : connections.values()) {
+			connection.close();
+		}
+		connections.clear();
+	}
+
+	/**
+	 * Returns the next request for the HTTPTransaction. Runs the script.
+	 * @return The next request to send.
+	 * @throws org.luaj.vm2.LuaError If the script fails or returns an invalid request.
+	 */
+	public HTTPRequestDescriptor getNextRequest() {
 		if (currentCallNum < 1) {
 			restartCycle();
 		}
 		LuaValue lvcall = luaGlobals.get(LUA_CALL).call(LuaValue.valueOf(currentCallNum));
 		if (lvcall.isnil()) {
 			restartCycle();
-			return getNextInput();
+			return getNextRequest();
 		} else {
+			//an invalid request consumes its call, so that the cycle continues with the next call
 			currentCallNum++;
-			lastInput = lvcall.optjstring("");
+			lastInput = HTTPRequestDescriptor.fromLua(lvcall);
 			return lastInput;
 		}
 	}
@@ -132,10 +330,16 @@ public class HTTPInputGenerator {
 	/**
 	 * Restarts the call cycle.
 	 * Resets the current call number to one and calls init from the script.
+	 * Closes the user's connections if each cycle is to use new connections.
 	 */
 	private void restartCycle() {
 		currentCallNum = 1;
-		if (httpClient != null && httpClient.getCookieStore() != null) {
+		if (connectionMode == ConnectionMode.RECONNECT) {
+			closeConnections();
+		}
+		if (cookieManager != null) {
+			cookieManager.getCookieStore().removeAll();
+		} else if (httpClient != null && httpClient.getCookieStore() != null) {
 			httpClient.getCookieStore().removeAll();
 		}
 		LuaValue cycleInit = luaGlobals.get(LUA_CYCLE_INIT);
@@ -159,13 +363,23 @@ public class HTTPInputGenerator {
 	public void resetHTMLFunctions(String html) {
 		htmlFunctions.resetHTMLFunctions(html);
 	}
+
+	/**
+	 * Reset the HTML functions that are passed to LUA with a raw response body.
+	 * The body is only decoded if it is accessed from LUA.
+	 * @param content The raw response body that will be accessed from LUA next.
+	 * @param encoding The character encoding of the response body. May be null for UTF-8.
+	 */
+	public void resetHTMLFunctions(byte[] content, String encoding) {
+		htmlFunctions.resetHTMLFunctions(content, encoding);
+	}
 	
 	/**
-	 * Get the last call that was generated on calling {@link #getNextInput()}.
+	 * Get the last call that was generated on calling {@link #getNextRequest()}.
 	 * @return The last call URL.
 	 */
 	public String getLastCall() {
-		return lastInput;
+		return lastInput.toString();
 	}
 	
 	/**
@@ -178,7 +392,7 @@ public class HTTPInputGenerator {
 	
 	/**
 	 * Decrements the last call number. Use this after an unsuccessful call
-	 * in order to be repeat it on the next call of {@link #getNextInput()}.
+	 * in order to be repeat it on the next call of {@link #getNextRequest()}.
 	 */
 	public void revertLastCall() {
 		currentCallNum--;
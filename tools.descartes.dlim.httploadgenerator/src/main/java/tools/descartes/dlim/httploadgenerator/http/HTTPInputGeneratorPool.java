@@ -16,16 +16,22 @@
 package tools.descartes.dlim.httploadgenerator.http;
 
 import java.io.File;
-import java.util.Map.Entry;
-import java.util.Random;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.Semaphore;
 import java.util.logging.Logger;
 
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.util.HttpCookieStore;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.luaj.vm2.Prototype;
+
+import tools.descartes.dlim.httploadgenerator.http.lua.LuaHelpers;
+
 /**
  * Pool of input stateful generators to be assigned to the load generation transactions.
+ * The pool may be partitioned into shards. Each user belongs to exactly one shard
+ * and is only ever taken by transactions that execute on the corresponding executor shard.
+ * Taking and releasing users is lock-free, threads only block if their shard has no available users
+ * (see {@link UserShard}).
  * @author Joakim von Kistowski
  *
  */
@@ -35,47 +41,114 @@ public final class HTTPInputGeneratorPool {
 	
 	private static HTTPInputGeneratorPool pool = null;
 	
-	private Random random;
-	private PoolMode mode;
-	private BlockingQueue<HTTPInputGenerator> queue;
-	private ConcurrentHashMap<Integer,HTTPInputGenerator> map;
-	private Semaphore mapAccessControlSemaphore;
-	
-	private HTTPInputGeneratorPool(PoolMode mode, String luaScriptPath, int threadCount, int timeout, int randomSeed) {
-		this.mode = mode;
-		queue = new LinkedBlockingQueue<>();
-		map = new ConcurrentHashMap<>();
-		mapAccessControlSemaphore = new Semaphore(threadCount, true);
-		if (randomSeed > 0) {
-			random = new Random(randomSeed);
-		} else {
-			random = new Random(5);
+	private final UserShard[] shards;
+	private final int size;
+	private HttpClient[] sharedClients = new HttpClient[0];
+	
+	private HTTPInputGeneratorPool(PoolMode mode, String luaScriptPath, int threadCount, int timeout,
+			HTTPClientSettings clientSettings, int shardCount) {
+		this.size = threadCount;
+		shards = new UserShard[Math.max(1, Math.min(shardCount, threadCount))];
+		for (int i = 0; i < shards.length; i++) {
+			//users are assigned to shards round-robin
+			int shardSize = threadCount / shards.length + (i < threadCount % shards.length ? 1 : 0);
+			shards[i] = UserShard.create(mode, shardSize, shards.length);
 		}
 		File script = new File(luaScriptPath);
 		if (!script.exists()) {
 			LOG.severe("Lua script does not exist at: " + luaScriptPath);
+		}
+		//compile once, each user only runs the compiled script in its own LUA state
+		Prototype compiledScript = LuaHelpers.compileScript(script);
+		if (clientSettings.isShared()) {
+			sharedClients = createSharedClients(clientSettings, threadCount, timeout);
 		}
 		 // We place as many input generators as threads in the pool.
 		for (int i = 0; i < threadCount; i++) {
-			addInputGenerator(new HTTPInputGenerator(i, script, i, timeout));
+			HttpClient sharedClient = null;
+			if (sharedClients.length > 0) {
+				sharedClient = sharedClients[i % sharedClients.length];
+			}
+			addInputGenerator(new HTTPInputGenerator(i, compiledScript, i, timeout, sharedClient,
+					clientSettings.getConnectionMode()));
 		}
-		if (mode.equals(PoolMode.QUEUE)) {
-			LOG.info("Created pool of " + queue.size() + " users (LUA contexts, HTTP input generators).");
-		} else {
-			LOG.info("Created pool of " + map.size() + " users (LUA contexts, HTTP input generators).");
+		LOG.info("Created pool of " + (size - getUsersInUse()) + " users (LUA contexts, HTTP input generators)"
+				+ (shards.length > 1 ? " in " + shards.length + " shards." : "."));
+		if (clientSettings.getConnectionMode() != HTTPClientSettings.ConnectionMode.POOLED) {
+			LOG.info("Each user owns its connections (" + clientSettings.getConnectionMode() + ").");
 		}
 	}
 	
-	private void addInputGenerator(HTTPInputGenerator generator) {
-		if (mode.equals(PoolMode.QUEUE)) {
+	/**
+	 * Creates and starts the HTTP clients that are shared by the users.
+	 * Cookie handling of the clients is disabled, as each user keeps its own cookies.
+	 * @param settings The client settings.
+	 * @param userCount The total number of users.
+	 * @param timeout The http connection timeout.
+	 * @return The started clients.
+	 */
+	private static HttpClient[] createSharedClients(HTTPClientSettings settings, int userCount, int timeout) {
+		int clientCount = Math.min(settings.getClientCount(), Math.max(1, userCount));
+		HttpClient[] clients = new HttpClient[clientCount];
+		for (int i = 0; i < clientCount; i++) {
+			HttpClientTransportOverHTTP transport;
+			if (settings.getSelectorCount() > 0) {
+				transport = new HttpClientTransportOverHTTP(settings.getSelectorCount());
+			} else {
+				transport = new HttpClientTransportOverHTTP();
+			}
+			HttpClient client = new HttpClient(transport, null);
+			if (settings.getExecutorThreads() > 0) {
+				QueuedThreadPool executor = new QueuedThreadPool(settings.getExecutorThreads(),
+						Math.min(8, settings.getExecutorThreads()));
+				executor.setName("HttpClient-" + i);
+				executor.setDaemon(true);
+				client.setExecutor(executor);
+			}
+			//by default, allow each user of the client a connection of its own
+			int usersOfClient = (userCount + clientCount - 1) / clientCount;
+			if (settings.getMaxConnectionsPerDestination() > 0) {
+				client.setMaxConnectionsPerDestination(settings.getMaxConnectionsPerDestination());
+			} else {
+				client.setMaxConnectionsPerDestination(Math.max(1, usersOfClient));
+			}
+			//each user has at most one request queued, so queued requests are never rejected
+			client.setMaxRequestsQueuedPerDestination(Math.max(client.getMaxRequestsQueuedPerDestination(),
+					usersOfClient));
+			client.setCookieStore(new HttpCookieStore.Empty());
+			if (timeout > 0) {
+				client.setConnectTimeout(timeout);
+			}
 			try {
-				queue.put(generator);
-			} catch (InterruptedException e) {
-				LOG.severe("Interrupted initializing Queue.");
+				client.start();
+			} catch (Exception e) {
+				LOG.severe("Could not start shared HTTP client; Exception: " + e.getMessage());
 			}
-		} else {
-			map.put(generator.getId(), generator);
+			clients[i] = client;
 		}
+		LOG.info("Created " + clientCount + " shared HTTP clients (" + settings + ").");
+		return clients;
+	}
+	
+	/**
+	 * Stops the shared HTTP clients.
+	 */
+	private void stopSharedClients() {
+		for (HttpClient client : sharedClients) {
+			try {
+				client.stop();
+			} catch (Exception e) {
+				LOG.warning("Could not stop shared HTTP client; Exception: " + e.getMessage());
+			}
+		}
+	}
+	
+	private void addInputGenerator(HTTPInputGenerator generator) {
+		shardOf(generator).release(generator);
+	}
+	
+	private UserShard shardOf(HTTPInputGenerator generator) {
+		return shards[generator.getId() % shards.length];
 	}
 	
 	/**
@@ -96,8 +169,36 @@ public final class HTTPInputGeneratorPool {
 	 * @param threadCount The number of threads that will be used to access the pool.
 	 * @param timeout The http url connection timeout.
 	 */
-	public static void initializePool(PoolMode mode, String luaScriptPath, int threadCount, int timeout, int randomSeed) {
-		pool = new HTTPInputGeneratorPool(mode, luaScriptPath, threadCount, timeout, randomSeed);
+	public static void initializePool(PoolMode mode, String luaScriptPath, int threadCount, int timeout) {
+		initializePool(mode, luaScriptPath, threadCount, timeout, HTTPClientSettings.DEFAULT);
+	}
+	
+	/**
+	 * Initializes the pool (deleting an old one if it exists).
+	 * @param luaScriptPath The path of the Lua script.
+	 * @param threadCount The number of threads that will be used to access the pool.
+	 * @param timeout The http url connection timeout.
+	 * @param clientSettings The settings for the users' HTTP clients.
+	 */
+	public static void initializePool(PoolMode mode, String luaScriptPath, int threadCount, int timeout,
+			HTTPClientSettings clientSettings) {
+		initializePool(mode, luaScriptPath, threadCount, timeout, clientSettings, 1);
+	}
+	
+	/**
+	 * Initializes the pool (deleting an old one if it exists).
+	 * @param luaScriptPath The path of the Lua script.
+	 * @param threadCount The number of threads that will be used to access the pool.
+	 * @param timeout The http url connection timeout.
+	 * @param clientSettings The settings for the users' HTTP clients.
+	 * @param shardCount The number of shards to partition the users into. Is limited to the number of users.
+	 */
+	public static void initializePool(PoolMode mode, String luaScriptPath, int threadCount, int timeout,
+			HTTPClientSettings clientSettings, int shardCount) {
+		if (pool != null) {
+			pool.stopSharedClients();
+		}
+		pool = new HTTPInputGeneratorPool(mode, luaScriptPath, threadCount, timeout, clientSettings, shardCount);
 	}
 	
 	/**
@@ -105,64 +206,44 @@ public final class HTTPInputGeneratorPool {
 	 * @param generator The generator to place in the pool.
 	 */
 	public void releaseBackToPool(HTTPInputGenerator generator) {
-		if (mode.equals(PoolMode.QUEUE)) {
-			try {
-				queue.put(generator);
-			} catch (InterruptedException e) {
-				LOG.severe("Interrupted placing generator in pool.");
-			}
-		} else {
-			map.put(generator.getId(), generator);
-			mapAccessControlSemaphore.release();
-		}
-		
+		shardOf(generator).release(generator);
 	}
 	
 	/**
 	 * Retrieves an HTTPInputGenerator from the pool. Don't forget to but it back after use.
+	 * @param shardIndex The index of the executor shard that requests the generator.
+	 * 		Is mapped onto the pool's shards if the pool has fewer shards.
 	 * @return The generator to use.
 	 */
-	public HTTPInputGenerator takeFromPool() {
+	public HTTPInputGenerator takeFromPool(int shardIndex) {
 		HTTPInputGenerator generator = null;
-		if (mode.equals(PoolMode.QUEUE)) {
-			try {
-				generator = queue.take();
-			} catch (InterruptedException e) {
-				LOG.severe("Interrupted retreiving generator from pool.");
-			}
-		} else {
-			try {
-				mapAccessControlSemaphore.acquire();
-				generator = takeRandomFromMapWithAccess();
-			} catch (InterruptedException e) {
-				LOG.severe("Interrupted acquiring access for retreiving generator from pool.");
-			}
-			
+		try {
+			generator = shards[shardIndex % shards.length].take();
+		} catch (InterruptedException e) {
+			LOG.severe("Interrupted retreiving generator from pool.");
 		}
 		return generator;
 	}
 	
-	private synchronized HTTPInputGenerator takeRandomFromMapWithAccess() {
-		if (map.size() == 0) {
-			LOG.severe("No HTTPInputGenerator available. It should have been available as access was granted.");
-			return null;
-		}
-		int index = random.nextInt(map.size());
-		int i = 0;
-		Entry<Integer, HTTPInputGenerator> entry = null;
-		for (Entry<Integer, HTTPInputGenerator> e : map.entrySet()) {
-			if (i == index) {
-				entry = e;
-				break;
-			}
-			i++;
-		}
-		if (entry != null && entry.getKey() != null) {
-			map.remove(entry.getKey());
-			return entry.getValue();
+	/**
+	 * Returns the number of users that are currently taken from the pool.
+	 * In asynchronous and virtual thread execution, this is the number of requests in flight.
+	 * @return The number of users in use.
+	 */
+	public int getUsersInUse() {
+		int available = 0;
+		for (UserShard shard : shards) {
+			available += shard.available();
 		}
-		LOG.severe("No HTTPInputGenerator available. Entry in pool was null but access was granted.");
-		return null;
+		return size - available;
+	}
+	
+	/**
+	 * Returns the number of shards the users are partitioned into.
+	 * @return The number of shards.
+	 */
+	public int getShardCount() {
+		return shards.length;
 	}
 	
 	public static enum PoolMode {
@@ -0,0 +1,249 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+/**
+ * Describes the HTTP request returned by the LUA script's onCall function.
+ * onCall either returns a URL string, optionally prefixed by tags such as {@value #POST_SIGNAL}
+ * or {@value #DISCARD_SIGNAL}, or a table with the fields method, url, headers, body, contentType, discard,
+ * and thinkTime.
+ * @author Joakim von Kistowski
+ *
+ */
+public class HTTPRequestDescriptor {
+
+	private static final String POST_SIGNAL = "[POST]";
+	private static final String DISCARD_SIGNAL = "[DISCARD]";
+
+	/** Methods that may be used as tags, in addition to {@value #POST_SIGNAL}. */
+	private static final Set<String> METHOD_SIGNALS = new HashSet<>(Arrays.asList(
+			"[GET]", POST_SIGNAL, "[PUT]", "[DELETE]", "[PATCH]", "[HEAD]", "[OPTIONS]"));
+
+	private static final String METHOD_FIELD = "method";
+	private static final String URL_FIELD = "url";
+	private static final String HEADERS_FIELD = "headers";
+	private static final String BODY_FIELD = "body";
+	private static final String CONTENT_TYPE_FIELD = "contentType";
+	private static final String DISCARD_FIELD = "discard";
+	private static final String THINK_TIME_FIELD = "thinkTime";
+
+	/** Think time of requests that do not specify a think time. */
+	public static final double NO_THINK_TIME = -1;
+
+	private final String method;
+	private final String url;
+	private final Map<String, String> headers;
+	private final String body;
+	private final String contentType;
+	private final boolean discardResponse;
+	private final double thinkTimeMs;
+
+	/**
+	 * Creates a new request descriptor without think time.
+	 * @param method The HTTP method.
+	 * @param url The URL.
+	 * @param headers The request headers. May be empty.
+	 * @param body The request body. Null for no body.
+	 * @param contentType The content type of the body. Null for the default.
+	 * @param discardResponse True if the response body is to be discarded.
+	 */
+	public HTTPRequestDescriptor(String method, String url, Map<String, String> headers, String body,
+			String contentType, boolean discardResponse) {
+		this(method, url, headers, body, contentType, discardResponse, NO_THINK_TIME);
+	}
+
+	/**
+	 * Creates a new request descriptor.
+	 * @param method The HTTP method.
+	 * @param url The URL.
+	 * @param headers The request headers. May be empty.
+	 * @param body The request body. Null for no body.
+	 * @param contentType The content type of the body. Null for the default.
+	 * @param discardResponse True if the response body is to be discarded.
+	 * @param thinkTimeMs The think time after the response in milliseconds.
+	 * 		{@link #NO_THINK_TIME} to use the configured think time.
+	 */
+	public HTTPRequestDescriptor(String method, String url, Map<String, String> headers, String body,
+			String contentType, boolean discardResponse, double thinkTimeMs) {
+		this.method = method;
+		this.url = url;
+		this.headers = headers;
+		this.body = body;
+		this.contentType = contentType;
+		this.discardResponse = discardResponse;
+		this.thinkTimeMs = thinkTimeMs;
+	}
+
+	/**
+	 * Creates a request descriptor from a value returned by the LUA script.
+	 * @param call The returned string or table.
+	 * @return The request descriptor.
+	 * @throws LuaError If the table is not a valid request.
+	 */
+	public static HTTPRequestDescriptor fromLua(LuaValue call) {
+		if (call.istable()) {
+			return fromTable(call);
+		}
+		return parse(call.optjstring(""));
+	}
+
+	/**
+	 * Parses a URL that may be prefixed by any number of tags in brackets. Supported tags are
+	 * HTTP methods, such as {@value #POST_SIGNAL}, and {@value #DISCARD_SIGNAL}. Unknown tags are ignored.
+	 * @param call The tagged URL.
+	 * @return The request descriptor.
+	 */
+	public static HTTPRequestDescriptor parse(String call) {
+		String url = call.trim();
+		String method = "GET";
+		boolean discard = false;
+		while (url.startsWith("[")) {
+			int tagEnd = url.indexOf(']');
+			if (tagEnd < 0) {
+				break;
+			}
+			String tag = url.substring(0, tagEnd + 1);
+			if (METHOD_SIGNALS.contains(tag)) {
+				method = tag.substring(1, tag.length() - 1);
+			} else if (tag.equals(DISCARD_SIGNAL)) {
+				discard = true;
+			}
+			url = url.substring(tagEnd + 1).trim();
+		}
+		return new HTTPRequestDescriptor(method, url, Collections.<String, String>emptyMap(), null, null, discard);
+	}
+
+	private static HTTPRequestDescriptor fromTable(LuaValue table) {
+		LuaValue url = table.get(URL_FIELD);
+		if (!url.isstring()) {
+			throw new LuaError("Request table must contain a url string.");
+		}
+		LuaValue body = table.get(BODY_FIELD);
+		if (!body.isnil() && !body.isstring()) {
+			throw new LuaError("Request body must be a string.");
+		}
+		//requests with a body default to POST
+		String defaultMethod = body.isnil() ? "GET" : "POST";
+		String method = table.get(METHOD_FIELD).optjstring(defaultMethod).trim().toUpperCase(Locale.ROOT);
+		Map<String, String> headers = Collections.emptyMap();
+		LuaValue headerTable = table.get(HEADERS_FIELD);
+		if (headerTable.istable()) {
+			headers = new LinkedHashMap<>();
+			LuaValue key = LuaValue.NIL;
+			while (true) {
+				Varargs entry = headerTable.next(key);
+				key = entry.arg1();
+				if (key.isnil()) {
+					break;
+				}
+				headers.put(key.tojstring(), entry.arg(2).tojstring());
+			}
+		} else if (!headerTable.isnil()) {
+			throw new LuaError("Request headers must be a table.");
+		}
+		LuaValue thinkTime = table.get(THINK_TIME_FIELD);
+		if (!thinkTime.isnil() && (!thinkTime.isnumber() || thinkTime.todouble() < 0)) {
+			throw new LuaError("Request think time must be a non-negative number.");
+		}
+		return new HTTPRequestDescriptor(method, url.tojstring().trim(), headers,
+				body.isnil() ? null : body.tojstring(), table.get(CONTENT_TYPE_FIELD).optjstring(null),
+				table.get(DISCARD_FIELD).toboolean(), thinkTime.isnil() ? NO_THINK_TIME : thinkTime.todouble());
+	}
+
+	/**
+	 * Returns the HTTP method.
+	 * @return The method, e.g., GET, POST, PUT, DELETE, or PATCH.
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * Returns the URL.
+	 * @return The URL.
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * Returns the request headers.
+	 * @return The headers by name. Empty if no headers are set.
+	 */
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Returns the request body.
+	 * @return The body. Null if the request has no body.
+	 */
+	public String getBody() {
+		return body;
+	}
+
+	/**
+	 * Returns the content type of the request body.
+	 * @return The content type. Null for the default.
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Returns true if the response body is to be discarded instead of being stored.
+	 * @return True if the response body is discarded.
+	 */
+	public boolean isDiscardResponse() {
+		return discardResponse;
+	}
+
+	/**
+	 * Returns the think time that a closed-loop user waits after receiving the response.
+	 * @return The think time in milliseconds. {@link #NO_THINK_TIME} to use the configured think time.
+	 */
+	public double getThinkTimeMs() {
+		return thinkTimeMs;
+	}
+
+	/**
+	 * Returns the request in the tagged URL notation.
+	 * @return The request as string.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder call = new StringBuilder();
+		if (!method.equals("GET")) {
+			call.append('[').append(method).append(']');
+		}
+		if (discardResponse) {
+			call.append(DISCARD_SIGNAL);
+		}
+		return call.append(url).toString();
+	}
+}
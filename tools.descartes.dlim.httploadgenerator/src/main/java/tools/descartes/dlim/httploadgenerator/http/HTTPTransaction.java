@@ -17,70 +17,132 @@ package tools.descartes.dlim.httploadgenerator.http;
 
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.luaj.vm2.LuaError;
 
+import tools.descartes.dlim.httploadgenerator.generator.ClosedLoopController;
 import tools.descartes.dlim.httploadgenerator.generator.ResultTracker;
 import tools.descartes.dlim.httploadgenerator.transaction.Transaction;
 import tools.descartes.dlim.httploadgenerator.transaction.TransactionDroppedException;
 import tools.descartes.dlim.httploadgenerator.transaction.TransactionInvalidException;
-import tools.descartes.dlim.httploadgenerator.transaction.TransactionQueueSingleton;
+import tools.descartes.dlim.httploadgenerator.transaction.TransactionRecycler;
 
 /**
  * HTTP transaction sends HTML requests to a HTTP web server based on a LUA script.
+ * Transactions are either processed blocking, holding their thread until the response is received,
+ * or asynchronously, in which case the response is handled in a callback of the HTTP client.
+ * In closed-loop mode, each transaction is the session of a user, which keeps its user and
+ * re-schedules itself after each response and think time.
  * 
  * @author Joakim von Kistowski, Maximilian Deffner
  *
  */
 public class HTTPTransaction extends Transaction {
 
-	
-	private static final String POST_SIGNAL = "[POST]";
-	
 	/** The constant logging instance. */
 	private static final Logger LOG = Logger.getLogger(HTTPTransaction.class.getName());
 
+	/** If true, requests are sent asynchronously instead of blocking the executing thread. */
+	private static volatile boolean asynchronous = false;
+
+	/** Controller of the closed-loop user population. Null for open workloads. */
+	private static volatile ClosedLoopController closedLoop = null;
+
+	/** User of this closed-loop session. Kept while the session is thinking. */
+	private HTTPInputGenerator sessionUser = null;
+
+	/** Think time that the script requested for the current request. */
+	private double scriptThinkTimeMs = HTTPRequestDescriptor.NO_THINK_TIME;
+
+	/** Time at which the last successful response was received. */
+	private long receiveTimeNs = 0;
+
+	/** If true, the body of the current response is only counted and not stored. */
+	private boolean discardResponse = false;
+
 	/**
-	 * Processes the transaction of sending a GET request to a web server.
+	 * Set whether transactions send their requests asynchronously.
+	 * In asynchronous mode, the executing thread is released as soon as the request is sent
+	 * and the user (input generator) is returned to the pool once the response is complete.
+	 * @param asynchronous True for asynchronous requests, false for blocking requests.
+	 */
+	public static void setAsynchronous(boolean asynchronous) {
+		HTTPTransaction.asynchronous = asynchronous;
+	}
+
+	/**
+	 * Set the controller for closed-loop execution. In closed-loop mode, transactions keep their user
+	 * and are re-scheduled after each response, until the controller retires them.
+	 * @param closedLoop The controller of the user population. Null for open-loop execution.
+	 */
+	public static void setClosedLoop(ClosedLoopController closedLoop) {
+		HTTPTransaction.closedLoop = closedLoop;
+	}
+
+	/**
+	 * Generates the next request of the user. Drops the transaction if it waited too long.
 	 * @param generator The input generator to use.
-	 * @return Response time in milliseconds.
+	 * @return The request, ready to be sent.
+	 * @throws TransactionDroppedException If the transaction waited longer than the timeout.
+	 * @throws TransactionInvalidException If the script failed or returned an invalid request.
 	 */
-	public long process(HTTPInputGenerator generator) throws TransactionDroppedException, TransactionInvalidException {
+	private Request prepareRequest(HTTPInputGenerator generator)
+			throws TransactionDroppedException, TransactionInvalidException {
+		scriptThinkTimeMs = HTTPRequestDescriptor.NO_THINK_TIME;
 		long processStartTime = System.currentTimeMillis();
 		if (generator.getTimeout() > 0 && processStartTime - getStartTime() > generator.getTimeout()) {
 			throw new TransactionDroppedException("Wait time in queue too long. "
 					+ String.valueOf(processStartTime - getStartTime()) + " ms passed before transaction was even started.");
 		}
-		String url = generator.getNextInput().trim();
-		String method = "GET";
-		if (url.startsWith("[")) {
-			if (url.startsWith(POST_SIGNAL)) {
-				method = "POST";
-			}
-			url = url.replaceFirst("\\[.*\\]", "");
+		try {
+			HTTPRequestDescriptor descriptor = generator.getNextRequest();
+			discardResponse = descriptor.isDiscardResponse();
+			scriptThinkTimeMs = descriptor.getThinkTimeMs();
+			return generator.initializeHTTPRequest(descriptor);
+		} catch (LuaError | IllegalArgumentException e) {
+			LOG.log(Level.SEVERE, "Invalid request generated by script: " + e.getMessage());
+			throw new TransactionInvalidException("Invalid request: " + e.getMessage());
 		}
-		Request request = generator.initializeHTTPRequest(url, method);
+	}
+
+	/**
+	 * Processes the transaction of sending a GET request to a web server.
+	 * The response time is measured from the moment the request is sent.
+	 * @param generator The input generator to use.
+	 * @return Response time in milliseconds.
+	 */
+	public long process(HTTPInputGenerator generator) throws TransactionDroppedException, TransactionInvalidException {
+		Request request = prepareRequest(generator);
+		String url = request.getURI().toString();
 		
 		try {
-			ContentResponse response = request.send();
+			if (discardResponse) {
+				return processDiscarding(generator, request);
+			}
+			setSendTimeNs(System.nanoTime());
+			ContentResponse response = generator.send(request);
+			receiveTimeNs = System.nanoTime();
+			ResultTracker.TRACKER.logReceivedBytes(response.getContent().length);
 			if (response.getStatus() >= 400) {
 				generator.revertLastCall();
 				LOG.log(Level.FINEST, "Received error response code: " + response.getStatus());
 				throw new TransactionInvalidException("Error code: " + response.getStatus());
 			} else {
-				String responseBody = response.getContentAsString();
-				long responseTime = System.currentTimeMillis() - processStartTime;
-				
-				//store result
-				generator.resetHTMLFunctions(responseBody);
-				return responseTime;
+				//store result, it is only decoded if the script accesses it
+				generator.resetHTMLFunctions(response.getContent(), response.getEncoding());
+				return TimeUnit.NANOSECONDS.toMillis(receiveTimeNs - getSendTimeNs());
 			}
 		} catch (TimeoutException e) {
 			generator.revertLastCall();
+			throw new TransactionInvalidException("TimeoutException: " + e.getMessage());
 		} catch (ExecutionException e) {
 			if (e.getCause() == null || !(e.getCause() instanceof TimeoutException)) {
 				LOG.log(Level.SEVERE, "ExecutionException in call for URL: " + url + "; Cause: " + e.getCause().toString());
@@ -96,22 +158,174 @@ public class HTTPTransaction extends Transaction {
 			generator.revertLastCall();
 			throw new TransactionInvalidException("InterruptedException: " + e.getMessage());
 		}
-		return 0;
+	}
+
+	/**
+	 * Sends the request and waits for the response, which is streamed without storing its body.
+	 * @param generator The input generator to use.
+	 * @param request The request.
+	 * @return Response time in milliseconds.
+	 * @throws TransactionInvalidException If the request failed or returned an error code.
+	 * @throws InterruptedException If interrupted while waiting for the response.
+	 */
+	private long processDiscarding(HTTPInputGenerator generator, Request request)
+			throws TransactionInvalidException, InterruptedException {
+		DiscardingResponseListener listener = new DiscardingResponseListener();
+		setSendTimeNs(System.nanoTime());
+		generator.send(request, listener);
+		Result result;
+		try {
+			result = listener.await();
+		} catch (InterruptedException e) {
+			request.abort(e);
+			throw e;
+		}
+		receiveTimeNs = System.nanoTime();
+		ResultTracker.TRACKER.logReceivedBytes(listener.getReceivedBytes());
+		if (result.isFailed()) {
+			generator.revertLastCall();
+			Throwable failure = result.getFailure();
+			if (!(failure instanceof TimeoutException)) {
+				LOG.log(Level.SEVERE, "Exception in call for URL: " + request.getURI() + "; Cause: " + failure.toString());
+			}
+			throw new TransactionInvalidException(failure.getClass().getSimpleName() + ": " + failure.getMessage());
+		} else if (result.getResponse().getStatus() >= 400) {
+			generator.revertLastCall();
+			LOG.log(Level.FINEST, "Received error response code: " + result.getResponse().getStatus());
+			throw new TransactionInvalidException("Error code: " + result.getResponse().getStatus());
+		}
+		generator.resetHTMLFunctions("");
+		return TimeUnit.NANOSECONDS.toMillis(receiveTimeNs - getSendTimeNs());
+	}
+
+	/**
+	 * Sends the request asynchronously. The response is processed and logged by the
+	 * HTTP client's callback, which also returns the user and the transaction to their pools.
+	 * @param generator The input generator to use. Is released back to the pool on completion.
+	 */
+	private void processAsynchronously(HTTPInputGenerator generator) {
+		Request request;
+		try {
+			request = prepareRequest(generator);
+		} catch (TransactionDroppedException e) {
+			ResultTracker.TRACKER.logTransaction(0, 0, ResultTracker.TransactionState.DROPPED);
+			complete(generator);
+			return;
+		} catch (TransactionInvalidException e) {
+			ResultTracker.TRACKER.logTransaction(0, 0, ResultTracker.TransactionState.FAILED);
+			complete(generator);
+			return;
+		}
+		setSendTimeNs(System.nanoTime());
+		if (discardResponse) {
+			generator.send(request, new DiscardingResponseListener() {
+				@Override
+				public void onComplete(Result result) {
+					receiveTimeNs = System.nanoTime();
+					ResultTracker.TRACKER.logReceivedBytes(getReceivedBytes());
+					if (!logAsynchronousFailure(generator, request, result)) {
+						generator.resetHTMLFunctions("");
+						logSuccess();
+					}
+					complete(generator);
+				}
+			});
+			return;
+		}
+		generator.send(request, new BufferingResponseListener() {
+			@Override
+			public void onComplete(Result result) {
+				receiveTimeNs = System.nanoTime();
+				ResultTracker.TRACKER.logReceivedBytes(getContent().length);
+				if (!logAsynchronousFailure(generator, request, result)) {
+					generator.resetHTMLFunctions(getContent(), getEncoding());
+					logSuccess();
+				}
+				complete(generator);
+			}
+		});
+	}
+
+	/**
+	 * Logs a failed asynchronous request.
+	 * @param generator The input generator that sent the request.
+	 * @param request The request.
+	 * @param result The result of the request.
+	 * @return True if the request failed and was logged, false if it was successful.
+	 */
+	private boolean logAsynchronousFailure(HTTPInputGenerator generator, Request request, Result result) {
+		if (result.isFailed()) {
+			generator.revertLastCall();
+			if (!(result.getFailure() instanceof TimeoutException)) {
+				LOG.log(Level.SEVERE, "Exception in call for URL: " + request.getURI()
+						+ "; Cause: " + result.getFailure().toString());
+			}
+		} else if (result.getResponse().getStatus() >= 400) {
+			generator.revertLastCall();
+			LOG.log(Level.FINEST, "Received error response code: " + result.getResponse().getStatus());
+		} else {
+			return false;
+		}
+		ResultTracker.TRACKER.logTransaction(0, 0, ResultTracker.TransactionState.FAILED);
+		return true;
+	}
+
+	/**
+	 * Logs a successful transaction with the response time of the last response.
+	 */
+	private void logSuccess() {
+		ResultTracker.TRACKER.logTransaction(receiveTimeNs - getSendTimeNs(),
+				getCorrectedResponseTimeNs(receiveTimeNs), ResultTracker.TransactionState.SUCCESS);
+	}
+
+	/**
+	 * Completes the transaction. Closed-loop sessions keep their user and schedule their next request
+	 * after the think time, all other transactions are released.
+	 * @param generator The input generator that was used.
+	 */
+	private void complete(HTTPInputGenerator generator) {
+		ClosedLoopController loop = closedLoop;
+		if (loop != null && loop.continueSession()) {
+			sessionUser = generator;
+			loop.scheduleNext(this, scriptThinkTimeMs);
+		} else {
+			release(generator);
+		}
+	}
+
+	/**
+	 * Returns the user to the input generator pool and this transaction to the transaction recycler.
+	 * @param generator The input generator to return.
+	 */
+	private void release(HTTPInputGenerator generator) {
+		HTTPInputGeneratorPool.getPool().releaseBackToPool(generator);
+		TransactionRecycler.RECYCLER.recycle(this);
 	}
 
 	@Override
 	public void run() {
-		HTTPInputGenerator generator = HTTPInputGeneratorPool.getPool().takeFromPool();
+		HTTPInputGenerator generator = sessionUser;
+		sessionUser = null;
+		if (generator == null) {
+			generator = HTTPInputGeneratorPool.getPool().takeFromPool(getShard());
+		} else if (closedLoop != null && !closedLoop.continueSession()) {
+			//the population shrank while the session was thinking
+			release(generator);
+			return;
+		}
+		if (asynchronous) {
+			processAsynchronously(generator);
+			return;
+		}
 		try {
-			long responseTime = this.process(generator);
-			ResultTracker.TRACKER.logTransaction(responseTime, ResultTracker.TransactionState.SUCCESS);
+			this.process(generator);
+			ResultTracker.TRACKER.logTransaction(receiveTimeNs - getSendTimeNs(),
+					getCorrectedResponseTimeNs(receiveTimeNs), ResultTracker.TransactionState.SUCCESS);
 		} catch (TransactionDroppedException e) {
-			ResultTracker.TRACKER.logTransaction(0, ResultTracker.TransactionState.DROPPED);
+			ResultTracker.TRACKER.logTransaction(0, 0, ResultTracker.TransactionState.DROPPED);
 		} catch (TransactionInvalidException e) {
-			ResultTracker.TRACKER.logTransaction(0, ResultTracker.TransactionState.FAILED);
+			ResultTracker.TRACKER.logTransaction(0, 0, ResultTracker.TransactionState.FAILED);
 		}
-		HTTPInputGeneratorPool.getPool().releaseBackToPool(generator);
-		TransactionQueueSingleton transactionQueue = TransactionQueueSingleton.getInstance();
-		transactionQueue.addQueueElement(this);
+		complete(generator);
 	}
 }
@@ -0,0 +1,260 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The users of a single shard of the {@link HTTPInputGeneratorPool}.
+ * Users are taken and released using lock-free operations. Only threads that find the shard empty
+ * block on the shard's monitor until a user is released.
+ * @author Joakim von Kistowski
+ *
+ */
+abstract class UserShard {
+
+	/** Number of attempts to take a user before a thread blocks. */
+	private static final int SPIN_TRIES = 16;
+
+	/** Number of threads blocked in {@link #take()}. Only modified holding the monitor. */
+	private volatile int waiters = 0;
+
+	/**
+	 * Creates the shard for a pool mode.
+	 * @param mode The pool mode.
+	 * @param capacity The number of users of the shard.
+	 * @param shardCount The number of shards of the pool. Users are assigned to shards round-robin by their id.
+	 * @return The empty shard.
+	 */
+	static UserShard create(HTTPInputGeneratorPool.PoolMode mode, int capacity, int shardCount) {
+		if (mode == HTTPInputGeneratorPool.PoolMode.QUEUE) {
+			return new FIFOShard(capacity);
+		}
+		return new RandomShard(capacity, shardCount);
+	}
+
+	/**
+	 * Takes a user, blocking until one is available.
+	 * @return The user.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	final HTTPInputGenerator take() throws InterruptedException {
+		for (int i = 0; i < SPIN_TRIES; i++) {
+			HTTPInputGenerator generator = poll();
+			if (generator != null) {
+				return generator;
+			}
+		}
+		synchronized (this) {
+			waiters++;
+			try {
+				HTTPInputGenerator generator;
+				//waiters is published before polling, so that a concurrent release either
+				//is seen by the poll or sees the waiter and notifies it
+				while ((generator = poll()) == null) {
+					wait();
+				}
+				return generator;
+			} finally {
+				waiters--;
+			}
+		}
+	}
+
+	/**
+	 * Releases a user back into the shard. The user must belong to this shard.
+	 * @param generator The user.
+	 */
+	final void release(HTTPInputGenerator generator) {
+		offer(generator);
+		if (waiters > 0) {
+			synchronized (this) {
+				notify();
+			}
+		}
+	}
+
+	/**
+	 * Takes a user without blocking.
+	 * @return The user. Null if the shard is empty.
+	 */
+	abstract HTTPInputGenerator poll();
+
+	/**
+	 * Places a user in the shard. Never fails, as the shard has a capacity for all of its users.
+	 * @param generator The user.
+	 */
+	abstract void offer(HTTPInputGenerator generator);
+
+	/**
+	 * Returns the number of available users. The result is only exact if the shard is not accessed concurrently.
+	 * @return The number of available users.
+	 */
+	abstract int available();
+
+	/**
+	 * Bounded multi-producer multi-consumer ring buffer for the QUEUE mode.
+	 * Each cell carries a sequence number that tells producers and consumers whether the cell
+	 * is theirs to write or read in the current lap, so that offering and polling each only need
+	 * a single CAS on the respective position.
+	 */
+	private static final class FIFOShard extends UserShard {
+		private final int mask;
+		private final AtomicReferenceArray<HTTPInputGenerator> cells;
+		private final AtomicLongArray sequences;
+		private final AtomicLong enqueuePosition = new AtomicLong();
+		private final AtomicLong dequeuePosition = new AtomicLong();
+
+		private FIFOShard(int capacity) {
+			int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+			mask = size - 1;
+			cells = new AtomicReferenceArray<>(size);
+			sequences = new AtomicLongArray(size);
+			for (int i = 0; i < size; i++) {
+				sequences.set(i, i);
+			}
+		}
+
+		@Override
+		HTTPInputGenerator poll() {
+			while (true) {
+				long position = dequeuePosition.get();
+				int index = (int) position & mask;
+				long difference = sequences.get(index) - (position + 1);
+				if (difference == 0) {
+					if (dequeuePosition.compareAndSet(position, position + 1)) {
+						HTTPInputGenerator generator = cells.get(index);
+						cells.lazySet(index, null);
+						sequences.set(index, position + mask + 1);
+						return generator;
+					}
+				} else if (difference < 0) {
+					return null;
+				}
+			}
+		}
+
+		@Override
+		void offer(HTTPInputGenerator generator) {
+			while (true) {
+				long position = enqueuePosition.get();
+				int index = (int) position & mask;
+				long difference = sequences.get(index) - position;
+				if (difference == 0) {
+					if (enqueuePosition.compareAndSet(position, position + 1)) {
+						cells.lazySet(index, generator);
+						sequences.set(index, position + 1);
+						return;
+					}
+				} else if (difference < 0) {
+					//cannot happen, as there are never more users than cells
+					Thread.yield();
+				}
+			}
+		}
+
+		@Override
+		int available() {
+			return (int) Math.max(0, enqueuePosition.get() - dequeuePosition.get());
+		}
+	}
+
+	/**
+	 * Array of user slots for the RANDOM mode. Each user has a fixed slot. A bitmap marks the available users.
+	 * Taking a user picks one of the available users uniformly at random and claims it with a single CAS.
+	 * The pick is uniform with respect to a snapshot of the bitmap. If the bitmap changes before the claim,
+	 * the pick is repeated.
+	 */
+	private static final class RandomShard extends UserShard {
+		private final HTTPInputGenerator[] slots;
+		private final AtomicLongArray availableBits;
+		private final int shardCount;
+
+		private RandomShard(int capacity, int shardCount) {
+			this.shardCount = shardCount;
+			slots = new HTTPInputGenerator[Math.max(1, capacity)];
+			availableBits = new AtomicLongArray((slots.length + 63) / 64);
+		}
+
+		@Override
+		HTTPInputGenerator poll() {
+			while (true) {
+				int available = available();
+				if (available == 0) {
+					return null;
+				}
+				int rank = ThreadLocalRandom.current().nextInt(available);
+				for (int w = 0; w < availableBits.length(); w++) {
+					long bits = availableBits.get(w);
+					int count = Long.bitCount(bits);
+					if (rank >= count) {
+						rank -= count;
+						continue;
+					}
+					long bit = nthOneBit(bits, rank);
+					if (availableBits.compareAndSet(w, bits, bits & ~bit)) {
+						return slots[(w << 6) + Long.numberOfTrailingZeros(bit)];
+					}
+					//the word changed since counting, pick again
+					break;
+				}
+			}
+		}
+
+		/**
+		 * Returns the n-th lowest set bit of a word.
+		 * @param bits The word.
+		 * @param n The index of the set bit, starting at 0. Must be less than the number of set bits.
+		 * @return The word with only that bit set.
+		 */
+		private static long nthOneBit(long bits, int n) {
+			long remaining = bits;
+			for (int i = 0; i < n; i++) {
+				remaining &= remaining - 1;
+			}
+			return Long.lowestOneBit(remaining);
+		}
+
+		@Override
+		void offer(HTTPInputGenerator generator) {
+			int slot = generator.getId() / shardCount;
+			if (slots[slot] == null) {
+				//first placement, while the pool is initialized and not yet visible to other threads
+				slots[slot] = generator;
+			}
+			int word = slot >>> 6;
+			long bit = 1L << (slot & 63);
+			while (true) {
+				long bits = availableBits.get(word);
+				if (availableBits.compareAndSet(word, bits, bits | bit)) {
+					return;
+				}
+			}
+		}
+
+		@Override
+		int available() {
+			int available = 0;
+			for (int i = 0; i < availableBits.length(); i++) {
+				available += Long.bitCount(availableBits.get(i));
+			}
+			return available;
+		}
+	}
+}
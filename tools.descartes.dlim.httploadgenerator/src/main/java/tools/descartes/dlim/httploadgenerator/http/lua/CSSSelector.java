@@ -0,0 +1,376 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http.lua;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled CSS selector. Supports the following subset of CSS selectors:
+ * type selectors (<code>a</code>, <code>*</code>), ids (<code>#main</code>), classes (<code>.item</code>),
+ * attribute selectors (<code>[name]</code>, <code>[name=value]</code>, <code>~=</code>, <code>^=</code>,
+ * <code>$=</code>, <code>*=</code>), the descendant and child (<code>&gt;</code>) combinators,
+ * and selector groups separated by commas. Pseudo-classes (e.g., <code>a:hover</code>) are not supported.
+ * Tag and attribute names are matched case-insensitively, attribute values case-sensitively, unless
+ * the attribute selector ends with the <code>i</code> flag (e.g., <code>[type=checkbox i]</code>).
+ * Compiled selectors are immutable and cached, like the regular expressions in the {@link PatternCache}.
+ * @author Joakim von Kistowski
+ *
+ */
+public final class CSSSelector {
+
+	/** Maximum number of cached selectors. */
+	private static final int MAX_CACHE_SIZE = 512;
+
+	private static final ConcurrentHashMap<String, CSSSelector> SELECTORS = new ConcurrentHashMap<>();
+
+	/** Alternative selectors of a selector group, each as a chain of compound selectors. */
+	private final Compound[][] alternatives;
+
+	private CSSSelector(Compound[][] alternatives) {
+		this.alternatives = alternatives;
+	}
+
+	/**
+	 * Returns the compiled selector for a CSS selector expression.
+	 * @param selector The CSS selector.
+	 * @return The compiled selector.
+	 * @throws IllegalArgumentException If the selector is invalid or not supported.
+	 */
+	public static CSSSelector compile(String selector) {
+		CSSSelector compiled = SELECTORS.get(selector);
+		if (compiled == null) {
+			compiled = new CSSSelector(parse(selector));
+			if (SELECTORS.size() >= MAX_CACHE_SIZE) {
+				Iterator<String> keys = SELECTORS.keySet().iterator();
+				if (keys.hasNext()) {
+					SELECTORS.remove(keys.next());
+				}
+			}
+			SELECTORS.putIfAbsent(selector, compiled);
+		}
+		return compiled;
+	}
+
+	/**
+	 * Returns the alternatives of the selector group. Each alternative is a chain of compound selectors,
+	 * with the subject of the selector at the end.
+	 * @return The alternatives.
+	 */
+	Compound[][] getAlternatives() {
+		return alternatives;
+	}
+
+	private static Compound[][] parse(String selector) {
+		ArrayList<Compound[]> alternatives = new ArrayList<>();
+		ArrayList<Compound> chain = new ArrayList<>();
+		boolean child = false;
+		int i = 0;
+		int length = selector.length();
+		while (true) {
+			while (i < length && Character.isWhitespace(selector.charAt(i))) {
+				i++;
+			}
+			if (i >= length || selector.charAt(i) == ',') {
+				if (chain.isEmpty() || child) {
+					throw new IllegalArgumentException("Empty CSS selector: " + selector);
+				}
+				alternatives.add(chain.toArray(new Compound[chain.size()]));
+				chain.clear();
+				if (i >= length) {
+					break;
+				}
+				i++;
+				continue;
+			}
+			if (selector.charAt(i) == '>') {
+				if (chain.isEmpty() || child) {
+					throw new IllegalArgumentException("Misplaced '>' in CSS selector: " + selector);
+				}
+				child = true;
+				i++;
+				continue;
+			}
+			Compound compound = new Compound(child);
+			child = false;
+			i = parseCompound(selector, i, compound);
+			chain.add(compound);
+		}
+		return alternatives.toArray(new Compound[alternatives.size()][]);
+	}
+
+	private static int parseCompound(String selector, int start, Compound compound) {
+		int i = start;
+		int length = selector.length();
+		if (selector.charAt(i) == '*') {
+			i++;
+		} else if (isNameChar(selector.charAt(i))) {
+			int end = nameEnd(selector, i);
+			compound.tag = selector.substring(i, end).toLowerCase(Locale.ROOT);
+			i = end;
+		}
+		ArrayList<AttributeCondition> conditions = new ArrayList<>();
+		while (i < length) {
+			char c = selector.charAt(i);
+			if (c == '#' || c == '.') {
+				int end = nameEnd(selector, i + 1);
+				if (end == i + 1) {
+					throw new IllegalArgumentException("Empty id or class in CSS selector: " + selector);
+				}
+				String value = selector.substring(i + 1, end);
+				if (c == '#') {
+					conditions.add(new AttributeCondition("id", Operator.EQUALS, value, false));
+				} else {
+					conditions.add(new AttributeCondition("class", Operator.CONTAINS_WORD, value, false));
+				}
+				i = end;
+			} else if (c == '[') {
+				i = parseAttribute(selector, i + 1, conditions);
+			} else if (c == ':') {
+				throw new IllegalArgumentException("Unsupported pseudo-class in CSS selector: " + selector);
+			} else if (Character.isWhitespace(c) || c == '>' || c == ',') {
+				break;
+			} else {
+				throw new IllegalArgumentException("Unsupported character '" + c + "' in CSS selector: " + selector);
+			}
+		}
+		if (i == start) {
+			throw new IllegalArgumentException("Invalid CSS selector: " + selector);
+		}
+		compound.conditions = conditions.toArray(new AttributeCondition[conditions.size()]);
+		return i;
+	}
+
+	private static int parseAttribute(String selector, int start, ArrayList<AttributeCondition> conditions) {
+		int length = selector.length();
+		int i = skipWhitespace(selector, start);
+		int nameEnd = nameEnd(selector, i);
+		if (nameEnd == i) {
+			throw new IllegalArgumentException("Empty attribute name in CSS selector: " + selector);
+		}
+		String name = selector.substring(i, nameEnd).toLowerCase(Locale.ROOT);
+		i = skipWhitespace(selector, nameEnd);
+		if (i < length && selector.charAt(i) == ']') {
+			conditions.add(new AttributeCondition(name, Operator.EXISTS, null, false));
+			return i + 1;
+		}
+		Operator operator;
+		char c = i < length ? selector.charAt(i) : ' ';
+		if (c == '=') {
+			operator = Operator.EQUALS;
+			i++;
+		} else if (i + 1 < length && selector.charAt(i + 1) == '=') {
+			if (c == '~') {
+				operator = Operator.CONTAINS_WORD;
+			} else if (c == '^') {
+				operator = Operator.STARTS_WITH;
+			} else if (c == '$') {
+				operator = Operator.ENDS_WITH;
+			} else if (c == '*') {
+				operator = Operator.CONTAINS;
+			} else {
+				throw new IllegalArgumentException("Unsupported attribute operator in CSS selector: " + selector);
+			}
+			i += 2;
+		} else {
+			throw new IllegalArgumentException("Invalid attribute selector in CSS selector: " + selector);
+		}
+		i = skipWhitespace(selector, i);
+		String value;
+		if (i < length && (selector.charAt(i) == '"' || selector.charAt(i) == '\'')) {
+			int end = selector.indexOf(selector.charAt(i), i + 1);
+			if (end < 0) {
+				throw new IllegalArgumentException("Unterminated string in CSS selector: " + selector);
+			}
+			value = selector.substring(i + 1, end);
+			i = end + 1;
+		} else {
+			int end = i;
+			while (end < length && selector.charAt(end) != ']' && !Character.isWhitespace(selector.charAt(end))) {
+				end++;
+			}
+			value = selector.substring(i, end);
+			i = end;
+		}
+		i = skipWhitespace(selector, i);
+		boolean ignoreCase = false;
+		if (i < length && (selector.charAt(i) == 'i' || selector.charAt(i) == 'I')) {
+			ignoreCase = true;
+			i = skipWhitespace(selector, i + 1);
+		}
+		if (i >= length || selector.charAt(i) != ']') {
+			throw new IllegalArgumentException("Missing ']' in CSS selector: " + selector);
+		}
+		if (ignoreCase) {
+			value = value.toLowerCase(Locale.ROOT);
+		}
+		conditions.add(new AttributeCondition(name, operator, value, ignoreCase));
+		return i + 1;
+	}
+
+	private static boolean isNameChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+	}
+
+	private static int skipWhitespace(String selector, int start) {
+		int i = start;
+		while (i < selector.length() && Character.isWhitespace(selector.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static int nameEnd(String selector, int start) {
+		int end = start;
+		while (end < selector.length() && isNameChar(selector.charAt(end))) {
+			end++;
+		}
+		return end;
+	}
+
+	/**
+	 * Operators of attribute conditions.
+	 */
+	enum Operator {
+		/** The attribute exists. */
+		EXISTS,
+		/** The attribute value equals the condition value. */
+		EQUALS,
+		/** The attribute value is a whitespace separated list containing the condition value. */
+		CONTAINS_WORD,
+		/** The attribute value starts with the condition value. */
+		STARTS_WITH,
+		/** The attribute value ends with the condition value. */
+		ENDS_WITH,
+		/** The attribute value contains the condition value. */
+		CONTAINS;
+	}
+
+	/**
+	 * Condition on an attribute of an element.
+	 */
+	static final class AttributeCondition {
+		private final String name;
+		private final Operator operator;
+		private final String value;
+		private final boolean ignoreCase;
+
+		private AttributeCondition(String name, Operator operator, String value, boolean ignoreCase) {
+			this.name = name;
+			this.operator = operator;
+			this.value = value;
+			this.ignoreCase = ignoreCase;
+		}
+
+		/**
+		 * Returns the lower case attribute name.
+		 * @return The attribute name.
+		 */
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the operator.
+		 * @return The operator.
+		 */
+		Operator getOperator() {
+			return operator;
+		}
+
+		/**
+		 * Returns the value to compare with. Null for {@link Operator#EXISTS}.
+		 * Lower case if the comparison ignores case.
+		 * @return The value.
+		 */
+		String getValue() {
+			return value;
+		}
+
+		/**
+		 * Checks if an attribute value fulfills this condition.
+		 * @param decodedValue The decoded attribute value.
+		 * @return True if the condition is fulfilled.
+		 */
+		boolean matches(String decodedValue) {
+			String attributeValue = ignoreCase ? decodedValue.toLowerCase(Locale.ROOT) : decodedValue;
+			switch (operator) {
+			case EQUALS:
+				return attributeValue.equals(value);
+			case CONTAINS_WORD:
+				int from = 0;
+				while ((from = attributeValue.indexOf(value, from)) >= 0) {
+					int end = from + value.length();
+					if ((from == 0 || Character.isWhitespace(attributeValue.charAt(from - 1)))
+							&& (end == attributeValue.length() || Character.isWhitespace(attributeValue.charAt(end)))) {
+						return !value.isEmpty();
+					}
+					from++;
+				}
+				return false;
+			case STARTS_WITH:
+				return !value.isEmpty() && attributeValue.startsWith(value);
+			case ENDS_WITH:
+				return !value.isEmpty() && attributeValue.endsWith(value);
+			case CONTAINS:
+				return !value.isEmpty() && attributeValue.contains(value);
+			default:
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Compound selector, matching a single element.
+	 */
+	static final class Compound {
+		private final boolean child;
+		/** Lower case tag name. Null for any tag. */
+		private String tag;
+		private AttributeCondition[] conditions;
+
+		private Compound(boolean child) {
+			this.child = child;
+		}
+
+		/**
+		 * Returns true if the element matching this compound must be a child of the element matching
+		 * the previous compound. False if it may be any descendant.
+		 * @return True for the child combinator.
+		 */
+		boolean isChild() {
+			return child;
+		}
+
+		/**
+		 * Returns the lower case tag name.
+		 * @return The tag name. Null for any tag.
+		 */
+		String getTag() {
+			return tag;
+		}
+
+		/**
+		 * Returns the attribute conditions.
+		 * @return The conditions.
+		 */
+		AttributeCondition[] getConditions() {
+			return conditions;
+		}
+	}
+}
@@ -15,33 +15,65 @@
  */
 package tools.descartes.dlim.httploadgenerator.http.lua;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+
+import org.luaj.vm2.LuaTable;
 
 /**
  * Stateful helper functions for extracting matches and substrings in HTML code from LUA.
  * Stores the current response to be accessed from the LUA script.
+ * The response is kept as received. It is only decoded and split into lines once a helper function
+ * is called for it, so that scripts that never inspect responses do not pay for parsing them.
+ * Lines are indexed as trimmed offsets into the decoded response and matched without copying them.
+ * Regular expressions are compiled once using the {@link PatternCache}.
  * @author Joakim von Kistowski
  *
  */
 public class HTMLFunctions {
 
+	private static final int MAX_RETAINED_LINE_BOUNDS = 8192;
+
+	private byte[] content;
+	private Charset charset;
 	private String html;
-	private String[] lines;
+
+	/** Start and end offsets of each trimmed line in {@link #html}. Null until the lines are indexed. */
+	private int[] lineBounds;
+	private int lineCount;
+	private boolean lineBoundsValid = false;
 
 	/**
 	 * Replaces the HTMLFunctions singleton with a new one.
 	 * @param html The new html content.
 	 */
 	public void resetHTMLFunctions(String html) {
+		this.content = null;
+		this.charset = null;
 		this.html = html;
-		this.lines = html.split("\n");
-		for (int i = 0; i < lines.length; i++) {
-			lines[i] = lines[i].trim();
+		this.lineCount = 0;
+		this.lineBoundsValid = false;
+		//the line index is reused across responses, unless a very large response made it grow
+		if (lineBounds != null && lineBounds.length > MAX_RETAINED_LINE_BOUNDS) {
+			lineBounds = null;
 		}
 	}
 
+	/**
+	 * Replaces the current content with a raw response body.
+	 * The body is neither copied nor decoded until it is accessed.
+	 * @param content The raw response body.
+	 * @param encoding The character encoding of the body. UTF-8 is used if null or unsupported.
+	 */
+	public void resetHTMLFunctions(byte[] content, String encoding) {
+		resetHTMLFunctions((String) null);
+		this.content = content;
+		this.charset = toCharset(encoding);
+	}
+
 	/**
 	 * Private constructor for only returning the same instance of the class.
 	 * 
@@ -51,6 +83,69 @@ public class HTMLFunctions {
 		resetHTMLFunctions(html);
 	}
 
+	private static Charset toCharset(String encoding) {
+		if (encoding != null) {
+			try {
+				return Charset.forName(encoding);
+			} catch (IllegalArgumentException e) {
+				//fall through to default
+			}
+		}
+		return StandardCharsets.UTF_8;
+	}
+
+	/**
+	 * Indexes the trimmed lines of the current content, if not already done.
+	 * Mirrors the lines of {@code html.split("\n")}, with each line trimmed.
+	 */
+	private void indexLines() {
+		if (lineBoundsValid) {
+			return;
+		}
+		String text = getHTML();
+		if (lineBounds == null) {
+			lineBounds = new int[32];
+		}
+		int length = text.length();
+		int count = 0;
+		//number of lines that only consist of trailing empty lines, which split omits
+		int trailingEmpty = 0;
+		int lineStart = 0;
+		boolean split = false;
+		while (true) {
+			int lineEnd = text.indexOf('\n', lineStart);
+			if (lineEnd < 0) {
+				lineEnd = length;
+			} else {
+				split = true;
+			}
+			trailingEmpty = (lineEnd == lineStart) ? trailingEmpty + 1 : 0;
+			int start = lineStart;
+			int end = lineEnd;
+			while (start < end && text.charAt(start) <= ' ') {
+				start++;
+			}
+			while (end > start && text.charAt(end - 1) <= ' ') {
+				end--;
+			}
+			if (2 * count + 2 > lineBounds.length) {
+				lineBounds = Arrays.copyOf(lineBounds, 2 * lineBounds.length);
+			}
+			lineBounds[2 * count] = start;
+			lineBounds[2 * count + 1] = end;
+			count++;
+			if (lineEnd >= length) {
+				break;
+			}
+			lineStart = lineEnd + 1;
+		}
+		if (split) {
+			count -= trailingEmpty;
+		}
+		lineCount = count;
+		lineBoundsValid = true;
+	}
+
 	/**
 	 * Checking the HTML file saved as string for a specific expression.
 	 * 
@@ -58,10 +153,14 @@ public class HTMLFunctions {
 	 * @return An array list of all matches.
 	 */
 	public ArrayList<String> getMatches(String regex) {
+		indexLines();
 		ArrayList<String> matches = new ArrayList<String>();
-		for (int i = 0; i < lines.length; i++) {
-			if (lines[i].matches(regex)) {
-				matches.add(lines[i]);
+		Matcher matcher = PatternCache.get(regex).matcher(html);
+		for (int i = 0; i < lineCount; i++) {
+			int start = lineBounds[2 * i];
+			int end = lineBounds[2 * i + 1];
+			if (matcher.region(start, end).matches()) {
+				matches.add(html.substring(start, end));
 			}
 		}
 		return matches;
@@ -76,14 +175,12 @@ public class HTMLFunctions {
 	 * @return The matching section in the parent string.
 	 */
 	public static String extractSubString(String parentString, String prefixRegex, String postfixRegex) {
-		Pattern prefixPattern = Pattern.compile(prefixRegex);
-		Pattern postfixPattern = Pattern.compile(postfixRegex);
-		Matcher prefixMatcher = prefixPattern.matcher(parentString);
+		Matcher prefixMatcher = PatternCache.get(prefixRegex).matcher(parentString);
 		String subString = parentString;
 		if (prefixMatcher.find()) {
 			subString = subString.substring(prefixMatcher.end());
 		}
-		Matcher postfixMatcher = postfixPattern.matcher(subString);
+		Matcher postfixMatcher = PatternCache.get(postfixRegex).matcher(subString);
 		if (postfixMatcher.find()) {
 			subString = subString.substring(0, postfixMatcher.start());
 		}
@@ -95,23 +192,47 @@ public class HTMLFunctions {
 	 * @return The html content.
 	 */
 	public String getHTML() {
+		if (html == null) {
+			html = (content == null) ? "" : new String(content, charset);
+			content = null;
+		}
 		return html;
 	}
 
+	/**
+	 * Selects elements using a CSS selector and extracts an attribute or their text content.
+	 * The response is tokenized in a single pass, which stops once the limit is reached.
+	 * @param cssSelector The CSS selector, see {@link CSSSelector} for the supported syntax.
+	 * @param attribute The attribute to extract. Elements without the attribute are skipped.
+	 * 		Null or empty to extract the text content of the elements.
+	 * @param limit The maximum number of results.
+	 * @return A LUA table (list) of the extracted values in document order.
+	 * @throws IllegalArgumentException If the selector is invalid.
+	 */
+	public LuaTable select(String cssSelector, String attribute, int limit) {
+		return new HTMLSelectScanner(getHTML(), CSSSelector.compile(cssSelector), attribute, limit).scan();
+	}
+
 	/**
 	 * Postfix and prefix must be unique within a line and directly border the string
-	 * that is to be extracted.
+	 * that is to be extracted. Each line is searched once for the first occurrence of prefix,
+	 * matching section, and postfix. The matching section of that occurrence is extracted.
 	 * @param prefixRegex Prefix before the section that must match.
 	 * @param matchingRegex must match the String that is to be extracted.
 	 * @param postfixRegex Postfix after the matching section.
 	 * @return The matching string.
 	 */
 	public ArrayList<String> extractAllMatches(String prefixRegex, String matchingRegex, String postfixRegex) {
-		String lineRegex = ".*" + prefixRegex + matchingRegex + postfixRegex + ".*";
-		ArrayList<String> matches = getMatches(lineRegex);
+		String combinedRegex = "(?:" + prefixRegex + ")(" + matchingRegex + ")(?:" + postfixRegex + ")";
+		indexLines();
+		Matcher matcher = PatternCache.get(combinedRegex).matcher(html);
+		//the extracted section is the first group after the groups of the prefix
+		int group = PatternCache.groupCount(prefixRegex) + 1;
 		ArrayList<String> subStrings = new ArrayList<String>();
-		for (String line : matches) {
-			subStrings.add(extractSubString(line, prefixRegex, postfixRegex));
+		for (int i = 0; i < lineCount; i++) {
+			if (matcher.region(lineBounds[2 * i], lineBounds[2 * i + 1]).find()) {
+				subStrings.add(matcher.group(group));
+			}
 		}
 		return subStrings;
 	}
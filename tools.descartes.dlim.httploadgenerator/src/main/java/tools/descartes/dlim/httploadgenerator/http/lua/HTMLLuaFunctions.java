@@ -17,7 +17,9 @@ package tools.descartes.dlim.httploadgenerator.http.lua;
 
 import java.util.ArrayList;
 
+import org.luaj.vm2.LuaError;
 import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
 import org.luaj.vm2.lib.OneArgFunction;
 import org.luaj.vm2.lib.VarArgFunction;
 
@@ -85,7 +87,8 @@ public class HTMLLuaFunctions {
 			String postfix = postfixRegex.optjstring("");
 			ArrayList<String> matches = new ArrayList<String>();
 			if (!prefix.isEmpty() && !postfix.isEmpty()) {
-				matches = htmlfunctions.extractAllMatches(prefix, ".*", postfix);
+				//reluctant, so that the section ends at the first postfix after the prefix
+				matches = htmlfunctions.extractAllMatches(prefix, ".*?", postfix);
 			}
 			return LuaHelpers.toLuaTable(matches);
 		}
@@ -103,4 +106,38 @@ public class HTMLLuaFunctions {
 		}
 
 	}
+
+	/**
+	 * Function to select elements using a CSS selector and extract an attribute or their text content.
+	 * Arguments: the CSS selector, the attribute (optional, text content if nil), and the maximum
+	 * number of results (optional, unlimited if nil).
+	 * @author Joakim von Kistowski
+	 *
+	 */
+	public static class Select extends VarArgFunction {
+
+		private HTMLFunctions htmlfunctions;
+		
+		/**
+		 * Instantiate the function.
+		 * @param htmlfunctions Reference to the stateful {@link HTMLFunctions}
+		 * container that knows the most recent response.
+		 */
+		public Select(HTMLFunctions htmlfunctions) {
+			this.htmlfunctions = htmlfunctions;
+		}
+		
+		@Override
+		public Varargs invoke(Varargs args) {
+			String selector = args.checkjstring(1);
+			String attribute = args.optjstring(2, null);
+			int limit = args.optint(3, Integer.MAX_VALUE);
+			try {
+				return htmlfunctions.select(selector, attribute, limit);
+			} catch (IllegalArgumentException e) {
+				throw new LuaError(e.getMessage());
+			}
+		}
+
+	}
 }
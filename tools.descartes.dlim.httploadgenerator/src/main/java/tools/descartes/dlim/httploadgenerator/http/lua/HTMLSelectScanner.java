@@ -0,0 +1,519 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http.lua;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+
+/**
+ * Streaming HTML tokenizer that selects elements using a {@link CSSSelector}.
+ * The stack of open elements is kept as offsets into the document, so that tags and attributes
+ * of elements are only examined when a selector is matched against them and non-matching
+ * elements cause no allocations. Scanning stops as soon as the requested number of results was found.
+ * The tokenizer is lenient: void elements, self-closing tags, raw text elements (e.g., script),
+ * unmatched end tags, and the most common implicitly closed elements (e.g., li, p, td) are handled.
+ * @author Joakim von Kistowski
+ *
+ */
+final class HTMLSelectScanner {
+
+	private static final String[] VOID_ELEMENTS = {"area", "base", "br", "col", "embed", "hr", "img", "input",
+		"link", "meta", "param", "source", "track", "wbr"};
+	private static final String[] RAW_TEXT_ELEMENTS = {"script", "style", "textarea", "title"};
+	/** Elements that close an open p element. */
+	private static final String[] P_CLOSING_ELEMENTS = {"p", "div", "ul", "ol", "dl", "table", "form", "pre",
+		"blockquote", "h1", "h2", "h3", "h4", "h5", "h6", "section", "article", "header", "footer", "nav", "hr"};
+
+	private final String text;
+	private final int length;
+	private final CSSSelector.Compound[][] alternatives;
+	/** Lower case attribute to extract. Null to extract the text content. */
+	private final String attribute;
+	private final int limit;
+	private int pos = 0;
+
+	/** Open elements, as offsets of their names and attribute sections. */
+	private int depth = 0;
+	private int[] nameStarts = new int[32];
+	private int[] nameEnds = new int[32];
+	private int[] attributeStarts = new int[32];
+	private int[] attributeEnds = new int[32];
+
+	/** Bounds of the attribute value found by the last call of {@link #findAttribute(int, String)}. */
+	private int valueStart;
+	private int valueEnd;
+
+	private final LuaTable results = new LuaTable();
+	private int resultCount = 0;
+	/** Text content captures of selected elements that have not been closed yet. */
+	private final ArrayList<Capture> captures = new ArrayList<>();
+
+	/**
+	 * Creates a new scanner.
+	 * @param text The HTML document.
+	 * @param selector The selector.
+	 * @param attribute The attribute to extract from selected elements. Null or empty for their text content.
+	 * @param limit The maximum number of results.
+	 */
+	HTMLSelectScanner(String text, CSSSelector selector, String attribute, int limit) {
+		this.text = text;
+		this.length = text.length();
+		this.alternatives = selector.getAlternatives();
+		this.attribute = (attribute == null || attribute.isEmpty()) ? null : attribute.toLowerCase(Locale.ROOT);
+		this.limit = limit;
+	}
+
+	/**
+	 * Scans the document.
+	 * @return A LUA table (list) of the extracted values in document order.
+	 */
+	LuaTable scan() {
+		while (pos < length && !isDone()) {
+			int tagStart = text.indexOf('<', pos);
+			if (tagStart < 0) {
+				appendText(pos, length);
+				break;
+			}
+			appendText(pos, tagStart);
+			pos = tagStart;
+			char next = tagStart + 1 < length ? text.charAt(tagStart + 1) : ' ';
+			if (isLetter(next)) {
+				startTag();
+			} else if (next == '/' && tagStart + 2 < length && isLetter(text.charAt(tagStart + 2))) {
+				endTag();
+			} else if (text.startsWith("<!--", tagStart)) {
+				int end = text.indexOf("-->", tagStart + 4);
+				pos = end < 0 ? length : end + 3;
+			} else if (next == '!' || next == '?' || next == '/') {
+				int end = text.indexOf('>', tagStart);
+				pos = end < 0 ? length : end + 1;
+			} else {
+				appendText(tagStart, tagStart + 1);
+				pos = tagStart + 1;
+			}
+		}
+		//elements that are still open at the end of the document are closed implicitly
+		popTo(0);
+		return results;
+	}
+
+	private boolean isDone() {
+		return resultCount >= limit && captures.isEmpty();
+	}
+
+	private void startTag() {
+		int nameStart = pos + 1;
+		int nameEnd = nameStart;
+		while (nameEnd < length && isNameChar(text.charAt(nameEnd))) {
+			nameEnd++;
+		}
+		int tagEnd = findTagEnd(nameEnd);
+		boolean selfClosing = tagEnd > nameEnd && text.charAt(tagEnd - 1) == '/';
+		pos = tagEnd < length ? tagEnd + 1 : length;
+		closeImplicitly(nameStart, nameEnd);
+		push(nameStart, nameEnd, nameEnd, selfClosing ? tagEnd - 1 : tagEnd);
+		int element = depth - 1;
+		boolean isVoid = selfClosing || nameIn(element, VOID_ELEMENTS);
+		if (resultCount < limit && matches(element)) {
+			if (attribute != null) {
+				if (findAttribute(element, attribute)) {
+					results.rawset(++resultCount, LuaValue.valueOf(attributeValue()));
+				}
+			} else if (isVoid) {
+				results.rawset(++resultCount, LuaValue.EMPTYSTRING);
+			} else {
+				captures.add(new Capture(element, ++resultCount));
+			}
+		}
+		if (isVoid) {
+			depth--;
+		} else if (nameIn(element, RAW_TEXT_ELEMENTS)) {
+			int end = findRawTextEnd(nameStart, nameEnd);
+			//script and style content is not text content
+			if (nameIs(element, "textarea") || nameIs(element, "title")) {
+				appendText(pos, end);
+			}
+			pos = end;
+			if (pos < length) {
+				endTag();
+			} else {
+				popTo(element);
+			}
+		}
+	}
+
+	private void endTag() {
+		int nameStart = pos + 2;
+		int nameEnd = nameStart;
+		while (nameEnd < length && isNameChar(text.charAt(nameEnd))) {
+			nameEnd++;
+		}
+		int tagEnd = text.indexOf('>', nameEnd);
+		pos = tagEnd < 0 ? length : tagEnd + 1;
+		for (int element = depth - 1; element >= 0; element--) {
+			if (nameEquals(element, nameStart, nameEnd)) {
+				popTo(element);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Closes elements that are implicitly closed by a start tag, e.g., an open li by the next li.
+	 */
+	private void closeImplicitly(int nameStart, int nameEnd) {
+		while (depth > 0) {
+			int top = depth - 1;
+			boolean close;
+			if (nameIs(top, "li") || nameIs(top, "option")) {
+				close = nameEquals(top, nameStart, nameEnd);
+			} else if (nameIs(top, "dt") || nameIs(top, "dd")) {
+				close = regionIs(nameStart, nameEnd, "dt") || regionIs(nameStart, nameEnd, "dd");
+			} else if (nameIs(top, "td") || nameIs(top, "th")) {
+				close = regionIs(nameStart, nameEnd, "td") || regionIs(nameStart, nameEnd, "th")
+						|| regionIs(nameStart, nameEnd, "tr");
+			} else if (nameIs(top, "tr")) {
+				close = regionIs(nameStart, nameEnd, "tr");
+			} else if (nameIs(top, "p")) {
+				close = false;
+				for (String name : P_CLOSING_ELEMENTS) {
+					if (regionIs(nameStart, nameEnd, name)) {
+						close = true;
+						break;
+					}
+				}
+			} else {
+				close = false;
+			}
+			if (!close) {
+				return;
+			}
+			popTo(top);
+		}
+	}
+
+	private void push(int nameStart, int nameEnd, int attributeStart, int attributeEnd) {
+		if (depth == nameStarts.length) {
+			nameStarts = Arrays.copyOf(nameStarts, depth * 2);
+			nameEnds = Arrays.copyOf(nameEnds, depth * 2);
+			attributeStarts = Arrays.copyOf(attributeStarts, depth * 2);
+			attributeEnds = Arrays.copyOf(attributeEnds, depth * 2);
+		}
+		nameStarts[depth] = nameStart;
+		nameEnds[depth] = nameEnd;
+		attributeStarts[depth] = attributeStart;
+		attributeEnds[depth] = attributeEnd;
+		depth++;
+	}
+
+	/**
+	 * Closes an element and all elements opened after it. Completes their text content captures.
+	 */
+	private void popTo(int element) {
+		for (int i = captures.size() - 1; i >= 0; i--) {
+			Capture capture = captures.get(i);
+			if (capture.element >= element) {
+				results.rawset(capture.resultIndex, LuaValue.valueOf(normalizeText(capture.content)));
+				captures.remove(i);
+			}
+		}
+		depth = Math.min(depth, element);
+	}
+
+	private void appendText(int start, int end) {
+		if (start < end) {
+			for (Capture capture : captures) {
+				capture.content.append(text, start, end);
+			}
+		}
+	}
+
+	/**
+	 * Finds the end of a tag, ignoring '>' in quoted attribute values.
+	 * @return The position of the closing '>', or the end of the document.
+	 */
+	private int findTagEnd(int from) {
+		int i = from;
+		char previous = ' ';
+		while (i < length) {
+			char c = text.charAt(i);
+			if (c == '>') {
+				return i;
+			} else if ((c == '"' || c == '\'') && previous == '=') {
+				int end = text.indexOf(c, i + 1);
+				if (end < 0) {
+					return length;
+				}
+				i = end;
+			}
+			if (!Character.isWhitespace(c)) {
+				previous = c;
+			}
+			i++;
+		}
+		return length;
+	}
+
+	private int findRawTextEnd(int nameStart, int nameEnd) {
+		int nameLength = nameEnd - nameStart;
+		int from = pos;
+		while (true) {
+			int end = text.indexOf("</", from);
+			if (end < 0) {
+				return length;
+			}
+			if (text.regionMatches(true, end + 2, text, nameStart, nameLength)
+					&& (end + 2 + nameLength >= length || !isNameChar(text.charAt(end + 2 + nameLength)))) {
+				return end;
+			}
+			from = end + 2;
+		}
+	}
+
+	private boolean matches(int element) {
+		for (CSSSelector.Compound[] chain : alternatives) {
+			if (matchesChain(chain, chain.length - 1, element)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean matchesChain(CSSSelector.Compound[] chain, int index, int element) {
+		if (!matchesCompound(chain[index], element)) {
+			return false;
+		}
+		if (index == 0) {
+			return true;
+		}
+		if (chain[index].isChild()) {
+			return element > 0 && matchesChain(chain, index - 1, element - 1);
+		}
+		for (int ancestor = element - 1; ancestor >= 0; ancestor--) {
+			if (matchesChain(chain, index - 1, ancestor)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean matchesCompound(CSSSelector.Compound compound, int element) {
+		if (compound.getTag() != null && !nameIs(element, compound.getTag())) {
+			return false;
+		}
+		for (CSSSelector.AttributeCondition condition : compound.getConditions()) {
+			if (!findAttribute(element, condition.getName())) {
+				return false;
+			}
+			if (condition.getOperator() != CSSSelector.Operator.EXISTS && !condition.matches(attributeValue())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds an attribute of an open element and stores the bounds of its value.
+	 * @param element The element.
+	 * @param name The lower case attribute name.
+	 * @return True if the element has the attribute.
+	 */
+	private boolean findAttribute(int element, String name) {
+		int i = attributeStarts[element];
+		int end = attributeEnds[element];
+		while (i < end) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c) || c == '/') {
+				i++;
+				continue;
+			}
+			int attributeNameStart = i;
+			while (i < end && !Character.isWhitespace(text.charAt(i)) && text.charAt(i) != '='
+					&& text.charAt(i) != '/') {
+				i++;
+			}
+			int attributeNameEnd = i;
+			while (i < end && Character.isWhitespace(text.charAt(i))) {
+				i++;
+			}
+			int start = i;
+			int stop = i;
+			if (i < end && text.charAt(i) == '=') {
+				i++;
+				while (i < end && Character.isWhitespace(text.charAt(i))) {
+					i++;
+				}
+				if (i < end && (text.charAt(i) == '"' || text.charAt(i) == '\'')) {
+					int quoteEnd = text.indexOf(text.charAt(i), i + 1);
+					start = i + 1;
+					stop = (quoteEnd < 0 || quoteEnd > end) ? end : quoteEnd;
+					i = stop + 1;
+				} else {
+					start = i;
+					while (i < end && !Character.isWhitespace(text.charAt(i))) {
+						i++;
+					}
+					stop = i;
+				}
+			}
+			if (attributeNameEnd == attributeNameStart) {
+				i++;
+			} else if (regionIs(attributeNameStart, attributeNameEnd, name)) {
+				valueStart = start;
+				valueEnd = stop;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the decoded value of the attribute found by the last call of {@link #findAttribute(int, String)}.
+	 */
+	private String attributeValue() {
+		return decodeEntities(text.substring(valueStart, valueEnd));
+	}
+
+	private boolean nameIs(int element, String lowerCaseName) {
+		return regionIs(nameStarts[element], nameEnds[element], lowerCaseName);
+	}
+
+	private boolean nameIn(int element, String[] lowerCaseNames) {
+		for (String name : lowerCaseNames) {
+			if (nameIs(element, name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean nameEquals(int element, int nameStart, int nameEnd) {
+		int nameLength = nameEnd - nameStart;
+		return nameEnds[element] - nameStarts[element] == nameLength
+				&& text.regionMatches(true, nameStarts[element], text, nameStart, nameLength);
+	}
+
+	private boolean regionIs(int start, int end, String lowerCaseName) {
+		return end - start == lowerCaseName.length() && text.regionMatches(true, start, lowerCaseName, 0, end - start);
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isNameChar(char c) {
+		return isLetter(c) || (c >= '0' && c <= '9') || c == '-' || c == '_' || c == ':';
+	}
+
+	/**
+	 * Decodes entities and collapses whitespace of text content.
+	 */
+	private static String normalizeText(CharSequence content) {
+		StringBuilder normalized = new StringBuilder(content.length());
+		boolean space = false;
+		for (int i = 0; i < content.length(); i++) {
+			char c = content.charAt(i);
+			if (Character.isWhitespace(c)) {
+				space = normalized.length() > 0;
+			} else {
+				if (space) {
+					normalized.append(' ');
+					space = false;
+				}
+				normalized.append(c);
+			}
+		}
+		return decodeEntities(normalized.toString());
+	}
+
+	/**
+	 * Decodes the most common named and all numeric character references.
+	 * @param value The raw value.
+	 * @return The decoded value.
+	 */
+	static String decodeEntities(String value) {
+		int amp = value.indexOf('&');
+		if (amp < 0) {
+			return value;
+		}
+		StringBuilder decoded = new StringBuilder(value.length());
+		decoded.append(value, 0, amp);
+		int i = amp;
+		while (i < value.length()) {
+			char c = value.charAt(i);
+			int semicolon = c == '&' ? value.indexOf(';', i) : -1;
+			if (semicolon < 0 || semicolon - i > 10) {
+				decoded.append(c);
+				i++;
+				continue;
+			}
+			String entity = value.substring(i + 1, semicolon);
+			int codePoint = -1;
+			if (entity.startsWith("#x") || entity.startsWith("#X")) {
+				codePoint = parseCodePoint(entity.substring(2), 16);
+			} else if (entity.startsWith("#")) {
+				codePoint = parseCodePoint(entity.substring(1), 10);
+			} else if (entity.equals("amp")) {
+				codePoint = '&';
+			} else if (entity.equals("lt")) {
+				codePoint = '<';
+			} else if (entity.equals("gt")) {
+				codePoint = '>';
+			} else if (entity.equals("quot")) {
+				codePoint = '"';
+			} else if (entity.equals("apos")) {
+				codePoint = '\'';
+			} else if (entity.equals("nbsp")) {
+				codePoint = '\u00a0';
+			}
+			if (codePoint < 0) {
+				decoded.append(c);
+				i++;
+			} else {
+				decoded.appendCodePoint(codePoint);
+				i = semicolon + 1;
+			}
+		}
+		return decoded.toString();
+	}
+
+	private static int parseCodePoint(String digits, int radix) {
+		try {
+			int codePoint = Integer.parseInt(digits, radix);
+			return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Text content of a selected element that is still open.
+	 */
+	private static final class Capture {
+		private final int element;
+		private final int resultIndex;
+		private final StringBuilder content = new StringBuilder();
+
+		private Capture(int element, int resultIndex) {
+			this.element = element;
+			this.resultIndex = resultIndex;
+		}
+	}
+}
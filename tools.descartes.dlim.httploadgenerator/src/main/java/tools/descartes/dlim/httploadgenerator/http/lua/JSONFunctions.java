@@ -0,0 +1,418 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http.lua;
+
+import java.util.ArrayList;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+
+/**
+ * Stateful helper functions for extracting values from JSON responses from LUA.
+ * Values are selected using a {@link JSONPath} in a single streaming pass over the response.
+ * Only the selected values are converted into LUA values, all other values are skipped
+ * without being materialized. The scan ends as soon as the requested number of values was found.
+ * JSON objects and arrays are converted into LUA tables (arrays starting at index 1),
+ * JSON null is converted into nil.
+ * @author Joakim von Kistowski
+ *
+ */
+public class JSONFunctions {
+
+	private final HTMLFunctions response;
+
+	/**
+	 * Creates the JSON functions for a response.
+	 * @param response Reference to the stateful {@link HTMLFunctions} container that knows the most recent response.
+	 */
+	public JSONFunctions(HTMLFunctions response) {
+		this.response = response;
+	}
+
+	/**
+	 * Selects values from the current response.
+	 * @param path The JSONPath expression.
+	 * @param limit The maximum number of values to select.
+	 * @return The selected values in document order. Null values are omitted.
+	 * @throws IllegalArgumentException If the path is invalid.
+	 * @throws LuaError If the response is not valid JSON.
+	 */
+	public ArrayList<LuaValue> select(String path, int limit) {
+		Scanner scanner = new Scanner(response.getHTML(), JSONPath.compile(path).getSteps(), limit);
+		return scanner.scan();
+	}
+
+	/**
+	 * Streaming scanner for a single selection. Tracks the path steps that are active at the current
+	 * value as a bit mask: bit i is set if the first i steps matched the path to the value.
+	 * A value at which all steps have matched is selected.
+	 */
+	private static final class Scanner {
+
+		private final String text;
+		private final int length;
+		private final JSONPath.Step[] steps;
+		private final long matchBit;
+		private final int limit;
+		private final ArrayList<LuaValue> results = new ArrayList<>();
+		/** Number of selected values that are still being materialized. */
+		private int pendingResults = 0;
+		/** Number of selected values that are not null. */
+		private int selectedCount = 0;
+		private boolean done = false;
+		private int pos = 0;
+		/** True if the last scanned string contained escape sequences. */
+		private boolean escaped = false;
+
+		private Scanner(String text, JSONPath.Step[] steps, int limit) {
+			this.text = text;
+			this.length = text.length();
+			this.steps = steps;
+			this.matchBit = 1L << steps.length;
+			this.limit = limit;
+		}
+
+		private ArrayList<LuaValue> scan() {
+			skipWhitespace();
+			if (pos < length && limit > 0) {
+				value(1L, false);
+			}
+			ArrayList<LuaValue> selected = new ArrayList<>(Math.min(results.size(), limit));
+			for (LuaValue result : results) {
+				if (selected.size() >= limit) {
+					break;
+				}
+				if (!result.isnil()) {
+					selected.add(result);
+				}
+			}
+			return selected;
+		}
+
+		/**
+		 * Scans a value.
+		 * @param mask The active path steps.
+		 * @param materialize True if the value is part of a selected value and must be converted.
+		 * @return The converted value. Null if the value was not materialized.
+		 */
+		private LuaValue value(long mask, boolean materialize) {
+			boolean selected = (mask & matchBit) != 0;
+			long searchMask = mask & ~matchBit;
+			skipWhitespace();
+			if (!selected && !materialize && searchMask == 0) {
+				skipValue();
+				return null;
+			}
+			int resultIndex = -1;
+			if (selected) {
+				resultIndex = results.size();
+				results.add(LuaValue.NIL);
+				pendingResults++;
+			}
+			boolean convert = materialize || selected;
+			LuaValue value;
+			char c = peek();
+			if (c == '{') {
+				value = object(searchMask, convert);
+			} else if (c == '[') {
+				value = array(searchMask, convert);
+			} else {
+				value = scalar(convert);
+			}
+			if (selected) {
+				results.set(resultIndex, value);
+				pendingResults--;
+				if (!value.isnil()) {
+					selectedCount++;
+				}
+				done = pendingResults == 0 && selectedCount >= limit;
+			}
+			return value;
+		}
+
+		private LuaValue object(long mask, boolean materialize) {
+			pos++;
+			LuaTable table = materialize ? new LuaTable() : null;
+			skipWhitespace();
+			if (peek() == '}') {
+				pos++;
+				return table;
+			}
+			while (true) {
+				skipWhitespace();
+				expect('"');
+				int keyStart = pos;
+				int keyEnd = scanString();
+				boolean keyEscaped = escaped;
+				String key = null;
+				long childMask = 0;
+				for (long m = mask; m != 0; m &= m - 1) {
+					int s = Long.numberOfTrailingZeros(m);
+					JSONPath.Step step = steps[s];
+					if (step.isDescendant()) {
+						childMask |= 1L << s;
+					}
+					if (step.getType() == JSONPath.StepType.WILDCARD) {
+						childMask |= 1L << (s + 1);
+					} else if (step.getType() == JSONPath.StepType.NAME) {
+						if (keyEscaped) {
+							if (key == null) {
+								key = decodeString(keyStart, keyEnd);
+							}
+							if (key.equals(step.getName())) {
+								childMask |= 1L << (s + 1);
+							}
+						} else if (keyEnd - keyStart == step.getName().length()
+								&& text.regionMatches(keyStart, step.getName(), 0, keyEnd - keyStart)) {
+							childMask |= 1L << (s + 1);
+						}
+					}
+				}
+				skipWhitespace();
+				expect(':');
+				LuaValue value = value(childMask, materialize);
+				if (materialize && !value.isnil()) {
+					if (key == null) {
+						key = keyEscaped ? decodeString(keyStart, keyEnd) : text.substring(keyStart, keyEnd);
+					}
+					table.rawset(key, value);
+				}
+				if (done) {
+					return table;
+				}
+				skipWhitespace();
+				char c = next();
+				if (c == '}') {
+					return table;
+				} else if (c != ',') {
+					throw invalid();
+				}
+			}
+		}
+
+		private LuaValue array(long mask, boolean materialize) {
+			pos++;
+			LuaTable table = materialize ? new LuaTable() : null;
+			skipWhitespace();
+			if (peek() == ']') {
+				pos++;
+				return table;
+			}
+			int index = 0;
+			while (true) {
+				long childMask = 0;
+				for (long m = mask; m != 0; m &= m - 1) {
+					int s = Long.numberOfTrailingZeros(m);
+					JSONPath.Step step = steps[s];
+					if (step.isDescendant()) {
+						childMask |= 1L << s;
+					}
+					if (step.getType() == JSONPath.StepType.WILDCARD
+							|| (step.getType() == JSONPath.StepType.INDEX && step.getIndex() == index)) {
+						childMask |= 1L << (s + 1);
+					}
+				}
+				LuaValue value = value(childMask, materialize);
+				index++;
+				if (materialize) {
+					table.rawset(index, value);
+				}
+				if (done) {
+					return table;
+				}
+				skipWhitespace();
+				char c = next();
+				if (c == ']') {
+					return table;
+				} else if (c != ',') {
+					throw invalid();
+				}
+			}
+		}
+
+		private LuaValue scalar(boolean materialize) {
+			char c = peek();
+			if (c == '"') {
+				pos++;
+				int start = pos;
+				int end = scanString();
+				if (!materialize) {
+					return null;
+				}
+				return LuaValue.valueOf(escaped ? decodeString(start, end) : text.substring(start, end));
+			} else if (c == 't') {
+				literal("true");
+				return LuaValue.TRUE;
+			} else if (c == 'f') {
+				literal("false");
+				return LuaValue.FALSE;
+			} else if (c == 'n') {
+				literal("null");
+				return LuaValue.NIL;
+			} else if (c == '-' || (c >= '0' && c <= '9')) {
+				int start = pos;
+				while (pos < length && isNumberChar(text.charAt(pos))) {
+					pos++;
+				}
+				if (!materialize) {
+					return null;
+				}
+				try {
+					return LuaValue.valueOf(Double.parseDouble(text.substring(start, pos)));
+				} catch (NumberFormatException e) {
+					pos = start;
+					throw invalid();
+				}
+			}
+			throw invalid();
+		}
+
+		/**
+		 * Skips a value without converting it. Nested values are skipped iteratively.
+		 */
+		private void skipValue() {
+			char c = peek();
+			if (c != '{' && c != '[') {
+				scalar(false);
+				return;
+			}
+			int depth = 0;
+			while (pos < length) {
+				char ch = text.charAt(pos++);
+				if (ch == '"') {
+					scanString();
+				} else if (ch == '{' || ch == '[') {
+					depth++;
+				} else if (ch == '}' || ch == ']') {
+					depth--;
+					if (depth == 0) {
+						return;
+					}
+				}
+			}
+			throw invalid();
+		}
+
+		/**
+		 * Scans a string, starting after its opening quote. Sets {@link #escaped}.
+		 * @return The position of the closing quote. The scanner is positioned after the closing quote.
+		 */
+		private int scanString() {
+			escaped = false;
+			while (pos < length) {
+				char c = text.charAt(pos);
+				if (c == '"') {
+					return pos++;
+				} else if (c == '\\') {
+					escaped = true;
+					pos++;
+				}
+				pos++;
+			}
+			throw invalid();
+		}
+
+		private String decodeString(int start, int end) {
+			StringBuilder decoded = new StringBuilder(end - start);
+			for (int i = start; i < end; i++) {
+				char c = text.charAt(i);
+				if (c != '\\') {
+					decoded.append(c);
+					continue;
+				}
+				c = text.charAt(++i);
+				switch (c) {
+				case 'b':
+					decoded.append('\b');
+					break;
+				case 'f':
+					decoded.append('\f');
+					break;
+				case 'n':
+					decoded.append('\n');
+					break;
+				case 'r':
+					decoded.append('\r');
+					break;
+				case 't':
+					decoded.append('\t');
+					break;
+				case 'u':
+					if (i + 4 >= end) {
+						throw invalid();
+					}
+					try {
+						decoded.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+					} catch (NumberFormatException e) {
+						throw invalid();
+					}
+					i += 4;
+					break;
+				default:
+					decoded.append(c);
+					break;
+				}
+			}
+			return decoded.toString();
+		}
+
+		private static boolean isNumberChar(char c) {
+			return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+		}
+
+		private void literal(String literal) {
+			if (!text.startsWith(literal, pos)) {
+				throw invalid();
+			}
+			pos += literal.length();
+		}
+
+		private void skipWhitespace() {
+			while (pos < length) {
+				char c = text.charAt(pos);
+				if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+					return;
+				}
+				pos++;
+			}
+		}
+
+		private char peek() {
+			if (pos >= length) {
+				throw invalid();
+			}
+			return text.charAt(pos);
+		}
+
+		private char next() {
+			char c = peek();
+			pos++;
+			return c;
+		}
+
+		private void expect(char expected) {
+			if (next() != expected) {
+				pos--;
+				throw invalid();
+			}
+		}
+
+		private LuaError invalid() {
+			return new LuaError("Invalid JSON in response at position " + pos + ".");
+		}
+	}
+}
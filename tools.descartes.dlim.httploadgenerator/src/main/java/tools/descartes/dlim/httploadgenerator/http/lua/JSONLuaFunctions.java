@@ -0,0 +1,92 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http.lua;
+
+import java.util.ArrayList;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.OneArgFunction;
+
+/**
+ * LUA functions for extracting values from JSON responses using JSONPath expressions.
+ *
+ * @author Joakim von Kistowski
+ *
+ */
+public class JSONLuaFunctions {
+
+	/**
+	 * Function to get the first value that is selected by a JSONPath.
+	 * @author Joakim von Kistowski
+	 *
+	 */
+	public static class Get extends OneArgFunction {
+
+		private JSONFunctions jsonfunctions;
+
+		/**
+		 * Instantiate the function.
+		 * @param jsonfunctions Reference to the {@link JSONFunctions} of the most recent response.
+		 */
+		public Get(JSONFunctions jsonfunctions) {
+			this.jsonfunctions = jsonfunctions;
+		}
+
+		@Override
+		public LuaValue call(LuaValue path) {
+			ArrayList<LuaValue> values = select(jsonfunctions, path, 1);
+			if (values.isEmpty()) {
+				return LuaValue.NIL;
+			}
+			return values.get(0);
+		}
+
+	}
+
+	/**
+	 * Function to get all values that are selected by a JSONPath.
+	 * @author Joakim von Kistowski
+	 *
+	 */
+	public static class GetAll extends OneArgFunction {
+
+		private JSONFunctions jsonfunctions;
+
+		/**
+		 * Instantiate the function.
+		 * @param jsonfunctions Reference to the {@link JSONFunctions} of the most recent response.
+		 */
+		public GetAll(JSONFunctions jsonfunctions) {
+			this.jsonfunctions = jsonfunctions;
+		}
+
+		@Override
+		public LuaValue call(LuaValue path) {
+			ArrayList<LuaValue> values = select(jsonfunctions, path, Integer.MAX_VALUE);
+			return LuaValue.listOf(values.toArray(new LuaValue[values.size()]));
+		}
+
+	}
+
+	private static ArrayList<LuaValue> select(JSONFunctions jsonfunctions, LuaValue path, int limit) {
+		try {
+			return jsonfunctions.select(path.checkjstring(), limit);
+		} catch (IllegalArgumentException e) {
+			throw new LuaError(e.getMessage());
+		}
+	}
+}
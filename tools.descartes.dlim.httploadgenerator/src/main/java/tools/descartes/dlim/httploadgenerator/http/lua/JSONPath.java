@@ -0,0 +1,235 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http.lua;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled JSONPath expression. Supports the following subset of JSONPath:
+ * the root <code>$</code> (optional), member access <code>.name</code> and <code>['name']</code>,
+ * array indices <code>[0]</code>, wildcards <code>.*</code> and <code>[*]</code>,
+ * and recursive descent <code>..name</code>, <code>..*</code>, and <code>..[0]</code>.
+ * Compiled paths are immutable and cached, like the regular expressions in the {@link PatternCache}.
+ * @author Joakim von Kistowski
+ *
+ */
+public final class JSONPath {
+
+	/** Maximum number of steps in a path. */
+	static final int MAX_STEPS = 62;
+
+	/** Maximum number of cached paths. */
+	private static final int MAX_CACHE_SIZE = 512;
+
+	private static final ConcurrentHashMap<String, JSONPath> PATHS = new ConcurrentHashMap<>();
+
+	private final Step[] steps;
+
+	private JSONPath(Step[] steps) {
+		this.steps = steps;
+	}
+
+	/**
+	 * Returns the compiled path for a JSONPath expression.
+	 * @param path The JSONPath expression.
+	 * @return The compiled path.
+	 * @throws IllegalArgumentException If the expression is invalid or not supported.
+	 */
+	public static JSONPath compile(String path) {
+		JSONPath compiled = PATHS.get(path);
+		if (compiled == null) {
+			compiled = new JSONPath(parse(path));
+			if (PATHS.size() >= MAX_CACHE_SIZE) {
+				Iterator<String> keys = PATHS.keySet().iterator();
+				if (keys.hasNext()) {
+					PATHS.remove(keys.next());
+				}
+			}
+			PATHS.putIfAbsent(path, compiled);
+		}
+		return compiled;
+	}
+
+	/**
+	 * Returns the steps of the path.
+	 * @return The steps.
+	 */
+	Step[] getSteps() {
+		return steps;
+	}
+
+	private static Step[] parse(String path) {
+		String expression = path.trim();
+		if (!expression.startsWith("$")) {
+			//allow omitting the root, e.g., "data.items[0]"
+			expression = (expression.startsWith(".") || expression.startsWith("[")) ? "$" + expression : "$." + expression;
+		}
+		ArrayList<Step> steps = new ArrayList<>();
+		int i = 1;
+		int length = expression.length();
+		while (i < length) {
+			boolean descendant = false;
+			char c = expression.charAt(i);
+			if (c == '.') {
+				i++;
+				if (i < length && expression.charAt(i) == '.') {
+					descendant = true;
+					i++;
+				}
+				if (i >= length) {
+					throw new IllegalArgumentException("JSONPath ends with a dot: " + path);
+				}
+				c = expression.charAt(i);
+				if (c == '*') {
+					steps.add(new Step(StepType.WILDCARD, descendant, null, 0));
+					i++;
+					continue;
+				} else if (c != '[') {
+					int end = i;
+					while (end < length && expression.charAt(end) != '.' && expression.charAt(end) != '[') {
+						end++;
+					}
+					if (end == i) {
+						throw new IllegalArgumentException("Empty member name in JSONPath: " + path);
+					}
+					steps.add(new Step(StepType.NAME, descendant, expression.substring(i, end), 0));
+					i = end;
+					continue;
+				} else if (!descendant) {
+					throw new IllegalArgumentException("Unexpected '.[' in JSONPath: " + path);
+				}
+			} else if (c != '[') {
+				throw new IllegalArgumentException("Unexpected character '" + c + "' in JSONPath: " + path);
+			}
+			i = parseBracket(expression, i, descendant, steps, path);
+		}
+		if (steps.size() > MAX_STEPS) {
+			throw new IllegalArgumentException("JSONPath has more than " + MAX_STEPS + " steps: " + path);
+		}
+		return steps.toArray(new Step[steps.size()]);
+	}
+
+	/**
+	 * Parses a bracket selector.
+	 * @return The position after the closing bracket.
+	 */
+	private static int parseBracket(String expression, int start, boolean descendant, ArrayList<Step> steps,
+			String path) {
+		int i = start + 1;
+		int length = expression.length();
+		if (i < length && (expression.charAt(i) == '\'' || expression.charAt(i) == '"')) {
+			char quote = expression.charAt(i);
+			StringBuilder name = new StringBuilder();
+			i++;
+			while (i < length && expression.charAt(i) != quote) {
+				if (expression.charAt(i) == '\\' && i + 1 < length) {
+					i++;
+				}
+				name.append(expression.charAt(i));
+				i++;
+			}
+			i++;
+			steps.add(new Step(StepType.NAME, descendant, name.toString(), 0));
+		} else {
+			int end = expression.indexOf(']', i);
+			if (end < 0) {
+				throw new IllegalArgumentException("Missing ']' in JSONPath: " + path);
+			}
+			String selector = expression.substring(i, end).trim();
+			if (selector.equals("*")) {
+				steps.add(new Step(StepType.WILDCARD, descendant, null, 0));
+			} else {
+				try {
+					int index = Integer.parseInt(selector);
+					if (index < 0) {
+						throw new IllegalArgumentException("Negative array index in JSONPath: " + path);
+					}
+					steps.add(new Step(StepType.INDEX, descendant, null, index));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Unsupported selector '" + selector + "' in JSONPath: " + path);
+				}
+			}
+			i = end;
+		}
+		if (i >= length || expression.charAt(i) != ']') {
+			throw new IllegalArgumentException("Missing ']' in JSONPath: " + path);
+		}
+		return i + 1;
+	}
+
+	/**
+	 * Type of a path step.
+	 */
+	enum StepType {
+		/** Selects an object member by name. */
+		NAME,
+		/** Selects an array element by index. */
+		INDEX,
+		/** Selects all object members and array elements. */
+		WILDCARD;
+	}
+
+	/**
+	 * Single step of a path.
+	 */
+	static final class Step {
+		private final StepType type;
+		private final boolean descendant;
+		private final String name;
+		private final int index;
+
+		private Step(StepType type, boolean descendant, String name, int index) {
+			this.type = type;
+			this.descendant = descendant;
+			this.name = name;
+			this.index = index;
+		}
+
+		/**
+		 * Returns the type of the step.
+		 * @return The type.
+		 */
+		StepType getType() {
+			return type;
+		}
+
+		/**
+		 * Returns true if the step applies to descendants at any depth instead of only to children.
+		 * @return True for recursive descent.
+		 */
+		boolean isDescendant() {
+			return descendant;
+		}
+
+		/**
+		 * Returns the member name of a {@link StepType#NAME} step.
+		 * @return The member name.
+		 */
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the index of a {@link StepType#INDEX} step.
+		 * @return The array index.
+		 */
+		int getIndex() {
+			return index;
+		}
+	}
+}
@@ -17,14 +17,18 @@ package tools.descartes.dlim.httploadgenerator.http.lua;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 
 import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
 import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Prototype;
 import org.luaj.vm2.lib.jse.JsePlatform;
 
 /**
@@ -57,6 +61,26 @@ public final class LuaHelpers {
 		return globals;
 	}
 
+	/**
+	 * Compiles a LUA script file into a prototype. The prototype is immutable and may be shared
+	 * by any number of LUA states. Each state runs the script by calling a new
+	 * {@link org.luaj.vm2.LuaClosure} of the prototype, using its own globals as environment.
+	 * 
+	 * @param scriptFile
+	 * 				The LUA script file.
+	 * @return
+	 * 		The compiled script.
+	 * @throws LuaError If the script can not be read or compiled.
+	 */
+	public static Prototype compileScript(File scriptFile) {
+		Globals globals = JsePlatform.standardGlobals();
+		try (InputStream in = new FileInputStream(scriptFile)) {
+			return globals.compilePrototype(in, "@" + scriptFile.getAbsolutePath());
+		} catch (IOException e) {
+			throw new LuaError("Could not load LUA script " + scriptFile.getAbsolutePath() + ": " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Transforming a table of LUA values to a array list of strings.
 	 * @param table The table to map.
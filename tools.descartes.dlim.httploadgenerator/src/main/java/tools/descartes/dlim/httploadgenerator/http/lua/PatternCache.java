@@ -0,0 +1,69 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http.lua;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded, thread-safe cache of compiled regular expressions.
+ * LUA scripts usually use a small, fixed set of regular expressions, which are compiled only once
+ * and then shared by all users. If the cache is full, an arbitrary entry is evicted.
+ * @author Joakim von Kistowski
+ *
+ */
+public final class PatternCache {
+
+	/** Maximum number of cached patterns. */
+	private static final int MAX_SIZE = 512;
+
+	private static final ConcurrentHashMap<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+
+	private PatternCache() {
+
+	}
+
+	/**
+	 * Returns the compiled pattern for a regular expression.
+	 * @param regex The regular expression.
+	 * @return The compiled pattern.
+	 * @throws java.util.regex.PatternSyntaxException If the expression is invalid.
+	 */
+	public static Pattern get(String regex) {
+		Pattern pattern = PATTERNS.get(regex);
+		if (pattern == null) {
+			pattern = Pattern.compile(regex);
+			if (PATTERNS.size() >= MAX_SIZE) {
+				Iterator<String> keys = PATTERNS.keySet().iterator();
+				if (keys.hasNext()) {
+					PATTERNS.remove(keys.next());
+				}
+			}
+			PATTERNS.putIfAbsent(regex, pattern);
+		}
+		return pattern;
+	}
+
+	/**
+	 * Returns the number of capturing groups of a regular expression.
+	 * @param regex The regular expression.
+	 * @return The number of capturing groups.
+	 */
+	public static int groupCount(String regex) {
+		return get(regex).matcher("").groupCount();
+	}
+}
@@ -0,0 +1,379 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.runner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary control protocol between director and load generator.
+ * A binary connection starts with a handshake: the director sends the {@link #MAGIC} bytes,
+ * the highest protocol version it supports and a line break (so that load generators that only know the text
+ * protocol read the handshake as a single unknown command). The load generator answers with the magic bytes
+ * and the negotiated version. Connections that do not start with the magic bytes use the text protocol.
+ * After the handshake, all messages are frames: the frame length (4 bytes, big-endian, covering type and payload),
+ * the {@link MessageType} (1 byte) and the payload. Payloads are written using {@link DataOutputStream}.
+ * Frames of unknown types can be skipped, as their length is known.
+ * @author Joakim von Kistowski
+ *
+ */
+public final class BinaryProtocol {
+
+	/** Magic bytes at the start of a binary connection. The first byte is no valid text command character. */
+	private static final byte[] MAGIC = {(byte) 0xD1, 'L', 'G', 'P'};
+
+	/** The highest protocol version supported by this implementation. */
+	public static final int VERSION = 1;
+
+	/** Maximum frame length. Larger frames are rejected as corrupt. */
+	private static final int MAX_FRAME_LENGTH = 256 * 1024 * 1024;
+
+	/** Time to wait for the handshake response of the load generator in ms. */
+	public static final int HANDSHAKE_TIMEOUT_MS = 3000;
+
+	/** Length of the frame header: frame length and message type. */
+	private static final int FRAME_HEADER_LENGTH = 5;
+
+	private BinaryProtocol() {
+	}
+
+	/**
+	 * Creates the handshake that the director sends to start a binary connection.
+	 * Load generators that only support the text protocol do not respond. They interpret the handshake
+	 * as an unknown command and remain usable using the text protocol.
+	 * @return The handshake bytes.
+	 */
+	public static ByteBuffer createHandshake() {
+		ByteBuffer handshake = ByteBuffer.allocate(MAGIC.length + 2);
+		handshake.put(MAGIC).put((byte) VERSION).put((byte) '\n');
+		handshake.flip();
+		return handshake;
+	}
+
+	/**
+	 * Reads the load generator's response to the handshake.
+	 * @param buffer The received bytes, ready for reading.
+	 * @return The negotiated protocol version. -1 if the response is incomplete.
+	 * @throws IOException If the response is invalid.
+	 */
+	public static int readHandshakeResponse(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < MAGIC.length + 1) {
+			return -1;
+		}
+		for (byte b : MAGIC) {
+			if (buffer.get() != b) {
+				throw new IOException("Invalid binary protocol handshake response.");
+			}
+		}
+		return buffer.get();
+	}
+
+	/**
+	 * Checks if the director started a binary connection and completes the handshake if it did.
+	 * Otherwise, the stream is reset, so that the text protocol can read all data.
+	 * @param in The buffered input stream from the director. Must support mark and reset.
+	 * @param out The output stream to the director.
+	 * @return The negotiated protocol version. 0 if the director uses the text protocol.
+	 * @throws IOException If the connection fails.
+	 */
+	public static int accept(InputStream in, OutputStream out) throws IOException {
+		in.mark(MAGIC.length);
+		for (byte b : MAGIC) {
+			if (in.read() != (b & 0xFF)) {
+				in.reset();
+				return 0;
+			}
+		}
+		int requestedVersion = in.read();
+		int lineBreak = in.read();
+		if (requestedVersion < 1 || lineBreak != '\n') {
+			throw new IOException("Invalid binary protocol handshake.");
+		}
+		int version = Math.min(requestedVersion, VERSION);
+		out.write(MAGIC);
+		out.write(version);
+		out.flush();
+		return version;
+	}
+
+	/**
+	 * Writes a message frame. Frames are written atomically, concurrent writers do not interleave.
+	 * @param out The output stream.
+	 * @param type The message type.
+	 * @param payload Writer of the message payload. Null for messages without payload.
+	 * @throws IOException If writing fails.
+	 */
+	public static void writeMessage(DataOutputStream out, MessageType type, PayloadWriter payload)
+			throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		if (payload != null) {
+			payload.write(new DataOutputStream(buffer));
+		}
+		synchronized (out) {
+			out.writeInt(buffer.size() + 1);
+			out.writeByte(type.getCode());
+			buffer.writeTo(out);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Encodes a message frame for non-blocking writing.
+	 * @param type The message type.
+	 * @param payload Writer of the message payload. Null for messages without payload.
+	 * @return The frame, ready for writing.
+	 * @throws IOException If writing the payload fails.
+	 */
+	public static ByteBuffer encodeMessage(MessageType type, PayloadWriter payload) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream frame = new DataOutputStream(buffer);
+		frame.writeInt(0);
+		frame.writeByte(type.getCode());
+		if (payload != null) {
+			payload.write(frame);
+		}
+		ByteBuffer encoded = ByteBuffer.wrap(buffer.toByteArray());
+		encoded.putInt(0, encoded.remaining() - 4);
+		return encoded;
+	}
+
+	/**
+	 * Decodes the next complete message frame from a buffer of received bytes.
+	 * @param buffer The received bytes, ready for reading. The position is advanced past the frame
+	 * 		if the frame is complete and left unchanged otherwise.
+	 * @return The message. Null if the frame is incomplete. Its type is null if the type is unknown.
+	 * @throws IOException If the frame is corrupt.
+	 */
+	public static Message decodeMessage(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < FRAME_HEADER_LENGTH) {
+			return null;
+		}
+		int length = buffer.getInt(buffer.position());
+		if (length < 1 || length > MAX_FRAME_LENGTH) {
+			throw new IOException("Invalid binary protocol frame length: " + length);
+		}
+		if (buffer.remaining() < length + 4) {
+			return null;
+		}
+		buffer.getInt();
+		byte code = buffer.get();
+		byte[] payload = new byte[length - 1];
+		buffer.get(payload);
+		return new Message(MessageType.fromCode(code), new DataInputStream(new ByteArrayInputStream(payload)));
+	}
+
+	/**
+	 * Returns the number of bytes of the frame that starts at the buffer's position.
+	 * @param buffer The received bytes, ready for reading.
+	 * @return The frame length including the length field. -1 if the length field is incomplete.
+	 */
+	public static int frameLength(ByteBuffer buffer) {
+		if (buffer.remaining() < 4) {
+			return -1;
+		}
+		return buffer.getInt(buffer.position()) + 4;
+	}
+
+	/**
+	 * Reads the next message frame.
+	 * @param in The input stream.
+	 * @return The message. Its type is null if the type is unknown.
+	 * @throws EOFException If the connection was closed.
+	 * @throws IOException If reading fails or the frame is corrupt.
+	 */
+	public static Message readMessage(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 1 || length > MAX_FRAME_LENGTH) {
+			throw new IOException("Invalid binary protocol frame length: " + length);
+		}
+		byte code = in.readByte();
+		byte[] payload = new byte[length - 1];
+		in.readFully(payload);
+		return new Message(MessageType.fromCode(code), new DataInputStream(new ByteArrayInputStream(payload)));
+	}
+
+	/**
+	 * Writes a byte array, prefixed with its length.
+	 * @param out The output stream.
+	 * @param bytes The bytes.
+	 * @throws IOException If writing fails.
+	 */
+	public static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a byte array that was written using {@link #writeBytes(DataOutputStream, byte[])}.
+	 * @param in The input stream.
+	 * @return The bytes.
+	 * @throws IOException If reading fails.
+	 */
+	public static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > MAX_FRAME_LENGTH) {
+			throw new IOException("Invalid binary protocol field length: " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Writes the payload of a message.
+	 */
+	@FunctionalInterface
+	public interface PayloadWriter {
+		/**
+		 * Writes the payload.
+		 * @param payload The payload stream.
+		 * @throws IOException If writing fails.
+		 */
+		void write(DataOutputStream payload) throws IOException;
+	}
+
+	/**
+	 * A received message.
+	 */
+	public static final class Message {
+		private final MessageType type;
+		private final DataInputStream payload;
+
+		private Message(MessageType type, DataInputStream payload) {
+			this.type = type;
+			this.payload = payload;
+		}
+
+		/**
+		 * Returns the message type.
+		 * @return The type. Null if unknown.
+		 */
+		public MessageType getType() {
+			return type;
+		}
+
+		/**
+		 * Returns the message payload.
+		 * @return The payload stream.
+		 */
+		public DataInputStream getPayload() {
+			return payload;
+		}
+	}
+
+	/**
+	 * Types of binary protocol messages. The payload of each type is documented with the type.
+	 * Codes must never be changed or reused, new types get new codes.
+	 */
+	public static enum MessageType {
+		/** Director to load generator. Number of tuples (int), then time stamp and arrival rate (doubles). */
+		ARRIVAL_RATES(1),
+		/** Director to load generator. Script length (int) and UTF-8 bytes of the script. */
+		SCRIPT(2),
+		/** Director to load generator. Thread count (int). */
+		THREAD_COUNT(3),
+		/** Director to load generator. Dispatch mode name (UTF). */
+		DISPATCH_MODE(4),
+		/** Director to load generator. Arrival process name (UTF). */
+		ARRIVAL_PROCESS(5),
+		/** Director to load generator. Execution mode name (UTF). */
+		EXECUTION_MODE(6),
+		/** Director to load generator. Maximum requests in flight (int). */
+		IN_FLIGHT_LIMIT(7),
+		/** Director to load generator. Workload model name (UTF). */
+		WORKLOAD_MODEL(8),
+		/** Director to load generator. Mean think time in ms (double) and distribution name (UTF). */
+		THINK_TIME(9),
+		/** Director to load generator. Number of executor shards (int). */
+		EXECUTOR_SHARDS(10),
+		/** Director to load generator. HTTP client settings in their text form (UTF). */
+		HTTP_CLIENT(11),
+		/** Director to load generator. HTTP timeout in ms (int). */
+		TIMEOUT(12),
+		/**
+		 * Director to load generator. Random batch times (boolean), seed (int), warmup duration in s (int),
+		 * warmup load intensity (double), warmup pause in s (int), randomize users (boolean),
+		 * optionally followed by the load generator time in us at which to start (long, 0 to start immediately).
+		 */
+		START(13),
+		/** Load generator to director. Acknowledges a message. No payload. */
+		OK(14),
+		/** Load generator to director. Error message (UTF). */
+		ERROR(15),
+		/**
+		 * Load generator to director. Start time in ms since the epoch (long),
+		 * optionally followed by the start time in us (long).
+		 */
+		START_TIME(16),
+		/** Load generator to director. Interval result, see {@link LoadGeneratorResult}. */
+		RESULT(17),
+		/** Load generator to director. Load generation has finished. No payload. */
+		DONE(18),
+		/** Director to load generator. Director time in us (long). Answered with a CLOCK_REPLY. */
+		CLOCK_PROBE(19),
+		/**
+		 * Load generator to director. Director time of the probe (long), load generator times at which
+		 * the probe was received and answered (longs), all in us.
+		 */
+		CLOCK_REPLY(20),
+		/** Director to load generator. Requests the capacity of the load generator. No payload. */
+		CAPACITY_REQUEST(21),
+		/** Load generator to director. Number of available processors (int). */
+		CAPACITY(22),
+		/**
+		 * Director to load generator, also while load is generated. Number of tuples (int), then time stamp
+		 * and adjusted arrival rate (doubles). Answered with a RATE_ADJUSTED.
+		 */
+		RATE_ADJUST(23),
+		/** Load generator to director. Number of applied tuples of a rate adjustment (int). */
+		RATE_ADJUSTED(24);
+
+		private final byte code;
+
+		private MessageType(int code) {
+			this.code = (byte) code;
+		}
+
+		/**
+		 * Returns the code that identifies the type on the wire.
+		 * @return The code.
+		 */
+		public byte getCode() {
+			return code;
+		}
+
+		/**
+		 * Returns the type with a code.
+		 * @param code The code.
+		 * @return The type. Null if no type has the code.
+		 */
+		public static MessageType fromCode(byte code) {
+			for (MessageType type : values()) {
+				if (type.code == code) {
+					return type;
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.runner;
+
+/**
+ * Estimated offset between the clock of a load generator and the clock of the director.
+ * Estimated NTP-style from probes: the director sends its time t0, the load generator
+ * answers with the time it received the probe (t1) and the time it sent the answer (t2),
+ * and the director notes the time it received the answer (t3). The offset is
+ * ((t1 - t0) + (t2 - t3)) / 2, its error is bounded by half of the round trip time
+ * (t3 - t0) - (t2 - t1). Of multiple probes, the one with the lowest round trip time is used.
+ * All times are in microseconds of {@link #currentTimeMicros()}.
+ * @author Joakim von Kistowski
+ *
+ */
+public final class ClockOffset {
+
+	private static final long EPOCH_MICROS = System.currentTimeMillis() * 1000;
+	private static final long EPOCH_NANOS = System.nanoTime();
+
+	private final long offsetMicros;
+	private final long roundTripMicros;
+
+	private ClockOffset(long offsetMicros, long roundTripMicros) {
+		this.offsetMicros = offsetMicros;
+		this.roundTripMicros = roundTripMicros;
+	}
+
+	/**
+	 * Returns the current wall clock time in microseconds. The time is anchored at the system time
+	 * once and then advanced using the monotonic {@link System#nanoTime()}, as the system time
+	 * only has millisecond precision.
+	 * @return Microseconds since the epoch.
+	 */
+	public static long currentTimeMicros() {
+		return EPOCH_MICROS + (System.nanoTime() - EPOCH_NANOS) / 1000;
+	}
+
+	/**
+	 * Estimates the offset from a single probe.
+	 * @param sent Director time at which the probe was sent (t0).
+	 * @param received Load generator time at which the probe was received (t1).
+	 * @param answered Load generator time at which the answer was sent (t2).
+	 * @param answerReceived Director time at which the answer was received (t3).
+	 * @return The estimated offset.
+	 */
+	public static ClockOffset fromProbe(long sent, long received, long answered, long answerReceived) {
+		long offset = ((received - sent) + (answered - answerReceived)) / 2;
+		long roundTrip = Math.max(0, (answerReceived - sent) - (answered - received));
+		return new ClockOffset(offset, roundTrip);
+	}
+
+	/**
+	 * Returns the more accurate of two estimates.
+	 * @param other The other estimate. May be null.
+	 * @return The estimate with the lower round trip time.
+	 */
+	public ClockOffset best(ClockOffset other) {
+		if (other == null || roundTripMicros <= other.roundTripMicros) {
+			return this;
+		}
+		return other;
+	}
+
+	/**
+	 * Converts a director time into load generator time.
+	 * @param directorMicros The director time.
+	 * @return The corresponding load generator time.
+	 */
+	public long toGeneratorTime(long directorMicros) {
+		return directorMicros + offsetMicros;
+	}
+
+	/**
+	 * Converts a load generator time into director time.
+	 * @param generatorMicros The load generator time.
+	 * @return The corresponding director time.
+	 */
+	public long toDirectorTime(long generatorMicros) {
+		return generatorMicros - offsetMicros;
+	}
+
+	/**
+	 * Returns the offset of the load generator clock, relative to the director clock.
+	 * @return The offset in microseconds.
+	 */
+	public long getOffsetMicros() {
+		return offsetMicros;
+	}
+
+	/**
+	 * Returns the maximum error of the estimated offset, half of the round trip time.
+	 * @return The error bound in microseconds.
+	 */
+	public long getErrorBoundMicros() {
+		return roundTripMicros / 2;
+	}
+}
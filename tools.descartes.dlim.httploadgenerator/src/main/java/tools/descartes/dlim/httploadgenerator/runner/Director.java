@@ -18,17 +18,33 @@ package tools.descartes.dlim.httploadgenerator.runner;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalProcess;
 import tools.descartes.dlim.httploadgenerator.generator.ArrivalRateTuple;
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalRateTupleLoadGenerator.DispatchMode;
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalRateTupleLoadGenerator.ExecutionMode;
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalRateTupleLoadGenerator.WorkloadModel;
+import tools.descartes.dlim.httploadgenerator.generator.LatencyHistogram;
+import tools.descartes.dlim.httploadgenerator.generator.ThinkTimeDistribution;
+import tools.descartes.dlim.httploadgenerator.http.HTTPClientSettings;
 import tools.descartes.dlim.httploadgenerator.power.IPowerCommunicator;
+import tools.descartes.dlim.httploadgenerator.runner.LoadGeneratorCommunicator.Protocol;
 
 /**
  * Director that is run in director mode.
@@ -39,9 +55,27 @@ public class Director extends Thread {
 
 	private static final Logger LOG = Logger.getLogger(Director.class.getName());
 	
-	private static int seed = 5;
+	/** Seed that is sent to the load generators if no random seed is specified. */
+	private static final int DEFAULT_SEED = 5;
 
-	private List<LoadGeneratorCommunicator> communicators;
+	/** Number of probes per load generator for estimating its clock offset. */
+	private static final int CLOCK_PROBES = 8;
+
+	/** Time to wait for clock synchronization in ms. Older load generators do not answer probes. */
+	private static final long CLOCK_SYNC_TIMEOUT_MS = 2000;
+
+	/** Time to wait for the capacities of the load generators in ms. Older load generators do not answer. */
+	private static final long CAPACITY_TIMEOUT_MS = 2000;
+
+	/** Weights value for weighting load generators by their number of processors. */
+	public static final String PROCESSOR_WEIGHTS = "CORES";
+
+	/** Deviation from the scheduled start in us above which a load generator is considered late. */
+	private static final long LATE_START_MICROS = 10000;
+
+	private final DirectorNetwork network;
+	private final ResultAggregator aggregator;
+	private final List<LoadGeneratorCommunicator> communicators;
 	
 	/**
 	 * Execute the director with the given parameters.
@@ -62,11 +96,30 @@ public class Director extends Thread {
 	 * @param randomizeUsers True if users should be randoized.
 	 * 		False if they should be taken from a queue in order.
 	 * @param powerCommunicatorClassName Fully qualified class name of the power communicator class.
+	 * @param dispatchMode The mode for dispatching transactions on the load generator.
+	 * @param arrivalProcess The process for generating arrival times of individual transactions.
+	 * @param executionMode The mode for executing transactions on the load generator.
+	 * @param inFlightLimit The maximum number of requests in flight per load generator (ASYNC and VIRTUAL mode).
+	 * @param workloadModel The model determining how the load intensity is interpreted.
+	 * @param thinkTimeMs The mean think time of closed-loop users in milliseconds.
+	 * @param thinkTimeDistribution The distribution of the think times of closed-loop users.
+	 * @param executorShards The number of shards that the load generators' users and threads are partitioned into.
+	 * @param httpClientSettings The settings for the HTTP clients of the load generators' users.
+	 * @param protocol The protocol for communicating with the load generators.
+	 * @param startDelayMs The delay between sending the start command and the synchronized start
+	 * 		of all load generators in ms. 0 to start immediately.
+	 * @param generatorWeights Comma-separated weights of the load generators' shares of the load,
+	 * 		{@link #PROCESSOR_WEIGHTS} to weight them by their number of processors, or null for equal shares.
+	 * @param rebalance True if load is shifted away from lagging and failed load generators during the run.
 	 */
 	public static void executeDirector(String profilePath, String outName, String powerAddresses,
 			String generators, int randomSeed, int threadCount, int urlTimeout, String scriptPath,
 			boolean randomizeUsers, double warmupRate, int warmupDurationS,
-			int warmupPauseS, String powerCommunicatorClassName) {
+			int warmupPauseS, String powerCommunicatorClassName, DispatchMode dispatchMode,
+			ArrivalProcess arrivalProcess, ExecutionMode executionMode, int inFlightLimit,
+			WorkloadModel workloadModel, double thinkTimeMs, ThinkTimeDistribution thinkTimeDistribution,
+			int executorShards, HTTPClientSettings httpClientSettings, Protocol protocol, int startDelayMs,
+			String generatorWeights, boolean rebalance) {
 			List<IPowerCommunicator> powerCommunicators = new LinkedList<>();
 			
 			//Load Profile
@@ -108,9 +161,44 @@ public class Director extends Thread {
 				randomBatchTimes = false;
 				LOG.info("Using equi-distant non-random inter batch times.");
 			}
+			int seed = DEFAULT_SEED;
+			if (randomSeed > 0) {
+				seed = randomSeed;
+			}
+			
+			//Arrival process
+			if (workloadModel == WorkloadModel.CLOSED && dispatchMode != DispatchMode.WHEEL) {
+				LOG.info("Closed workloads require per-transaction dispatch.");
+				dispatchMode = DispatchMode.WHEEL;
+			} else if (arrivalProcess.isOpenLoop() && dispatchMode != DispatchMode.WHEEL) {
+				LOG.info("Arrival process " + arrivalProcess + " requires per-transaction dispatch.");
+				dispatchMode = DispatchMode.WHEEL;
+			}
 			
 			LOG.info("Load Generator Thread Count set to " + threadCount);
 			LOG.info("URL connection timout set to " + urlTimeout + " ms");
+			LOG.info("Transaction dispatch mode set to " + dispatchMode);
+			if (workloadModel == WorkloadModel.CLOSED) {
+				LOG.info("Running closed workload, load intensity is interpreted as concurrent users");
+				LOG.info("Think time set to " + thinkTimeDistribution + " with a mean of " + thinkTimeMs + " ms");
+			} else {
+				LOG.info("Transaction arrival process set to " + arrivalProcess);
+			}
+			LOG.info("Transaction execution mode set to " + executionMode);
+			if (executionMode != ExecutionMode.BLOCKING) {
+				LOG.info("Maximum number of requests in flight set to " + inFlightLimit);
+			}
+			if (executorShards > 1) {
+				LOG.info("Users and threads are partitioned into " + executorShards + " executor shards");
+			}
+			if (httpClientSettings.isShared()) {
+				LOG.info("Users share " + httpClientSettings.getClientCount() + " HTTP clients per load generator");
+			}
+			LOG.info("Connection mode set to " + httpClientSettings.getConnectionMode());
+			LOG.info("Load generator protocol set to " + protocol);
+			if (startDelayMs > 0) {
+				LOG.info("Load generators start synchronized " + startDelayMs + " ms after the start command");
+			}
 			
 			
 			//Script Path
@@ -118,21 +206,41 @@ public class Director extends Thread {
 			LOG.info("Using Lua Script: " + scriptPathRead);
 
 			if (file != null && outName != null && !outName.isEmpty()) {
-				Director director = new Director(generatorIPs);
-				director.process(file, outName, randomBatchTimes,
+				Director director;
+				try {
+					director = new Director(generatorIPs, protocol);
+				} catch (IOException e) {
+					LOG.severe("Could not open director network: " + e.getMessage());
+					return;
+				}
+				director.process(file, outName, randomBatchTimes, seed,
 						threadCount, urlTimeout, scriptPathRead,
 						warmupDurationS, warmupRate, warmupPauseS, randomizeUsers,
-						powerCommunicators);
+						powerCommunicators, dispatchMode, arrivalProcess, executionMode, inFlightLimit,
+						workloadModel, thinkTimeMs, thinkTimeDistribution, executorShards, httpClientSettings,
+						startDelayMs, generatorWeights, rebalance);
 			}
 			powerCommunicators.forEach(pc -> pc.stopCommunicator());
 	}
 
+	/**
+	 * Inititializes a director with a load generator address, using the text protocol.
+	 * @param loadGenerators Addresses of the load generator. Seperated by ",".
+	 * @throws IOException If the director network cannot be opened.
+	 */
+	public Director(String[] loadGenerators) throws IOException {
+		this(loadGenerators, Protocol.TEXT);
+	}
+
 	/**
 	 * Inititializes a director with a load generator address.
+	 * Connects to all load generators and negotiates the protocol with all of them concurrently.
 	 * @param loadGenerators Addresses of the load generator. Seperated by ",".
+	 * @param protocol The protocol for communicating with the load generators.
+	 * @throws IOException If the director network cannot be opened.
 	 */
-	public Director(String[] loadGenerators) {
-		communicators = new ArrayList<>(loadGenerators.length);
+	public Director(String[] loadGenerators, Protocol protocol) throws IOException {
+		List<InetSocketAddress> addresses = new ArrayList<>(loadGenerators.length);
 		for (String address : loadGenerators) {
 			String[] addressTokens = address.split(":");
 			String ip = addressTokens[0].trim();
@@ -145,9 +253,17 @@ public class Director extends Thread {
 						port = IRunnerConstants.DEFAULT_PORT;
 					}
 				}
-				communicators.add(new LoadGeneratorCommunicator(ip, port));
+				addresses.add(InetSocketAddress.createUnresolved(ip, port));
 			}
 		}
+		network = new DirectorNetwork();
+		aggregator = new ResultAggregator(addresses.size());
+		communicators = new ArrayList<>(addresses.size());
+		for (InetSocketAddress address : addresses) {
+			communicators.add(new LoadGeneratorCommunicator(address.getHostString(), address.getPort(),
+					protocol, network, aggregator));
+		}
+		communicators.forEach(c -> c.awaitProtocol());
 	}
 
 	/**
@@ -156,6 +272,8 @@ public class Director extends Thread {
 	 * @param outName The name of the output log.
 	 * @param scanner The scanner for reading user start signal from console.
 	 * @param randomBatchTimes True if batches are scheduled using a randomized distribution.
+	 * @param seed The random seed for the load generators. Each load generator is seeded with the seed
+	 * 		plus its index, so that their random streams are independent.
 	 * @param threadCount The number of threads that generate load.
 	 * @param timeout The connection timeout for the HTTP url connections.
 	 * @param scriptPath The path of the script file that generates the specific requests.
@@ -167,28 +285,80 @@ public class Director extends Thread {
 	 * @param randomizeUsers True if users should be randoized.
 	 * 		False if they should be taken from a queue in order.
 	 * @param powerCommunicators Communicators for communicating with power daemon (optional).
+	 * @param dispatchMode The mode for dispatching transactions on the load generator.
+	 * @param arrivalProcess The process for generating arrival times of individual transactions.
+	 * @param executionMode The mode for executing transactions on the load generator.
+	 * @param inFlightLimit The maximum number of requests in flight per load generator (ASYNC and VIRTUAL mode).
+	 * @param workloadModel The model determining how the load intensity is interpreted.
+	 * @param thinkTimeMs The mean think time of closed-loop users in milliseconds.
+	 * @param thinkTimeDistribution The distribution of the think times of closed-loop users.
+	 * @param executorShards The number of shards that the load generators' users and threads are partitioned into.
+	 * @param httpClientSettings The settings for the HTTP clients of the load generators' users.
+	 * @param startDelayMs The delay between sending the start command and the synchronized start
+	 * 		of all load generators in ms. 0 to start immediately.
+	 * @param generatorWeights Comma-separated weights of the load generators' shares of the load,
+	 * 		{@link #PROCESSOR_WEIGHTS} to weight them by their number of processors, or null for equal shares.
+	 * @param rebalance True if load is shifted away from lagging and failed load generators during the run.
 	 */
-	public void process(File file, String outName, boolean randomBatchTimes,
+	public void process(File file, String outName, boolean randomBatchTimes, int seed,
 			int threadCount, int timeout, String scriptPath,
 			int warmupDurationS, double warmupRate, int warmupPauseS,
 			boolean randomizeUsers,
-			List<IPowerCommunicator> powerCommunicators) {
+			List<IPowerCommunicator> powerCommunicators, DispatchMode dispatchMode,
+			ArrivalProcess arrivalProcess, ExecutionMode executionMode, int inFlightLimit,
+			WorkloadModel workloadModel, double thinkTimeMs, ThinkTimeDistribution thinkTimeDistribution,
+			int executorShards, HTTPClientSettings httpClientSettings, int startDelayMs,
+			String generatorWeights, boolean rebalance) {
 
 		try {
 			List<ArrivalRateTuple> arrRates = Main.readFileToList(file, 0);
 			LOG.info("Read " + arrRates.size() + " Arrival Rate Tuples");
-			communicators.parallelStream().forEach(c-> c.sendArrivalRates(arrRates, communicators.size()));
+			LoadBalancer balancer = new LoadBalancer(communicators, arrRates, createLoadDistribution(generatorWeights));
+			CompletableFuture.allOf(IntStream.range(0, communicators.size())
+					.mapToObj(i -> communicators.get(i).sendArrivalRates(balancer.getRates(i)))
+					.toArray(CompletableFuture[]::new)).join();
 			LOG.info("Arrival Rates sent to Load Generator(s).");
+			//the user pools of the load generators are sized for their initial share
+			boolean rebalancing = rebalance && workloadModel != WorkloadModel.CLOSED && communicators.size() > 1;
+			if (rebalance && workloadModel == WorkloadModel.CLOSED) {
+				LOG.info("Load is not rebalanced in closed workloads.");
+			}
+			if (rebalancing) {
+				balancer.probeGenerators();
+			}
 
-			communicators.parallelStream().forEach(c-> c.sendThreadCount(threadCount));
+			sendToAll(c -> c.sendThreadCount(threadCount));
 			LOG.info("Thread Count sent to Load Generator(s): " + threadCount);
 
-			communicators.parallelStream().forEach(c-> c.sendTimeout(timeout));
+			sendToAll(c -> c.sendDispatchMode(dispatchMode));
+			LOG.info("Dispatch Mode sent to Load Generator(s): " + dispatchMode);
+
+			sendToAll(c -> c.sendArrivalProcess(arrivalProcess));
+			LOG.info("Arrival Process sent to Load Generator(s): " + arrivalProcess);
+
+			sendToAll(c -> c.sendExecutionMode(executionMode));
+			LOG.info("Execution Mode sent to Load Generator(s): " + executionMode);
+
+			sendToAll(c -> c.sendInFlightLimit(inFlightLimit));
+			LOG.info("In-flight limit sent to Load Generator(s): " + inFlightLimit);
+
+			sendToAll(c -> c.sendWorkloadModel(workloadModel));
+			LOG.info("Workload Model sent to Load Generator(s): " + workloadModel);
+
+			sendToAll(c -> c.sendThinkTime(thinkTimeMs, thinkTimeDistribution));
+
+			sendToAll(c -> c.sendExecutorShards(executorShards));
+			LOG.info("Executor shards sent to Load Generator(s): " + executorShards);
+
+			sendToAll(c -> c.sendHTTPClientSettings(httpClientSettings));
+			LOG.info("HTTP client settings sent to Load Generator(s): " + httpClientSettings);
+
+			sendToAll(c -> c.sendTimeout(timeout));
 			if (timeout > 0) {
 				LOG.info("URL connection timeout sent to Load Generator(s): " + timeout);
 			}
 			
-			communicators.parallelStream().forEach(c-> c.sendLUAScript(scriptPath));
+			sendToAll(c -> c.sendLUAScript(scriptPath));
 			LOG.info("Contents of script sent to Load Generator: " + scriptPath);
 			
 			String parentPath = file.getParent();
@@ -197,7 +367,11 @@ public class Director extends Thread {
 			}
 			PrintWriter writer = new PrintWriter(parentPath + "/" + outName);
 			writer.print("Target Time,Load Intensity,Successful Transactions,"
-			 + "Failed Transactions,Dropped Transactions,Avg Response Time,Final Batch Dispatch Time");
+			 + "Failed Transactions,Dropped Transactions,Avg Response Time,Final Batch Dispatch Time,"
+			 + "Avg Dispatch Jitter (ms),Max Dispatch Jitter (ms),Avg Corrected Response Time");
+			writer.print(createPercentileHeader("Response Time"));
+			writer.print(createPercentileHeader("Corrected Response Time"));
+			writer.print(",Received Bytes,Timeline Divergence (ms)");
 			powerCommunicators.stream().forEachOrdered(pc -> writer.print(",Watts(" + pc.getCommunicatorName() + ")"));
 			
 			LOG.info("Starting Load Generation");
@@ -211,11 +385,25 @@ public class Director extends Thread {
 					executor.execute(pc);
 				}
 			}
-			communicators.parallelStream()
-					.mapToLong(c -> c.startBenchmarking(randomBatchTimes, seed,
-							warmupDurationS, warmupRate, warmupPauseS, randomizeUsers))
-					.min().getAsLong();
+			long startAtMicros = 0;
+			if (startDelayMs > 0) {
+				synchronizeClocks();
+				startAtMicros = ClockOffset.currentTimeMicros() + startDelayMs * 1000L;
+			}
+			long scheduledStart = startAtMicros;
+			//identical seeds would make all load generators draw the same arrivals in lockstep
+			CompletableFuture.allOf(IntStream.range(0, communicators.size())
+					.mapToObj(i -> communicators.get(i).startBenchmarking(randomBatchTimes, seed + i,
+							warmupDurationS, warmupRate, warmupPauseS, randomizeUsers, scheduledStart))
+					.toArray(CompletableFuture<?>[]::new)).join();
 			long timeZero = System.currentTimeMillis();
+			if (startDelayMs > 0) {
+				reportStartSkew(startAtMicros);
+				timeZero = startAtMicros / 1000;
+			}
+			if (rebalancing) {
+				balancer.start();
+			}
 			String timeZeroString = sdf.format(new Date(timeZero));
 			System.out.println("Beginning Run @" + timeZero + "(" + timeZeroString + ")");
 			//print time zero if no warmup was set
@@ -225,7 +413,7 @@ public class Director extends Thread {
 			
 			//get Data from LoadGenerator
 			IntervalResult result;
-			while (!(result = collectResultRound()).isMeasurementConcluded()) {
+			while (!(result = aggregator.takeRound()).isMeasurementConcluded()) {
 				//Check if a result for time 0 is sent. This result is only sent if warmup occured.
 				if (result.getTargetTime() == 0.0) {
 					timeZero = System.currentTimeMillis();
@@ -235,6 +423,9 @@ public class Director extends Thread {
 					writer.println("," + dateString);
 				}
 				logState(result, powerCommunicators, writer);
+				if (rebalancing) {
+					balancer.onRound(result);
+				}
 			}
 			System.out.println("Workload finished.");
 			writer.close();
@@ -249,7 +440,158 @@ public class Director extends Thread {
 			LOG.severe("File not found: " + e.getMessage()  + "\n\t"
 					+ "Did you specify the location of all files? "
 					+ "Consult \"java -jar ... director --help\" for the necessary command line switches.");
+		} catch (InterruptedException e) {
+			LOG.severe("Interrupted waiting for load generator results.");
+		} finally {
+			communicators.forEach(c -> c.close());
+			network.shutdown();
+		}
+	}
+
+	/**
+	 * Creates the distribution of the load across the load generators.
+	 * Falls back to equal shares if the weights are invalid.
+	 * @param generatorWeights Comma-separated weights of the load generators,
+	 * 		{@link #PROCESSOR_WEIGHTS}, or null for equal shares.
+	 * @return The distribution.
+	 * @throws InterruptedException If interrupted while waiting for the load generators' capacities.
+	 */
+	private LoadDistribution createLoadDistribution(String generatorWeights) throws InterruptedException {
+		if (generatorWeights == null || generatorWeights.trim().isEmpty()) {
+			return LoadDistribution.equal(communicators.size());
+		}
+		double[] weights;
+		if (generatorWeights.trim().equalsIgnoreCase(PROCESSOR_WEIGHTS)) {
+			weights = requestProcessorCounts();
+		} else {
+			String[] tokens = generatorWeights.split(",");
+			if (tokens.length != communicators.size()) {
+				LOG.warning("Number of load generator weights (" + tokens.length + ") does not match number of "
+						+ "load generators (" + communicators.size() + "). Using equal shares.");
+				return LoadDistribution.equal(communicators.size());
+			}
+			weights = new double[tokens.length];
+			for (int i = 0; i < tokens.length; i++) {
+				try {
+					weights[i] = Double.parseDouble(tokens[i].trim());
+				} catch (NumberFormatException e) {
+					LOG.warning("Invalid load generator weight: " + tokens[i] + ". Using equal shares.");
+					return LoadDistribution.equal(communicators.size());
+				}
+			}
+		}
+		LoadDistribution distribution;
+		try {
+			distribution = new LoadDistribution(weights);
+		} catch (IllegalArgumentException e) {
+			LOG.warning(e.getMessage() + " Using equal shares.");
+			return LoadDistribution.equal(communicators.size());
+		}
+		for (int i = 0; i < communicators.size(); i++) {
+			LOG.info("Load generator at " + communicators.get(i).getAddress() + " receives "
+					+ (100.0 * distribution.getShare(i)) + " % of the load.");
 		}
+		return distribution;
+	}
+
+	/**
+	 * Requests the number of processors of all load generators concurrently.
+	 * Load generators that do not answer within {@link #CAPACITY_TIMEOUT_MS} are weighted with
+	 * the average number of processors of the other load generators.
+	 * @return The weights of the load generators.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	private double[] requestProcessorCounts() throws InterruptedException {
+		List<CompletableFuture<Integer>> requests = communicators.stream()
+				.map(c -> c.requestProcessorCount()).collect(Collectors.toList());
+		try {
+			CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0]))
+					.get(CAPACITY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException | ExecutionException e) {
+			//load generators without an answer get the average weight
+		}
+		double[] weights = new double[requests.size()];
+		double knownSum = 0;
+		int known = 0;
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = requests.get(i).getNow(0);
+			if (weights[i] > 0) {
+				knownSum += weights[i];
+				known++;
+			}
+		}
+		double average = known > 0 ? knownSum / known : 1.0;
+		for (int i = 0; i < weights.length; i++) {
+			if (weights[i] <= 0) {
+				LOG.warning("Load generator at " + communicators.get(i).getAddress()
+						+ " did not report its number of processors. Assuming " + average + ".");
+				weights[i] = average;
+			}
+		}
+		return weights;
+	}
+
+	/**
+	 * Estimates the clock offsets of all load generators concurrently.
+	 * Load generators that do not answer within {@link #CLOCK_SYNC_TIMEOUT_MS} start unsynchronized.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	private void synchronizeClocks() throws InterruptedException {
+		CompletableFuture<?>[] synchronizations = communicators.stream()
+				.map(c -> c.synchronizeClock(CLOCK_PROBES)).toArray(CompletableFuture[]::new);
+		try {
+			CompletableFuture.allOf(synchronizations).get(CLOCK_SYNC_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException | ExecutionException e) {
+			//communicators use their best estimate so far
+		}
+		for (LoadGeneratorCommunicator communicator : communicators) {
+			communicator.finishClockSynchronization();
+			ClockOffset offset = communicator.getClockOffset();
+			if (offset == null) {
+				LOG.warning("Load generator at " + communicator.getAddress()
+						+ " does not support clock synchronization. Starting it unsynchronized.");
+			} else {
+				LOG.info("Clock offset of load generator at " + communicator.getAddress() + ": "
+						+ offset.getOffsetMicros() / 1000.0 + " ms (+/- " + offset.getErrorBoundMicros() / 1000.0 + " ms)");
+			}
+		}
+	}
+
+	/**
+	 * Logs how far the actual start times of the load generators deviate from the scheduled start time.
+	 * @param startAtMicros The scheduled start time in us of the director's clock.
+	 */
+	private void reportStartSkew(long startAtMicros) {
+		long maxDeviation = 0;
+		long maxError = 0;
+		int synchronizedGenerators = 0;
+		for (LoadGeneratorCommunicator communicator : communicators) {
+			ClockOffset offset = communicator.getClockOffset();
+			long startMicros = communicator.getGeneratorStartMicros();
+			if (offset == null || startMicros <= 0) {
+				continue;
+			}
+			synchronizedGenerators++;
+			long deviation = offset.toDirectorTime(startMicros) - startAtMicros;
+			if (deviation > LATE_START_MICROS) {
+				LOG.warning("Load generator at " + communicator.getAddress() + " started " + deviation / 1000.0
+						+ " ms late. Consider increasing the start delay.");
+			}
+			maxDeviation = Math.max(maxDeviation, Math.abs(deviation));
+			maxError = Math.max(maxError, offset.getErrorBoundMicros());
+		}
+		if (synchronizedGenerators > 0) {
+			LOG.info(synchronizedGenerators + " load generator(s) started within " + maxDeviation / 1000.0
+					+ " ms of the scheduled start (clock offset error <= " + maxError / 1000.0 + " ms).");
+		}
+	}
+
+	/**
+	 * Sends a message to all load generators at once and waits until all of them have responded.
+	 * @param message Sends the message using a communicator and returns the future of its response.
+	 */
+	private void sendToAll(Function<LoadGeneratorCommunicator, CompletableFuture<?>> message) {
+		CompletableFuture.allOf(communicators.stream().map(message).toArray(CompletableFuture[]::new)).join();
 	}
 	
 	private static void initializePowerCommunicators(List<IPowerCommunicator> pcList,
@@ -287,58 +629,22 @@ public class Director extends Thread {
 	}
 	
 	/**
-	 * Collects one iteration of the results, aggregates them and returns them.
-	 * {@link IntervalResult#isMeasurementConcluded()} is false if more results are expected in the future.
-	 * Such a container contains valid measurements results for the current interval.<br/>
-	 * {@link IntervalResult#isMeasurementConcluded()} is true if the measurements have concluded and the
-	 * "done" signal was received from all communicators. No valid results in this container.
-	 * @return The interval's result.
+	 * Creates the CSV header columns for the reported percentiles and maximum of a latency.
+	 * @param name The name of the latency.
+	 * @return The header columns, each preceded by a comma.
 	 */
-	private IntervalResult collectResultRound() {
-		int finishedCommunicators = 0;
-		double targetTime = Double.NEGATIVE_INFINITY;
-		int loadIntensity = 0;
-		int successfulTransactions = 0;
-		int failedTransactions = 0;
-		int droppedTransactions = 0;
-		ArrayList<Double> responseTimes = new ArrayList<Double>();
-		ArrayList<Double> finalBatchTimes = new ArrayList<Double>();
-		for (LoadGeneratorCommunicator communicator : communicators) {
-			if (communicator.isFinished()) {
-				finishedCommunicators++;
-				if (finishedCommunicators == communicators.size()) {
-					return IntervalResult.createIntervalResultWithMeasurementConcludedFlag();
-				}
+	private static String createPercentileHeader(String name) {
+		StringBuilder header = new StringBuilder();
+		for (double percentile : LatencyHistogram.REPORTED_PERCENTILES) {
+			header.append(',').append(name).append(" p");
+			if (percentile == Math.rint(percentile)) {
+				header.append((long) percentile);
 			} else {
-				String receivedResults = communicator.getLatestResultMessageBlocking();
-				if (receivedResults == null) {
-					finishedCommunicators++;
-					if (finishedCommunicators == communicators.size()) {
-						return IntervalResult.createIntervalResultWithMeasurementConcludedFlag();
-					}
-				} else {
-					String[] tokens = receivedResults.split(",");
-					double receivedTargetTime = Double.parseDouble(tokens[0].trim());
-					if (targetTime == Double.NEGATIVE_INFINITY) {
-						targetTime = receivedTargetTime;
-					} else {
-						if (targetTime != receivedTargetTime) {
-							LOG.severe("Time mismatch in load generator responses! Measurement invalid.");
-						}
-					}
-					loadIntensity += Integer.parseInt(tokens[1].trim());
-					successfulTransactions += Integer.parseInt(tokens[2].trim());
-					responseTimes.add(Double.parseDouble(tokens[3].trim()));
-					failedTransactions += Integer.parseInt(tokens[4].trim());
-					droppedTransactions += Integer.parseInt(tokens[5].trim());
-					finalBatchTimes.add(Double.parseDouble(tokens[6].trim()));
-				}
+				header.append(percentile);
 			}
 		}
-		double avgResponseTime = responseTimes.stream().mapToDouble(d -> d.doubleValue()).average().getAsDouble();
-		double finalBatchTime = finalBatchTimes.stream().mapToDouble(d -> d.doubleValue()).max().getAsDouble();
-		return new IntervalResult(targetTime, loadIntensity, successfulTransactions, failedTransactions,
-				droppedTransactions, avgResponseTime, finalBatchTime);
+		header.append(",Max ").append(name);
+		return header.toString();
 	}
 
 	private void logState(IntervalResult result, List<IPowerCommunicator> powerCommunicators,
@@ -361,7 +667,15 @@ public class Director extends Thread {
 			writer.print(result.getTargetTime() + "," + result.getLoadIntensity() + ","
 					+ result.getSuccessfulTransactions() + "," + result.getFailedTransactions() + ","
 					+ result.getDroppedTransactions() + "," + result.getAvgResponseTime() + ","
-					+ result.getFinalBatchTime());
+					+ result.getFinalBatchTime() + "," + result.getAvgDispatchJitter() + ","
+					+ result.getMaxDispatchJitter() + "," + result.getAvgCorrectedResponseTime());
+			for (double value : result.getResponseTimePercentiles()) {
+				writer.print("," + value);
+			}
+			for (double value : result.getCorrectedResponseTimePercentiles()) {
+				writer.print("," + value);
+			}
+			writer.print("," + result.getReceivedBytes() + "," + result.getTimelineDivergence());
 			if (powers != null && !powers.isEmpty()) {
 				powers.stream().forEachOrdered(p -> writer.print("," + p));
 			}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.runner;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+ * Network layer of the director. A single thread multiplexes the non-blocking connections
+ * to all load generators using a selector. The {@link LoadGeneratorCommunicator}s only
+ * enqueue outgoing messages and are called back by this thread when data is received.
+ * The number of threads is thus independent of the number of load generators.
+ * @author Joakim von Kistowski
+ *
+ */
+public class DirectorNetwork extends Thread {
+
+	private static final Logger LOG = Logger.getLogger(DirectorNetwork.class.getName());
+
+	private final Selector selector;
+
+	/** Tasks that must run on the network thread, such as registering channels and changing interest sets. */
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+	private volatile boolean running = true;
+
+	/**
+	 * Creates and starts the network thread.
+	 * @throws IOException If the selector cannot be opened.
+	 */
+	public DirectorNetwork() throws IOException {
+		super("director-network");
+		setDaemon(true);
+		selector = Selector.open();
+		start();
+	}
+
+	/**
+	 * Registers the channel of a communicator for reading.
+	 * @param channel The connected channel. Is switched to non-blocking mode.
+	 * @param communicator The communicator that handles the channel's events.
+	 * @throws IOException If the channel cannot be switched to non-blocking mode.
+	 */
+	void register(SocketChannel channel, LoadGeneratorCommunicator communicator) throws IOException {
+		channel.configureBlocking(false);
+		execute(() -> {
+			try {
+				channel.register(selector, SelectionKey.OP_READ, communicator);
+			} catch (IOException e) {
+				communicator.connectionFailed(e);
+			}
+		});
+	}
+
+	/**
+	 * Requests a write notification for a channel, as its communicator has pending output.
+	 * @param channel The channel.
+	 */
+	void requestWrite(SocketChannel channel) {
+		execute(() -> {
+			SelectionKey key = channel.keyFor(selector);
+			if (key != null && key.isValid()) {
+				key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+			}
+		});
+	}
+
+	/**
+	 * Runs a task on the network thread.
+	 * @param task The task.
+	 */
+	private void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Stops the network thread and closes the selector. Channels must be closed by their communicators.
+	 */
+	public void shutdown() {
+		running = false;
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				selector.select();
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					task.run();
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					LoadGeneratorCommunicator communicator = (LoadGeneratorCommunicator) key.attachment();
+					try {
+						if (key.isReadable()) {
+							communicator.onReadable();
+						}
+						if (key.isValid() && key.isWritable() && communicator.onWritable()) {
+							//all pending output was written
+							key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+						}
+					} catch (IOException e) {
+						key.cancel();
+						communicator.connectionFailed(e);
+					} catch (CancelledKeyException e) {
+						communicator.connectionFailed(new IOException("Connection closed."));
+					}
+				}
+			}
+		} catch (IOException e) {
+			LOG.severe("Director network failed: " + e.getMessage());
+		} finally {
+			try {
+				selector.close();
+			} catch (IOException e) {
+				LOG.warning("Could not close selector: " + e.getMessage());
+			}
+		}
+	}
+}
@@ -54,6 +54,10 @@ public interface IRunnerConstants {
 	 * The default pause to wait after warmup before starting measurement (in seconds).
 	 */
 	public static final int DEFAULT_WARMUP_PAUSE = 5;
+	/**
+	 * The default delay between sending the start command and the synchronized start of all load generators (in ms).
+	 */
+	public static final int DEFAULT_START_DELAY_MS = 3000;
 	
 	/** Socket information */
 	/**
@@ -86,6 +90,39 @@ public interface IRunnerConstants {
 	 * Signal for sending number of load generation threads.
 	 */
 	public static final String THREAD_NUM_KEY = "threadnum:";
+	/**
+	 * Signal for sending the transaction dispatch mode.
+	 */
+	public static final String DISPATCH_MODE_KEY = "dispatchmode:";
+	/**
+	 * Signal for sending the arrival process for individual transactions.
+	 */
+	public static final String ARRIVAL_PROCESS_KEY = "arrivalprocess:";
+	/**
+	 * Signal for sending the transaction execution mode.
+	 */
+	public static final String EXECUTION_MODE_KEY = "executionmode:";
+	/**
+	 * Signal for sending the maximum number of requests in flight.
+	 */
+	public static final String IN_FLIGHT_LIMIT_KEY = "inflightlimit:";
+	/**
+	 * Signal for sending the workload model.
+	 */
+	public static final String WORKLOAD_MODEL_KEY = "workloadmodel:";
+	/**
+	 * Signal for sending the think time of closed-loop users.
+	 * Followed by the mean think time in ms and the distribution, separated by a comma.
+	 */
+	public static final String THINK_TIME_KEY = "thinktime:";
+	/**
+	 * Signal for sending the number of executor shards.
+	 */
+	public static final String EXECUTOR_SHARDS_KEY = "executorshards:";
+	/**
+	 * Signal for sending the HTTP client settings.
+	 */
+	public static final String HTTP_CLIENT_KEY = "httpclient:";
 	/**
 	 * Signal for sending the http timeout.
 	 */
@@ -101,9 +138,37 @@ public interface IRunnerConstants {
 	/**
 	 * Signal for starting measurement. Followed by comma-seperated parameters.
 	 * Expected: "start,[randomseed(int)],[randombatchtimes(boolean)],[warmup-duration-s(int)],
-	 * [warmup-load(double)],[warmup-pause-s(int)]"
+	 * [warmup-load(double)],[warmup-pause-s(int)],[randomize-users(boolean)],[start-at-us(long)]".
+	 * The load generator answers with its start time in ms, followed by its start time in us.
 	 */
 	public static final String START_KEY = "start";
+	/**
+	 * Signal for a clock synchronization probe. Followed by the director time in us.
+	 */
+	public static final String CLOCK_PROBE_KEY = "clockprobe:";
+	/**
+	 * Answer to a clock synchronization probe. Followed by the director time of the probe,
+	 * and the load generator times at which the probe was received and answered in us, separated by commas.
+	 */
+	public static final String CLOCK_REPLY_KEY = "clock:";
+	/**
+	 * Signal for requesting the capacity of the load generator.
+	 */
+	public static final String CAPACITY_KEY = "capacity";
+	/**
+	 * Answer to a capacity request. Followed by the number of available processors.
+	 */
+	public static final String CAPACITY_REPLY_KEY = "capacity:";
+	/**
+	 * Signal for adjusting the arrival rates of upcoming intervals, also while load is generated.
+	 * Followed by a comma and the number of adjusted arrival rate tuples, which are sent in the following lines.
+	 */
+	public static final String RATE_ADJUST_KEY = "rateadjust";
+	/**
+	 * Answer to a rate adjustment. Followed by the number of applied tuples. Tuples of intervals
+	 * that had already started are not applied.
+	 */
+	public static final String RATE_ADJUSTED_KEY = "rateadjusted:";
 	/**
 	 * Ok response.
 	 */
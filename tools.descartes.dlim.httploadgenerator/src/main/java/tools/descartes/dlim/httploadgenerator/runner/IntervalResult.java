@@ -24,11 +24,18 @@ public class IntervalResult {
 	
 	private double targetTime;
 	private double loadIntensity;
-	private int successfulTransactions;
+	private long successfulTransactions;
 	private double avgResponseTime;
-	private int failedTransactions;
-	private int droppedTransactions;
+	private long failedTransactions;
+	private long droppedTransactions;
 	private double finalBatchTime;
+	private double avgDispatchJitter;
+	private double maxDispatchJitter;
+	private double avgCorrectedResponseTime;
+	private double[] responseTimePercentiles = new double[0];
+	private double[] correctedResponseTimePercentiles = new double[0];
+	private long receivedBytes;
+	private double timelineDivergence;
 	private boolean measurementConcluded = false;
 	
 	public static IntervalResult createIntervalResultWithMeasurementConcludedFlag() {
@@ -44,10 +51,22 @@ public class IntervalResult {
 	 * @param droppedTransactions Number of dropped transactions.
 	 * @param avgResponseTime The average response time.
 	 * @param finalBatchTime The final batch time.
+	 * @param avgDispatchJitter The average dispatch jitter in ms.
+	 * @param maxDispatchJitter The maximum dispatch jitter in ms.
+	 * @param avgCorrectedResponseTime The average response time, corrected for coordinated omission.
+	 * @param responseTimePercentiles The response times at the reported percentiles, followed by the maximum.
+	 * @param correctedResponseTimePercentiles The corrected response times at the reported percentiles,
+	 * 			followed by the maximum.
+	 * @param receivedBytes The number of received response body bytes.
+	 * @param timelineDivergence The time between the first and the last load generator reporting
+	 * 			the interval in ms.
 	 */
-	public IntervalResult(double targetTime, double loadIntensity, int successfulTransactions,
-			int failedTransactions, int droppedTransactions,
-			double avgResponseTime, double finalBatchTime) {
+	public IntervalResult(double targetTime, double loadIntensity, long successfulTransactions,
+			long failedTransactions, long droppedTransactions,
+			double avgResponseTime, double finalBatchTime,
+			double avgDispatchJitter, double maxDispatchJitter, double avgCorrectedResponseTime,
+			double[] responseTimePercentiles, double[] correctedResponseTimePercentiles, long receivedBytes,
+			double timelineDivergence) {
 		this.targetTime = targetTime;
 		this.loadIntensity = loadIntensity;
 		this.successfulTransactions = successfulTransactions;
@@ -55,6 +74,13 @@ public class IntervalResult {
 		this.droppedTransactions = droppedTransactions;
 		this.avgResponseTime = avgResponseTime;
 		this.finalBatchTime = finalBatchTime;
+		this.avgDispatchJitter = avgDispatchJitter;
+		this.maxDispatchJitter = maxDispatchJitter;
+		this.avgCorrectedResponseTime = avgCorrectedResponseTime;
+		this.responseTimePercentiles = responseTimePercentiles;
+		this.correctedResponseTimePercentiles = correctedResponseTimePercentiles;
+		this.receivedBytes = receivedBytes;
+		this.timelineDivergence = timelineDivergence;
 		this.measurementConcluded = false;
 	}
 	
@@ -86,7 +112,7 @@ public class IntervalResult {
 	 * Returns the number of successful transactions.
 	 * @return Number of successful transactions.
 	 */
-	public int getSuccessfulTransactions() {
+	public long getSuccessfulTransactions() {
 		return successfulTransactions;
 	}
 
@@ -98,11 +124,52 @@ public class IntervalResult {
 		return avgResponseTime;
 	}
 
+	/**
+	 * Returns the average response time, corrected for coordinated omission.
+	 * @return The average corrected response time.
+	 */
+	public double getAvgCorrectedResponseTime() {
+		return avgCorrectedResponseTime;
+	}
+
+	/**
+	 * Returns the response times at the reported percentiles, followed by the maximum response time.
+	 * @return The response time percentiles.
+	 */
+	public double[] getResponseTimePercentiles() {
+		return responseTimePercentiles;
+	}
+
+	/**
+	 * Returns the corrected response times at the reported percentiles,
+	 * followed by the maximum corrected response time.
+	 * @return The corrected response time percentiles.
+	 */
+	public double[] getCorrectedResponseTimePercentiles() {
+		return correctedResponseTimePercentiles;
+	}
+
+	/**
+	 * Returns the number of received response body bytes.
+	 * @return The number of received bytes.
+	 */
+	public long getReceivedBytes() {
+		return receivedBytes;
+	}
+
+	/**
+	 * Returns the time between the first and the last load generator reporting the interval.
+	 * @return The timeline divergence in ms.
+	 */
+	public double getTimelineDivergence() {
+		return timelineDivergence;
+	}
+
 	/**
 	 * Returns the number of failed transactions.
 	 * @return Number of failed transactions.
 	 */
-	public int getFailedTransactions() {
+	public long getFailedTransactions() {
 		return failedTransactions;
 	}
 
@@ -110,7 +177,7 @@ public class IntervalResult {
 	 * Returns the number of dropped transactions.
 	 * @return Number of dropped transactions.
 	 */
-	public int getDroppedTransactions() {
+	public long getDroppedTransactions() {
 		return droppedTransactions;
 	}
 
@@ -122,6 +189,22 @@ public class IntervalResult {
 		return finalBatchTime;
 	}
 
+	/**
+	 * Returns the average dispatch jitter in ms.
+	 * @return The average dispatch jitter.
+	 */
+	public double getAvgDispatchJitter() {
+		return avgDispatchJitter;
+	}
+
+	/**
+	 * Returns the maximum dispatch jitter in ms.
+	 * @return The maximum dispatch jitter.
+	 */
+	public double getMaxDispatchJitter() {
+		return maxDispatchJitter;
+	}
+
 	/**
 	 * Returns true if measurement has concluded. False, otherwise.
 	 * @return If the measurement has concluded.
@@ -0,0 +1,262 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.runner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalRateTuple;
+
+/**
+ * Plans the load of each load generator and shifts load between the load generators during the run.
+ * After each interval, the balancer checks the load generators. Load generators that drop transactions
+ * or dispatch their final batch late (see {@link #isLagging(LoadGeneratorResult)}) for {@link #LAG_INTERVALS}
+ * consecutive intervals are lagging and their weight is reduced by {@link #LAG_WEIGHT_FACTOR}. Load generators whose
+ * connection failed or that did not report for {@link #MISSED_INTERVALS} consecutive intervals have failed
+ * and are disconnected. In both cases, the load of the upcoming intervals is apportioned anew and
+ * sent to the load generators as rate adjustments. Load generators that do not support rate adjustments
+ * keep their initial load, the remaining load is apportioned among the others.
+ * @author Joakim von Kistowski
+ *
+ */
+public class LoadBalancer {
+
+	private static final Logger LOG = Logger.getLogger(LoadBalancer.class.getName());
+
+	/** Number of consecutive lagging intervals after which load is shifted away from a load generator. */
+	private static final int LAG_INTERVALS = 3;
+
+	/** Time in s after the end of the interval after which a final batch dispatch is late. */
+	private static final double LAG_TOLERANCE_S = 0.1;
+
+	/** Factor by which the weight of a lagging load generator is reduced. */
+	private static final double LAG_WEIGHT_FACTOR = 0.75;
+
+	/** Number of consecutive intervals without results after which a load generator has failed. */
+	private static final int MISSED_INTERVALS = 2;
+
+	private final List<LoadGeneratorCommunicator> communicators;
+	private final List<ArrivalRateTuple> rates;
+	private final List<List<ArrivalRateTuple>> plans;
+	private final double[] weights;
+	private final boolean[] adjustable;
+	private final boolean[] failed;
+	private final int[] missedIntervals;
+	private boolean started = false;
+	private boolean saturationReported = false;
+
+	/**
+	 * Creates a new balancer and plans the initial load of each load generator.
+	 * @param communicators The communicators of the load generators.
+	 * @param rates The load profile.
+	 * @param distribution The initial distribution of the load.
+	 */
+	public LoadBalancer(List<LoadGeneratorCommunicator> communicators, List<ArrivalRateTuple> rates,
+			LoadDistribution distribution) {
+		this.communicators = communicators;
+		this.rates = rates;
+		this.plans = distribution.distribute(rates);
+		int generatorCount = communicators.size();
+		weights = new double[generatorCount];
+		for (int i = 0; i < generatorCount; i++) {
+			weights[i] = distribution.getShare(i);
+		}
+		adjustable = new boolean[generatorCount];
+		failed = new boolean[generatorCount];
+		missedIntervals = new int[generatorCount];
+	}
+
+	/**
+	 * Checks if a load generator lagged behind in an interval.
+	 * @param result The load generator's result of the interval.
+	 * @return True if it dropped transactions or dispatched its final batch late.
+	 */
+	static boolean isLagging(LoadGeneratorResult result) {
+		return result.getDroppedTransactions() > 0
+				|| result.getFinalBatchTime() > result.getTargetTime() + LAG_TOLERANCE_S;
+	}
+
+	/**
+	 * Returns the planned load profile of a load generator.
+	 * @param generator The index of the load generator.
+	 * @return The load profile.
+	 */
+	public List<ArrivalRateTuple> getRates(int generator) {
+		return plans.get(generator);
+	}
+
+	/**
+	 * Checks which load generators support rate adjustments. Call before sending the remaining settings,
+	 * so that the load generators have answered by the time {@link #start()} is called.
+	 */
+	public void probeGenerators() {
+		communicators.forEach(c -> c.probeRateAdjustment());
+	}
+
+	/**
+	 * Starts balancing. Call once the load generators have started.
+	 */
+	public void start() {
+		for (int i = 0; i < communicators.size(); i++) {
+			LoadGeneratorCommunicator communicator = communicators.get(i);
+			adjustable[i] = communicator.supportsRateAdjustment();
+			if (!adjustable[i] && !communicator.isClosed()) {
+				LOG.warning("Load generator at " + communicator.getAddress()
+						+ " does not support rate adjustments. Its load is not rebalanced.");
+			}
+		}
+		started = true;
+	}
+
+	/**
+	 * Checks the load generators after an interval and shifts load if necessary.
+	 * @param round The aggregated result of the interval.
+	 */
+	public void onRound(IntervalResult round) {
+		double targetTime = round.getTargetTime();
+		if (!started || rates.isEmpty() || targetTime >= rates.get(rates.size() - 1).getTimeStamp()) {
+			//nothing left to shift
+			return;
+		}
+		boolean rebalance = false;
+		List<Integer> lagging = new ArrayList<>();
+		boolean healthy = false;
+		for (int i = 0; i < communicators.size(); i++) {
+			LoadGeneratorCommunicator communicator = communicators.get(i);
+			if (failed[i] || communicator.isFinished()) {
+				continue;
+			}
+			LoadGeneratorResult latest = communicator.getLatestResult();
+			if (communicator.isClosed()) {
+				LOG.warning("Lost connection to load generator at " + communicator.getAddress()
+						+ ". Redistributing its load.");
+				failed[i] = true;
+				rebalance = true;
+			} else if (latest == null || latest.getTargetTime() < targetTime) {
+				missedIntervals[i]++;
+				if (missedIntervals[i] >= MISSED_INTERVALS) {
+					LOG.warning("Load generator at " + communicator.getAddress() + " did not report for "
+							+ missedIntervals[i] + " intervals. Disconnecting it and redistributing its load.");
+					communicator.close();
+					failed[i] = true;
+					rebalance = true;
+				}
+			} else {
+				missedIntervals[i] = 0;
+				if (adjustable[i]) {
+					if (communicator.getLaggingIntervals() >= LAG_INTERVALS) {
+						lagging.add(i);
+					} else if (communicator.getLaggingIntervals() == 0) {
+						healthy = true;
+					}
+				}
+			}
+		}
+		if (!lagging.isEmpty()) {
+			if (healthy) {
+				for (int i : lagging) {
+					LoadGeneratorCommunicator communicator = communicators.get(i);
+					LOG.warning("Load generator at " + communicator.getAddress() + " is lagging behind for "
+							+ communicator.getLaggingIntervals() + " intervals. Shifting "
+							+ (int) (100 * (1 - LAG_WEIGHT_FACTOR)) + " % of its load to other load generators.");
+					weights[i] *= LAG_WEIGHT_FACTOR;
+					communicator.resetLaggingIntervals();
+				}
+				rebalance = true;
+			} else if (!saturationReported) {
+				LOG.warning("All load generators that support rate adjustments are lagging behind. Not shifting load.");
+				saturationReported = true;
+			}
+		}
+		if (rebalance) {
+			rebalance();
+		}
+	}
+
+	/**
+	 * Apportions the load of the upcoming intervals anew and sends the changes to the load generators.
+	 * The interval that the load generators are currently running is skipped, as they may have started
+	 * the next interval before receiving the adjustment.
+	 */
+	private void rebalance() {
+		double latestTargetTime = Double.NEGATIVE_INFINITY;
+		for (LoadGeneratorCommunicator communicator : communicators) {
+			LoadGeneratorResult latest = communicator.getLatestResult();
+			if (latest != null) {
+				latestTargetTime = Math.max(latestTargetTime, latest.getTargetTime());
+			}
+		}
+		int from = 0;
+		while (from < rates.size() && rates.get(from).getTimeStamp() <= latestTargetTime) {
+			from++;
+		}
+		from++;
+		if (from >= rates.size()) {
+			return;
+		}
+		double[] effectiveWeights = new double[communicators.size()];
+		boolean available = false;
+		for (int i = 0; i < communicators.size(); i++) {
+			if (adjustable[i] && !failed[i] && !communicators.get(i).isClosed()) {
+				effectiveWeights[i] = weights[i];
+				available = true;
+			}
+		}
+		if (!available) {
+			LOG.severe("No load generator can take over the load. The load intensity of the remaining intervals"
+					+ " is lower than specified.");
+			return;
+		}
+		//load generators without rate adjustments keep their load
+		List<ArrivalRateTuple> remaining = new ArrayList<>(rates.size() - from);
+		for (int j = from; j < rates.size(); j++) {
+			double load = (int) rates.get(j).getArrivalRate();
+			for (int i = 0; i < communicators.size(); i++) {
+				if (!adjustable[i] && !failed[i]) {
+					load -= plans.get(i).get(j).getArrivalRate();
+				}
+			}
+			remaining.add(new ArrivalRateTuple(rates.get(j).getTimeStamp(), Math.max(0, load)));
+		}
+		List<List<ArrivalRateTuple>> redistributed = new LoadDistribution(effectiveWeights).distribute(remaining);
+		for (int i = 0; i < communicators.size(); i++) {
+			if (effectiveWeights[i] <= 0) {
+				continue;
+			}
+			List<ArrivalRateTuple> changes = new ArrayList<>();
+			for (int j = from; j < rates.size(); j++) {
+				ArrivalRateTuple adjusted = redistributed.get(i).get(j - from);
+				if (adjusted.getArrivalRate() != plans.get(i).get(j).getArrivalRate()) {
+					changes.add(adjusted);
+					plans.get(i).set(j, adjusted);
+				}
+			}
+			if (!changes.isEmpty()) {
+				LoadGeneratorCommunicator communicator = communicators.get(i);
+				int adjustments = changes.size();
+				communicator.sendRateAdjustment(changes).thenAccept(applied -> {
+					if (applied >= 0 && applied < adjustments) {
+						LOG.warning("Load generator at " + communicator.getAddress() + " applied only " + applied
+								+ " of " + adjustments + " rate adjustments.");
+					}
+				});
+			}
+		}
+		LOG.info("Rebalanced the load of the load generators, starting at target time "
+				+ rates.get(from).getTimeStamp() + ".");
+	}
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.runner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalRateTuple;
+
+/**
+ * Distributes the load intensity of a profile across multiple load generators according to their weights.
+ * Load generators only execute whole transactions (or users) per interval. The load intensity of each
+ * interval is therefore apportioned using the largest remainder method: each load generator gets the
+ * integer part of its quota, the remaining transactions go to the load generators with the largest
+ * fractional remainders. The remainders are carried over to the next interval, so that each load generator
+ * receives its exact share over time. The load intensities of all load generators always add up to the
+ * load intensity that a single load generator would execute.
+ * @author Joakim von Kistowski
+ *
+ */
+public class LoadDistribution {
+
+	private final double[] shares;
+
+	/**
+	 * Creates a new distribution.
+	 * @param weights The weights of the load generators. The share of each load generator is proportional
+	 * 		to its weight.
+	 * @throws IllegalArgumentException If a weight is negative or if there are weights, but none is positive.
+	 */
+	public LoadDistribution(double[] weights) {
+		double sum = 0;
+		for (double weight : weights) {
+			if (weight < 0 || Double.isNaN(weight) || Double.isInfinite(weight)) {
+				throw new IllegalArgumentException("Invalid load generator weight: " + weight);
+			}
+			sum += weight;
+		}
+		if (weights.length > 0 && sum <= 0) {
+			throw new IllegalArgumentException("At least one load generator weight must be positive.");
+		}
+		shares = new double[weights.length];
+		for (int i = 0; i < weights.length; i++) {
+			shares[i] = weights[i] / sum;
+		}
+	}
+
+	/**
+	 * Creates a distribution with equal weights.
+	 * @param generatorCount The number of load generators.
+	 * @return The distribution.
+	 */
+	public static LoadDistribution equal(int generatorCount) {
+		double[] weights = new double[generatorCount];
+		Arrays.fill(weights, 1.0);
+		return new LoadDistribution(weights);
+	}
+
+	/**
+	 * Returns the share of a load generator.
+	 * @param generator The index of the load generator.
+	 * @return The share between 0 and 1.
+	 */
+	public double getShare(int generator) {
+		return shares[generator];
+	}
+
+	/**
+	 * Splits a load profile into one profile per load generator.
+	 * @param rates The load profile.
+	 * @return The profiles of the load generators, in the order of the weights.
+	 */
+	public List<List<ArrivalRateTuple>> distribute(List<ArrivalRateTuple> rates) {
+		List<List<ArrivalRateTuple>> profiles = new ArrayList<>(shares.length);
+		for (int i = 0; i < shares.length; i++) {
+			profiles.add(new ArrayList<>(rates.size()));
+		}
+		double[] carry = new double[shares.length];
+		for (ArrivalRateTuple t : rates) {
+			int[] intensities = apportion((int) t.getArrivalRate(), carry);
+			for (int i = 0; i < shares.length; i++) {
+				profiles.get(i).add(new ArrivalRateTuple(t.getTimeStamp(), intensities[i]));
+			}
+		}
+		return profiles;
+	}
+
+	/**
+	 * Apportions the load intensity of a single interval.
+	 * @param total The load intensity of the interval.
+	 * @param carry The remainders carried over from the previous interval. Updated for the next interval.
+	 * @return The load intensities of the load generators. They add up to the total.
+	 */
+	int[] apportion(int total, double[] carry) {
+		int[] intensities = new int[shares.length];
+		if (shares.length == 0) {
+			return intensities;
+		}
+		double[] quotas = new double[shares.length];
+		int assigned = 0;
+		for (int i = 0; i < shares.length; i++) {
+			quotas[i] = total * shares[i] + carry[i];
+			intensities[i] = Math.max(0, (int) Math.floor(quotas[i]));
+			assigned += intensities[i];
+		}
+		//hand out the remaining transactions by largest remainder, take surplus ones back by smallest remainder
+		while (assigned != total) {
+			int selected = -1;
+			for (int i = 0; i < shares.length; i++) {
+				if (assigned > total && intensities[i] == 0) {
+					continue;
+				}
+				if (selected < 0) {
+					selected = i;
+				} else {
+					double remainder = quotas[i] - intensities[i];
+					double selectedRemainder = quotas[selected] - intensities[selected];
+					if (assigned < total ? remainder > selectedRemainder : remainder < selectedRemainder) {
+						selected = i;
+					}
+				}
+			}
+			if (assigned < total) {
+				intensities[selected]++;
+				assigned++;
+			} else {
+				intensities[selected]--;
+				assigned--;
+			}
+		}
+		for (int i = 0; i < shares.length; i++) {
+			carry[i] = quotas[i] - intensities[i];
+		}
+		return intensities;
+	}
+}
@@ -15,122 +15,556 @@
  */
 package tools.descartes.dlim.httploadgenerator.runner;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalProcess;
 import tools.descartes.dlim.httploadgenerator.generator.ArrivalRateTuple;
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalRateTupleLoadGenerator;
+import tools.descartes.dlim.httploadgenerator.generator.ThinkTimeDistribution;
+import tools.descartes.dlim.httploadgenerator.http.HTTPClientSettings;
 
 /**
  * Sends and receives data to/from a load generator.
+ * Uses the {@link BinaryProtocol} if requested and supported by the load generator.
+ * Falls back to the line-based text protocol otherwise.
+ * The connection is non-blocking and served by the {@link DirectorNetwork}. Sending a message returns
+ * a future that completes once the load generator has acknowledged the message, so that the director
+ * can send to all load generators at once. Received results are passed on to a {@link ResultAggregator}.
  * @author Joakim von Kistowski
  *
  */
 public class LoadGeneratorCommunicator {
-	
+
 	private static final Logger LOG = Logger.getLogger(LoadGeneratorCommunicator.class.getName());
-	
-	private Socket socket = null;
-	private BufferedReader in = null;
-	private PrintWriter out = null;
-
-	private String ip;
-	private int port;
-	
+
+	/** Initial size of the receive buffer. Grows for larger messages. */
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+	private final String ip;
+	private final int port;
+	private final DirectorNetwork network;
+	private final ResultAggregator aggregator;
+
+	private SocketChannel channel = null;
+	private final long handshakeDeadline;
+
+	/** Completes with true if the binary protocol is used, false if the text protocol is used. */
+	private final CompletableFuture<Boolean> protocol = new CompletableFuture<>();
+
+	private final ConcurrentLinkedQueue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<CompletableFuture<Void>> pendingAcknowledgements
+		= new ConcurrentLinkedQueue<>();
+	private volatile CompletableFuture<Long> startTime = null;
+	private volatile ClockSynchronization clockSynchronization = null;
+	private volatile ClockOffset clockOffset = null;
+	private volatile long generatorStartMicros = 0;
+	private volatile CompletableFuture<Integer> processorCount = null;
+	private final ConcurrentLinkedQueue<CompletableFuture<Integer>> pendingRateAdjustments
+		= new ConcurrentLinkedQueue<>();
+	private volatile CompletableFuture<Integer> rateAdjustmentProbe = null;
+	private volatile LoadGeneratorResult latestResult = null;
+	private final AtomicInteger laggingIntervals = new AtomicInteger(0);
+
+	/** Only accessed by the network thread. */
+	private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
 	private boolean finished = false;
-	
-	private BlockingQueue<String> resultMessageQueue = new LinkedBlockingQueue<>();
-	
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+
 	/**
-	 * Create a new communicator.
+	 * Create a new communicator and connect to the load generator.
 	 * @param ip IP or host name of the load generator.
 	 * @param port Port of the load generator.
+	 * @param protocol The protocol to use. The binary protocol falls back to the text protocol
+	 * 		if the load generator does not support it, see {@link #awaitProtocol()}.
+	 * @param network The network that serves the connection.
+	 * @param aggregator The aggregator that receives the results of the load generator.
 	 */
-	public LoadGeneratorCommunicator(String ip, int port) {
+	public LoadGeneratorCommunicator(String ip, int port, Protocol protocol,
+			DirectorNetwork network, ResultAggregator aggregator) {
 		this.ip = ip;
 		this.port = port;
+		this.network = network;
+		this.aggregator = aggregator;
+		handshakeDeadline = System.currentTimeMillis() + BinaryProtocol.HANDSHAKE_TIMEOUT_MS;
 		try {
-			socket = new Socket(ip, port);
-			out = new PrintWriter(socket.getOutputStream(), true);
-			in = new BufferedReader(new InputStreamReader(
-					socket.getInputStream()));
+			channel = SocketChannel.open(new InetSocketAddress(ip, port));
+			network.register(channel, this);
+			if (protocol == Protocol.BINARY) {
+				enqueue(BinaryProtocol.createHandshake());
+			} else {
+				this.protocol.complete(false);
+			}
 		} catch  (IOException e) {
-			LOG.severe("Could not connect to LoadGenerator.");
+			LOG.severe("Could not connect to LoadGenerator at " + ip + ":" + port);
+			close();
+		}
+	}
+
+	/**
+	 * Creates a communicator that is not connected to a load generator. Messages to the load generator
+	 * are discarded and results are only received using {@link #addResult(LoadGeneratorResult)}.
+	 * Used to test the processing of results without a network.
+	 * @param ip IP or host name of the load generator.
+	 * @param port Port of the load generator.
+	 * @param aggregator The aggregator that receives the results of the load generator.
+	 */
+	LoadGeneratorCommunicator(String ip, int port, ResultAggregator aggregator) {
+		this.ip = ip;
+		this.port = port;
+		this.network = null;
+		this.aggregator = aggregator;
+		handshakeDeadline = System.currentTimeMillis();
+		protocol.complete(false);
+	}
+
+	/**
+	 * Waits until the protocol is negotiated. Falls back to the text protocol if the load generator
+	 * did not respond to the binary handshake within {@link BinaryProtocol#HANDSHAKE_TIMEOUT_MS}
+	 * after connecting. As the handshakes of all communicators run concurrently, awaiting the protocol
+	 * of multiple communicators takes at most one timeout.
+	 */
+	public void awaitProtocol() {
+		try {
+			protocol.get(Math.max(0, handshakeDeadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			if (protocol.complete(false)) {
+				LOG.warning("Load generator at " + ip + ":" + port
+						+ " does not support the binary protocol. Using text protocol.");
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			protocol.complete(false);
+		}
+	}
+
+	private boolean isBinary() {
+		return protocol.getNow(false);
+	}
+
+	/**
+	 * Returns the address of the load generator.
+	 * @return The address in the form ip:port.
+	 */
+	public String getAddress() {
+		return ip + ":" + port;
+	}
+
+	/**
+	 * Estimates the offset of the load generator's clock using consecutive probes.
+	 * Load generators that do not support clock synchronization never answer. Use
+	 * {@link #finishClockSynchronization()} to stop waiting for them.
+	 * @param probes The number of probes. The probe with the lowest round trip time is used.
+	 * @return Future of the estimated offset. Completes with null if the connection is closed.
+	 */
+	public CompletableFuture<ClockOffset> synchronizeClock(int probes) {
+		ClockSynchronization synchronization = new ClockSynchronization(probes);
+		clockSynchronization = synchronization;
+		sendClockProbe();
+		if (closed.get()) {
+			synchronization.result.complete(null);
+		}
+		return synchronization.result;
+	}
+
+	/**
+	 * Stops an ongoing clock synchronization. Uses the best estimate so far, if any probe was answered.
+	 */
+	public void finishClockSynchronization() {
+		ClockSynchronization synchronization = clockSynchronization;
+		if (synchronization != null) {
+			synchronized (synchronization) {
+				clockOffset = synchronization.best;
+				synchronization.result.complete(synchronization.best);
+			}
+		}
+	}
+
+	/**
+	 * Returns the estimated offset of the load generator's clock.
+	 * @return The offset. Null if the clock was not synchronized.
+	 */
+	public ClockOffset getClockOffset() {
+		return clockOffset;
+	}
+
+	/**
+	 * Returns the time at which the load generator started generating load, as reported by the load generator.
+	 * @return The start time in us of the load generator's clock. 0 if unknown.
+	 */
+	public long getGeneratorStartMicros() {
+		return generatorStartMicros;
+	}
+
+	/**
+	 * Requests the number of processors available to the load generator.
+	 * Load generators that do not support capacity requests never answer.
+	 * @return Future of the number of processors. Completes with 0 if the connection is closed.
+	 */
+	public CompletableFuture<Integer> requestProcessorCount() {
+		CompletableFuture<Integer> processors = new CompletableFuture<>();
+		processorCount = processors;
+		if (isBinary()) {
+			try {
+				enqueue(BinaryProtocol.encodeMessage(BinaryProtocol.MessageType.CAPACITY_REQUEST, null));
+			} catch (IOException e) {
+				LOG.severe("Write Failed for load driver at " + ip + ":" + port);
+			}
+		} else {
+			enqueue(ByteBuffer.wrap((IRunnerConstants.CAPACITY_KEY + "\n").getBytes(StandardCharsets.UTF_8)));
+		}
+		if (closed.get()) {
+			processors.complete(0);
+		}
+		return processors;
+	}
+
+	/**
+	 * Adjusts the arrival rates of upcoming intervals. Load generators also apply adjustments while
+	 * generating load, except for intervals that have already started.
+	 * Load generators that do not support rate adjustments never answer.
+	 * @param rates The adjusted arrival rate tuples. Their time stamps identify the intervals.
+	 * @return Future of the number of applied tuples. Completes with -1 if the connection is closed.
+	 */
+	public CompletableFuture<Integer> sendRateAdjustment(List<ArrivalRateTuple> rates) {
+		CompletableFuture<Integer> applied = new CompletableFuture<>();
+		pendingRateAdjustments.add(applied);
+		if (isBinary()) {
+			try {
+				enqueue(BinaryProtocol.encodeMessage(BinaryProtocol.MessageType.RATE_ADJUST, p -> {
+					p.writeInt(rates.size());
+					for (ArrivalRateTuple t : rates) {
+						p.writeDouble(t.getTimeStamp());
+						p.writeDouble(t.getArrivalRate());
+					}
+				}));
+			} catch (IOException e) {
+				LOG.severe("Write Failed for load driver at " + ip + ":" + port);
+			}
+		} else {
+			StringBuilder lines = new StringBuilder(rates.size() * 16);
+			lines.append(IRunnerConstants.RATE_ADJUST_KEY + "," + rates.size() + "\r\n");
+			for (ArrivalRateTuple t : rates) {
+				lines.append("" + t.getTimeStamp() + "," + t.getArrivalRate());
+				lines.append("\r\n");
+			}
+			enqueue(ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8)));
 		}
+		if (closed.get()) {
+			applied.complete(-1);
+		}
+		return applied;
+	}
+
+	/**
+	 * Checks if the load generator supports rate adjustments by sending an empty adjustment.
+	 * The result is available using {@link #supportsRateAdjustment()} once the load generator has answered.
+	 * As the load generator answers in order, this is the case once subsequently sent messages are acknowledged.
+	 */
+	public void probeRateAdjustment() {
+		rateAdjustmentProbe = sendRateAdjustment(Collections.emptyList());
 	}
-	
+
+	/**
+	 * Returns true if the load generator answered the probe of {@link #probeRateAdjustment()}.
+	 * @return True if the load generator supports rate adjustments.
+	 */
+	public boolean supportsRateAdjustment() {
+		CompletableFuture<Integer> probe = rateAdjustmentProbe;
+		return probe != null && probe.getNow(-1) >= 0;
+	}
+
+	private void completeRateAdjustment(int applied) {
+		CompletableFuture<Integer> adjustment = pendingRateAdjustments.poll();
+		if (adjustment != null) {
+			adjustment.complete(applied);
+		}
+	}
+
+	/**
+	 * Returns the latest interval result received from the load generator.
+	 * @return The result. Null if no result was received yet.
+	 */
+	public LoadGeneratorResult getLatestResult() {
+		return latestResult;
+	}
+
+	/**
+	 * Returns the number of consecutive intervals in which the load generator lagged behind,
+	 * see {@link LoadBalancer#isLagging(LoadGeneratorResult)}.
+	 * @return The number of intervals.
+	 */
+	public int getLaggingIntervals() {
+		return laggingIntervals.get();
+	}
+
+	/**
+	 * Resets the number of consecutive lagging intervals, once load was shifted away from the load generator.
+	 */
+	public void resetLaggingIntervals() {
+		laggingIntervals.set(0);
+	}
+
+	/**
+	 * Processes a result received from the load generator.
+	 * @param result The result.
+	 */
+	void addResult(LoadGeneratorResult result) {
+		if (result.getTargetTime() > 0) {
+			//warmup is not part of the load profile
+			if (LoadBalancer.isLagging(result)) {
+				laggingIntervals.incrementAndGet();
+			} else {
+				laggingIntervals.set(0);
+			}
+		}
+		latestResult = result;
+		aggregator.addResult(this, result);
+	}
+
+	private void completeProcessorCount(int processors) {
+		CompletableFuture<Integer> future = processorCount;
+		if (future != null) {
+			future.complete(processors);
+		}
+	}
+
+	private void sendClockProbe() {
+		long probeMicros = ClockOffset.currentTimeMicros();
+		if (isBinary()) {
+			try {
+				enqueue(BinaryProtocol.encodeMessage(BinaryProtocol.MessageType.CLOCK_PROBE,
+						p -> p.writeLong(probeMicros)));
+			} catch (IOException e) {
+				LOG.severe("Write Failed for load driver at " + ip + ":" + port);
+			}
+		} else {
+			enqueue(ByteBuffer.wrap((IRunnerConstants.CLOCK_PROBE_KEY + probeMicros + "\n")
+					.getBytes(StandardCharsets.UTF_8)));
+		}
+	}
+
+	/**
+	 * Handles the answer to a clock probe. Sends the next probe, if any.
+	 * @param probeMicros Director time at which the probe was sent.
+	 * @param receivedMicros Load generator time at which the probe was received.
+	 * @param answeredMicros Load generator time at which the answer was sent.
+	 */
+	private void onClockReply(long probeMicros, long receivedMicros, long answeredMicros) {
+		long answerReceivedMicros = ClockOffset.currentTimeMicros();
+		ClockSynchronization synchronization = clockSynchronization;
+		if (synchronization == null) {
+			return;
+		}
+		synchronized (synchronization) {
+			if (synchronization.result.isDone()) {
+				return;
+			}
+			synchronization.best = ClockOffset.fromProbe(probeMicros, receivedMicros, answeredMicros,
+					answerReceivedMicros).best(synchronization.best);
+			synchronization.remainingProbes--;
+			if (synchronization.remainingProbes > 0) {
+				sendClockProbe();
+			} else {
+				clockOffset = synchronization.best;
+				synchronization.result.complete(synchronization.best);
+			}
+		}
+	}
+
 	/**
 	 * Sends a lua script to the load generator.
 	 * @param scriptPath The path of the script file on the director's file system.
+	 * @return Future that completes once the load generator has acknowledged the script.
 	 */
-	public void sendLUAScript(String scriptPath) {
-		out.println(IRunnerConstants.SCRIPT_SEND_KEY);
-		try (BufferedReader br = new BufferedReader(new FileReader(scriptPath))) {
-			String line;
-			while ((line = br.readLine()) != null) {
-				out.write(line + "\n");
-			}
-			out.write(IRunnerConstants.SCRIPT_TERM_KEY + "\n");
-			out.flush();
-		} catch (FileNotFoundException e) {
-			LOG.severe("Script file not found at: " + scriptPath);
+	public CompletableFuture<Void> sendLUAScript(String scriptPath) {
+		byte[] script;
+		try {
+			script = Files.readAllBytes(Paths.get(scriptPath));
 		} catch (IOException e) {
-			LOG.severe("IOException parsing script file at: " + scriptPath);
+			LOG.severe("IOException reading script file at: " + scriptPath);
 			LOG.severe(e.getMessage());
+			return CompletableFuture.completedFuture(null);
+		}
+		if (isBinary()) {
+			return sendMessage(BinaryProtocol.MessageType.SCRIPT, p -> BinaryProtocol.writeBytes(p, script));
 		}
-		waitForOK();
+		StringBuilder lines = new StringBuilder(script.length + 128);
+		lines.append(IRunnerConstants.SCRIPT_SEND_KEY).append('\n');
+		for (String line : new String(script, StandardCharsets.UTF_8).split("\r?\n")) {
+			lines.append(line).append('\n');
+		}
+		lines.append(IRunnerConstants.SCRIPT_TERM_KEY).append('\n');
+		return sendLines(lines.toString());
 	}
-	
+
 	/**
 	 * Sends a list of arrival rates to the load generator.
 	 * @param rates List of arrival rate tuples.
-	 * @param divisor Divisor to divide arrival rates by before sending.
-	 * Use if you want the load generator to only execute a fraction of the arrival rates.
-	 * Otherwise, set to 1.
+	 * @return Future that completes once the load generator has acknowledged the arrival rates.
 	 */
-	public void sendArrivalRates(List<ArrivalRateTuple> rates, int divisor) {
+	public CompletableFuture<Void> sendArrivalRates(List<ArrivalRateTuple> rates) {
 		//send load profile
-		out.write(IRunnerConstants.ARRIVALRATE_SEND_KEY + "," + rates.size() + "\r\n");
+		if (isBinary()) {
+			return sendMessage(BinaryProtocol.MessageType.ARRIVAL_RATES, p -> {
+				p.writeInt(rates.size());
+				for (ArrivalRateTuple t : rates) {
+					p.writeDouble(t.getTimeStamp());
+					p.writeDouble(t.getArrivalRate());
+				}
+			});
+		}
+		StringBuilder lines = new StringBuilder(rates.size() * 16);
+		lines.append(IRunnerConstants.ARRIVALRATE_SEND_KEY + "," + rates.size() + "\r\n");
 		for (ArrivalRateTuple t : rates) {
-			out.write("" + t.getTimeStamp() + "," + (t.getArrivalRate() / divisor));
-			out.write("\r\n");
+			lines.append("" + t.getTimeStamp() + "," + t.getArrivalRate());
+			lines.append("\r\n");
 		}
-		out.flush();
-		waitForOK();
+		return sendLines(lines.toString());
 	}
-	
+
 	/**
 	 * Send the thread count to the load generator.
 	 * @param threadCount The number of thread the load generator is to use for generating.
+	 * @return Future that completes once the load generator has acknowledged the setting.
+	 */
+	public CompletableFuture<Void> sendThreadCount(int threadCount) {
+		if (isBinary()) {
+			return sendMessage(BinaryProtocol.MessageType.THREAD_COUNT, p -> p.writeInt(threadCount));
+		}
+		return sendLines(IRunnerConstants.THREAD_NUM_KEY + threadCount + "\n");
+	}
+
+	/**
+	 * Send the transaction dispatch mode to the load generator.
+	 * @param dispatchMode The mode for dispatching transactions into the load generator's thread pool.
+	 * @return Future that completes once the load generator has acknowledged the setting.
+	 */
+	public CompletableFuture<Void> sendDispatchMode(ArrivalRateTupleLoadGenerator.DispatchMode dispatchMode) {
+		if (isBinary()) {
+			return sendMessage(BinaryProtocol.MessageType.DISPATCH_MODE, p -> p.writeUTF(dispatchMode.name()));
+		}
+		return sendLines(IRunnerConstants.DISPATCH_MODE_KEY + dispatchMode.name() + "\n");
+	}
+
+	/**
+	 * Send the arrival process for individual transactions to the load generator.
+	 * @param arrivalProcess The process for generating transaction arrival times.
+	 * @return Future that completes once the load generator has acknowledged the setting.
 	 */
-	public void sendThreadCount(int threadCount) {
-		out.println(IRunnerConstants.THREAD_NUM_KEY + threadCount);
-		waitForOK();
+	public CompletableFuture<Void> sendArrivalProcess(ArrivalProcess arrivalProcess) {
+		if (isBinary()) {
+			return sendMessage(BinaryProtocol.MessageType.ARRIVAL_PROCESS, p -> p.writeUTF(arrivalProcess.name()));
+		}
+		return sendLines(IRunnerConstants.ARRIVAL_PROCESS_KEY + arrivalProcess.name() + "\n");
 	}
-	
+
+	/**
+	 * Send the transaction execution mode to the load generator.
+	 * @param executionMode The mode for executing transactions on the load generator.
+	 * @return Future that completes once the load generator has acknowledged the setting.
+	 */
+	public CompletableFuture<Void> sendExecutionMode(ArrivalRateTupleLoadGenerator.ExecutionMode executionMode) {
+		if (isBinary()) {
+			return sendMessage(BinaryProtocol.MessageType.EXECUTION_MODE, p -> p.writeUTF(executionMode.name()));
+		}
+		return sendLines(IRunnerConstants.EXECUTION_MODE_KEY + executionMode.name() + "\n");
+	}
+
+	/**
+	 * Send the maximum number of requests in flight to the load generator.
+	 * @param inFlightLimit The maximum number of concurrent requests in asynchronous and virtual thread execution.
+	 * @return Future that completes once the load generator has acknowledged the setting.
+	 */
+	public CompletableFuture<Void> sendInFlightLimit(int inFlightLimit) {
+		if (isBinary()) {
+			return sendMessage(BinaryProtocol.MessageType.IN_FLIGHT_LIMIT, p -> p.writeInt(inFlightLimit));
+		}
+		return sendLines(IRunnerConstants.IN_FLIGHT_LIMIT_KEY + inFlightLimit + "\n");
+	}
+
+	/**
+	 * Send the workload model to the load generator.
+	 * @param workloadModel The model determining how the load intensity is interpreted.
+	 * @return Future that completes once the load generator has acknowledged the setting.
+	 */
+	public CompletableFuture<Void> sendWorkloadModel(ArrivalRateTupleLoadGenerator.WorkloadModel workloadModel) {
+		if (isBinary()) {
+			return sendMessage(BinaryProtocol.MessageType.WORKLOAD_MODEL, p -> p.writeUTF(workloadModel.name()));
+		}
+		return sendLines(IRunnerConstants.WORKLOAD_MODEL_KEY + workloadModel.name() + "\n");
+	}
+
+	/**
+	 * Send the think time of closed-loop users to the load generator.
+	 * @param thinkTimeMs The mean think time in milliseconds.
+	 * @param thinkTimeDistribution The distribution of the think times.
+	 * @return Future that completes once the load generator has acknowledged the setting.
+	 */
+	public CompletableFuture<Void> sendThinkTime(double thinkTimeMs, ThinkTimeDistribution thinkTimeDistribution) {
+		if (isBinary()) {
+			return sendMessage(BinaryProtocol.MessageType.THINK_TIME, p -> {
+				p.writeDouble(thinkTimeMs);
+				p.writeUTF(thinkTimeDistribution.name());
+			});
+		}
+		return sendLines(IRunnerConstants.THINK_TIME_KEY + thinkTimeMs + "," + thinkTimeDistribution.name() + "\n");
+	}
+
+	/**
+	 * Send the number of executor shards to the load generator.
+	 * @param executorShards The number of shards that users and threads are partitioned into.
+	 * @return Future that completes once the load generator has acknowledged the setting.
+	 */
+	public CompletableFuture<Void> sendExecutorShards(int executorShards) {
+		if (isBinary()) {
+			return sendMessage(BinaryProtocol.MessageType.EXECUTOR_SHARDS, p -> p.writeInt(executorShards));
+		}
+		return sendLines(IRunnerConstants.EXECUTOR_SHARDS_KEY + executorShards + "\n");
+	}
+
+	/**
+	 * Send the settings for the users' HTTP clients to the load generator.
+	 * @param httpClientSettings The HTTP client settings.
+	 * @return Future that completes once the load generator has acknowledged the setting.
+	 */
+	public CompletableFuture<Void> sendHTTPClientSettings(HTTPClientSettings httpClientSettings) {
+		if (isBinary()) {
+			return sendMessage(BinaryProtocol.MessageType.HTTP_CLIENT, p -> p.writeUTF(httpClientSettings.toString()));
+		}
+		return sendLines(IRunnerConstants.HTTP_CLIENT_KEY + httpClientSettings + "\n");
+	}
+
 	/**
 	 * Send the url connection timeout to the load generator.
 	 * @param timeout The url connection timout.
+	 * @return Future that completes once the load generator has acknowledged the setting.
 	 */
-	public void sendTimeout(int timeout) {
-		out.println(IRunnerConstants.TIMEOUT_KEY + timeout);
-		waitForOK();
+	public CompletableFuture<Void> sendTimeout(int timeout) {
+		if (isBinary()) {
+			return sendMessage(BinaryProtocol.MessageType.TIMEOUT, p -> p.writeInt(timeout));
+		}
+		return sendLines(IRunnerConstants.TIMEOUT_KEY + timeout + "\n");
 	}
 
 	/**
 	 * Tells the load drivers to start benchmarking.
-	 * Returns the start time as reported by the load driver and then returns.
-	 * The benchmark itself runs asynchronously and results can
-	 * be polled by using {@link #getLatestResultMessageBlocking()}.
+	 * The benchmark itself runs asynchronously and its results are passed on to the result aggregator.
 	 * @param randomBatchTimes True if batch times are to be randomized.
 	 * @param seed The random seed for random batch times.
 	 * @param warmupDurationS
@@ -143,58 +577,298 @@ public class LoadGeneratorCommunicator {
 	 * 			  The pause after warmup before starting measurement in seconds.
 	 * @param randomizeUsers True if users should be randoized.
 	 * 		False if they should be taken from a queue in order.
-	 * @return The time of start.
+	 * @param startAtMicros Director time in us at which to start generating load. 0 to start immediately.
+	 * 		Load generators whose clock was not synchronized start immediately.
+	 * @return Future of the time of start, as reported by the load driver. 0 if the connection failed.
 	 */
-	public long startBenchmarking(boolean randomBatchTimes, int seed, int warmupDurationS,
-			double warmupLoad, int warmupPauseS, boolean randomizeUsers) {
-		out.println(IRunnerConstants.START_KEY + "," + randomBatchTimes + "," + seed + ","
-				+ warmupDurationS + "," + warmupLoad + "," + warmupPauseS + "," + randomizeUsers);
-		long time = 0;
+	public CompletableFuture<Long> startBenchmarking(boolean randomBatchTimes, int seed, int warmupDurationS,
+			double warmupLoad, int warmupPauseS, boolean randomizeUsers, long startAtMicros) {
+		CompletableFuture<Long> start = new CompletableFuture<>();
+		startTime = start;
+		ClockOffset offset = clockOffset;
+		long generatorStartAtMicros = 0;
+		if (offset != null && startAtMicros > 0) {
+			generatorStartAtMicros = offset.toGeneratorTime(startAtMicros);
+		}
+		long scheduledStart = generatorStartAtMicros;
+		if (isBinary()) {
+			try {
+				enqueue(BinaryProtocol.encodeMessage(BinaryProtocol.MessageType.START, p -> {
+					p.writeBoolean(randomBatchTimes);
+					p.writeInt(seed);
+					p.writeInt(warmupDurationS);
+					p.writeDouble(warmupLoad);
+					p.writeInt(warmupPauseS);
+					p.writeBoolean(randomizeUsers);
+					p.writeLong(scheduledStart);
+				}));
+			} catch (IOException e) {
+				LOG.severe("Write Failed for load driver at " + ip + ":" + port);
+			}
+		} else {
+			String startLine = IRunnerConstants.START_KEY + "," + randomBatchTimes + "," + seed + ","
+					+ warmupDurationS + "," + warmupLoad + "," + warmupPauseS + "," + randomizeUsers;
+			if (scheduledStart > 0) {
+				startLine += "," + scheduledStart;
+			}
+			enqueue(ByteBuffer.wrap((startLine + "\n").getBytes(StandardCharsets.UTF_8)));
+		}
+		if (closed.get()) {
+			start.complete(0L);
+		}
+		return start;
+	}
+
+	private CompletableFuture<Void> sendMessage(BinaryProtocol.MessageType type,
+			BinaryProtocol.PayloadWriter payload) {
 		try {
-			time = Long.parseLong(in.readLine().trim());
+			return sendAcknowledged(BinaryProtocol.encodeMessage(type, payload));
 		} catch (IOException e) {
-			LOG.severe("Error receiving start response from load generator at: " + ip + ":" + port);
+			LOG.severe("Write Failed for load driver at " + ip + ":" + port);
+			return CompletableFuture.completedFuture(null);
 		}
-		new LoadGeneratorCommunicatorThread().start();
-		return time;
 	}
-	
+
+	private CompletableFuture<Void> sendLines(String lines) {
+		return sendAcknowledged(ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8)));
+	}
+
 	/**
-	 * Gets the latest result message received by the communicator.
-	 * Blocks and waits if no message was received.
-	 * Returns {@link IRunnerConstants#DONE_KEY} if the load generator is finished.
-	 * @return The result message or {@link IRunnerConstants#DONE_KEY}.
+	 * Sends a message that the load generator acknowledges with an OK.
+	 * Load generators acknowledge messages in order.
+	 * @param message The encoded message.
+	 * @return Future that completes on acknowledgement, or once the connection is closed.
 	 */
-	public String getLatestResultMessageBlocking() {
+	private CompletableFuture<Void> sendAcknowledged(ByteBuffer message) {
+		CompletableFuture<Void> acknowledgement = new CompletableFuture<>();
+		pendingAcknowledgements.add(acknowledgement);
+		enqueue(message);
+		//the connection may have been closed before the acknowledgement was added
+		if (closed.get()) {
+			acknowledgement.complete(null);
+		}
+		return acknowledgement;
+	}
+
+	private void enqueue(ByteBuffer message) {
+		if (channel != null && !closed.get()) {
+			writeQueue.add(message);
+			network.requestWrite(channel);
+		}
+	}
+
+	/**
+	 * Writes pending messages. Called by the network thread once the channel is writable.
+	 * @return True if all pending messages were written.
+	 * @throws IOException If writing fails.
+	 */
+	boolean onWritable() throws IOException {
+		ByteBuffer message;
+		while ((message = writeQueue.peek()) != null) {
+			channel.write(message);
+			if (message.hasRemaining()) {
+				return false;
+			}
+			writeQueue.poll();
+		}
+		return true;
+	}
+
+	/**
+	 * Reads and handles all completely received messages. Called by the network thread
+	 * once the channel is readable.
+	 * @throws IOException If reading fails, the connection was closed, or a message is invalid.
+	 */
+	void onReadable() throws IOException {
+		if (!readBuffer.hasRemaining()) {
+			ByteBuffer grown = ByteBuffer.allocate(readBuffer.capacity() * 2);
+			readBuffer.flip();
+			grown.put(readBuffer);
+			readBuffer = grown;
+		}
+		if (channel.read(readBuffer) < 0) {
+			throw new IOException("Connection closed by load generator.");
+		}
+		readBuffer.flip();
 		try {
-			//5 second timeout means no load intensity with granularity > 5 seconds
-			return resultMessageQueue.poll(5, TimeUnit.SECONDS);
-		} catch (InterruptedException e) {
-			LOG.severe("Interrupted taking from message queue.");
+			Boolean binary = protocol.getNow(null);
+			if (binary == null) {
+				int version = BinaryProtocol.readHandshakeResponse(readBuffer);
+				if (version < 0) {
+					return;
+				}
+				protocol.complete(true);
+				LOG.info("Using binary protocol version " + version + " for load generator at " + ip + ":" + port);
+				binary = true;
+			}
+			if (binary) {
+				BinaryProtocol.Message message;
+				while (!closed.get() && (message = BinaryProtocol.decodeMessage(readBuffer)) != null) {
+					handleMessage(message);
+				}
+			} else {
+				readLines();
+			}
+		} finally {
+			readBuffer.compact();
 		}
-		return null;
 	}
-	
-	
-	private void waitForOK() {
-		waitForMessage("ok");
+
+	private void handleMessage(BinaryProtocol.Message message) throws IOException {
+		if (message.getType() == null) {
+			return;
+		}
+		switch (message.getType()) {
+		case OK:
+			acknowledge();
+			break;
+		case ERROR:
+			LOG.severe("Load generator at " + ip + ":" + port + " reported: " + message.getPayload().readUTF());
+			break;
+		case START_TIME:
+			long time = message.getPayload().readLong();
+			if (message.getPayload().available() >= 8) {
+				generatorStartMicros = message.getPayload().readLong();
+			}
+			completeStart(time);
+			break;
+		case CAPACITY:
+			completeProcessorCount(message.getPayload().readInt());
+			break;
+		case RATE_ADJUSTED:
+			completeRateAdjustment(message.getPayload().readInt());
+			break;
+		case CLOCK_REPLY:
+			onClockReply(message.getPayload().readLong(), message.getPayload().readLong(),
+					message.getPayload().readLong());
+			break;
+		case RESULT:
+			addResult(LoadGeneratorResult.read(message.getPayload()));
+			break;
+		case DONE:
+			setFinished(true);
+			close();
+			break;
+		default:
+			break;
+		}
 	}
 
-	private void waitForMessage(String message) {
-		String line;
-		while (true) {
+	private void readLines() throws IOException {
+		int lineStart = readBuffer.position();
+		for (int i = lineStart; i < readBuffer.limit() && !closed.get(); i++) {
+			if (readBuffer.get(i) == '\n') {
+				String line = new String(readBuffer.array(), lineStart, i - lineStart, StandardCharsets.UTF_8).trim();
+				lineStart = i + 1;
+				readBuffer.position(lineStart);
+				handleLine(line);
+			}
+		}
+	}
+
+	private void handleLine(String line) throws IOException {
+		CompletableFuture<Long> start = startTime;
+		if (line.isEmpty()) {
+			return;
+		} else if (line.equals(IRunnerConstants.OK_KEY)) {
+			acknowledge();
+		} else if (line.equals(IRunnerConstants.DONE_KEY)) {
+			setFinished(true);
+			close();
+		} else if (line.startsWith("Error")) {
+			LOG.severe("Load generator at " + ip + ":" + port + " reported: " + line);
+		} else {
 			try {
-				line = in.readLine();
-				if (line.trim().equals(message)) {
-					System.out.println("Load Generator sent: " + message);
-					break;
+				String[] tokens = line.split(",");
+				if (line.startsWith(IRunnerConstants.RATE_ADJUSTED_KEY)) {
+					completeRateAdjustment(Integer.parseInt(
+							line.substring(IRunnerConstants.RATE_ADJUSTED_KEY.length()).trim()));
+				} else if (line.startsWith(IRunnerConstants.CAPACITY_REPLY_KEY)) {
+					completeProcessorCount(Integer.parseInt(
+							line.substring(IRunnerConstants.CAPACITY_REPLY_KEY.length()).trim()));
+				} else if (line.startsWith(IRunnerConstants.CLOCK_REPLY_KEY)) {
+					onClockReply(Long.parseLong(tokens[0].substring(IRunnerConstants.CLOCK_REPLY_KEY.length()).trim()),
+							Long.parseLong(tokens[1].trim()), Long.parseLong(tokens[2].trim()));
+				} else if (start != null && !start.isDone() && tokens.length <= 2) {
+					//start time in ms, followed by the start time in us if the start was scheduled
+					if (tokens.length > 1) {
+						generatorStartMicros = Long.parseLong(tokens[1].trim());
+					}
+					completeStart(Long.parseLong(tokens[0].trim()));
+				} else {
+					addResult(LoadGeneratorResult.parse(line));
 				}
+			} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+				throw new IOException("Invalid response: " + line);
+			}
+		}
+	}
+
+	private void acknowledge() {
+		System.out.println("Load Generator sent: " + IRunnerConstants.OK_KEY);
+		CompletableFuture<Void> acknowledgement = pendingAcknowledgements.poll();
+		if (acknowledgement != null) {
+			acknowledgement.complete(null);
+		}
+	}
+
+	private void completeStart(long time) {
+		CompletableFuture<Long> start = startTime;
+		if (start != null) {
+			start.complete(time);
+		}
+	}
+
+	/**
+	 * Called by the network thread if the connection failed.
+	 * @param e The cause.
+	 */
+	void connectionFailed(IOException e) {
+		if (!closed.get()) {
+			LOG.severe("Error communicating with load generator at: " + ip + ":" + port + ": " + e.getMessage());
+		}
+		close();
+	}
+
+	/**
+	 * Closes the connection. Pending acknowledgements complete and the load generator
+	 * no longer counts towards the expected results of the result aggregator.
+	 */
+	public void close() {
+		if (!closed.compareAndSet(false, true)) {
+			return;
+		}
+		if (channel != null) {
+			try {
+				channel.close();
 			} catch (IOException e) {
-				LOG.severe("Read Failed for load driver at " + ip + ":" + port);
+				LOG.severe("Error closing network connection to load generator at: " + ip + ":" + port);
 			}
 		}
+		protocol.complete(false);
+		CompletableFuture<Void> acknowledgement;
+		while ((acknowledgement = pendingAcknowledgements.poll()) != null) {
+			acknowledgement.complete(null);
+		}
+		completeStart(0L);
+		completeProcessorCount(0);
+		CompletableFuture<Integer> adjustment;
+		while ((adjustment = pendingRateAdjustments.poll()) != null) {
+			adjustment.complete(-1);
+		}
+		finishClockSynchronization();
+		aggregator.generatorFinished(this);
+	}
+
+	/**
+	 * Returns true if the connection is closed, either because the load generator is done or
+	 * because the connection failed.
+	 * @return The closed flag.
+	 */
+	public boolean isClosed() {
+		return closed.get();
 	}
-	
+
 	/**
 	 * Returns true if this communcator has received the done signal.
 	 * @return The finshed flag.
@@ -208,37 +882,25 @@ public class LoadGeneratorCommunicator {
 	}
 
 	/**
-	 * Thread for the continuous result recording by the communicator.
-	 * @author Joakim von Kistowski
-	 *
+	 * State of an ongoing clock synchronization.
 	 */
-	private class LoadGeneratorCommunicatorThread extends Thread {
-		
-		@Override
-		public void run() {
-			try {
-				while (true) {
-					String line = in.readLine();
-					if (line.trim().equals(IRunnerConstants.DONE_KEY)) {
-						setFinished(true);
-						break;
-					} else if (line != null && !line.isEmpty()) {
-						resultMessageQueue.put(line.trim());
-					}
-				} 
-			} catch (IOException | InterruptedException e) {
-				LOG.severe("Error reading result response from load generator at: " + ip + ":" + port);
-			} finally {
-				try {
-					in.close();
-					out.close();
-					socket.close();
-				} catch (IOException e) {
-					LOG.severe("Error closing network connection to load generator at: " + ip + ":" + port);
-				}
-				
-			}
-			
+	private static final class ClockSynchronization {
+		private final CompletableFuture<ClockOffset> result = new CompletableFuture<>();
+		private int remainingProbes;
+		private ClockOffset best = null;
+
+		private ClockSynchronization(int probes) {
+			this.remainingProbes = probes;
 		}
 	}
+
+	/**
+	 * Protocols for the communication with the load generators.
+	 */
+	public static enum Protocol {
+		/** Line-based text protocol, supported by all load generator versions. */
+		TEXT,
+		/** Length-prefixed {@link BinaryProtocol}. Falls back to TEXT if the load generator does not support it. */
+		BINARY
+	}
 }
@@ -0,0 +1,281 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.runner;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import tools.descartes.dlim.httploadgenerator.generator.LatencyHistogram;
+import tools.descartes.dlim.httploadgenerator.generator.ResultTracker;
+
+/**
+ * Result of a single measurement interval, as sent by a single load generator.
+ * Contains the raw sums, counts, and latency histograms, so that the director can merge the results of
+ * multiple load generators without loss of precision. Results are received either as a line
+ * of the text protocol or as a {@link BinaryProtocol.MessageType#RESULT} message.
+ * @author Joakim von Kistowski
+ *
+ */
+public class LoadGeneratorResult {
+
+	private final double targetTime;
+	private final int loadIntensity;
+	private final long successfulTransactions;
+	private final long failedTransactions;
+	private final long droppedTransactions;
+	private final double finalBatchTime;
+	private final double maxDispatchJitterInMs;
+	private final long responseTimeSumNs;
+	private final long correctedResponseTimeSumNs;
+	private final long dispatchJitterSumNs;
+	private final long dispatchJitterCount;
+	private final LatencyHistogram responseTimeHistogram;
+	private final LatencyHistogram correctedResponseTimeHistogram;
+	private final long receivedBytes;
+
+	/** Number of values in the result lines of older load generators. */
+	static final int LEGACY_TOKEN_COUNT = 7;
+
+	private LoadGeneratorResult(double targetTime, int loadIntensity, long successfulTransactions,
+			long failedTransactions, long droppedTransactions, double finalBatchTime, double maxDispatchJitterInMs,
+			long responseTimeSumNs, long correctedResponseTimeSumNs, long dispatchJitterSumNs,
+			long dispatchJitterCount, LatencyHistogram responseTimeHistogram,
+			LatencyHistogram correctedResponseTimeHistogram, long receivedBytes) {
+		this.targetTime = targetTime;
+		this.loadIntensity = loadIntensity;
+		this.successfulTransactions = successfulTransactions;
+		this.failedTransactions = failedTransactions;
+		this.droppedTransactions = droppedTransactions;
+		this.finalBatchTime = finalBatchTime;
+		this.maxDispatchJitterInMs = maxDispatchJitterInMs;
+		this.responseTimeSumNs = responseTimeSumNs;
+		this.correctedResponseTimeSumNs = correctedResponseTimeSumNs;
+		this.dispatchJitterSumNs = dispatchJitterSumNs;
+		this.dispatchJitterCount = dispatchJitterCount;
+		this.responseTimeHistogram = responseTimeHistogram;
+		this.correctedResponseTimeHistogram = correctedResponseTimeHistogram;
+		this.receivedBytes = receivedBytes;
+	}
+
+	/**
+	 * Parses a result line of the text protocol.
+	 * Older load generators send only the first {@link #LEGACY_TOKEN_COUNT} values with the average response time
+	 * instead of its sum and no histograms. Their results contribute to the counts and averages,
+	 * but the percentiles of the intervals they report are not available.
+	 * @param line The result line.
+	 * @return The result.
+	 * @throws IllegalArgumentException If the line is no valid result.
+	 */
+	public static LoadGeneratorResult parse(String line) {
+		String[] tokens = line.split(",");
+		if (tokens.length == LEGACY_TOKEN_COUNT) {
+			return parseLegacy(tokens);
+		}
+		try {
+			return new LoadGeneratorResult(Double.parseDouble(tokens[0].trim()), Integer.parseInt(tokens[1].trim()),
+					Long.parseLong(tokens[2].trim()), Long.parseLong(tokens[4].trim()),
+					Long.parseLong(tokens[5].trim()), Double.parseDouble(tokens[6].trim()),
+					Double.parseDouble(tokens[8].trim()), Long.parseLong(tokens[10].trim()),
+					Long.parseLong(tokens[11].trim()), Long.parseLong(tokens[12].trim()),
+					Long.parseLong(tokens[13].trim()), LatencyHistogram.decode(tokens[14]),
+					LatencyHistogram.decode(tokens[15]), Long.parseLong(tokens[16].trim()));
+		} catch (IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Incomplete result message: " + line);
+		}
+	}
+
+	/**
+	 * Parses the result line of an older load generator:
+	 * target time, load intensity, successful transactions, average response time in s,
+	 * failed transactions, dropped transactions, and final batch time.
+	 * @param tokens The values of the line.
+	 * @return The result without histograms.
+	 */
+	private static LoadGeneratorResult parseLegacy(String[] tokens) {
+		long successfulTransactions = Long.parseLong(tokens[2].trim());
+		long responseTimeSumNs = Math.round(Double.parseDouble(tokens[3].trim()) * 1000000000.0
+				* successfulTransactions);
+		//older load generators do not correct for coordinated omission or measure their dispatch jitter
+		return new LoadGeneratorResult(Double.parseDouble(tokens[0].trim()), Integer.parseInt(tokens[1].trim()),
+				successfulTransactions, Long.parseLong(tokens[4].trim()), Long.parseLong(tokens[5].trim()),
+				Double.parseDouble(tokens[6].trim()), 0.0, responseTimeSumNs, responseTimeSumNs, 0, 0, null, null, 0);
+	}
+
+	/**
+	 * Reads the payload of a {@link BinaryProtocol.MessageType#RESULT} message.
+	 * @param in The payload.
+	 * @return The result.
+	 * @throws IOException If the payload is invalid.
+	 */
+	public static LoadGeneratorResult read(DataInputStream in) throws IOException {
+		try {
+			return new LoadGeneratorResult(in.readDouble(), in.readInt(), in.readLong(), in.readLong(),
+					in.readLong(), in.readDouble(), in.readDouble(), in.readLong(), in.readLong(), in.readLong(),
+					in.readLong(), LatencyHistogram.fromBytes(BinaryProtocol.readBytes(in)),
+					LatencyHistogram.fromBytes(BinaryProtocol.readBytes(in)), in.readLong());
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the payload of a {@link BinaryProtocol.MessageType#RESULT} message.
+	 * @param out The payload.
+	 * @param targetTime The target time of the interval.
+	 * @param loadIntensity The load intensity of the interval.
+	 * @param actualTime The time of the final dispatch of the interval.
+	 * @param result The measurement result of the interval.
+	 * @throws IOException If writing fails.
+	 */
+	public static void write(DataOutputStream out, double targetTime, int loadIntensity, double actualTime,
+			ResultTracker.IntervalResult result) throws IOException {
+		out.writeDouble(targetTime);
+		out.writeInt(loadIntensity);
+		out.writeLong(result.getSuccessfulTransactions());
+		out.writeLong(result.getFailedTransactions());
+		out.writeLong(result.getDroppedTransactions());
+		out.writeDouble(actualTime);
+		out.writeDouble(result.getMaxDispatchJitterInMs());
+		out.writeLong(result.getResponseTimeSumNs());
+		out.writeLong(result.getCorrectedResponseTimeSumNs());
+		out.writeLong(result.getDispatchJitterSumNs());
+		out.writeLong(result.getDispatchJitterCount());
+		BinaryProtocol.writeBytes(out, result.getResponseTimeHistogram().toBytes());
+		BinaryProtocol.writeBytes(out, result.getCorrectedResponseTimeHistogram().toBytes());
+		out.writeLong(result.getReceivedBytes());
+	}
+
+	/**
+	 * Returns the target time.
+	 * @return The target time.
+	 */
+	public double getTargetTime() {
+		return targetTime;
+	}
+
+	/**
+	 * Returns the load intensity.
+	 * @return The load intensity.
+	 */
+	public int getLoadIntensity() {
+		return loadIntensity;
+	}
+
+	/**
+	 * Returns the number of successful transactions.
+	 * @return Number of successful transactions.
+	 */
+	public long getSuccessfulTransactions() {
+		return successfulTransactions;
+	}
+
+	/**
+	 * Returns the number of failed transactions.
+	 * @return Number of failed transactions.
+	 */
+	public long getFailedTransactions() {
+		return failedTransactions;
+	}
+
+	/**
+	 * Returns the number of dropped transactions.
+	 * @return Number of dropped transactions.
+	 */
+	public long getDroppedTransactions() {
+		return droppedTransactions;
+	}
+
+	/**
+	 * Returns the time of the final dispatch of the interval.
+	 * @return The final batch time.
+	 */
+	public double getFinalBatchTime() {
+		return finalBatchTime;
+	}
+
+	/**
+	 * Returns the maximum dispatch jitter in ms.
+	 * @return The maximum dispatch jitter.
+	 */
+	public double getMaxDispatchJitterInMs() {
+		return maxDispatchJitterInMs;
+	}
+
+	/**
+	 * Returns the sum of the response times in ns.
+	 * @return The response time sum.
+	 */
+	public long getResponseTimeSumNs() {
+		return responseTimeSumNs;
+	}
+
+	/**
+	 * Returns the sum of the corrected response times in ns.
+	 * @return The corrected response time sum.
+	 */
+	public long getCorrectedResponseTimeSumNs() {
+		return correctedResponseTimeSumNs;
+	}
+
+	/**
+	 * Returns the sum of the dispatch jitters in ns.
+	 * @return The dispatch jitter sum.
+	 */
+	public long getDispatchJitterSumNs() {
+		return dispatchJitterSumNs;
+	}
+
+	/**
+	 * Returns the number of dispatch jitter measurements.
+	 * @return The dispatch jitter count.
+	 */
+	public long getDispatchJitterCount() {
+		return dispatchJitterCount;
+	}
+
+	/**
+	 * Returns whether the result contains latency histograms. Results of older load generators do not.
+	 * @return True if the histograms are available.
+	 */
+	public boolean hasHistograms() {
+		return responseTimeHistogram != null;
+	}
+
+	/**
+	 * Returns the histogram of the response times.
+	 * @return The response time histogram. Null if the result contains no histograms.
+	 */
+	public LatencyHistogram getResponseTimeHistogram() {
+		return responseTimeHistogram;
+	}
+
+	/**
+	 * Returns the histogram of the corrected response times.
+	 * @return The corrected response time histogram. Null if the result contains no histograms.
+	 */
+	public LatencyHistogram getCorrectedResponseTimeHistogram() {
+		return correctedResponseTimeHistogram;
+	}
+
+	/**
+	 * Returns the number of received response body bytes.
+	 * @return The number of received bytes.
+	 */
+	public long getReceivedBytes() {
+		return receivedBytes;
+	}
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.runner;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import tools.descartes.dlim.httploadgenerator.generator.LatencyHistogram;
+
+/**
+ * Merges the interval results of all load generators into one {@link IntervalResult} per interval.
+ * Results are grouped by their target time as they arrive. An interval is complete as soon as
+ * all active load generators have reported it. Reports of load generators that have finished in the meantime
+ * do not count, so that a load generator that is ahead of the others does not complete their intervals.
+ * Load generators that do not report an interval within {@link #RESULT_TIMEOUT_MS} are left out of that interval,
+ * so that a single slow load generator delays the aggregation by at most the timeout.
+ * As all load generators report at the end of each interval, the time between the first and the last
+ * report of an interval shows how far the timelines of the load generators diverge.
+ * @author Joakim von Kistowski
+ *
+ */
+public class ResultAggregator {
+
+	private static final Logger LOG = Logger.getLogger(ResultAggregator.class.getName());
+
+	/** Time to wait for missing results in ms. No load intensity with granularity > 5 seconds. */
+	private static final long RESULT_TIMEOUT_MS = 5000;
+
+	/** Timeline divergence in ms above which intervals are flagged. */
+	private static final double DIVERGENCE_WARNING_MS = 100.0;
+
+	private final TreeMap<Double, Round> rounds = new TreeMap<>();
+	private final Set<LoadGeneratorCommunicator> finishedGenerators = new HashSet<>();
+	private int activeGenerators;
+	private double lastTargetTime = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Creates a new aggregator.
+	 * @param generatorCount The number of load generators that report results.
+	 */
+	public ResultAggregator(int generatorCount) {
+		this.activeGenerators = generatorCount;
+	}
+
+	/**
+	 * Adds the result of a load generator.
+	 * @param generator The communicator of the load generator.
+	 * @param result The result.
+	 */
+	public synchronized void addResult(LoadGeneratorCommunicator generator, LoadGeneratorResult result) {
+		if (result.getTargetTime() <= lastTargetTime) {
+			LOG.warning("Discarding late result for target time " + result.getTargetTime() + ".");
+			return;
+		}
+		Round round = rounds.get(result.getTargetTime());
+		if (round == null) {
+			round = new Round(result.getTargetTime());
+			rounds.put(result.getTargetTime(), round);
+		}
+		round.add(generator, result);
+		notifyAll();
+	}
+
+	/**
+	 * Signals that a load generator will not report any further results,
+	 * either because it is done or because its connection failed.
+	 * @param generator The communicator of the load generator.
+	 */
+	public synchronized void generatorFinished(LoadGeneratorCommunicator generator) {
+		finishedGenerators.add(generator);
+		activeGenerators--;
+		notifyAll();
+	}
+
+	/**
+	 * Waits for the next interval and returns its aggregated result.
+	 * {@link IntervalResult#isMeasurementConcluded()} is true if all load generators have finished
+	 * or if no results were received within the timeout. No valid results in this container.
+	 * @return The interval's result.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public synchronized IntervalResult takeRound() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + RESULT_TIMEOUT_MS;
+		while (true) {
+			Map.Entry<Double, Round> first = rounds.firstEntry();
+			if (first != null) {
+				Round round = first.getValue();
+				if (round.countActiveReports() >= activeGenerators) {
+					return emit(round);
+				}
+				deadline = round.firstReportTime + RESULT_TIMEOUT_MS;
+				if (System.currentTimeMillis() >= deadline) {
+					LOG.warning("Only " + round.reports + " of " + activeGenerators
+							+ " load generators reported target time " + round.targetTime + ".");
+					return emit(round);
+				}
+			} else if (activeGenerators <= 0 || System.currentTimeMillis() >= deadline) {
+				return IntervalResult.createIntervalResultWithMeasurementConcludedFlag();
+			}
+			wait(Math.max(1, deadline - System.currentTimeMillis()));
+		}
+	}
+
+	private IntervalResult emit(Round round) {
+		rounds.remove(round.targetTime);
+		lastTargetTime = round.targetTime;
+		IntervalResult result = round.toIntervalResult();
+		if (result.getTimelineDivergence() > DIVERGENCE_WARNING_MS) {
+			LOG.warning("Load generator timelines diverge by " + result.getTimelineDivergence()
+					+ " ms at target time " + round.targetTime + ".");
+		}
+		return result;
+	}
+
+	/**
+	 * The merged results of a single interval.
+	 */
+	private final class Round {
+		private final double targetTime;
+		private final long firstReportTime = System.currentTimeMillis();
+		private final long firstReportNanos = System.nanoTime();
+		private long lastReportNanos = firstReportNanos;
+		private int reports = 0;
+		private final Set<LoadGeneratorCommunicator> reporters = new HashSet<>();
+		private long loadIntensity = 0;
+		private long successfulTransactions = 0;
+		private long failedTransactions = 0;
+		private long droppedTransactions = 0;
+		private long responseTimeSumNs = 0;
+		private long correctedResponseTimeSumNs = 0;
+		private long dispatchJitterSumNs = 0;
+		private long dispatchJitterCount = 0;
+		private long receivedBytes = 0;
+		private double maxDispatchJitter = 0.0;
+		private double finalBatchTime = Double.NEGATIVE_INFINITY;
+		private final LatencyHistogram responseTimeHistogram = new LatencyHistogram();
+		private final LatencyHistogram correctedResponseTimeHistogram = new LatencyHistogram();
+		private boolean histogramsComplete = true;
+
+		private Round(double targetTime) {
+			this.targetTime = targetTime;
+		}
+
+		private void add(LoadGeneratorCommunicator generator, LoadGeneratorResult result) {
+			reports++;
+			reporters.add(generator);
+			lastReportNanos = System.nanoTime();
+			loadIntensity += result.getLoadIntensity();
+			successfulTransactions += result.getSuccessfulTransactions();
+			failedTransactions += result.getFailedTransactions();
+			droppedTransactions += result.getDroppedTransactions();
+			finalBatchTime = Math.max(finalBatchTime, result.getFinalBatchTime());
+			maxDispatchJitter = Math.max(maxDispatchJitter, result.getMaxDispatchJitterInMs());
+			//merge raw sums and histograms, averages of the individual generators are not used
+			responseTimeSumNs += result.getResponseTimeSumNs();
+			correctedResponseTimeSumNs += result.getCorrectedResponseTimeSumNs();
+			dispatchJitterSumNs += result.getDispatchJitterSumNs();
+			dispatchJitterCount += result.getDispatchJitterCount();
+			if (result.hasHistograms()) {
+				responseTimeHistogram.add(result.getResponseTimeHistogram());
+				correctedResponseTimeHistogram.add(result.getCorrectedResponseTimeHistogram());
+			} else {
+				//percentiles of a part of the generators would be misleading
+				histogramsComplete = false;
+			}
+			receivedBytes += result.getReceivedBytes();
+		}
+
+		private int countActiveReports() {
+			int activeReports = 0;
+			for (LoadGeneratorCommunicator reporter : reporters) {
+				if (!finishedGenerators.contains(reporter)) {
+					activeReports++;
+				}
+			}
+			return activeReports;
+		}
+
+		private IntervalResult toIntervalResult() {
+			double avgResponseTime = 0.0;
+			double avgCorrectedResponseTime = 0.0;
+			if (successfulTransactions > 0) {
+				avgResponseTime = ((double) responseTimeSumNs) / successfulTransactions / 1000000000.0;
+				avgCorrectedResponseTime = ((double) correctedResponseTimeSumNs)
+						/ successfulTransactions / 1000000000.0;
+			}
+			double avgDispatchJitter = 0.0;
+			if (dispatchJitterCount > 0) {
+				avgDispatchJitter = ((double) dispatchJitterSumNs) / dispatchJitterCount / 1000000.0;
+			}
+			return new IntervalResult(targetTime, loadIntensity, successfulTransactions, failedTransactions,
+					droppedTransactions, avgResponseTime, finalBatchTime, avgDispatchJitter, maxDispatchJitter,
+					avgCorrectedResponseTime, getReportedPercentilesInS(responseTimeHistogram),
+					getReportedPercentilesInS(correctedResponseTimeHistogram), receivedBytes,
+					(lastReportNanos - firstReportNanos) / 1000000.0);
+		}
+
+		/**
+		 * Returns the reported percentiles of a merged histogram.
+		 * The percentiles are NaN if an older load generator reported the interval without histograms.
+		 */
+		private double[] getReportedPercentilesInS(LatencyHistogram histogram) {
+			if (histogramsComplete) {
+				return histogram.getReportedPercentilesInS();
+			}
+			double[] notAvailable = new double[LatencyHistogram.REPORTED_PERCENTILES.length + 1];
+			Arrays.fill(notAvailable, Double.NaN);
+			return notAvailable;
+		}
+	}
+}
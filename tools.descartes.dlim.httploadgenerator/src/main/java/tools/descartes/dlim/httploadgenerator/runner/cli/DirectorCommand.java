@@ -17,8 +17,17 @@ package tools.descartes.dlim.httploadgenerator.runner.cli;
 
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalProcess;
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalRateTupleLoadGenerator;
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalRateTupleLoadGenerator.DispatchMode;
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalRateTupleLoadGenerator.ExecutionMode;
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalRateTupleLoadGenerator.WorkloadModel;
+import tools.descartes.dlim.httploadgenerator.generator.ThinkTimeDistribution;
+import tools.descartes.dlim.httploadgenerator.http.HTTPClientSettings;
+import tools.descartes.dlim.httploadgenerator.http.HTTPClientSettings.ConnectionMode;
 import tools.descartes.dlim.httploadgenerator.runner.Director;
 import tools.descartes.dlim.httploadgenerator.runner.IRunnerConstants;
+import tools.descartes.dlim.httploadgenerator.runner.LoadGeneratorCommunicator.Protocol;
 
 @Command(name = "director",
 header = "Run in director mode.",
@@ -58,7 +67,9 @@ public class DirectorCommand implements Runnable {
 	
 	@Option(names = {"--randomseed", "--random", "--seed", "-r"},
 			paramLabel = "SEED",
-			description="Integer seed for the @|yellow r|@andom generator. Seed of 0 => Equi-distant dispatch times.")
+			description="Integer seed for the @|yellow r|@andom generator. Seed of 0 => Equi-distant dispatch times."
+					+ " Each load generator uses the seed plus its index in the list of addresses, so that"
+					+ " the random streams of the individual load generators are reproducible.")
 	private int randomSeed = 5;
 	
 	@Option(names = {"--threads", "--threadcount", "-t"},
@@ -106,6 +117,119 @@ public class DirectorCommand implements Runnable {
 					+ " It is highly recommended to configure long warmup times when randomizing users.")
 	private boolean randomizeUsers =  false;
 	
+	@Option(names = {"--dispatch-mode", "--dispatchmode"},
+			paramLabel = "DISPATCH_MODE",
+			description="Mode for dispatching transactions on the load generator."
+					+ " BATCH places transactions in batches every ~10 ms."
+					+ " WHEEL releases each transaction at its own due time using a timer wheel"
+					+ " with sub-millisecond ticks and reports the dispatch jitter.")
+	private DispatchMode dispatchMode = DispatchMode.BATCH;
+	
+	@Option(names = {"--arrival-process", "--arrivalprocess"},
+			paramLabel = "ARRIVAL_PROCESS",
+			description="Process for generating the arrival times of individual requests."
+					+ " FIXED_COUNT sends exactly the specified number of requests per interval."
+					+ " POISSON (exponential), UNIFORM, and DETERMINISTIC draw open-loop inter-arrival times"
+					+ " from the interval's arrival rate, seeded with the random seed."
+					+ " Open-loop processes imply the WHEEL dispatch mode.")
+	private ArrivalProcess arrivalProcess = ArrivalProcess.FIXED_COUNT;
+	
+	@Option(names = {"--execution-mode", "--executionmode"},
+			paramLabel = "EXECUTION_MODE",
+			description="Mode for executing transactions on the load generator."
+					+ " BLOCKING occupies one thread per request in flight."
+					+ " ASYNC sends requests using non-blocking I/O. The threads only generate the requests,"
+					+ " the number of concurrent requests is limited by the in-flight limit."
+					+ " VIRTUAL runs each request on its own virtual thread (Java 21+), limited by the in-flight limit.")
+	private ExecutionMode executionMode = ExecutionMode.BLOCKING;
+	
+	@Option(names = {"--in-flight-limit", "--inflightlimit"},
+			paramLabel = "IN_FLIGHT_LIMIT",
+			description="Maximum number of requests in flight per load generator in ASYNC and VIRTUAL execution mode."
+					+ " Each request in flight uses its own user (LUA context).")
+	private int inFlightLimit = ArrivalRateTupleLoadGenerator.DEFAULT_IN_FLIGHT_LIMIT;
+	
+	@Option(names = {"--workload-model", "--workloadmodel"},
+			paramLabel = "WORKLOAD_MODEL",
+			description="Model for interpreting the load intensity."
+					+ " OPEN sends the specified number of requests per interval, regardless of responses."
+					+ " CLOSED runs the specified number of concurrent users, each sending its next request"
+					+ " after the response to its previous request and a think time. CLOSED implies the WHEEL dispatch mode.")
+	private WorkloadModel workloadModel = WorkloadModel.OPEN;
+	
+	@Option(names = {"--think-time", "--thinktime"},
+			paramLabel = "THINK_TIME",
+			description="Mean think time of CLOSED workload users in ms."
+					+ " The script may override it for individual requests using the thinkTime field.")
+	private double thinkTimeMs = 0;
+	
+	@Option(names = {"--think-time-distribution", "--thinktimedistribution"},
+			paramLabel = "THINK_TIME_DISTRIBUTION",
+			description="Distribution of the think times of CLOSED workload users: CONSTANT, EXPONENTIAL, or UNIFORM.")
+	private ThinkTimeDistribution thinkTimeDistribution = ThinkTimeDistribution.EXPONENTIAL;
+	
+	@Option(names = {"--executor-shards", "--shards"},
+			paramLabel = "NUM_SHARDS",
+			description="Number of shards that the threads and users of each load generator are partitioned into."
+					+ " Each user only runs on the threads of its shard. 1 => no sharding.")
+	private int executorShards = 1;
+	
+	@Option(names = {"--connection-mode", "--connectionmode"},
+			paramLabel = "CONNECTION_MODE",
+			description="Mode for assigning connections to users."
+					+ " POOLED takes any idle connection from the HTTP client's connection pool."
+					+ " REUSE gives each user a keep-alive connection of its own that is kept across call cycles (API clients)."
+					+ " RECONNECT gives each user a connection of its own that is re-opened for each new call cycle (browsers).")
+	private ConnectionMode connectionMode = ConnectionMode.POOLED;
+	
+	@Option(names = {"--http-clients", "--httpclients"},
+			paramLabel = "NUM_CLIENTS",
+			description="Number of HTTP clients per load generator that are shared by all users."
+					+ " Users keep their own cookies. 0 => each user has its own HTTP client.")
+	private int httpClients = 0;
+	
+	@Option(names = {"--max-connections", "--max-connections-per-destination"},
+			paramLabel = "MAX_CONNECTIONS",
+			description="Maximum number of connections per destination for each shared HTTP client."
+					+ " 0 => number of users sharing the client.")
+	private int maxConnectionsPerDestination = 0;
+	
+	@Option(names = {"--http-selectors", "--selectors"},
+			paramLabel = "NUM_SELECTORS",
+			description="Number of selectors for each shared HTTP client. 0 => HTTP client default.")
+	private int httpSelectors = 0;
+	
+	@Option(names = {"--http-client-threads", "--client-threads"},
+			paramLabel = "NUM_CLIENT_THREADS",
+			description="Maximum number of executor threads for each shared HTTP client. 0 => HTTP client default.")
+	private int httpClientThreads = 0;
+	
+	@Option(names = {"--protocol"},
+			paramLabel = "PROTOCOL",
+			description="Protocol for communicating with the load generators."
+					+ " BINARY uses length-prefixed binary messages and falls back to TEXT for load generators"
+					+ " that do not support it. TEXT uses the line-based protocol of older versions.")
+	private Protocol protocol = Protocol.BINARY;
+	
+	@Option(names = {"--start-delay"},
+			paramLabel = "START_DELAY",
+			description="Delay in ms between sending the start command and the synchronized start of all load generators."
+					+ " Clocks of the load generators are synchronized with the director."
+					+ " 0 => load generators start immediately.")
+	private int startDelayMs = IRunnerConstants.DEFAULT_START_DELAY_MS;
+	
+	@Option(names = {"--generator-weights", "--weights"},
+			paramLabel = "WEIGHTS",
+			description="Weights of the load generators' shares of the load, delimited with \",\" in the order"
+					+ " of the load generator addresses. CORES => weight by the load generators' number of processors."
+					+ " Default: equal shares.")
+	private String generatorWeights = null;
+	
+	@Option(names = {"--static-distribution"},
+			description="With this flag, the director does not shift load between load generators during the run."
+					+ " By default, load is shifted away from load generators that lag behind or fail.")
+	private boolean staticDistribution = false;
+	
 	@Option(names = { "-h", "--help" }, usageHelp = true, description = "Display this help message.")
 	private boolean helpRequested = false;
 
@@ -113,6 +237,10 @@ public class DirectorCommand implements Runnable {
 	public void run() {
 		Director.executeDirector(profilePath, outName, powerAddresses, generators,
 				randomSeed, threadCount, urlTimeout, scriptPath, randomizeUsers, warmupRate, warmupDuration,
-				warmupPause, powerCommunicatorClassName);
+				warmupPause, powerCommunicatorClassName, dispatchMode, arrivalProcess,
+				executionMode, inFlightLimit, workloadModel, thinkTimeMs, thinkTimeDistribution,
+				executorShards, new HTTPClientSettings(httpClients,
+						maxConnectionsPerDestination, httpSelectors, httpClientThreads, connectionMode), protocol,
+				startDelayMs, generatorWeights, !staticDistribution);
 	}
 }
@@ -0,0 +1,261 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.transaction;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import tools.descartes.dlim.httploadgenerator.generator.ResultTracker;
+
+/**
+ * Dispatches transactions into an executor at their individual due times.
+ * Transactions are sorted into the buckets of a hashed timer wheel, which is advanced
+ * by a dedicated worker thread in fixed ticks of {@link System#nanoTime()}.
+ * Each transaction is released at the end of the tick that contains its due time,
+ * meaning that it is never released early and at most one tick late
+ * (as long as the worker is not starved).
+ * The delay between due time and actual release is logged as dispatch jitter
+ * in the {@link ResultTracker}.
+ *
+ * @author Joakim von Kistowski
+ *
+ */
+public class HashedWheelDispatcher {
+
+	/** The constant logging instance. */
+	private static final Logger LOG = Logger.getLogger(HashedWheelDispatcher.class.getName());
+
+	/** Default tick duration of 100 microseconds. */
+	public static final long DEFAULT_TICK_NS = 100000L;
+
+	/** Number of buckets. With the default tick, one revolution takes about 410 ms. */
+	private static final int DEFAULT_WHEEL_SIZE = 4096;
+
+	/** Remaining wait time below which the worker stops parking and spins instead. */
+	private static final long SPIN_THRESHOLD_NS = 50000L;
+
+	/** Time to park if no transactions are waiting. Scheduling wakes the worker early. */
+	private static final long IDLE_PARK_NS = 10000000L;
+
+	private final Executor executor;
+	private final LongSupplier clock;
+	private final long tickNs;
+	private final int mask;
+	private final ArrayDeque<Transaction>[] wheel;
+
+	/** Transactions that were scheduled, but not yet sorted into the wheel by the worker. */
+	private final ConcurrentLinkedQueue<Transaction> pending = new ConcurrentLinkedQueue<>();
+
+	private final AtomicLong scheduledCount = new AtomicLong(0);
+	private final AtomicLong dispatchedCount = new AtomicLong(0);
+
+	private volatile boolean running = false;
+	private volatile long lastDispatchTimeNs = 0;
+	private long startTimeNs;
+	/** Number of transactions in the wheel. Only accessed by the worker. */
+	private int transactionsInWheel = 0;
+	private Thread worker;
+
+	/**
+	 * Create a new dispatcher with the default tick duration.
+	 * @param executor The executor to release transactions into.
+	 */
+	public HashedWheelDispatcher(Executor executor) {
+		this(executor, DEFAULT_TICK_NS, DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * Create a new dispatcher.
+	 * @param executor The executor to release transactions into.
+	 * @param tickNs The tick duration in nanoseconds.
+	 * @param wheelSize The number of buckets in the wheel. Rounded up to the next power of two.
+	 */
+	public HashedWheelDispatcher(Executor executor, long tickNs, int wheelSize) {
+		this(executor, tickNs, wheelSize, System::nanoTime);
+	}
+
+	/**
+	 * Create a new dispatcher with a custom clock. Ticks are counted from the moment of creation
+	 * until the dispatcher is started.
+	 * @param executor The executor to release transactions into.
+	 * @param tickNs The tick duration in nanoseconds.
+	 * @param wheelSize The number of buckets in the wheel. Rounded up to the next power of two.
+	 * @param clock The clock in {@link System#nanoTime()} scale.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	HashedWheelDispatcher(Executor executor, long tickNs, int wheelSize, LongSupplier clock) {
+		if (tickNs <= 0) {
+			throw new IllegalArgumentException("Tick duration must be positive.");
+		}
+		this.executor = executor;
+		this.clock = clock;
+		this.tickNs = tickNs;
+		int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+		this.mask = size - 1;
+		this.wheel = new ArrayDeque[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new ArrayDeque<>();
+		}
+		startTimeNs = clock.getAsLong();
+		lastDispatchTimeNs = startTimeNs;
+	}
+
+	/**
+	 * Starts the worker thread. Ticks are counted from the moment of this call.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		startTimeNs = clock.getAsLong();
+		lastDispatchTimeNs = startTimeNs;
+		running = true;
+		worker = new Thread(this::runWorker, "HashedWheelDispatcher");
+		worker.setDaemon(true);
+		worker.setPriority(Thread.MAX_PRIORITY);
+		worker.start();
+	}
+
+	/**
+	 * Stops the worker thread. Transactions that have not been released yet are discarded.
+	 */
+	public synchronized void stop() {
+		running = false;
+		if (worker != null) {
+			LockSupport.unpark(worker);
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				LOG.severe("Interrupted stopping dispatcher worker.");
+			}
+			worker = null;
+		}
+		long discarded = scheduledCount.get() - dispatchedCount.get();
+		if (discarded > 0) {
+			LOG.warning("Dispatcher stopped with " + discarded + " transactions left undispatched.");
+		}
+	}
+
+	/**
+	 * Schedules a transaction for release at the given due time.
+	 * Transactions with due times in the past are released with the next tick.
+	 * May be called from any thread.
+	 * @param transaction The transaction.
+	 * @param dueTimeNs The due time in {@link System#nanoTime()} scale.
+	 */
+	public void schedule(Transaction transaction, long dueTimeNs) {
+		transaction.setDueTimeNs(dueTimeNs);
+		scheduledCount.incrementAndGet();
+		pending.add(transaction);
+		Thread w = worker;
+		if (w != null) {
+			LockSupport.unpark(w);
+		}
+	}
+
+	/**
+	 * Returns true if scheduled transactions are still waiting for their release.
+	 * @return True, if transactions are waiting.
+	 */
+	public boolean hasWaitingTransactions() {
+		return scheduledCount.get() > dispatchedCount.get();
+	}
+
+	/**
+	 * Time at which the most recent transaction was released.
+	 * @return The release time in {@link System#nanoTime()} scale.
+	 */
+	public long getLastDispatchTimeNs() {
+		return lastDispatchTimeNs;
+	}
+
+	private void runWorker() {
+		long tick = 0;
+		while (running) {
+			if (transactionsInWheel == 0 && pending.isEmpty()) {
+				LockSupport.parkNanos(this, IDLE_PARK_NS);
+				//nothing was in the wheel, so skipping the idle ticks is safe
+				tick = Math.max(tick, (clock.getAsLong() - startTimeNs) / tickNs);
+				continue;
+			}
+			long tickEndNs = startTimeNs + (tick + 1) * tickNs;
+			waitUntil(tickEndNs);
+			processTick(tick);
+			tick++;
+		}
+	}
+
+	/**
+	 * Sorts the pending transactions into the wheel and releases the transactions
+	 * that are due by the end of the given tick. Called by the worker once the tick has ended.
+	 * Must not be called concurrently with the worker.
+	 * @param tick The tick, counted from the start time.
+	 */
+	void processTick(long tick) {
+		transferPending(tick);
+		expireBucket(tick);
+	}
+
+	private void waitUntil(long deadlineNs) {
+		long remaining;
+		while ((remaining = deadlineNs - clock.getAsLong()) > 0 && running) {
+			if (remaining > SPIN_THRESHOLD_NS) {
+				LockSupport.parkNanos(this, remaining - SPIN_THRESHOLD_NS);
+			} else {
+				Thread.yield();
+			}
+		}
+	}
+
+	private void transferPending(long currentTick) {
+		Transaction transaction;
+		while ((transaction = pending.poll()) != null) {
+			long dueTick = Math.max(currentTick, (transaction.getDueTimeNs() - startTimeNs) / tickNs);
+			wheel[(int) (dueTick & mask)].add(transaction);
+			transactionsInWheel++;
+		}
+	}
+
+	private void expireBucket(long currentTick) {
+		ArrayDeque<Transaction> bucket = wheel[(int) (currentTick & mask)];
+		long tickEndNs = startTimeNs + (currentTick + 1) * tickNs;
+		int size = bucket.size();
+		for (int i = 0; i < size; i++) {
+			Transaction transaction = bucket.poll();
+			if (transaction.getDueTimeNs() - tickEndNs < 0) {
+				transactionsInWheel--;
+				dispatch(transaction);
+			} else {
+				//due in a later revolution of the wheel
+				bucket.add(transaction);
+			}
+		}
+	}
+
+	private void dispatch(Transaction transaction) {
+		long now = clock.getAsLong();
+		ResultTracker.TRACKER.logDispatchJitter(now - transaction.getDueTimeNs());
+		transaction.setStartTime(System.currentTimeMillis());
+		lastDispatchTimeNs = now;
+		dispatchedCount.incrementAndGet();
+		executor.execute(transaction);
+	}
+}
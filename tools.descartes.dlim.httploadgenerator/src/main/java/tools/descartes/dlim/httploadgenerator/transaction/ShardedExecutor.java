@@ -0,0 +1,148 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.transaction;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor that partitions its threads into shards, each shard being a thread pool of its own.
+ * Transactions are distributed across the shards round-robin and are tagged with their shard
+ * (see {@link Transaction#getShard()}), so that each transaction only uses the users of its shard.
+ * Each user is thus only ever executed by the few threads of its shard.
+ * With a single shard, the executor behaves like a plain thread pool.
+ * @author Joakim von Kistowski
+ *
+ */
+public class ShardedExecutor implements Executor {
+
+	private final ThreadPoolExecutor[] shards;
+
+	private final AtomicInteger nextShard = new AtomicInteger();
+
+	/**
+	 * Creates a new sharded executor with a fixed number of platform threads.
+	 * @param shardCount The number of shards. Is limited to the number of threads.
+	 * @param threadCount The total number of threads. Threads are distributed evenly across the shards.
+	 */
+	public ShardedExecutor(int shardCount, int threadCount) {
+		this(shardCount, threadCount, 0, null);
+	}
+
+	/**
+	 * Creates a new sharded executor.
+	 * @param shardCount The number of shards. Is limited to the number of threads.
+	 * @param threadCount The total number of threads. Threads are distributed evenly across the shards.
+	 * @param keepAliveS Time after which idle threads are released in seconds. 0 to keep threads alive.
+	 * @param threadFactory The factory for the threads. Null for named platform threads.
+	 */
+	public ShardedExecutor(int shardCount, int threadCount, long keepAliveS, ThreadFactory threadFactory) {
+		shards = new ThreadPoolExecutor[Math.max(1, Math.min(shardCount, threadCount))];
+		for (int i = 0; i < shards.length; i++) {
+			//same distribution as the users of the HTTPInputGeneratorPool
+			int shardThreads = Math.max(1, threadCount / shards.length + (i < threadCount % shards.length ? 1 : 0));
+			ThreadFactory factory = threadFactory;
+			if (factory == null) {
+				factory = new ShardThreadFactory(i);
+			}
+			shards[i] = new ThreadPoolExecutor(shardThreads, shardThreads, keepAliveS, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), factory);
+			if (keepAliveS > 0) {
+				shards[i].allowCoreThreadTimeOut(true);
+			}
+		}
+	}
+
+	/**
+	 * Executes the command on the next shard. Transactions are tagged with the shard.
+	 * @param command The command to execute.
+	 */
+	@Override
+	public void execute(Runnable command) {
+		int shard = 0;
+		if (shards.length > 1) {
+			shard = Math.floorMod(nextShard.getAndIncrement(), shards.length);
+		}
+		if (command instanceof Transaction) {
+			((Transaction) command).setShard(shard);
+		}
+		shards[shard].execute(command);
+	}
+
+	/**
+	 * Returns the approximate number of threads that are actively executing tasks in all shards.
+	 * @return The number of active threads.
+	 */
+	public int getActiveCount() {
+		int activeCount = 0;
+		for (ThreadPoolExecutor shard : shards) {
+			activeCount += shard.getActiveCount();
+		}
+		return activeCount;
+	}
+
+	/**
+	 * Returns the approximate number of tasks that have completed execution in all shards.
+	 * @return The number of completed tasks.
+	 */
+	public long getCompletedTaskCount() {
+		long completedTaskCount = 0;
+		for (ThreadPoolExecutor shard : shards) {
+			completedTaskCount += shard.getCompletedTaskCount();
+		}
+		return completedTaskCount;
+	}
+
+	/**
+	 * Returns the number of shards.
+	 * @return The number of shards.
+	 */
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * Shuts all shards down. Previously submitted tasks are executed, but no new tasks are accepted.
+	 */
+	public void shutdown() {
+		for (ThreadPoolExecutor shard : shards) {
+			shard.shutdown();
+		}
+	}
+
+	/**
+	 * Creates the threads of a shard, named after the shard.
+	 */
+	private static final class ShardThreadFactory implements ThreadFactory {
+		private final int shard;
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		private ShardThreadFactory(int shard) {
+			this.shard = shard;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "shard-" + shard + "-thread-" + threadNumber.getAndIncrement());
+			thread.setDaemon(false);
+			return thread;
+		}
+	}
+}
@@ -25,8 +25,17 @@ public abstract class Transaction implements Runnable {
 	//problemsize for computing problems
 	private static int problemsize = 10000;
 	
+	/** Due time of transactions that were not scheduled. {@link System#nanoTime()} may legally be 0. */
+	private static final long NOT_SCHEDULED = Long.MIN_VALUE;
+	
 	private long startTimeMs = 0;
 	
+	private long dueTimeNs = NOT_SCHEDULED;
+	
+	private long sendTimeNs = 0;
+	
+	private int shard = 0;
+	
 	@Override
 	public abstract void run();
 	
@@ -63,5 +72,73 @@ public abstract class Transaction implements Runnable {
 	public long getStartTime() {
 		return startTimeMs;
 	}
+	
+	/**
+	 * Set the time at which the transaction is due to be dispatched into the threadpool.
+	 * This is the intended send time of the transaction, as planned by the load profile.
+	 * @param dueTimeNs The due time in {@link System#nanoTime()} scale.
+	 */
+	public void setDueTimeNs(long dueTimeNs) {
+		this.dueTimeNs = dueTimeNs;
+	}
+	
+	/**
+	 * Gets the time at which the transaction is due to be dispatched into the threadpool.
+	 * This is the intended send time of the transaction, as planned by the load profile.
+	 * @return The due time in {@link System#nanoTime()} scale. {@link Long#MIN_VALUE} if the transaction
+	 * was not scheduled.
+	 */
+	public long getDueTimeNs() {
+		return dueTimeNs;
+	}
+	
+	/**
+	 * Set the time at which the transaction's request was actually sent.
+	 * @param sendTimeNs The send time in {@link System#nanoTime()} scale.
+	 */
+	protected void setSendTimeNs(long sendTimeNs) {
+		this.sendTimeNs = sendTimeNs;
+	}
+	
+	/**
+	 * Gets the time at which the transaction's request was actually sent.
+	 * The difference to {@link #getDueTimeNs()} is the time the transaction spent
+	 * waiting inside the load generator.
+	 * @return The send time in {@link System#nanoTime()} scale.
+	 */
+	public long getSendTimeNs() {
+		return sendTimeNs;
+	}
+	
+	/**
+	 * Set the executor shard on which the transaction is executed.
+	 * @param shard The index of the shard.
+	 */
+	public void setShard(int shard) {
+		this.shard = shard;
+	}
+	
+	/**
+	 * Gets the executor shard on which the transaction is executed.
+	 * The transaction only uses users (input generators) of this shard.
+	 * @return The index of the shard. 0 if the executor is not sharded.
+	 */
+	public int getShard() {
+		return shard;
+	}
+	
+	/**
+	 * Corrects a response time for coordinated omission by adding the delay
+	 * between the intended and actual send time.
+	 * @param receiveTimeNs The time at which the response was received.
+	 * @return The response time as measured from the intended send time in nanoseconds.
+	 * Equals the service response time if the transaction was not scheduled.
+	 */
+	protected long getCorrectedResponseTimeNs(long receiveTimeNs) {
+		if (dueTimeNs == NOT_SCHEDULED || dueTimeNs - sendTimeNs > 0) {
+			return receiveTimeNs - sendTimeNs;
+		}
+		return receiveTimeNs - dueTimeNs;
+	}
 
 }
@@ -15,7 +15,7 @@
  */
 package tools.descartes.dlim.httploadgenerator.transaction;
 
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Executor;
 
 import tools.descartes.dlim.httploadgenerator.http.HTTPTransaction;
 
@@ -52,20 +52,32 @@ public class TransactionBatch {
 
 	/**
 	 * Execute the current batch by placing all transactions in the executor.
+	 * Each transaction is due at its own intended time, as if the transactions of the interval
+	 * were spread equi-distantly across the interval. Transactions of late batches are thus
+	 * corrected for coordinated omission by the time the batch fell behind.
 	 * 
 	 * @param executor
 	 *            The thread pool to execute the transactions.
+	 * @param intervalStartNs
+	 *            Start of the interval in {@link System#nanoTime()} scale.
+	 * @param intervalLengthNs
+	 *            Length of the interval in nanoseconds.
+	 * @param firstArrival
+	 *            Index of the batch's first transaction within the interval.
+	 * @param intervalArrivals
+	 *            Number of transactions of the interval.
 	 */
-	public void executeBatch(ThreadPoolExecutor executor) {
+	public void executeBatch(Executor executor, long intervalStartNs, long intervalLengthNs, int firstArrival,
+			int intervalArrivals) {
 		//use a single start time approximation for all transactions in the batch to reduce overhead
 		long startTime = System.currentTimeMillis();
-		TransactionQueueSingleton transactionQueue = TransactionQueueSingleton.getInstance();
 		for (int i = 0; i < size; i++) {
-			Transaction transaction = transactionQueue.getQueueElement();
+			Transaction transaction = TransactionRecycler.RECYCLER.obtain();
 			if (transaction == null) {
 				transaction = new HTTPTransaction();
 			}
 			transaction.setStartTime(startTime);
+			transaction.setDueTimeNs(intervalStartNs + (intervalLengthNs * (firstArrival + i)) / intervalArrivals);
 			executor.execute(transaction);
 		}
 	}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.transaction;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.logging.Logger;
+
+/**
+ * Recycles transaction instances, so that dispatching does not allocate new transactions.
+ * Each thread caches transactions in batches of its own. Recycling threads (the executor's workers)
+ * fill their recycle batch and hand it over to a bounded shared overflow once it is full.
+ * Obtaining threads (the dispatcher) take transactions from their obtain batch and fetch the next
+ * full batch from the overflow once it is empty. The shared overflow is thus only accessed once per
+ * batch and the batch arrays themselves are recycled as well.
+ * If the overflow is full, recycled batches are dropped and left to the garbage collector.
+ * If no recycled transaction is available, a new one is created. Transactions can only be obtained
+ * after the recycler has been initialized using {@link #resetAndPreInitializeTransactions(Class, int, int)}.
+ *
+ * @author Joakim von Kistowski
+ *
+ */
+public final class TransactionRecycler {
+
+	/** The constant logging instance. */
+	private static final Logger LOG = Logger.getLogger(TransactionRecycler.class.getName());
+
+	/** Number of transactions in a batch. */
+	private static final int BATCH_SIZE = 32;
+
+	/** Minimum capacity of the shared overflow in batches. */
+	private static final int MIN_OVERFLOW_BATCHES = 64;
+
+	/** The recycler instance. */
+	public static final TransactionRecycler RECYCLER = new TransactionRecycler();
+
+	private final ThreadLocal<LocalCache> localCache = new ThreadLocal<LocalCache>() {
+		@Override
+		protected LocalCache initialValue() {
+			return new LocalCache();
+		}
+	};
+
+	private volatile Pools pools = new Pools(null, 0, MIN_OVERFLOW_BATCHES);
+
+	private TransactionRecycler() {
+	}
+
+	/**
+	 * Resets the recycler and pre-initializes a number of transactions.
+	 * The pre-initialization is intended to reduce dispatching times during load generation.
+	 * Transactions in the caches of threads are discarded on the thread's next access.
+	 * Each recycling thread holds back up to one batch less one transaction until its recycle batch is full.
+	 * These transactions are pre-initialized in addition to the requested ones.
+	 * The overflow is sized to hold at least twice the pre-initialized transactions.
+	 * @param transactionClass Class of the transactions to create. Must have a default Constructor.
+	 * @param numInitialTransactions Number of transactions to pre-initialize.
+	 * @param recyclingThreads Number of threads that recycle transactions.
+	 */
+	public void resetAndPreInitializeTransactions(Class<? extends Transaction> transactionClass,
+			int numInitialTransactions, int recyclingThreads) {
+		long transactions = numInitialTransactions + (long) recyclingThreads * (BATCH_SIZE - 1);
+		int initialBatches = (int) Math.min(Integer.MAX_VALUE / 2, (transactions + BATCH_SIZE - 1) / BATCH_SIZE);
+		Pools newPools = new Pools(transactionClass, pools.generation + 1,
+				Math.max(MIN_OVERFLOW_BATCHES, 2 * initialBatches));
+		for (int i = 0; i < initialBatches; i++) {
+			Transaction[] batch = new Transaction[BATCH_SIZE];
+			for (int j = 0; j < BATCH_SIZE; j++) {
+				batch[j] = newPools.newTransaction();
+			}
+			newPools.fullBatches.offer(batch);
+		}
+		pools = newPools;
+	}
+
+	/**
+	 * Returns a recycled transaction, or a new one if none is available.
+	 * @return The transaction.
+	 * @throws IllegalStateException If the recycler has not been initialized.
+	 */
+	public Transaction obtain() {
+		Pools currentPools = pools;
+		LocalCache cache = localCache.get();
+		cache.validate(currentPools);
+		if (cache.obtainCount == 0) {
+			if (cache.recycleCount > 0) {
+				//this thread recycles transactions itself
+				Transaction transaction = cache.recycleBatch[--cache.recycleCount];
+				cache.recycleBatch[cache.recycleCount] = null;
+				return transaction;
+			}
+			Transaction[] batch = currentPools.fullBatches.poll();
+			if (batch == null) {
+				return currentPools.newTransaction();
+			}
+			if (cache.obtainBatch != null) {
+				currentPools.emptyBatches.offer(cache.obtainBatch);
+			}
+			cache.obtainBatch = batch;
+			cache.obtainCount = BATCH_SIZE;
+		}
+		Transaction transaction = cache.obtainBatch[--cache.obtainCount];
+		cache.obtainBatch[cache.obtainCount] = null;
+		return transaction;
+	}
+
+	/**
+	 * Recycles a transaction that is no longer in use.
+	 * @param transaction The transaction.
+	 */
+	public void recycle(Transaction transaction) {
+		Pools currentPools = pools;
+		LocalCache cache = localCache.get();
+		cache.validate(currentPools);
+		if (cache.recycleBatch == null) {
+			cache.recycleBatch = currentPools.emptyBatches.poll();
+			if (cache.recycleBatch == null) {
+				cache.recycleBatch = new Transaction[BATCH_SIZE];
+			}
+		}
+		cache.recycleBatch[cache.recycleCount++] = transaction;
+		if (cache.recycleCount == BATCH_SIZE) {
+			if (currentPools.fullBatches.offer(cache.recycleBatch)) {
+				cache.recycleBatch = currentPools.emptyBatches.poll();
+			} else {
+				Arrays.fill(cache.recycleBatch, null);
+			}
+			cache.recycleCount = 0;
+		}
+	}
+
+	/**
+	 * The shared overflow of a single run.
+	 */
+	private static final class Pools {
+		private final Class<? extends Transaction> transactionClass;
+		private final int generation;
+		private final ArrayBlockingQueue<Transaction[]> fullBatches;
+		private final ArrayBlockingQueue<Transaction[]> emptyBatches;
+
+		private Pools(Class<? extends Transaction> transactionClass, int generation, int capacity) {
+			this.transactionClass = transactionClass;
+			this.generation = generation;
+			fullBatches = new ArrayBlockingQueue<>(capacity);
+			emptyBatches = new ArrayBlockingQueue<>(capacity);
+		}
+
+		private Transaction newTransaction() {
+			if (transactionClass == null) {
+				throw new IllegalStateException("Transaction recycler has not been initialized.");
+			}
+			try {
+				return transactionClass.newInstance();
+			} catch (InstantiationException e) {
+				LOG.severe("Error instantiating transaction object of class " + transactionClass.getName()
+				+ "; Does the class have the default Constructor?\n Exception: " + e.getMessage());
+			} catch (IllegalAccessException e) {
+				LOG.severe("IllegalAccessException intantiating transaction class: " + e.getMessage());
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * The batches cached by a single thread.
+	 */
+	private static final class LocalCache {
+		private int generation = -1;
+		private Transaction[] obtainBatch;
+		private int obtainCount;
+		private Transaction[] recycleBatch;
+		private int recycleCount;
+
+		/**
+		 * Discards the cached transactions if they belong to a previous run.
+		 * @param pools The current pools.
+		 */
+		private void validate(Pools pools) {
+			if (generation != pools.generation) {
+				generation = pools.generation;
+				obtainBatch = null;
+				obtainCount = 0;
+				recycleBatch = null;
+				recycleCount = 0;
+			}
+		}
+	}
+}
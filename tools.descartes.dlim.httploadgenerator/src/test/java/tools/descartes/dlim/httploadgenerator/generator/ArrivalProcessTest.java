@@ -0,0 +1,112 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the inter-arrival times drawn by the {@link ArrivalProcess}es.
+ * All samples are drawn from a seeded random generator.
+ * @author Joakim von Kistowski
+ *
+ */
+public class ArrivalProcessTest {
+
+	/** Number of inter-arrival times drawn per process. */
+	private static final int SAMPLES = 200000;
+
+	/** Mean inter-arrival time of 2 ms, i.e., an arrival rate of 500 per second. */
+	private static final double MEAN_NS = 2000000.0;
+
+	/** Seed of the random generator. */
+	private static final long SEED = 5;
+
+	@Test
+	public void testMeanInterArrivalTimeOfEachProcess() {
+		for (ArrivalProcess process : ArrivalProcess.values()) {
+			Random r = new Random(SEED);
+			double sum = 0;
+			for (int i = 0; i < SAMPLES; i++) {
+				sum += process.nextInterArrivalTimeNs(MEAN_NS, r);
+			}
+			//the standard error of the exponential distribution is mean / sqrt(SAMPLES), about 0.22 %
+			assertEquals(process.name(), MEAN_NS, sum / SAMPLES, MEAN_NS * 0.01);
+		}
+	}
+
+	@Test
+	public void testPoissonIsExponential() {
+		Random r = new Random(SEED);
+		double sum = 0;
+		double squareSum = 0;
+		int belowMean = 0;
+		for (int i = 0; i < SAMPLES; i++) {
+			double x = ArrivalProcess.POISSON.nextInterArrivalTimeNs(MEAN_NS, r);
+			assertTrue(x >= 0);
+			sum += x;
+			squareSum += x * x;
+			if (x < MEAN_NS) {
+				belowMean++;
+			}
+		}
+		double mean = sum / SAMPLES;
+		double stdDev = Math.sqrt(squareSum / SAMPLES - mean * mean);
+		//coefficient of variation 1 and P(X < mean) = 1 - 1/e
+		assertEquals(1.0, stdDev / mean, 0.02);
+		assertEquals(1.0 - Math.exp(-1.0), belowMean / (double) SAMPLES, 0.01);
+	}
+
+	@Test
+	public void testUniformRange() {
+		Random r = new Random(SEED);
+		double min = Double.MAX_VALUE;
+		double max = 0;
+		for (int i = 0; i < SAMPLES; i++) {
+			double x = ArrivalProcess.UNIFORM.nextInterArrivalTimeNs(MEAN_NS, r);
+			min = Math.min(min, x);
+			max = Math.max(max, x);
+		}
+		assertTrue(min >= 0 && min < MEAN_NS * 0.001);
+		assertTrue(max < 2 * MEAN_NS && max > 2 * MEAN_NS * 0.999);
+	}
+
+	@Test
+	public void testDeterministicDrawsNoRandomNumbers() {
+		Random r = new Random(SEED);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(MEAN_NS, ArrivalProcess.DETERMINISTIC.nextInterArrivalTimeNs(MEAN_NS, r), 0.0);
+		}
+		//the random generator is untouched
+		assertEquals(new Random(SEED).nextLong(), r.nextLong());
+	}
+
+	@Test
+	public void testSameSeedSameArrivals() {
+		for (ArrivalProcess process : ArrivalProcess.values()) {
+			Random first = new Random(SEED);
+			Random second = new Random(SEED);
+			for (int i = 0; i < 1000; i++) {
+				assertEquals(process.nextInterArrivalTimeNs(MEAN_NS, first),
+						process.nextInterArrivalTimeNs(MEAN_NS, second), 0.0);
+			}
+		}
+	}
+}
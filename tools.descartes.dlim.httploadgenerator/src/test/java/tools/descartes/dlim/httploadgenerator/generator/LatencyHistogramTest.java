@@ -0,0 +1,198 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests the bucketing, percentiles, merging and encoding of the {@link LatencyHistogram}.
+ * @author Joakim von Kistowski
+ *
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBucketIndex() {
+		//values below the sub-bucket count are recorded exactly
+		assertEquals(0, LatencyHistogram.bucketIndex(0));
+		assertEquals(255, LatencyHistogram.bucketIndex(255));
+		//each following power of two is split into half as many buckets
+		assertEquals(256, LatencyHistogram.bucketIndex(256));
+		assertEquals(256, LatencyHistogram.bucketIndex(257));
+		assertEquals(257, LatencyHistogram.bucketIndex(258));
+		assertEquals(383, LatencyHistogram.bucketIndex(511));
+		assertEquals(384, LatencyHistogram.bucketIndex(512));
+		assertEquals(384, LatencyHistogram.bucketIndex(515));
+		assertEquals(385, LatencyHistogram.bucketIndex(516));
+		assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(LatencyHistogram.MAX_VALUE_US));
+	}
+
+	@Test
+	public void testBucketBoundaries() {
+		for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+			long lowest = LatencyHistogram.lowestValueInBucket(i);
+			long highest = LatencyHistogram.highestValueInBucket(i);
+			assertEquals(i, LatencyHistogram.bucketIndex(lowest));
+			assertEquals(i, LatencyHistogram.bucketIndex(highest));
+			if (i > 0) {
+				//buckets are contiguous
+				assertEquals(LatencyHistogram.highestValueInBucket(i - 1) + 1, lowest);
+			}
+			//the relative error stays below 1/SUB_BUCKET_HALF_COUNT
+			assertTrue((highest - lowest) * LatencyHistogram.SUB_BUCKET_HALF_COUNT <= Math.max(lowest, 1));
+		}
+		assertEquals(LatencyHistogram.MAX_VALUE_US,
+				LatencyHistogram.highestValueInBucket(LatencyHistogram.BUCKET_COUNT - 1));
+	}
+
+	@Test
+	public void testPercentilesOfUniformDistribution() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 10000; value++) {
+			histogram.recordValue(value);
+		}
+		assertEquals(10000, histogram.getTotalCount());
+		assertWithinPrecision(5000, histogram.getValueAtPercentile(50.0));
+		assertWithinPrecision(9000, histogram.getValueAtPercentile(90.0));
+		assertWithinPrecision(9900, histogram.getValueAtPercentile(99.0));
+		assertWithinPrecision(9990, histogram.getValueAtPercentile(99.9));
+		assertWithinPrecision(10000, histogram.getValueAtPercentile(100.0));
+		assertWithinPrecision(10000, histogram.getMaxValue());
+		assertEquals(1, histogram.getValueAtPercentile(0.0));
+		//exact below the sub-bucket count
+		assertEquals(100, histogram.getValueAtPercentile(1.0));
+	}
+
+	@Test
+	public void testReportedPercentilesInS() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) {
+			histogram.recordValue(200);
+		}
+		histogram.recordValue(250);
+		assertArrayEquals(new double[] {0.0002, 0.0002, 0.0002, 0.00025, 0.00025},
+				histogram.getReportedPercentilesInS(), 0.0);
+		assertArrayEquals(new double[] {0.0, 0.0, 0.0, 0.0, 0.0},
+				new LatencyHistogram().getReportedPercentilesInS(), 0.0);
+	}
+
+	@Test
+	public void testOverflowIsClamped() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.recordValue(Long.MAX_VALUE);
+		histogram.recordValue(LatencyHistogram.MAX_VALUE_US + 1);
+		histogram.recordValue(-5);
+		assertEquals(3, histogram.getTotalCount());
+		assertEquals(2, histogram.getCountInBucket(LatencyHistogram.BUCKET_COUNT - 1));
+		assertEquals(1, histogram.getCountInBucket(0));
+		assertEquals(LatencyHistogram.MAX_VALUE_US, histogram.getMaxValue());
+		assertEquals(0, histogram.getValueAtPercentile(10.0));
+	}
+
+	@Test
+	public void testMerge() {
+		LatencyHistogram first = new LatencyHistogram();
+		LatencyHistogram second = new LatencyHistogram();
+		LatencyHistogram combined = new LatencyHistogram();
+		for (long value = 1; value <= 5000; value++) {
+			first.recordValue(value * 3);
+			second.recordValue(value * 7);
+			combined.recordValue(value * 3);
+			combined.recordValue(value * 7);
+		}
+		first.add(second);
+		assertEquals(combined.getTotalCount(), first.getTotalCount());
+		for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+			assertEquals(combined.getCountInBucket(i), first.getCountInBucket(i));
+		}
+		assertArrayEquals(combined.getReportedPercentilesInS(), first.getReportedPercentilesInS(), 0.0);
+		//the added histogram is unchanged
+		assertEquals(5000, second.getTotalCount());
+	}
+
+	@Test
+	public void testEncodingRoundTrip() {
+		LatencyHistogram single = new LatencyHistogram();
+		single.recordValue(1234);
+		LatencyHistogram max = new LatencyHistogram();
+		max.recordValue(LatencyHistogram.MAX_VALUE_US);
+		max.recordValue(0);
+		LatencyHistogram spread = new LatencyHistogram();
+		for (long value = 1; value <= 100000; value += value / 10 + 1) {
+			spread.recordValue(value);
+			spread.recordValue(value);
+		}
+		for (LatencyHistogram histogram : new LatencyHistogram[] {new LatencyHistogram(), single, max, spread}) {
+			String encoded = histogram.encode();
+			//the encoding is embedded in comma separated result lines
+			assertTrue(encoded.matches("[A-Za-z0-9+/=]+"));
+			assertSameCounts(histogram, LatencyHistogram.decode(encoded));
+			assertSameCounts(histogram, LatencyHistogram.fromBytes(histogram.toBytes()));
+		}
+	}
+
+	@Test
+	public void testEncodingIsCompact() {
+		//the version byte only
+		assertEquals(1, new LatencyHistogram().toBytes().length);
+		LatencyHistogram single = new LatencyHistogram();
+		single.recordValue(1234);
+		//version byte, run of empty buckets, count
+		assertEquals(4, single.toBytes().length);
+		LatencyHistogram max = new LatencyHistogram();
+		max.recordValue(LatencyHistogram.MAX_VALUE_US);
+		max.recordValue(LatencyHistogram.MAX_VALUE_US);
+		assertEquals(4, max.toBytes().length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownEncodingVersion() {
+		LatencyHistogram.fromBytes(new byte[] {2, 2});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTruncatedEncoding() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.recordValue(100);
+		histogram.addToBucket(100, 1000);
+		byte[] encoded = histogram.toBytes();
+		LatencyHistogram.fromBytes(Arrays.copyOf(encoded, encoded.length - 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEncodingBeyondBucketRange() {
+		//skips all buckets, followed by a count of one
+		LatencyHistogram.fromBytes(new byte[] {1, (byte) 0xFF, (byte) 0x33, 2});
+	}
+
+	private static void assertSameCounts(LatencyHistogram expected, LatencyHistogram actual) {
+		assertEquals(expected.getTotalCount(), actual.getTotalCount());
+		for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+			assertEquals(expected.getCountInBucket(i), actual.getCountInBucket(i));
+		}
+	}
+
+	private static void assertWithinPrecision(long expected, long actual) {
+		assertTrue("Expected " + expected + " but was " + actual, actual >= expected
+				&& actual - expected <= expected / LatencyHistogram.SUB_BUCKET_HALF_COUNT);
+	}
+}
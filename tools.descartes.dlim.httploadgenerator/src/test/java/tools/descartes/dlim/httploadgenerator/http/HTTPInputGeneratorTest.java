@@ -0,0 +1,110 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.util.HttpCookieStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests that users that share an HTTP client keep their cookies separate.
+ * @author Joakim von Kistowski
+ *
+ */
+public class HTTPInputGeneratorTest {
+
+	private HttpServer server;
+	private HttpClient client;
+	private String baseUrl;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		//sets a session cookie for the user in the query
+		server.createContext("/login", exchange -> {
+			exchange.getResponseHeaders().add("Set-Cookie",
+					"session=" + exchange.getRequestURI().getQuery() + "; Path=/");
+			respond(exchange, "ok");
+		});
+		//returns the cookies of the request
+		server.createContext("/whoami", exchange -> {
+			String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+			respond(exchange, cookie == null ? "anonymous" : cookie);
+		});
+		server.start();
+		baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+		client = new HttpClient();
+		client.setCookieStore(new HttpCookieStore.Empty());
+		client.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.stop();
+		server.stop(0);
+	}
+
+	@Test
+	public void testUsersKeepTheirOwnCookiesOnSharedClient() throws Exception {
+		HTTPInputGenerator alice = new HTTPInputGenerator(0, null, 0, 1000, client);
+		HTTPInputGenerator bob = new HTTPInputGenerator(1, null, 0, 1000, client);
+		HTTPInputGenerator anonymous = new HTTPInputGenerator(2, null, 0, 1000, client);
+		get(alice, "/login?alice");
+		get(bob, "/login?bob");
+		assertEquals("session=alice", get(alice, "/whoami"));
+		assertEquals("session=bob", get(bob, "/whoami"));
+		assertEquals("anonymous", get(anonymous, "/whoami"));
+	}
+
+	@Test
+	public void testUsersOwningConnectionsKeepTheirOwnCookies() throws Exception {
+		HTTPInputGenerator alice = new HTTPInputGenerator(0, null, 0, 1000, client,
+				HTTPClientSettings.ConnectionMode.REUSE);
+		HTTPInputGenerator bob = new HTTPInputGenerator(1, null, 0, 1000, client,
+				HTTPClientSettings.ConnectionMode.REUSE);
+		get(alice, "/login?alice");
+		get(bob, "/login?bob");
+		assertEquals("session=bob", get(bob, "/whoami"));
+		assertEquals("session=alice", get(alice, "/whoami"));
+	}
+
+	private String get(HTTPInputGenerator user, String path)
+			throws InterruptedException, TimeoutException, ExecutionException {
+		return user.send(user.initializeHTTPRequest(baseUrl + path, "GET")).getContentAsString();
+	}
+
+	private static void respond(HttpExchange exchange, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+}
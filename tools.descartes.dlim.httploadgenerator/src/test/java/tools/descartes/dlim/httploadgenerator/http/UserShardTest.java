@@ -0,0 +1,173 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.junit.Test;
+
+import tools.descartes.dlim.httploadgenerator.http.HTTPInputGeneratorPool.PoolMode;
+
+/**
+ * Tests that the user shards hand out each user to at most one thread at a time and lose no users.
+ * @author Joakim von Kistowski
+ *
+ */
+public class UserShardTest {
+
+	/** Shared, never started client, so that the users do not start clients of their own. */
+	private static final HttpClient CLIENT = new HttpClient();
+
+	private static final int THREADS = 8;
+	private static final int ITERATIONS = 20000;
+
+	@Test
+	public void testQueueShardStress() throws InterruptedException {
+		stress(PoolMode.QUEUE, 50, 0, 1);
+	}
+
+	@Test
+	public void testRandomShardStress() throws InterruptedException {
+		stress(PoolMode.RANDOM, 150, 0, 1);
+	}
+
+	@Test
+	public void testQueueShardStressWithBlockingThreads() throws InterruptedException {
+		stress(PoolMode.QUEUE, 3, 0, 1);
+	}
+
+	@Test
+	public void testRandomShardStressWithBlockingThreads() throws InterruptedException {
+		stress(PoolMode.RANDOM, 3, 0, 1);
+	}
+
+	@Test
+	public void testRandomShardStressInSecondShard() throws InterruptedException {
+		stress(PoolMode.RANDOM, 70, 1, 2);
+	}
+
+	@Test
+	public void testEmptyShard() {
+		UserShard shard = createShard(PoolMode.RANDOM, 2, 0, 1);
+		assertNotNull(shard.poll());
+		assertNotNull(shard.poll());
+		assertNull(shard.poll());
+		assertEquals(0, shard.available());
+	}
+
+	@Test
+	public void testRandomShardPicksUniformly() {
+		int users = 130;
+		UserShard shard = createShard(PoolMode.RANDOM, users, 0, 1);
+		//claim a long run of users, the users following the run must not be preferred
+		List<HTTPInputGenerator> claimed = new ArrayList<>();
+		for (int i = 0; i < users; i++) {
+			claimed.add(shard.poll());
+		}
+		claimed.removeIf(generator -> {
+			if (generator.getId() >= 100) {
+				shard.release(generator);
+				return true;
+			}
+			return false;
+		});
+		assertEquals(30, shard.available());
+		int[] picks = new int[users];
+		int draws = 30000;
+		for (int i = 0; i < draws; i++) {
+			HTTPInputGenerator generator = shard.poll();
+			picks[generator.getId()]++;
+			shard.release(generator);
+		}
+		for (int id = 100; id < users; id++) {
+			//expected 1000 picks each
+			assertTrue("User " + id + " was picked " + picks[id] + " times.", picks[id] > 800 && picks[id] < 1200);
+		}
+		claimed.forEach(shard::release);
+		assertEquals(users, shard.available());
+	}
+
+	private static UserShard createShard(PoolMode mode, int users, int shardIndex, int shardCount) {
+		UserShard shard = UserShard.create(mode, users, shardCount);
+		for (int i = 0; i < users; i++) {
+			shard.offer(new HTTPInputGenerator(shardIndex + i * shardCount, null, 0, 0, CLIENT));
+		}
+		return shard;
+	}
+
+	private static void stress(PoolMode mode, int users, int shardIndex, int shardCount)
+			throws InterruptedException {
+		UserShard shard = createShard(mode, users, shardIndex, shardCount);
+		int maxId = shardIndex + users * shardCount;
+		AtomicIntegerArray inUse = new AtomicIntegerArray(maxId);
+		AtomicInteger duplicates = new AtomicInteger();
+		AtomicInteger foreign = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(THREADS);
+		for (int t = 0; t < THREADS; t++) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+					for (int i = 0; i < ITERATIONS; i++) {
+						HTTPInputGenerator generator = shard.take();
+						int id = generator.getId();
+						if (id % shardCount != shardIndex) {
+							foreign.incrementAndGet();
+						}
+						if (!inUse.compareAndSet(id, 0, 1)) {
+							duplicates.incrementAndGet();
+						}
+						if (i % 8 == 0) {
+							Thread.yield();
+						}
+						inUse.set(id, 0);
+						shard.release(generator);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+		start.countDown();
+		assertTrue("Threads did not finish, users were lost.", done.await(60, TimeUnit.SECONDS));
+		assertEquals("Users were handed out twice.", 0, duplicates.get());
+		assertEquals("Users of other shards were handed out.", 0, foreign.get());
+		assertEquals(users, shard.available());
+		boolean[] seen = new boolean[maxId];
+		for (int i = 0; i < users; i++) {
+			HTTPInputGenerator generator = shard.poll();
+			assertNotNull("User was lost.", generator);
+			assertTrue("User was handed out twice.", !seen[generator.getId()]);
+			seen[generator.getId()] = true;
+		}
+		assertNull(shard.poll());
+	}
+}
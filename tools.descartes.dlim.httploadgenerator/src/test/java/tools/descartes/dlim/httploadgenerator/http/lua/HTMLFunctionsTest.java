@@ -0,0 +1,104 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http.lua;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.luaj.vm2.LuaValue;
+
+/**
+ * Tests the regular expression based functions of {@link HTMLFunctions}.
+ * @author Joakim von Kistowski
+ *
+ */
+public class HTMLFunctionsTest {
+
+	private static final String PAGE = "<html>\n"
+			+ "<a href=\"/product?id=1\">One</a> <a href=\"/product?id=11\">Eleven</a>\r\n"
+			+ "<span>no link</span>\n"
+			+ "<a class=\"x\" href=\"/product?id=2\">Two</a>\n"
+			+ "</html>";
+
+	@Test
+	public void testGetMatches() {
+		HTMLFunctions functions = new HTMLFunctions(PAGE);
+		assertEquals(Arrays.asList("<a href=\"/product?id=1\">One</a> <a href=\"/product?id=11\">Eleven</a>",
+				"<a class=\"x\" href=\"/product?id=2\">Two</a>"), functions.getMatches(".*href=.*"));
+		assertEquals(Arrays.asList("<span>no link</span>"), functions.getMatches("<span>.*"));
+		assertEquals(Arrays.asList(), functions.getMatches("href=.*"));
+	}
+
+	@Test
+	public void testExtractAllMatches() {
+		HTMLFunctions functions = new HTMLFunctions(PAGE);
+		//the first occurrence of each line is extracted
+		assertEquals(Arrays.asList("1", "2"), functions.extractAllMatches("id=", "[0-9]+", "\""));
+		//groups of the prefix do not shift the extracted section
+		assertEquals(Arrays.asList("1", "2"), functions.extractAllMatches("(href)=\"/(product)\\?id=", "\\d+", "\""));
+		assertEquals(Arrays.asList("One", "Two"), functions.extractAllMatches(">", "[A-Z][a-z]+", "</a>"));
+		assertEquals(Arrays.asList(), functions.extractAllMatches("id=", "[a-z]+", "\""));
+	}
+
+	@Test
+	public void testLuaExtractAllMatches() {
+		HTMLLuaFunctions.ExtractAllMatches extract = new HTMLLuaFunctions.ExtractAllMatches(new HTMLFunctions(PAGE));
+		//the section ends at the first postfix after the prefix
+		assertEquals(Arrays.asList("/product?id=1", "/product?id=2"),
+				toList(extract.call(LuaValue.valueOf("href=\""), LuaValue.valueOf("\""))));
+		assertEquals(Arrays.asList("1", "2"),
+				toList(extract.call(LuaValue.valueOf("id="), LuaValue.valueOf("[0-9]+"), LuaValue.valueOf("\""))));
+	}
+
+	@Test
+	public void testExtractSubString() {
+		assertEquals("42", HTMLFunctions.extractSubString("<td>value: 42</td>", "value: ", "</td>"));
+		assertEquals("<td>42", HTMLFunctions.extractSubString("<td>42</td>", "missing", "</td>"));
+	}
+
+	@Test
+	public void testResetWithRawContent() {
+		HTMLFunctions functions = new HTMLFunctions("");
+		functions.resetHTMLFunctions("<p>gr\u00fc\u00dfe</p>\n<p>caf\u00e9</p>".getBytes(StandardCharsets.ISO_8859_1),
+				"ISO-8859-1");
+		assertEquals(Arrays.asList("caf\u00e9"), functions.extractAllMatches("<p>", "caf.", "</p>"));
+		functions.resetHTMLFunctions("<p>caf\u00e9</p>".getBytes(StandardCharsets.UTF_8), "unknown-charset");
+		assertEquals(Arrays.asList("caf\u00e9"), functions.extractAllMatches("<p>", "caf.", "</p>"));
+		functions.resetHTMLFunctions("no lines match");
+		assertEquals(Arrays.asList(), functions.extractAllMatches("<p>", "caf.", "</p>"));
+	}
+
+	@Test
+	public void testPatternsAreCached() {
+		assertSame(PatternCache.get("id=([0-9]+)"), PatternCache.get("id=([0-9]+)"));
+		assertEquals(1, PatternCache.groupCount("id=([0-9]+)"));
+		assertEquals(2, PatternCache.groupCount("(a)(?:b)(c)"));
+	}
+
+	private static List<String> toList(LuaValue table) {
+		List<String> values = new ArrayList<>();
+		for (int i = 1; i <= table.length(); i++) {
+			values.add(table.get(i).tojstring());
+		}
+		return values;
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http.lua;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+
+/**
+ * Tests the CSS selection of {@link HTMLFunctions#select(String, String, int)}.
+ * @author Joakim von Kistowski
+ *
+ */
+public class HTMLSelectScannerTest {
+
+	private static final String PAGE = "<!DOCTYPE html>\n<html><head><title>Shop &amp; more</title>"
+			+ "<script>var s = '<a href=\"/script\">';</script></head>\n"
+			+ "<body><div id=\"main\" class=\"content wide\">\n"
+			+ "<form action=\"/search\"><input type=\"hidden\" name=\"token\" value=\"abc123\">"
+			+ "<INPUT TYPE=\"Checkbox\" name=remember value=yes checked></form>\n"
+			+ "<ul class=\"items\"><li><a href=\"/item?id=1\" data-id=\"1\">First</a>"
+			+ "<li><a href=\"/item?id=2\" data-id=\"2\">Second &lt;2&gt;</a>"
+			+ "<li class=\"last\"><span><a href=\"http://other/item?id=3\">Third</a></span></ul>\n"
+			+ "<p>Para<br>graph<p>Next &#x41;&#66;&nbsp;end</div>\n"
+			+ "<a href=\"/outside\">Outside</a></body></html>";
+
+	@Test
+	public void testTypeIdAndClassSelectors() {
+		assertEquals(Arrays.asList("/item?id=1", "/item?id=2", "http://other/item?id=3", "/outside"),
+				select("a", "href"));
+		assertEquals(Arrays.asList("content wide"), select("#main", "class"));
+		assertEquals(Arrays.asList("items"), select("ul.items", "class"));
+		assertEquals(Arrays.asList("main"), select("div.wide.content", "id"));
+		assertEquals(Arrays.asList(), select("div.narrow", "id"));
+	}
+
+	@Test
+	public void testAttributeSelectors() {
+		assertEquals(Arrays.asList("abc123"), select("input[name=token]", "value"));
+		assertEquals(Arrays.asList("abc123"), select("input[name='token']", "value"));
+		assertEquals(Arrays.asList("yes"), select("input[checked]", "value"));
+		assertEquals(Arrays.asList("1", "2"), select("a[href^=\"/item\"]", "data-id"));
+		assertEquals(Arrays.asList("http://other/item?id=3"), select("a[href$='id=3']", "href"));
+		assertEquals(Arrays.asList("/item?id=2"), select("a[href*=\"id=2\"]", "href"));
+		assertEquals(Arrays.asList("main"), select("[class~=wide]", "id"));
+		assertEquals(Arrays.asList(), select("[class~=wid]", "id"));
+	}
+
+	@Test
+	public void testCaseSensitivity() {
+		//tag and attribute names are case-insensitive, values are case-sensitive unless flagged
+		assertEquals(Arrays.asList("yes"), select("input[type=Checkbox]", "VALUE"));
+		assertEquals(Arrays.asList(), select("input[type=checkbox]", "value"));
+		assertEquals(Arrays.asList("yes"), select("INPUT[type=checkbox i]", "value"));
+	}
+
+	@Test
+	public void testCombinators() {
+		assertEquals(Arrays.asList("/item?id=1", "/item?id=2", "http://other/item?id=3"),
+				select("ul a", "href"));
+		assertEquals(Arrays.asList("/item?id=1", "/item?id=2"), select("li > a", "href"));
+		assertEquals(Arrays.asList("http://other/item?id=3"), select("li.last span>a", "href"));
+		assertEquals(Arrays.asList(), select("ul > a", "href"));
+		assertEquals(Arrays.asList("content wide", "items"), select("ul.items, #main", "class"));
+	}
+
+	@Test
+	public void testTextContent() {
+		assertEquals(Arrays.asList("First", "Second <2>", "Third"), select("li", null));
+		assertEquals(Arrays.asList("Shop & more"), select("title", null));
+		//the raw text of scripts is not parsed as markup
+		assertEquals(Arrays.asList(), select("a[href='/script']", "href"));
+		//p elements are implicitly closed
+		assertEquals(Arrays.asList("Paragraph", "Next AB\u00a0end"), select("p", null));
+	}
+
+	@Test
+	public void testLimit() {
+		assertEquals(Arrays.asList("/item?id=1", "/item?id=2"), select("a", "href", 2));
+	}
+
+	@Test
+	public void testDecodeEntities() {
+		assertEquals("a & b", HTMLSelectScanner.decodeEntities("a &amp; b"));
+		assertEquals("<\"'>", HTMLSelectScanner.decodeEntities("&lt;&quot;&apos;&gt;"));
+		assertEquals("AB\u00a0\ud83d\ude00", HTMLSelectScanner.decodeEntities("&#65;&#x42;&nbsp;&#x1F600;"));
+		//unknown, invalid and unterminated references are kept
+		assertEquals("&unknown; &#xZZ; &#1114112; & &amp", HTMLSelectScanner.decodeEntities(
+				"&unknown; &#xZZ; &#1114112; & &amp"));
+	}
+
+	@Test
+	public void testInvalidSelectors() {
+		for (String selector : new String[] {"", "a,", "> a", "a > > b", "#", "a[", "a[href", "a[href|=x]",
+			"a[href='x]", "a:hover", "li:first-child", ":root", "a::before", "a + b"}) {
+			try {
+				CSSSelector.compile(selector);
+				fail("Selector should be rejected: " + selector);
+			} catch (IllegalArgumentException e) {
+				//expected
+			}
+		}
+	}
+
+	@Test(expected = LuaError.class)
+	public void testInvalidSelectorRaisesLuaError() {
+		new HTMLLuaFunctions.Select(new HTMLFunctions(PAGE)).invoke(LuaValue.valueOf("li:first-child"));
+	}
+
+	private static List<String> select(String selector, String attribute) {
+		return select(selector, attribute, Integer.MAX_VALUE);
+	}
+
+	private static List<String> select(String selector, String attribute, int limit) {
+		LuaTable table = new HTMLFunctions(PAGE).select(selector, attribute, limit);
+		List<String> values = new ArrayList<>();
+		for (int i = 1; i <= table.length(); i++) {
+			values.add(table.get(i).tojstring());
+		}
+		return values;
+	}
+}
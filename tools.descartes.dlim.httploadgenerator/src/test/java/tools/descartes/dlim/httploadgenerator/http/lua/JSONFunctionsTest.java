@@ -0,0 +1,131 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http.lua;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+
+/**
+ * Tests the JSONPath selection of {@link JSONFunctions}.
+ * @author Joakim von Kistowski
+ *
+ */
+public class JSONFunctionsTest {
+
+	private static final String STORE = "{\"store\": {"
+			+ "\"book\": ["
+			+ "{\"title\": \"Sayings\", \"price\": 8.95, \"tags\": [\"a\", \"b\"]},"
+			+ "{\"title\": \"Sword\", \"price\": 12, \"isbn\": null},"
+			+ "{\"title\": \"Moby \\\"Dick\\\"\", \"price\": 8.99, \"available\": true}"
+			+ "],"
+			+ "\"bicycle\": {\"color\": \"red\", \"price\": 19.95}"
+			+ "}, \"title\": \"Store\"}";
+
+	@Test
+	public void testMemberAccess() {
+		assertEquals(Arrays.asList("red"), select(STORE, "$.store.bicycle.color"));
+		assertEquals(Arrays.asList("red"), select(STORE, "store.bicycle.color"));
+		assertEquals(Arrays.asList("red"), select(STORE, "$['store']['bicycle']['color']"));
+		assertEquals(Arrays.asList(), select(STORE, "$.store.missing"));
+	}
+
+	@Test
+	public void testArrayIndices() {
+		assertEquals(Arrays.asList("Sayings"), select(STORE, "$.store.book[0].title"));
+		assertEquals(Arrays.asList("Moby \"Dick\""), select(STORE, "$.store.book[2].title"));
+		assertEquals(Arrays.asList("b"), select(STORE, "$.store.book[0].tags[1]"));
+		assertEquals(Arrays.asList(), select(STORE, "$.store.book[3].title"));
+	}
+
+	@Test
+	public void testWildcards() {
+		assertEquals(Arrays.asList("Sayings", "Sword", "Moby \"Dick\""), select(STORE, "$.store.book[*].title"));
+		assertEquals(Arrays.asList("8.95", "12", "8.99"), select(STORE, "$.store.book.*.price"));
+		assertEquals(Arrays.asList("red", "19.95"), select(STORE, "$.store.bicycle.*"));
+	}
+
+	@Test
+	public void testRecursiveDescent() {
+		assertEquals(Arrays.asList("Sayings", "Sword", "Moby \"Dick\"", "Store"), select(STORE, "$..title"));
+		assertEquals(Arrays.asList("8.95", "12", "8.99", "19.95"), select(STORE, "$..price"));
+		assertEquals(Arrays.asList("Sword"), select(STORE, "$..book[1].title"));
+		assertEquals(Arrays.asList("a"), select(STORE, "$..tags[0]"));
+		//each value below the store, except for the null isbn
+		assertEquals(17, select(STORE, "$.store..*").size());
+	}
+
+	@Test
+	public void testValueConversion() {
+		List<LuaValue> values = new JSONFunctions(new HTMLFunctions(STORE)).select("$.store.book[1]", 1);
+		assertEquals(1, values.size());
+		LuaTable book = (LuaTable) values.get(0);
+		assertEquals("Sword", book.get("title").tojstring());
+		assertEquals(12, book.get("price").toint());
+		assertTrue(book.get("isbn").isnil());
+		assertSame(LuaValue.TRUE, new JSONFunctions(new HTMLFunctions(STORE))
+				.select("$.store.book[2].available", 1).get(0));
+		LuaTable tags = (LuaTable) new JSONFunctions(new HTMLFunctions(STORE))
+				.select("$.store.book[0].tags", 1).get(0);
+		assertEquals("a", tags.get(1).tojstring());
+		assertEquals("b", tags.get(2).tojstring());
+	}
+
+	@Test
+	public void testNullValuesAreOmitted() {
+		assertEquals(Arrays.asList(), select(STORE, "$.store.book[1].isbn"));
+	}
+
+	@Test
+	public void testLimit() {
+		List<LuaValue> values = new JSONFunctions(new HTMLFunctions(STORE)).select("$..price", 2);
+		assertEquals(2, values.size());
+		assertEquals("12", values.get(1).tojstring());
+	}
+
+	@Test
+	public void testEscapedStrings() {
+		assertEquals(Arrays.asList("line\nbreak \u00e9 /"),
+				select("{\"text\": \"line\\nbreak \\u00e9 \\/\"}", "$.text"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPath() {
+		select(STORE, "$.store[");
+	}
+
+	@Test(expected = LuaError.class)
+	public void testInvalidJSON() {
+		select("{\"store\": [1, 2", "$.store[*]");
+	}
+
+	private static List<String> select(String json, String path) {
+		List<String> values = new ArrayList<>();
+		for (LuaValue value : new JSONFunctions(new HTMLFunctions(json)).select(path, Integer.MAX_VALUE)) {
+			values.add(value.tojstring());
+		}
+		return values;
+	}
+}
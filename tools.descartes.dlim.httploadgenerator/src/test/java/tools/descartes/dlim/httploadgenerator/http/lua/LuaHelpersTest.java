@@ -0,0 +1,90 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.http.lua;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.Prototype;
+
+import tools.descartes.dlim.httploadgenerator.http.HTTPInputGenerator;
+
+/**
+ * Tests compiling LUA scripts once and running them in the separate states of the users.
+ * @author Joakim von Kistowski
+ *
+ */
+public class LuaHelpersTest {
+
+	/** Counts the calls in a global variable, so that shared state between users would be visible. */
+	private static final String SCRIPT = "calls = 0\n"
+			+ "cycles = 0\n"
+			+ "function onCycle()\n"
+			+ "  cycles = cycles + 1\n"
+			+ "end\n"
+			+ "function onCall(callnum)\n"
+			+ "  calls = calls + 1\n"
+			+ "  if callnum > 2 then\n"
+			+ "    return nil\n"
+			+ "  end\n"
+			+ "  return \"http://localhost/\" .. cycles .. \"/\" .. callnum .. \"/\" .. calls\n"
+			+ "end\n";
+
+	/** Shared, never started client, so that the users do not start clients of their own. */
+	private static final HttpClient CLIENT = new HttpClient();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testUsersRunSharedPrototypeWithOwnGlobals() throws IOException {
+		Prototype script = LuaHelpers.compileScript(writeScript(SCRIPT));
+		HTTPInputGenerator first = new HTTPInputGenerator(0, script, 0, 0, CLIENT);
+		HTTPInputGenerator second = new HTTPInputGenerator(1, script, 0, 0, CLIENT);
+		assertEquals("http://localhost/1/1/1", first.getNextRequest().getUrl());
+		assertEquals("http://localhost/1/2/2", first.getNextRequest().getUrl());
+		//the second user does not see the calls of the first user
+		assertEquals("http://localhost/1/1/1", second.getNextRequest().getUrl());
+		//the end of the cycle consumes a call
+		assertEquals("http://localhost/2/1/4", first.getNextRequest().getUrl());
+		assertEquals("http://localhost/1/2/2", second.getNextRequest().getUrl());
+	}
+
+	@Test(expected = LuaError.class)
+	public void testMissingScript() {
+		LuaHelpers.compileScript(new File(folder.getRoot(), "missing.lua"));
+	}
+
+	@Test(expected = LuaError.class)
+	public void testInvalidScript() throws IOException {
+		LuaHelpers.compileScript(writeScript("function onCall(callnum)\n  return \"x\"\n"));
+	}
+
+	private File writeScript(String script) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), script.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+}
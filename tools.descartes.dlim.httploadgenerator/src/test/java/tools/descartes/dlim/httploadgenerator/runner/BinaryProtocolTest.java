@@ -0,0 +1,187 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.runner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests the handshake and the message frames of the {@link BinaryProtocol}.
+ * @author Joakim von Kistowski
+ *
+ */
+public class BinaryProtocolTest {
+
+	@Test
+	public void testHandshake() throws IOException {
+		ByteBuffer handshake = BinaryProtocol.createHandshake();
+		byte[] request = new byte[handshake.remaining()];
+		handshake.get(request);
+		//magic bytes, version and a line break
+		assertEquals(6, request.length);
+		assertEquals('\n', request[5]);
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		assertEquals(BinaryProtocol.VERSION, BinaryProtocol.accept(
+				new BufferedInputStream(new ByteArrayInputStream(request)), response));
+		assertEquals(BinaryProtocol.VERSION,
+				BinaryProtocol.readHandshakeResponse(ByteBuffer.wrap(response.toByteArray())));
+	}
+
+	@Test
+	public void testHandshakeNegotiatesLowerVersion() throws IOException {
+		ByteBuffer handshake = BinaryProtocol.createHandshake();
+		//a director that supports a newer version
+		handshake.put(4, (byte) (BinaryProtocol.VERSION + 1));
+		byte[] request = new byte[handshake.remaining()];
+		handshake.get(request);
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		assertEquals(BinaryProtocol.VERSION, BinaryProtocol.accept(
+				new BufferedInputStream(new ByteArrayInputStream(request)), response));
+		assertEquals(BinaryProtocol.VERSION, response.toByteArray()[4]);
+	}
+
+	@Test
+	public void testIncompleteHandshakeResponse() throws IOException {
+		assertEquals(-1, BinaryProtocol.readHandshakeResponse(ByteBuffer.wrap(new byte[] {(byte) 0xD1, 'L'})));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidHandshakeResponse() throws IOException {
+		BinaryProtocol.readHandshakeResponse(ByteBuffer.wrap("ok\r\nok\r\n".getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	@Test
+	public void testTextProtocolFallback() throws IOException {
+		byte[] commands = "threadnum:4\ntimout:100\n".getBytes(StandardCharsets.US_ASCII);
+		BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(commands));
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		assertEquals(0, BinaryProtocol.accept(in, response));
+		assertEquals(0, response.size());
+		//the text protocol reads all commands
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+		assertEquals("threadnum:4", reader.readLine());
+		assertEquals("timout:100", reader.readLine());
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptHandshake() throws IOException {
+		byte[] request = {(byte) 0xD1, 'L', 'G', 'P', 1, 'x'};
+		BinaryProtocol.accept(new BufferedInputStream(new ByteArrayInputStream(request)), new ByteArrayOutputStream());
+	}
+
+	@Test
+	public void testFrameLengthPrefix() throws IOException {
+		ByteBuffer frame = BinaryProtocol.encodeMessage(BinaryProtocol.MessageType.THREAD_COUNT, p -> p.writeInt(42));
+		//length covering type and payload, type, payload
+		assertEquals(9, frame.remaining());
+		assertEquals(5, frame.getInt(0));
+		assertEquals(9, BinaryProtocol.frameLength(frame));
+		assertEquals(BinaryProtocol.MessageType.THREAD_COUNT.getCode(), frame.get(4));
+		assertEquals(42, frame.getInt(5));
+		ByteBuffer empty = BinaryProtocol.encodeMessage(BinaryProtocol.MessageType.OK, null);
+		assertEquals(5, empty.remaining());
+		assertEquals(1, empty.getInt(0));
+		assertEquals(-1, BinaryProtocol.frameLength(ByteBuffer.allocate(3)));
+	}
+
+	@Test
+	public void testStreamRoundTripOfAllMessageTypes() throws IOException {
+		PipedInputStream pipe = new PipedInputStream(64 * 1024);
+		DataOutputStream out = new DataOutputStream(new PipedOutputStream(pipe));
+		DataInputStream in = new DataInputStream(pipe);
+		Set<Byte> codes = new HashSet<>();
+		for (BinaryProtocol.MessageType type : BinaryProtocol.MessageType.values()) {
+			assertEquals(type, BinaryProtocol.MessageType.fromCode(type.getCode()));
+			codes.add(type.getCode());
+			BinaryProtocol.writeMessage(out, type, p -> {
+				p.writeUTF(type.name());
+				p.writeLong(Long.MIN_VALUE + type.getCode());
+				BinaryProtocol.writeBytes(p, new byte[type.getCode()]);
+			});
+		}
+		//codes are unique
+		assertEquals(BinaryProtocol.MessageType.values().length, codes.size());
+		for (BinaryProtocol.MessageType type : BinaryProtocol.MessageType.values()) {
+			BinaryProtocol.Message message = BinaryProtocol.readMessage(in);
+			assertSame(type, message.getType());
+			assertEquals(type.name(), message.getPayload().readUTF());
+			assertEquals(Long.MIN_VALUE + type.getCode(), message.getPayload().readLong());
+			assertArrayEquals(new byte[type.getCode()], BinaryProtocol.readBytes(message.getPayload()));
+			assertEquals(0, message.getPayload().available());
+		}
+		assertEquals(0, in.available());
+	}
+
+	@Test
+	public void testBufferRoundTripOfAllMessageTypes() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		for (BinaryProtocol.MessageType type : BinaryProtocol.MessageType.values()) {
+			buffer.put(BinaryProtocol.encodeMessage(type, p -> p.writeUTF(type.name())));
+		}
+		buffer.flip();
+		for (BinaryProtocol.MessageType type : BinaryProtocol.MessageType.values()) {
+			BinaryProtocol.Message message = BinaryProtocol.decodeMessage(buffer);
+			assertSame(type, message.getType());
+			assertEquals(type.name(), message.getPayload().readUTF());
+		}
+		assertNull(BinaryProtocol.decodeMessage(buffer));
+	}
+
+	@Test
+	public void testIncompleteFrame() throws IOException {
+		ByteBuffer frame = BinaryProtocol.encodeMessage(BinaryProtocol.MessageType.TIMEOUT, p -> p.writeInt(100));
+		ByteBuffer partial = ByteBuffer.wrap(frame.array(), 0, frame.remaining() - 1);
+		assertNull(BinaryProtocol.decodeMessage(partial));
+		//the position is unchanged, so that the frame can be decoded once complete
+		assertEquals(0, partial.position());
+		BinaryProtocol.Message message = BinaryProtocol.decodeMessage(frame);
+		assertEquals(100, message.getPayload().readInt());
+	}
+
+	@Test
+	public void testUnknownMessageTypeIsSkipped() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		buffer.putInt(3).put((byte) 127).put((byte) 1).put((byte) 2);
+		buffer.put(BinaryProtocol.encodeMessage(BinaryProtocol.MessageType.DONE, null));
+		buffer.flip();
+		assertNull(BinaryProtocol.decodeMessage(buffer).getType());
+		assertSame(BinaryProtocol.MessageType.DONE, BinaryProtocol.decodeMessage(buffer).getType());
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidFrameLength() throws IOException {
+		BinaryProtocol.readMessage(new DataInputStream(new ByteArrayInputStream(new byte[] {0, 0, 0, 0, 1})));
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.runner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests estimating the clock offsets of load generators using {@link ClockOffset}.
+ * The probes are simulated with fixed timestamps of a load generator whose clock is {@link #OFFSET} us ahead.
+ * @author Joakim von Kistowski
+ *
+ */
+public class ClockOffsetTest {
+
+	/** The actual offset of the simulated load generator clock in us. */
+	private static final long OFFSET = 5000;
+
+	/** Director time at which the probes are sent in us. */
+	private static final long SENT = 1000000;
+
+	@Test
+	public void testSymmetricExchange() {
+		ClockOffset offset = probe(100, 20, 100);
+		assertEquals(OFFSET, offset.getOffsetMicros());
+		//half of the round trip time without the processing time of the load generator
+		assertEquals(100, offset.getErrorBoundMicros());
+	}
+
+	@Test
+	public void testAsymmetricExchangeIsWithinHalfRoundTrip() {
+		//the probe takes 300 us to the load generator, the answer 100 us back
+		ClockOffset offset = probe(300, 50, 100);
+		//the estimate is off by half of the difference of the delays
+		assertEquals(OFFSET + 100, offset.getOffsetMicros());
+		assertEquals(200, offset.getErrorBoundMicros());
+		assertTrue(Math.abs(offset.getOffsetMicros() - OFFSET) <= offset.getErrorBoundMicros());
+		//the worst case: all of the round trip in one direction
+		ClockOffset oneWay = probe(400, 0, 0);
+		assertEquals(OFFSET + 200, oneWay.getOffsetMicros());
+		assertEquals(200, oneWay.getErrorBoundMicros());
+	}
+
+	@Test
+	public void testMinimumRoundTripProbeIsUsed() {
+		ClockOffset[] probes = {probe(300, 50, 100), probe(40, 10, 60), probe(2000, 5, 100), probe(45, 0, 45)};
+		ClockOffset best = null;
+		for (ClockOffset probe : probes) {
+			best = probe.best(best);
+		}
+		assertSame(probes[3], best);
+		assertEquals(OFFSET, best.getOffsetMicros());
+		assertEquals(45, best.getErrorBoundMicros());
+		//on equal round trip times, the estimate itself is kept
+		ClockOffset equal = probe(45, 0, 45);
+		assertSame(best, best.best(equal));
+		assertSame(equal, equal.best(null));
+	}
+
+	@Test
+	public void testTimeConversion() {
+		ClockOffset offset = probe(100, 20, 100);
+		assertEquals(SENT + OFFSET, offset.toGeneratorTime(SENT));
+		assertEquals(SENT, offset.toDirectorTime(offset.toGeneratorTime(SENT)));
+		//a load generator that is behind the director
+		ClockOffset behind = ClockOffset.fromProbe(SENT, SENT - 7900, SENT - 7880, SENT + 220);
+		assertEquals(-8000, behind.getOffsetMicros());
+		assertEquals(SENT - 8000, behind.toGeneratorTime(SENT));
+	}
+
+	@Test
+	public void testNegativeRoundTripIsClamped() {
+		//the load generator reports a longer processing time than the round trip, e.g. due to clock steps
+		ClockOffset offset = ClockOffset.fromProbe(SENT, SENT + OFFSET + 10, SENT + OFFSET + 500, SENT + 100);
+		assertEquals(0, offset.getErrorBoundMicros());
+	}
+
+	/**
+	 * Simulates a probe of the load generator.
+	 * @param forwardMicros The time from the director to the load generator.
+	 * @param processingMicros The time between receiving the probe and answering it.
+	 * @param returnMicros The time from the load generator to the director.
+	 */
+	private static ClockOffset probe(long forwardMicros, long processingMicros, long returnMicros) {
+		long received = SENT + forwardMicros + OFFSET;
+		long answered = received + processingMicros;
+		long answerReceived = SENT + forwardMicros + processingMicros + returnMicros;
+		return ClockOffset.fromProbe(SENT, received, answered, answerReceived);
+	}
+}
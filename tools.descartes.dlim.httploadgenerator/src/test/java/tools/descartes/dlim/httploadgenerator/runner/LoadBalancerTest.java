@@ -0,0 +1,232 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.runner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalRateTuple;
+
+/**
+ * Tests shifting load between load generators using the {@link LoadBalancer}.
+ * The load generators are simulated by communicators without a connection that receive synthetic results.
+ * @author Joakim von Kistowski
+ *
+ */
+public class LoadBalancerTest {
+
+	/** Number of intervals of the load profile. */
+	private static final int INTERVALS = 10;
+
+	/** Load intensity of each interval. */
+	private static final int LOAD = 30;
+
+	@Test
+	public void testLaggingGeneratorLosesQuarterOfItsWeight() {
+		List<SimulatedGenerator> generators = createGenerators(3, true);
+		LoadBalancer balancer = startBalancer(generators);
+		for (int t = 1; t <= 2; t++) {
+			report(generators, t, 1, 0, 0);
+			balancer.onRound(round(t));
+		}
+		//two lagging intervals are tolerated
+		assertNoAdjustments(generators);
+		report(generators, 3, 1, 0, 0);
+		balancer.onRound(round(3));
+		assertEquals(0, generators.get(0).getLaggingIntervals());
+		//the weights are 0.75, 1 and 1 for the remaining intervals
+		assertRebalancedFrom(balancer, generators, 5, new double[] {0.75, 1, 1});
+		assertEquals(INTERVALS - 4, generators.get(0).adjustments.get(0).size());
+	}
+
+	@Test
+	public void testGeneratorWithoutResultsFails() {
+		List<SimulatedGenerator> generators = createGenerators(3, true);
+		LoadBalancer balancer = startBalancer(generators);
+		report(generators, 1, 0, 0, 0);
+		balancer.onRound(round(1));
+		//the third load generator stops reporting
+		report(generators.subList(0, 2), 2, 0, 0);
+		balancer.onRound(round(2));
+		assertFalse(generators.get(2).isClosed());
+		assertNoAdjustments(generators);
+		report(generators.subList(0, 2), 3, 0, 0);
+		balancer.onRound(round(3));
+		assertTrue(generators.get(2).isClosed());
+		assertRebalancedFrom(balancer, generators, 5, new double[] {1, 1, 0});
+		assertTrue(generators.get(2).adjustments.isEmpty());
+	}
+
+	@Test
+	public void testGeneratorsWithoutRateAdjustmentsKeepTheirLoad() {
+		List<SimulatedGenerator> generators = createGenerators(3, true);
+		generators.get(2).adjustable = false;
+		LoadBalancer balancer = startBalancer(generators);
+		report(generators.subList(1, 3), 1, 0, 0);
+		balancer.onRound(round(1));
+		report(generators.subList(1, 3), 2, 0, 0);
+		balancer.onRound(round(2));
+		assertTrue(generators.get(0).isClosed());
+		//the second load generator takes over the entire load of the first
+		for (int j = 0; j < INTERVALS; j++) {
+			double expected = j < 3 ? LOAD / 3 : 2 * LOAD / 3;
+			assertEquals(expected, balancer.getRates(1).get(j).getArrivalRate(), 0.0);
+			assertEquals(LOAD / 3, balancer.getRates(2).get(j).getArrivalRate(), 0.0);
+		}
+		assertTrue(generators.get(2).adjustments.isEmpty());
+	}
+
+	@Test
+	public void testNoRebalanceIfAllGeneratorsLag() {
+		List<SimulatedGenerator> generators = createGenerators(3, true);
+		LoadBalancer balancer = startBalancer(generators);
+		for (int t = 1; t <= 5; t++) {
+			report(generators, t, 1, 1, 1);
+			balancer.onRound(round(t));
+		}
+		assertNoAdjustments(generators);
+		assertEquals(5, generators.get(0).getLaggingIntervals());
+	}
+
+	@Test
+	public void testNoRebalanceIfNoGeneratorRemains() {
+		List<SimulatedGenerator> generators = createGenerators(2, true);
+		LoadBalancer balancer = startBalancer(generators);
+		report(generators, 1, 0, 0);
+		balancer.onRound(round(1));
+		balancer.onRound(round(2));
+		balancer.onRound(round(3));
+		assertTrue(generators.get(0).isClosed());
+		assertTrue(generators.get(1).isClosed());
+		assertNoAdjustments(generators);
+		for (int j = 0; j < INTERVALS; j++) {
+			assertEquals(LOAD / 2, balancer.getRates(0).get(j).getArrivalRate(), 0.0);
+		}
+	}
+
+	private static List<SimulatedGenerator> createGenerators(int count, boolean adjustable) {
+		ResultAggregator aggregator = new ResultAggregator(count);
+		List<SimulatedGenerator> generators = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			SimulatedGenerator generator = new SimulatedGenerator(i, aggregator);
+			generator.adjustable = adjustable;
+			generators.add(generator);
+		}
+		return generators;
+	}
+
+	private static LoadBalancer startBalancer(List<SimulatedGenerator> generators) {
+		List<ArrivalRateTuple> rates = new ArrayList<>();
+		for (int t = 1; t <= INTERVALS; t++) {
+			rates.add(new ArrivalRateTuple(t, LOAD));
+		}
+		LoadBalancer balancer = new LoadBalancer(new ArrayList<>(generators), rates,
+				LoadDistribution.equal(generators.size()));
+		balancer.probeGenerators();
+		balancer.start();
+		return balancer;
+	}
+
+	/**
+	 * Passes the results of an interval to the load generators.
+	 * @param droppedTransactions The number of dropped transactions of each load generator.
+	 */
+	private static void report(List<SimulatedGenerator> generators, int targetTime, int... droppedTransactions) {
+		for (int i = 0; i < generators.size(); i++) {
+			generators.get(i).addResult(LoadGeneratorResult.parse(targetTime + ",10,10,0.01,0,"
+					+ droppedTransactions[i] + "," + targetTime));
+		}
+	}
+
+	private static IntervalResult round(int targetTime) {
+		return new IntervalResult(targetTime, LOAD, 0, 0, 0, 0, 0, 0, 0, 0, new double[0], new double[0], 0, 0);
+	}
+
+	private static void assertNoAdjustments(List<SimulatedGenerator> generators) {
+		for (SimulatedGenerator generator : generators) {
+			assertTrue(generator.adjustments.isEmpty());
+		}
+	}
+
+	/**
+	 * Asserts that the load of the intervals starting at a target time was apportioned anew by weight
+	 * and that the load of the earlier intervals is unchanged. Load generators without weight have failed.
+	 */
+	private static void assertRebalancedFrom(LoadBalancer balancer, List<SimulatedGenerator> generators,
+			double targetTime, double[] weights) {
+		double weightSum = 0;
+		for (double weight : weights) {
+			weightSum += weight;
+		}
+		int[] sums = new int[INTERVALS];
+		for (int i = 0; i < generators.size(); i++) {
+			List<List<ArrivalRateTuple>> adjustments = generators.get(i).adjustments;
+			double assigned = 0;
+			for (int j = 0; j < INTERVALS; j++) {
+				ArrivalRateTuple t = balancer.getRates(i).get(j);
+				if (t.getTimeStamp() < targetTime) {
+					assertEquals(LOAD / generators.size(), t.getArrivalRate(), 0.0);
+					sums[j] += (int) t.getArrivalRate();
+				} else if (weights[i] > 0) {
+					assigned += t.getArrivalRate();
+					sums[j] += (int) t.getArrivalRate();
+				}
+			}
+			if (weights[i] > 0) {
+				assertEquals(1, adjustments.size());
+				assertEquals(targetTime, adjustments.get(0).get(0).getTimeStamp(), 0.0);
+				double exact = (INTERVALS - targetTime + 1) * LOAD * weights[i] / weightSum;
+				assertTrue("Generator " + i + " got " + assigned + " instead of " + exact,
+						Math.abs(assigned - exact) < 1);
+			}
+		}
+		for (int j = 0; j < INTERVALS; j++) {
+			assertEquals(LOAD, sums[j]);
+		}
+	}
+
+	/**
+	 * A load generator that records its rate adjustments instead of sending them.
+	 */
+	private static final class SimulatedGenerator extends LoadGeneratorCommunicator {
+		private final List<List<ArrivalRateTuple>> adjustments = new ArrayList<>();
+		private boolean adjustable;
+
+		private SimulatedGenerator(int index, ResultAggregator aggregator) {
+			super("generator" + index, IRunnerConstants.LOAD_GEN_PORT, aggregator);
+		}
+
+		@Override
+		public CompletableFuture<Integer> sendRateAdjustment(List<ArrivalRateTuple> rates) {
+			if (!rates.isEmpty()) {
+				adjustments.add(new ArrayList<>(rates));
+			}
+			return CompletableFuture.completedFuture(rates.size());
+		}
+
+		@Override
+		public boolean supportsRateAdjustment() {
+			return adjustable;
+		}
+	}
+}
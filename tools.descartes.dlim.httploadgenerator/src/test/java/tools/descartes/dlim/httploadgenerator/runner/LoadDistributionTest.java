@@ -0,0 +1,148 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.runner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import tools.descartes.dlim.httploadgenerator.generator.ArrivalRateTuple;
+
+/**
+ * Tests apportioning load profiles to load generators using the {@link LoadDistribution}.
+ * @author Joakim von Kistowski
+ *
+ */
+public class LoadDistributionTest {
+
+	@Test
+	public void testSevenGeneratorsAtRateTen() {
+		List<ArrivalRateTuple> rates = new ArrayList<>();
+		for (int t = 1; t <= 70; t++) {
+			rates.add(new ArrivalRateTuple(t, 10));
+		}
+		List<List<ArrivalRateTuple>> profiles = LoadDistribution.equal(7).distribute(rates);
+		assertSums(rates, profiles);
+		assertBoundedError(rates, profiles, LoadDistribution.equal(7));
+		//each load generator gets either one or two transactions per interval and exactly 10/7 over time
+		for (List<ArrivalRateTuple> profile : profiles) {
+			int total = 0;
+			for (ArrivalRateTuple t : profile) {
+				assertTrue(t.getArrivalRate() == 1 || t.getArrivalRate() == 2);
+				total += (int) t.getArrivalRate();
+			}
+			assertEquals(100, total);
+		}
+	}
+
+	@Test
+	public void testZeroWeights() {
+		List<ArrivalRateTuple> rates = profile(5, 17, 1, 0, 33);
+		LoadDistribution distribution = new LoadDistribution(new double[] {0, 1, 0, 3});
+		assertEquals(0.0, distribution.getShare(0), 0.0);
+		assertEquals(0.25, distribution.getShare(1), 0.0);
+		assertEquals(0.75, distribution.getShare(3), 0.0);
+		List<List<ArrivalRateTuple>> profiles = distribution.distribute(rates);
+		assertSums(rates, profiles);
+		assertBoundedError(rates, profiles, distribution);
+		for (int i = 0; i < rates.size(); i++) {
+			assertEquals(0.0, profiles.get(0).get(i).getArrivalRate(), 0.0);
+			assertEquals(0.0, profiles.get(2).get(i).getArrivalRate(), 0.0);
+		}
+	}
+
+	@Test
+	public void testSingleGenerator() {
+		List<ArrivalRateTuple> rates = profile(3, 0, 1000, 7);
+		List<List<ArrivalRateTuple>> profiles = new LoadDistribution(new double[] {2.5}).distribute(rates);
+		assertEquals(1, profiles.size());
+		for (int i = 0; i < rates.size(); i++) {
+			assertEquals(rates.get(i).getTimeStamp(), profiles.get(0).get(i).getTimeStamp(), 0.0);
+			assertEquals(rates.get(i).getArrivalRate(), profiles.get(0).get(i).getArrivalRate(), 0.0);
+		}
+	}
+
+	@Test
+	public void testFractionalRatesAndWeights() {
+		List<ArrivalRateTuple> rates = new ArrayList<>();
+		for (int t = 0; t < 200; t++) {
+			rates.add(new ArrivalRateTuple(t * 0.5, 3.7 + (t % 9) * 1.3));
+		}
+		LoadDistribution distribution = new LoadDistribution(new double[] {0.3, 1.1, 2.9});
+		List<List<ArrivalRateTuple>> profiles = distribution.distribute(rates);
+		//fractions of transactions are not executed, as by a single load generator
+		assertSums(rates, profiles);
+		assertBoundedError(rates, profiles, distribution);
+	}
+
+	@Test
+	public void testNoGenerators() {
+		assertTrue(new LoadDistribution(new double[0]).distribute(profile(10, 20)).isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAllWeightsZero() {
+		new LoadDistribution(new double[] {0, 0});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeWeight() {
+		new LoadDistribution(new double[] {1, -1});
+	}
+
+	private static List<ArrivalRateTuple> profile(double... arrivalRates) {
+		List<ArrivalRateTuple> rates = new ArrayList<>();
+		for (int i = 0; i < arrivalRates.length; i++) {
+			rates.add(new ArrivalRateTuple(i + 1, arrivalRates[i]));
+		}
+		return rates;
+	}
+
+	/**
+	 * Asserts that the load intensities of each interval add up to the whole transactions of the profile.
+	 */
+	private static void assertSums(List<ArrivalRateTuple> rates, List<List<ArrivalRateTuple>> profiles) {
+		for (int i = 0; i < rates.size(); i++) {
+			int sum = 0;
+			for (List<ArrivalRateTuple> profile : profiles) {
+				assertEquals(rates.get(i).getTimeStamp(), profile.get(i).getTimeStamp(), 0.0);
+				sum += (int) profile.get(i).getArrivalRate();
+			}
+			assertEquals((int) rates.get(i).getArrivalRate(), sum);
+		}
+	}
+
+	/**
+	 * Asserts that the cumulative load of each load generator deviates by less than one transaction
+	 * from its exact share after each interval.
+	 */
+	private static void assertBoundedError(List<ArrivalRateTuple> rates, List<List<ArrivalRateTuple>> profiles,
+			LoadDistribution distribution) {
+		for (int g = 0; g < profiles.size(); g++) {
+			double exact = 0;
+			long assigned = 0;
+			for (int i = 0; i < rates.size(); i++) {
+				exact += (int) rates.get(i).getArrivalRate() * distribution.getShare(g);
+				assigned += (int) profiles.get(g).get(i).getArrivalRate();
+				assertTrue("Generator " + g + " deviates at interval " + i, Math.abs(assigned - exact) < 1.0 + 1e-9);
+			}
+		}
+	}
+}
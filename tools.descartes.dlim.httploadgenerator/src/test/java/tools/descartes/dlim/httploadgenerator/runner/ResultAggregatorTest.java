@@ -0,0 +1,115 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.runner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import tools.descartes.dlim.httploadgenerator.generator.LatencyHistogram;
+
+/**
+ * Tests parsing the results of the load generators and merging them in the {@link ResultAggregator}.
+ * @author Joakim von Kistowski
+ *
+ */
+public class ResultAggregatorTest {
+
+	@Test
+	public void testMergedPercentilesMatchCombinedStream() throws InterruptedException {
+		LatencyHistogram first = new LatencyHistogram();
+		LatencyHistogram second = new LatencyHistogram();
+		LatencyHistogram combined = new LatencyHistogram();
+		long firstSumNs = 0;
+		long secondSumNs = 0;
+		for (long i = 1; i <= 2000; i++) {
+			//a fast and a slow load generator
+			first.recordValue(i * 5);
+			firstSumNs += i * 5000;
+			second.recordValue(i * i);
+			secondSumNs += i * i * 1000;
+			combined.recordValue(i * 5);
+			combined.recordValue(i * i);
+		}
+		ResultAggregator aggregator = new ResultAggregator(2);
+		LoadGeneratorCommunicator fast = new LoadGeneratorCommunicator("fast", 1, aggregator);
+		LoadGeneratorCommunicator slow = new LoadGeneratorCommunicator("slow", 1, aggregator);
+		fast.addResult(LoadGeneratorResult.parse(resultLine(1.0, 2000, firstSumNs, first)));
+		slow.addResult(LoadGeneratorResult.parse(resultLine(1.0, 2000, secondSumNs, second)));
+		IntervalResult round = aggregator.takeRound();
+		assertEquals(1.0, round.getTargetTime(), 0.0);
+		assertEquals(4000, round.getSuccessfulTransactions());
+		assertEquals(2, round.getFailedTransactions());
+		assertEquals(4, round.getDroppedTransactions());
+		assertEquals((firstSumNs + secondSumNs) / 4000.0 / 1000000000.0, round.getAvgResponseTime(), 1e-12);
+		assertArrayEquals(combined.getReportedPercentilesInS(), round.getResponseTimePercentiles(), 0.0);
+		assertArrayEquals(combined.getReportedPercentilesInS(), round.getCorrectedResponseTimePercentiles(), 0.0);
+		assertEquals(200, round.getReceivedBytes());
+	}
+
+	@Test
+	public void testLegacyResultLine() {
+		LoadGeneratorResult result = LoadGeneratorResult.parse("2.0,10,8,0.25,1,1,2.05");
+		assertFalse(result.hasHistograms());
+		assertNull(result.getResponseTimeHistogram());
+		assertEquals(2.0, result.getTargetTime(), 0.0);
+		assertEquals(10, result.getLoadIntensity());
+		assertEquals(8, result.getSuccessfulTransactions());
+		assertEquals(1, result.getFailedTransactions());
+		assertEquals(1, result.getDroppedTransactions());
+		assertEquals(2.05, result.getFinalBatchTime(), 0.0);
+		assertEquals(2000000000L, result.getResponseTimeSumNs());
+	}
+
+	@Test
+	public void testPercentilesOfMixedVersionsAreNotAvailable() throws InterruptedException {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.recordValue(100000);
+		histogram.recordValue(300000);
+		ResultAggregator aggregator = new ResultAggregator(2);
+		LoadGeneratorCommunicator current = new LoadGeneratorCommunicator("current", 1, aggregator);
+		LoadGeneratorCommunicator legacy = new LoadGeneratorCommunicator("legacy", 1, aggregator);
+		current.addResult(LoadGeneratorResult.parse(resultLine(1.0, 2, 400000000L, histogram)));
+		legacy.addResult(LoadGeneratorResult.parse("1.0,10,2,0.1,0,0,1.01"));
+		IntervalResult round = aggregator.takeRound();
+		assertEquals(4, round.getSuccessfulTransactions());
+		assertEquals(0.15, round.getAvgResponseTime(), 1e-12);
+		for (double percentile : round.getResponseTimePercentiles()) {
+			assertTrue(Double.isNaN(percentile));
+		}
+		assertEquals(LatencyHistogram.REPORTED_PERCENTILES.length + 1, round.getResponseTimePercentiles().length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIncompleteResultLine() {
+		LoadGeneratorResult.parse("1.0,10,2,0.1,0,0,1.01,0.0");
+	}
+
+	/**
+	 * Creates a result line as sent by the load generators using the text protocol.
+	 */
+	private static String resultLine(double targetTime, long successful, long responseTimeSumNs,
+			LatencyHistogram histogram) {
+		double avg = responseTimeSumNs / (double) successful / 1000000000.0;
+		return targetTime + ",10," + successful + "," + avg + ",1,2," + (targetTime + 0.01) + ",0.5,1.5," + avg
+				+ "," + responseTimeSumNs + "," + responseTimeSumNs + ",5000,10," + histogram.encode() + ","
+				+ histogram.encode() + ",100";
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2017 Joakim von Kistowski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tools.descartes.dlim.httploadgenerator.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import tools.descartes.dlim.httploadgenerator.generator.ResultTracker;
+
+/**
+ * Tests the release order and times of the {@link HashedWheelDispatcher}.
+ * The wheel is advanced tick by tick on the test thread using a manual clock.
+ * @author Joakim von Kistowski
+ *
+ */
+public class HashedWheelDispatcherTest {
+
+	/** Tick duration in ns. */
+	private static final long TICK = 1000;
+
+	/** Number of buckets. One revolution takes 8 ticks. */
+	private static final int WHEEL_SIZE = 8;
+
+	/** Due times relative to the start time, scheduled in this order. Spans more than three revolutions. */
+	private static final long[] DUE_OFFSETS = {2500, 10500, 18999, 2000, 26000, 7999, 8000, 15100, 3, 23456, 10400, 0};
+
+	/** The current time of the manual clock. */
+	private long now;
+
+	@Test
+	public void testDispatchOrderAcrossRevolutions() {
+		assertDispatchOrder(1000000L);
+	}
+
+	@Test
+	public void testDispatchOrderAcrossClockOverflow() {
+		//System.nanoTime() may overflow during a measurement
+		assertDispatchOrder(Long.MAX_VALUE - 3 * TICK - 500);
+	}
+
+	@Test
+	public void testLateTransactionIsReleasedWithNextTick() {
+		List<ScheduledTransaction> dispatched = new ArrayList<>();
+		now = 0;
+		HashedWheelDispatcher dispatcher = createDispatcher(dispatched);
+		ScheduledTransaction future = new ScheduledTransaction();
+		dispatcher.schedule(future, 20 * TICK + 1);
+		advance(dispatcher, 0, 4);
+		assertTrue(dispatched.isEmpty());
+		//a transaction that was due two ticks ago
+		ScheduledTransaction late = new ScheduledTransaction();
+		dispatcher.schedule(late, 3 * TICK);
+		advance(dispatcher, 5, 5);
+		assertEquals(1, dispatched.size());
+		assertSame(late, dispatched.get(0));
+		assertEquals(3 * TICK, late.jitterNs);
+		assertTrue(dispatcher.hasWaitingTransactions());
+		advance(dispatcher, 6, 20);
+		assertSame(future, dispatched.get(1));
+		assertEquals(TICK - 1, future.jitterNs);
+		assertFalse(dispatcher.hasWaitingTransactions());
+		assertEquals(21 * TICK, dispatcher.getLastDispatchTimeNs());
+	}
+
+	/**
+	 * Schedules transactions across multiple revolutions and asserts that each transaction is released
+	 * at the end of the tick containing its due time, in order of due ticks and, within a tick, in order of scheduling.
+	 */
+	private void assertDispatchOrder(long startNs) {
+		List<ScheduledTransaction> dispatched = new ArrayList<>();
+		now = startNs;
+		HashedWheelDispatcher dispatcher = createDispatcher(dispatched);
+		List<ScheduledTransaction> expected = new ArrayList<>();
+		for (long offset : DUE_OFFSETS) {
+			ScheduledTransaction transaction = new ScheduledTransaction();
+			transaction.offset = offset;
+			dispatcher.schedule(transaction, startNs + offset);
+			expected.add(transaction);
+		}
+		expected.sort(Comparator.comparingLong(t -> t.offset / TICK));
+		ResultTracker.TRACKER.retreiveIntervalResultAndReset();
+		int lastTick = (int) (26000 / TICK) + WHEEL_SIZE;
+		long jitterSum = 0;
+		for (int tick = 0; tick <= lastTick; tick++) {
+			int released = dispatched.size();
+			advance(dispatcher, tick, tick);
+			for (ScheduledTransaction transaction : dispatched.subList(released, dispatched.size())) {
+				assertEquals(tick, transaction.offset / TICK);
+				//never early and at most one tick late
+				assertTrue(transaction.jitterNs > 0 && transaction.jitterNs <= TICK);
+				jitterSum += transaction.jitterNs;
+			}
+		}
+		assertEquals(expected, dispatched);
+		assertFalse(dispatcher.hasWaitingTransactions());
+		ResultTracker.IntervalResult result = ResultTracker.TRACKER.retreiveIntervalResultAndReset();
+		assertEquals(DUE_OFFSETS.length, result.getDispatchJitterCount());
+		assertEquals(jitterSum, result.getDispatchJitterSumNs());
+	}
+
+	private HashedWheelDispatcher createDispatcher(List<ScheduledTransaction> dispatched) {
+		return new HashedWheelDispatcher(r -> {
+			ScheduledTransaction transaction = (ScheduledTransaction) r;
+			transaction.jitterNs = now - transaction.getDueTimeNs();
+			dispatched.add(transaction);
+		}, TICK, WHEEL_SIZE, () -> now);
+	}
+
+	/**
+	 * Processes the ticks from first to last, each once it has ended.
+	 */
+	private void advance(HashedWheelDispatcher dispatcher, long firstTick, long lastTick) {
+		long startNs = now - firstTick * TICK;
+		for (long tick = firstTick; tick <= lastTick; tick++) {
+			now = startNs + (tick + 1) * TICK;
+			dispatcher.processTick(tick);
+		}
+	}
+
+	/**
+	 * A transaction that remembers when it was released.
+	 */
+	private static final class ScheduledTransaction extends Transaction {
+		private long offset;
+		private long jitterNs;
+
+		@Override
+		public void run() {
+		}
+	}
+}